@@ -0,0 +1,120 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.jliblinear;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+import de.bwaldvogel.liblinear.Feature;
+import de.bwaldvogel.liblinear.FeatureNode;
+
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+
+/**
+ * Per-thread buffer for converting instances to the Feature format of the
+ * Java version of liblinear when making predictions.
+ *
+ * Since the index of a <tt>FeatureNode</tt> cannot be changed the buffer
+ * keeps one node per attribute and only updates the values, so predicting
+ * an instance in another format does not allocate memory once the buffer
+ * has grown to the number of attributes. The array of nodes is also reused
+ * while the number of non-zero elements stays the same.
+ *
+ * @author agent(at)local
+ */
+final class InstanceBuffer
+{
+    private static final ThreadLocal<InstanceBuffer> _buffers =
+        new ThreadLocal<InstanceBuffer>() {
+            @Override
+            protected InstanceBuffer initialValue()
+            {
+                return new InstanceBuffer();
+            }
+        };
+
+    private final IntArrayList    _indices = new IntArrayList();
+    private final DoubleArrayList _values  = new DoubleArrayList();
+    // The node of column c, with Feature index c + 1, is stored at c.
+    private FeatureNode[] _pool  = new FeatureNode[0];
+    private Feature[]     _nodes = new Feature[0];
+
+    private InstanceBuffer()
+    {
+    }
+
+    /**
+     * Returns the Feature array of the instance. An instance in another
+     * format is converted into the buffer of the current thread, which is
+     * only valid until the next conversion by the same thread and must not
+     * be modified.
+     *
+     * @param instance  the instance.
+     * @return the Feature array of the instance.
+     */
+    static Feature[] nodesOf(DoubleMatrix1D instance)
+    {
+        if (instance instanceof SparseDoubleMatrix1D) {
+            return ((SparseDoubleMatrix1D)instance).nodes;
+        }
+        return _buffers.get().convert(instance);
+    }
+
+    private Feature[] convert(DoubleMatrix1D instance)
+    {
+        int[]    indices;
+        double[] values;
+        int      offset;
+        int      length;
+        if (instance instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)instance;
+            indices = csr.getMatrix().getColumnIndices();
+            values  = csr.getMatrix().getValues();
+            offset  = csr.getStart();
+            length  = csr.getEnd() - csr.getStart();
+        } else {
+            instance.getNonZeros(_indices, _values);
+            indices = _indices.elements();
+            values  = _values.elements();
+            offset  = 0;
+            length  = _indices.size();
+        }
+
+        if (_pool.length < instance.size()) {
+            FeatureNode[] pool = new FeatureNode[instance.size()];
+            System.arraycopy(_pool, 0, pool, 0, _pool.length);
+            _pool = pool;
+        }
+        // liblinear uses the length of the array as the number of elements.
+        if (_nodes.length != length) {
+            _nodes = new Feature[length];
+        }
+        for (int i = 0; i < length; i++) {
+            int column = indices[offset + i];
+            FeatureNode node = _pool[column];
+            if (node == null) {
+                node = new FeatureNode(column + 1, values[offset + i]);
+                _pool[column] = node;
+            } else {
+                node.value = values[offset + i];
+            }
+            _nodes[i] = node;
+        }
+        return _nodes;
+    }
+}
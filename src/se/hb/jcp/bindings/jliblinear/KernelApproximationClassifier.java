@@ -0,0 +1,327 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.jliblinear;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix1D;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import de.bwaldvogel.liblinear.Feature;
+import de.bwaldvogel.liblinear.FeatureNode;
+
+import se.hb.jcp.ml.ClassifierBase;
+import se.hb.jcp.ml.FeatureMap;
+import se.hb.jcp.ml.IClassProbabilityClassifier;
+import se.hb.jcp.ml.IClassifier;
+import se.hb.jcp.ml.NystroemFeatureMap;
+import se.hb.jcp.ml.RandomFourierFeatureMap;
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+import se.hb.jcp.util.ExecutionPolicy;
+
+/**
+ * A liblinear linear classifier trained on an explicit feature map that
+ * approximates the RBF kernel, which gives models close to RBF SVMs at
+ * the training and prediction cost of a linear model.
+ *
+ * The JSON configuration may contain
+ * <ul>
+ * <li><tt>feature_map</tt>: <tt>"random_fourier"</tt> (default) or
+ *     <tt>"nystroem"</tt>.</li>
+ * <li><tt>components</tt>: the number of random features or landmarks
+ *     (default 256).</li>
+ * <li><tt>gamma</tt>: the RBF kernel parameter (default
+ *     <tt>1/attributes</tt>).</li>
+ * <li><tt>seed</tt>: the seed for the random choices of the map.</li>
+ * <li><tt>classifier</tt>: the configuration of the
+ *     {@link LinearClassifier}.</li>
+ * </ul>
+ *
+ * The training instances are mapped in parallel under the default
+ * execution policy directly into the rows of the liblinear training
+ * problem. The last mapped instance is cached per thread, so the
+ * repeated predictions for the same instance made by the non-conformity
+ * functions during calibration and prediction map it only once.
+ *
+ * @author agent(at)local
+ */
+public class KernelApproximationClassifier
+    extends ClassifierBase
+    implements IClassProbabilityClassifier,
+               java.io.Serializable
+{
+    private static final int DEFAULT_COMPONENTS = 256;
+    private static final CSRDoubleMatrix1D _storageTemplate =
+        new CSRDoubleMatrix1D(0);
+
+    protected JSONObject _jsonParameters;
+    protected FeatureMap _featureMap;
+    protected LinearClassifier _classifier;
+    private transient volatile ThreadLocal<MappedInstance> _mappedInstances;
+
+    public KernelApproximationClassifier()
+    {
+    }
+
+    public KernelApproximationClassifier(JSONObject parameters)
+    {
+        this();
+        _jsonParameters = parameters;
+    }
+
+    protected void internalFit(DoubleMatrix2D x, double[] y)
+        throws JSONException
+    {
+        FeatureMap featureMap = readFeatureMap();
+        Random random;
+        if (_jsonParameters != null && _jsonParameters.has("seed")) {
+            random = new Random(_jsonParameters.getLong("seed"));
+        } else {
+            random = new Random();
+        }
+        featureMap.fit(x, random);
+        final SparseDoubleMatrix2D z =
+            new SparseDoubleMatrix2D(x.rows(),
+                                     featureMap.getOutputDimension());
+        featureMap.mapAll(x, ExecutionPolicy.getDefault(),
+                          new FeatureMap.MappedRowHandler() {
+                              public void handle(int row, double[] features)
+                              {
+                                  z.rows[row] = toNodes(features);
+                              }
+                          });
+
+        JSONObject classifierParameters = null;
+        if (_jsonParameters != null && _jsonParameters.has("classifier")) {
+            classifierParameters = _jsonParameters.getJSONObject("classifier");
+        }
+        LinearClassifier classifier =
+            new LinearClassifier(classifierParameters);
+        classifier.fit(z, y);
+
+        _featureMap = featureMap;
+        _classifier = classifier;
+        _mappedInstances = null;
+    }
+
+    public IClassifier fitNew(DoubleMatrix2D x, double[] y)
+    {
+        KernelApproximationClassifier clone =
+            new KernelApproximationClassifier(_jsonParameters);
+        clone.fit(x, y);
+        return clone;
+    }
+
+    public double predict(DoubleMatrix1D instance)
+    {
+        return _classifier.predict(map(instance));
+    }
+
+    public double predict(DoubleMatrix1D instance,
+                          double[] probabilityEstimates)
+    {
+        return _classifier.predict(map(instance), probabilityEstimates);
+    }
+
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _storageTemplate;
+    }
+
+    /**
+     * Returns the feature map of the trained classifier.
+     *
+     * @return the feature map or <tt>null</tt> if the classifier has not been trained.
+     */
+    public FeatureMap getFeatureMap()
+    {
+        return _featureMap;
+    }
+
+    /**
+     * Returns the liblinear nodes of the non-zero features of a mapped
+     * instance.
+     */
+    private static Feature[] toNodes(double[] features)
+    {
+        int nonZeros = 0;
+        for (int c = 0; c < features.length; c++) {
+            if (features[c] != 0.0) {
+                nonZeros++;
+            }
+        }
+        Feature[] nodes = new Feature[nonZeros];
+        int k = 0;
+        for (int c = 0; c < features.length; c++) {
+            if (features[c] != 0.0) {
+                nodes[k++] = new FeatureNode(c + 1, features[c]);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the mapped instance. The result is only valid until the next
+     * instance is mapped by this classifier in the same thread.
+     */
+    private DoubleMatrix1D map(DoubleMatrix1D instance)
+    {
+        MappedInstance mapped = mappedInstance();
+        instance.getNonZeros(mapped.indices, mapped.values);
+        if (!mapped.isCached(instance.size())) {
+            _featureMap.map(mapped.indices, mapped.values, mapped.z);
+            mapped.setCached(instance.size());
+        }
+        return mapped.instance;
+    }
+
+    /**
+     * Returns the mapped instance buffer of the current thread.
+     */
+    private MappedInstance mappedInstance()
+    {
+        ThreadLocal<MappedInstance> mappedInstances = _mappedInstances;
+        if (mappedInstances == null) {
+            synchronized (this) {
+                mappedInstances = _mappedInstances;
+                if (mappedInstances == null) {
+                    final int dimension = _featureMap.getOutputDimension();
+                    mappedInstances = new ThreadLocal<MappedInstance>() {
+                        @Override
+                        protected MappedInstance initialValue()
+                        {
+                            return new MappedInstance(dimension);
+                        }
+                    };
+                    _mappedInstances = mappedInstances;
+                }
+            }
+        }
+        return mappedInstances.get();
+    }
+
+    private FeatureMap readFeatureMap() throws JSONException
+    {
+        String type = "random_fourier";
+        int components = DEFAULT_COMPONENTS;
+        double gamma = 0.0;
+        if (_jsonParameters != null) {
+            if (_jsonParameters.has("feature_map")) {
+                type = _jsonParameters.getString("feature_map");
+            }
+            if (_jsonParameters.has("components")) {
+                components = _jsonParameters.getInt("components");
+            }
+            if (_jsonParameters.has("gamma")) {
+                gamma = _jsonParameters.getDouble("gamma");
+            }
+        }
+        if (type.equals("random_fourier")) {
+            return new RandomFourierFeatureMap(components, gamma);
+        } else if (type.equals("nystroem")) {
+            return new NystroemFeatureMap(components, gamma);
+        } else {
+            throw new IllegalArgumentException
+                          ("se.hb.jcp.bindings.jliblinear." +
+                           "KernelApproximationClassifier: " +
+                           "Unknown feature_map '" + type + "'.");
+        }
+    }
+
+    private void writeObject(ObjectOutputStream oos)
+        throws java.io.IOException
+    {
+        // Save the model parameters.
+        if (_jsonParameters != null) {
+            oos.writeObject(_jsonParameters.toString());
+        } else {
+            oos.writeObject(null);
+        }
+        // Save the feature map and the linear model.
+        oos.writeObject(_featureMap);
+        oos.writeObject(_classifier);
+    }
+
+    private void readObject(ObjectInputStream ois)
+        throws ClassNotFoundException, java.io.IOException, JSONException
+    {
+        // Load the model parameters.
+        String jsonText = (String)ois.readObject();
+        if (jsonText != null) {
+            _jsonParameters = new JSONObject(jsonText);
+        }
+        // Load the feature map and the linear model.
+        _featureMap = (FeatureMap)ois.readObject();
+        _classifier = (LinearClassifier)ois.readObject();
+    }
+
+    /**
+     * The last instance mapped by a thread together with the non-zero
+     * elements it was mapped from.
+     */
+    private static final class MappedInstance
+    {
+        IntArrayList    indices = new IntArrayList();
+        DoubleArrayList values  = new DoubleArrayList();
+        IntArrayList    cachedIndices = new IntArrayList();
+        DoubleArrayList cachedValues  = new DoubleArrayList();
+        int             cachedSize = -1;
+        final double[]       z;
+        final DoubleMatrix1D instance;
+
+        MappedInstance(int dimension)
+        {
+            z = new double[dimension];
+            instance = new DenseDoubleMatrix1D(dimension);
+        }
+
+        /**
+         * Returns whether the non-zero elements in indices and values are
+         * those of the cached instance.
+         */
+        boolean isCached(int size)
+        {
+            return size == cachedSize &&
+                   indices.equals(cachedIndices) &&
+                   values.equals(cachedValues);
+        }
+
+        /**
+         * Makes the mapped z the cached instance of the non-zero elements
+         * in indices and values.
+         */
+        void setCached(int size)
+        {
+            instance.assign(z);
+            IntArrayList tmpIndices = cachedIndices;
+            cachedIndices = indices;
+            indices = tmpIndices;
+            DoubleArrayList tmpValues = cachedValues;
+            cachedValues = values;
+            values = tmpValues;
+            cachedSize = size;
+        }
+    }
+}
@@ -29,16 +29,36 @@ import org.json.JSONObject;
 import de.bwaldvogel.liblinear.*;
 
 import se.hb.jcp.ml.ClassifierBase;
+import se.hb.jcp.ml.IClassProbabilityClassifier;
 import se.hb.jcp.ml.IClassifier;
 
 public class LinearClassifier
     extends ClassifierBase
-    implements java.io.Serializable
+    implements IClassProbabilityClassifier,
+               java.io.Serializable
 {
+    // Fixed to the value computed before the class probability support
+    // was added so that saved models remain readable.
+    private static final long serialVersionUID = 2706883950481478558L;
+
     private static final SparseDoubleMatrix1D _storageTemplate =
         new SparseDoubleMatrix1D(0);
+    // Per-thread buffers for the decision values in liblinear's order.
+    private static final ThreadLocal<double[]> _decisionValues =
+        new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue()
+            {
+                return new double[0];
+            }
+        };
+
     protected JSONObject _jsonParameters;
     protected Model _model;
+    // Copy of the weights of the trained model, feature by feature.
+    private transient volatile double[] _weights;
+    // The JCP class index of each of liblinear's labels.
+    private transient volatile int[] _classIndex;
 
     public LinearClassifier()
     {
@@ -68,6 +88,8 @@ public class LinearClassifier
         problem.y = y;
 
         _model = Linear.train(problem, parameters);
+        _weights = null;
+        _classIndex = null;
 
     }
 
@@ -80,15 +102,76 @@ public class LinearClassifier
 
     public double predict(DoubleMatrix1D instance)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
+        return Linear.predict(_model, InstanceBuffer.nodesOf(instance));
+    }
+
+    /**
+     * Predicts the target probabilities for the supplied instance. For the
+     * logistic regression solvers these are liblinear's probability
+     * estimates. For the other solvers the same logistic transformation is
+     * applied to the decision values, which gives uncalibrated scores that
+     * preserve the order of the decision values.
+     *
+     * @param instance               the instance
+     * @param probabilityEstimates   a <tt>double[]</tt> array for storing the predicted probabilities for each of target values in the order assumed by JCP.
+     * @return the predicted target of the instance.
+     */
+    public double predict(DoubleMatrix1D instance,
+                          double[] probabilityEstimates)
+    {
+        checkClassification();
+        int nrClass = _model.getNrClass();
+        double[] decValues = decisionValueBuffer(nrClass);
+        double label = predictValuesInternal(instance, decValues);
+        // As Linear.predictProbability().
+        int nrW = getDecisionValueCount();
+        for (int i = 0; i < nrW; i++) {
+            decValues[i] = 1 / (1 + Math.exp(-decValues[i]));
+        }
+        if (nrClass == 2) {
+            decValues[1] = 1. - decValues[0];
         } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
+            double sum = 0;
+            for (int i = 0; i < nrClass; i++) {
+                sum += decValues[i];
+            }
+            for (int i = 0; i < nrClass; i++) {
+                decValues[i] = decValues[i] / sum;
+            }
+        }
+        int[] classIndex = getClassIndex();
+        for (int i = 0; i < nrClass; i++) {
+            probabilityEstimates[classIndex[i]] = decValues[i];
         }
+        return label;
+    }
 
-        return Linear.predict(_model, tmp_instance.nodes);
+    /**
+     * Computes the decision value of each class for the supplied instance.
+     * A larger value means that the instance is further inside the class.
+     * For two classes, other than with the MCSVM_CS solver, liblinear has
+     * a single decision function and the values of the classes are its
+     * value and its negation.
+     *
+     * @param instance        the instance
+     * @param decisionValues  a <tt>double[]</tt> array for storing the decision value of each target value in the order assumed by JCP.
+     * @return the predicted target of the instance.
+     */
+    public double predictValues(DoubleMatrix1D instance,
+                                double[] decisionValues)
+    {
+        checkClassification();
+        int nrClass = _model.getNrClass();
+        double[] decValues = decisionValueBuffer(nrClass);
+        double label = predictValuesInternal(instance, decValues);
+        if (getDecisionValueCount() == 1) {
+            decValues[1] = -decValues[0];
+        }
+        int[] classIndex = getClassIndex();
+        for (int i = 0; i < nrClass; i++) {
+            decisionValues[classIndex[i]] = decValues[i];
+        }
+        return label;
     }
 
     public DoubleMatrix1D nativeStorageTemplate()
@@ -96,6 +179,119 @@ public class LinearClassifier
         return _storageTemplate;
     }
 
+    /**
+     * Computes liblinear's decision values for the instance as
+     * Linear.predictValues() but with the cached weights.
+     */
+    private double predictValuesInternal(DoubleMatrix1D instance,
+                                         double[]       decValues)
+    {
+        double[] w = getWeights();
+        int nrW = getDecisionValueCount();
+        int n = _model.getNrFeature();
+        if (_model.getBias() >= 0) {
+            n++;
+        }
+        for (int i = 0; i < nrW; i++) {
+            decValues[i] = 0;
+        }
+        Feature[] x = InstanceBuffer.nodesOf(instance);
+        for (int k = 0; k < x.length; k++) {
+            int idx = x[k].getIndex();
+            // The test data may have more attributes than the training data.
+            if (idx <= n) {
+                double value = x[k].getValue();
+                int offset = (idx - 1) * nrW;
+                for (int i = 0; i < nrW; i++) {
+                    decValues[i] += w[offset + i] * value;
+                }
+            }
+        }
+
+        int[] label = _model.getLabels();
+        if (_model.getNrClass() == 2) {
+            return (decValues[0] > 0) ? label[0] : label[1];
+        } else {
+            int decMaxIdx = 0;
+            for (int i = 1; i < _model.getNrClass(); i++) {
+                if (decValues[i] > decValues[decMaxIdx]) {
+                    decMaxIdx = i;
+                }
+            }
+            return label[decMaxIdx];
+        }
+    }
+
+    /**
+     * Returns the number of decision functions of the model.
+     */
+    private int getDecisionValueCount()
+    {
+        if (_model.getNrClass() == 2 &&
+            _model.getSolverType() != SolverType.MCSVM_CS) {
+            return 1;
+        } else {
+            return _model.getNrClass();
+        }
+    }
+
+    private void checkClassification()
+    {
+        if (_model.getSolverType().isSupportVectorRegression()) {
+            throw new UnsupportedOperationException
+                          ("The " + _model.getSolverType() + " solver " +
+                           "does not support class probabilities.");
+        }
+    }
+
+    /**
+     * Returns the cached weights of the model.
+     */
+    private double[] getWeights()
+    {
+        double[] weights = _weights;
+        if (weights == null) {
+            weights = _model.getFeatureWeights();
+            _weights = weights;
+        }
+        return weights;
+    }
+
+    /**
+     * Returns the JCP class index of each of liblinear's labels.
+     */
+    private int[] getClassIndex()
+    {
+        int[] classIndex = _classIndex;
+        if (classIndex == null) {
+            int[] label = _model.getLabels();
+            Double[] labels = getLabels();
+            classIndex = new int[label.length];
+            for (int i = 0; i < label.length; i++) {
+                for (int c = 0; c < labels.length; c++) {
+                    if ((int)labels[c].doubleValue() == label[i]) {
+                        classIndex[i] = c;
+                    }
+                }
+            }
+            _classIndex = classIndex;
+        }
+        return classIndex;
+    }
+
+    /**
+     * Returns the decision value buffer of the current thread.
+     */
+    private static double[] decisionValueBuffer(int size)
+    {
+        double[] buffer = _decisionValues.get();
+        if (buffer.length < size) {
+            buffer = new double[size];
+            _decisionValues.set(buffer);
+        }
+        return buffer;
+    }
+
     private Parameter readParameters() throws JSONException {
         // Default parameters.
         Parameter parameters = new Parameter(SolverType.L2R_LR,
@@ -25,6 +25,8 @@ import cern.colt.list.IntArrayList;
 import de.bwaldvogel.liblinear.Feature;
 import de.bwaldvogel.liblinear.FeatureNode;
 
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+
 /**
  * Class for sparse 1-d matrices (aka <i>vectors</i>) holding
  * <tt>double</tt> elements in the sparse format expected by the Java
@@ -75,10 +77,7 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
                                 double[] values)
     {
         setUp(columns);
-        nodes = new Feature[indices.length];
-        for (int i = 0; i < indices.length; i++) {
-            nodes[i] = new FeatureNode(indices[i]+1, values[i]);
-        }
+        nodes = createNodes(indices, values, 0, indices.length);
     }
 
     /**
@@ -123,15 +122,19 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
             // FIXME: Should this be a deep copy?
             this.nodes = ((SparseDoubleMatrix1D)other).nodes;
             return this;
+        } else if (other instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)other;
+            nodes = createNodes(csr.getMatrix().getColumnIndices(),
+                                csr.getMatrix().getValues(),
+                                csr.getStart(),
+                                csr.getEnd() - csr.getStart());
+            return this;
         } else {
             IntArrayList indexList = new IntArrayList();
             DoubleArrayList valueList = new DoubleArrayList();
             other.getNonZeros(indexList, valueList);
-            nodes = new Feature[indexList.size()];
-            for (int i = 0; i < indexList.size(); i++) {
-                nodes[i] =
-                    new FeatureNode(indexList.get(i)+1, valueList.get(i));
-            }
+            nodes = createNodes(indexList.elements(), valueList.elements(),
+                                0, indexList.size());
             return this;
         }
     }
@@ -241,4 +244,21 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
         // FIXME: If needed.
         throw new UnsupportedOperationException("Not implemented");
     }
+
+    /**
+     * Creates the Feature nodes for length elements of the index and value
+     * arrays starting at offset.
+     */
+    static Feature[] createNodes(int[]    indices,
+                                 double[] values,
+                                 int      offset,
+                                 int      length)
+    {
+        Feature[] nodes = new Feature[length];
+        for (int i = 0; i < length; i++) {
+            nodes[i] = new FeatureNode(indices[offset + i]+1,
+                                       values[offset + i]);
+        }
+        return nodes;
+    }
 }
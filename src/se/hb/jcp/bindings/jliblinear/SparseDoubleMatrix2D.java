@@ -17,12 +17,16 @@
 // The public interface is based on cern.colt.matrix.DoubleMatrix2D.
 package se.hb.jcp.bindings.jliblinear;
 
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import de.bwaldvogel.liblinear.Feature;
 import de.bwaldvogel.liblinear.FeatureNode;
 
+import se.hb.jcp.util.CSRDoubleMatrix2D;
+
 /**
  * Class for sparse 2-d matrices holding <tt>double</tt> elements in
  * the sparse format expected by the Java library liblinear. See the
@@ -60,7 +64,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
     {
         setUp(rows, columns);
         this.rows = new Feature[rows][];
-        for (int r = 0; r < rows; r++) {
+        for (int r = 0; r < rows(); r++) {
             this.rows[r] = new Feature[0];
         }
     }
@@ -124,6 +128,47 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    /**
+     * Replaces all cell values of the receiver with the values of another
+     * matrix. Both matrices must have the same number of rows and columns.
+     * The rows are converted one at a time, directly from the arrays if the
+     * other matrix is a <tt>CSRDoubleMatrix2D</tt>.
+     *
+     * @param other the source matrix to copy from (may be identical to the receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException if <tt>columns() != other.columns() ||
+     *         rows() != other.rows()</tt>
+     */
+    public DoubleMatrix2D assign(DoubleMatrix2D other)
+    {
+        if (other == this) {
+            return this;
+        }
+        checkShape(other);
+        IntArrayList indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        for (int r = 0; r < rows(); r++) {
+            Feature[] nodes;
+            if (other instanceof CSRDoubleMatrix2D) {
+                CSRDoubleMatrix2D csr = (CSRDoubleMatrix2D)other;
+                nodes = SparseDoubleMatrix1D.createNodes
+                    (csr.getColumnIndices(), csr.getValues(),
+                     csr.getRowStart(r),
+                     csr.getRowEnd(r) - csr.getRowStart(r));
+            } else {
+                other.viewRow(r).getNonZeros(indexList, valueList);
+                nodes = SparseDoubleMatrix1D.createNodes
+                    (indexList.elements(), valueList.elements(),
+                     0, indexList.size());
+            }
+            this.rows[r] = nodes;
+            if (_rowViews[r] != null) {
+                _rowViews[r].nodes = nodes;
+            }
+        }
+        return this;
+    }
+
     /**
      * Returns the matrix cell value at coordinate <tt>[row,column]</tt>.
      *
@@ -187,7 +232,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
     {
         checkRow(row);
         if (_rowViews[row] == null) {
-            _rowViews[row] = new SparseDoubleMatrix1D(columns, rows[row]);
+            _rowViews[row] = new RowView(this, row);
         }
         return _rowViews[row];
     }
@@ -238,4 +283,34 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
         super.setUp(rows, columns);
         _rowViews = new SparseDoubleMatrix1D[rows];
     }
+
+    /**
+     * A view of a row of a matrix. Changes that replace the nodes of the
+     * view, e.g. <tt>assign</tt>, also replace the row in the matrix.
+     */
+    private static class RowView extends SparseDoubleMatrix1D
+    {
+        private final SparseDoubleMatrix2D _matrix;
+        private final int _row;
+
+        RowView(SparseDoubleMatrix2D matrix, int row)
+        {
+            super(matrix.columns, matrix.rows[row]);
+            _matrix = matrix;
+            _row = row;
+        }
+
+        public DoubleMatrix1D assign(DoubleMatrix1D other)
+        {
+            super.assign(other);
+            _matrix.rows[_row] = nodes;
+            return this;
+        }
+
+        public void setQuick(int index, double value)
+        {
+            super.setQuick(index, value);
+            _matrix.rows[_row] = nodes;
+        }
+    }
 }
@@ -0,0 +1,115 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.jlibsvm;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+import libsvm.svm_node;
+
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+
+/**
+ * Per-thread buffer for converting instances to the svm_node format of the
+ * Java version of libsvm when making predictions.
+ *
+ * The svm_node objects are reused between conversions so that predicting
+ * an instance in another format does not allocate memory once the buffer
+ * has grown to the number of non-zero elements of the instances. The
+ * array of nodes is also reused while that number stays the same.
+ *
+ * @author agent(at)local
+ */
+final class InstanceBuffer
+{
+    private static final ThreadLocal<InstanceBuffer> _buffers =
+        new ThreadLocal<InstanceBuffer>() {
+            @Override
+            protected InstanceBuffer initialValue()
+            {
+                return new InstanceBuffer();
+            }
+        };
+
+    private final IntArrayList    _indices = new IntArrayList();
+    private final DoubleArrayList _values  = new DoubleArrayList();
+    private svm_node[] _pool  = new svm_node[0];
+    private svm_node[] _nodes = new svm_node[0];
+
+    private InstanceBuffer()
+    {
+    }
+
+    /**
+     * Returns the svm_node array of the instance. An instance in another
+     * format is converted into the buffer of the current thread, which is
+     * only valid until the next conversion by the same thread and must not
+     * be modified.
+     *
+     * @param instance  the instance.
+     * @return the svm_node array of the instance.
+     */
+    static svm_node[] nodesOf(DoubleMatrix1D instance)
+    {
+        if (instance instanceof SparseDoubleMatrix1D) {
+            return ((SparseDoubleMatrix1D)instance).nodes;
+        }
+        return _buffers.get().convert(instance);
+    }
+
+    private svm_node[] convert(DoubleMatrix1D instance)
+    {
+        int[]    indices;
+        double[] values;
+        int      offset;
+        int      length;
+        if (instance instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)instance;
+            indices = csr.getMatrix().getColumnIndices();
+            values  = csr.getMatrix().getValues();
+            offset  = csr.getStart();
+            length  = csr.getEnd() - csr.getStart();
+        } else {
+            instance.getNonZeros(_indices, _values);
+            indices = _indices.elements();
+            values  = _values.elements();
+            offset  = 0;
+            length  = _indices.size();
+        }
+
+        if (_pool.length < length) {
+            svm_node[] pool = new svm_node[Math.max(length, 2*_pool.length)];
+            System.arraycopy(_pool, 0, pool, 0, _pool.length);
+            for (int i = _pool.length; i < pool.length; i++) {
+                pool[i] = new svm_node();
+            }
+            _pool = pool;
+        }
+        // The Java version of libsvm uses the length of the array as the
+        // number of elements.
+        if (_nodes.length != length) {
+            _nodes = new svm_node[length];
+            System.arraycopy(_pool, 0, _nodes, 0, length);
+        }
+        for (int i = 0; i < length; i++) {
+            _nodes[i].index = indices[offset + i];
+            _nodes[i].value = values[offset + i];
+        }
+        return _nodes;
+    }
+}
@@ -0,0 +1,417 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// The grouping of the classes and the assembly of the model follow
+// svm_train in libsvm 3.18 by Chih-Chung Chang and Chih-Jen Lin.
+package se.hb.jcp.bindings.jlibsvm;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * Multi-class training for the Java version of libsvm with the one-vs-one
+ * binary sub-problems solved in parallel.
+ *
+ * <tt>svm.svm_train</tt> trains the k(k-1)/2 binary classifiers of a
+ * k-class C_SVC or NU_SVC model one after the other. Here each pair of
+ * classes is trained as a separate two-class model by
+ * <tt>svm.svm_train</tt> in a task of its own and the binary models are
+ * then assembled into a standard k-class <tt>svm_model</tt>. The decision
+ * functions are the same as those computed by <tt>svm.svm_train</tt>. The
+ * probability parameters are too, up to the random folds of libsvm's
+ * internal cross-validation.
+ *
+ * The kernel cache budget <tt>cache_size</tt> is shared evenly between
+ * the sub-problems trained at the same time.
+ *
+ * @author agent(at)local
+ */
+public final class ParallelSVMTrainer
+{
+    // The smallest kernel cache in MB given to a sub-problem.
+    private static final double MIN_CACHE_SIZE = 1.0;
+
+    private ParallelSVMTrainer()
+    {
+    }
+
+    /**
+     * Trains a model as <tt>svm.svm_train</tt> under the default execution
+     * policy.
+     *
+     * @param prob   the training problem.
+     * @param param  the training parameters.
+     * @return the trained model.
+     */
+    public static svm_model svm_train(svm_problem prob, svm_parameter param)
+    {
+        return svm_train(prob, param, ExecutionPolicy.getDefault());
+    }
+
+    /**
+     * Trains a model as <tt>svm.svm_train</tt>. Classification models with
+     * more than two classes are trained with the pairs of classes in
+     * parallel under the supplied execution policy. Other models are
+     * trained by <tt>svm.svm_train</tt>.
+     *
+     * @param prob    the training problem.
+     * @param param   the training parameters.
+     * @param policy  the execution policy to use.
+     * @return the trained model.
+     */
+    public static svm_model svm_train(svm_problem     prob,
+                                      svm_parameter   param,
+                                      ExecutionPolicy policy)
+    {
+        if (!policy.isParallel() ||
+            (param.svm_type != svm_parameter.C_SVC &&
+             param.svm_type != svm_parameter.NU_SVC)) {
+            return svm.svm_train(prob, param);
+        }
+        Groups groups = new Groups(prob);
+        int nrClass = groups.label.length;
+        if (nrClass <= 2) {
+            return svm.svm_train(prob, param);
+        }
+
+        svm_node[][] x = new svm_node[prob.l][];
+        for (int i = 0; i < prob.l; i++) {
+            x[i] = prob.x[groups.perm[i]];
+        }
+        double[] weightedC = new double[nrClass];
+        for (int i = 0; i < nrClass; i++) {
+            weightedC[i] = param.C;
+        }
+        for (int i = 0; i < param.nr_weight; i++) {
+            int j;
+            for (j = 0; j < nrClass; j++) {
+                if (param.weight_label[i] == groups.label[j]) {
+                    break;
+                }
+            }
+            if (j == nrClass) {
+                System.err.print("WARNING: class label " +
+                                 param.weight_label[i] +
+                                 " specified in weight is not found\n");
+            } else {
+                weightedC[j] *= param.weight[i];
+            }
+        }
+
+        int pairs = nrClass * (nrClass - 1) / 2;
+        int[] first  = new int[pairs];
+        int[] second = new int[pairs];
+        int p = 0;
+        for (int i = 0; i < nrClass; i++) {
+            for (int j = i + 1; j < nrClass; j++) {
+                first[p] = i;
+                second[p] = j;
+                p++;
+            }
+        }
+
+        ExecutionPolicy pairPolicy = new ExecutionPolicy(policy);
+        // Each pair is trained by a single task.
+        pairPolicy.setGrainSize(1);
+        int concurrency =
+            Math.min(pairs, pairPolicy.getPool().getParallelism());
+        double cacheSize =
+            Math.max(MIN_CACHE_SIZE, param.cache_size / concurrency);
+
+        double[][] alpha = new double[pairs][];
+        svm_model[] binary = new svm_model[pairs];
+        TrainPairAction all =
+            new TrainPairAction(x, groups, param, weightedC, cacheSize,
+                                first, second, alpha, binary, 0, pairs);
+        all.start(pairPolicy);
+
+        return assemble(param, x, groups, first, second, alpha, binary);
+    }
+
+    /**
+     * Trains the two-class model of the classes i and j.
+     */
+    private static svm_model trainPair(svm_node[][]  x,
+                                       Groups        groups,
+                                       svm_parameter param,
+                                       double[]      weightedC,
+                                       double        cacheSize,
+                                       int i, int j)
+    {
+        int si = groups.start[i];
+        int sj = groups.start[j];
+        int ci = groups.count[i];
+        int cj = groups.count[j];
+        svm_problem subProb = new svm_problem();
+        subProb.l = ci + cj;
+        subProb.x = new svm_node[subProb.l][];
+        subProb.y = new double[subProb.l];
+        for (int k = 0; k < ci; k++) {
+            subProb.x[k] = x[si + k];
+            subProb.y[k] = +1;
+        }
+        for (int k = 0; k < cj; k++) {
+            subProb.x[ci + k] = x[sj + k];
+            subProb.y[ci + k] = -1;
+        }
+
+        // The class weights give the same per class C as in svm_train, in
+        // the same way as libsvm's own probability cross-validation does.
+        svm_parameter subParam = (svm_parameter)param.clone();
+        subParam.C = 1.0;
+        subParam.nr_weight = 2;
+        subParam.weight_label = new int[] { +1, -1 };
+        subParam.weight = new double[] { weightedC[i], weightedC[j] };
+        subParam.cache_size = cacheSize;
+        return svm.svm_train(subProb, subParam);
+    }
+
+    /**
+     * Assembles the k-class model from the two-class models as svm_train.
+     */
+    private static svm_model assemble(svm_parameter param,
+                                      svm_node[][]  x,
+                                      Groups        groups,
+                                      int[]         first,
+                                      int[]         second,
+                                      double[][]    alpha,
+                                      svm_model[]   binary)
+    {
+        int nrClass = groups.label.length;
+        int pairs = binary.length;
+        int l = x.length;
+        int[] start = groups.start;
+        int[] count = groups.count;
+
+        boolean[] nonzero = new boolean[l];
+        for (int p = 0; p < pairs; p++) {
+            int si = start[first[p]];
+            int sj = start[second[p]];
+            int ci = count[first[p]];
+            int cj = count[second[p]];
+            for (int k = 0; k < ci; k++) {
+                if (!nonzero[si + k] && Math.abs(alpha[p][k]) > 0) {
+                    nonzero[si + k] = true;
+                }
+            }
+            for (int k = 0; k < cj; k++) {
+                if (!nonzero[sj + k] && Math.abs(alpha[p][ci + k]) > 0) {
+                    nonzero[sj + k] = true;
+                }
+            }
+        }
+
+        svm_model model = new svm_model();
+        model.param = param;
+        model.nr_class = nrClass;
+        model.label = groups.label.clone();
+        model.rho = new double[pairs];
+        for (int p = 0; p < pairs; p++) {
+            model.rho[p] = binary[p].rho[0];
+        }
+        if (param.probability == 1) {
+            model.probA = new double[pairs];
+            model.probB = new double[pairs];
+            for (int p = 0; p < pairs; p++) {
+                model.probA[p] = binary[p].probA[0];
+                model.probB[p] = binary[p].probB[0];
+            }
+        } else {
+            model.probA = null;
+            model.probB = null;
+        }
+
+        int nnz = 0;
+        int[] nzCount = new int[nrClass];
+        model.nSV = new int[nrClass];
+        for (int i = 0; i < nrClass; i++) {
+            int nSV = 0;
+            for (int j = 0; j < count[i]; j++) {
+                if (nonzero[start[i] + j]) {
+                    ++nSV;
+                    ++nnz;
+                }
+            }
+            model.nSV[i] = nSV;
+            nzCount[i] = nSV;
+        }
+
+        model.l = nnz;
+        model.SV = new svm_node[nnz][];
+        model.sv_indices = new int[nnz];
+        int q = 0;
+        for (int i = 0; i < l; i++) {
+            if (nonzero[i]) {
+                model.SV[q] = x[i];
+                model.sv_indices[q++] = groups.perm[i] + 1;
+            }
+        }
+
+        int[] nzStart = new int[nrClass];
+        for (int i = 1; i < nrClass; i++) {
+            nzStart[i] = nzStart[i - 1] + nzCount[i - 1];
+        }
+        model.sv_coef = new double[nrClass - 1][nnz];
+        for (int p = 0; p < pairs; p++) {
+            // Classifier (i, j): the coefficients of class i are in
+            // sv_coef[j - 1][nzStart[i]...] and those of class j in
+            // sv_coef[i][nzStart[j]...].
+            int i = first[p];
+            int j = second[p];
+            int si = start[i];
+            int sj = start[j];
+            int ci = count[i];
+            int cj = count[j];
+            q = nzStart[i];
+            for (int k = 0; k < ci; k++) {
+                if (nonzero[si + k]) {
+                    model.sv_coef[j - 1][q++] = alpha[p][k];
+                }
+            }
+            q = nzStart[j];
+            for (int k = 0; k < cj; k++) {
+                if (nonzero[sj + k]) {
+                    model.sv_coef[i][q++] = alpha[p][ci + k];
+                }
+            }
+        }
+        return model;
+    }
+
+    /**
+     * The training instances grouped by class as in svm_group_classes.
+     */
+    private static class Groups
+    {
+        final int[] label;
+        final int[] start;
+        final int[] count;
+        final int[] perm;
+
+        Groups(svm_problem prob)
+        {
+            int l = prob.l;
+            int nrClass = 0;
+            int[] labels = new int[16];
+            int[] counts = new int[16];
+            int[] dataLabel = new int[l];
+            for (int i = 0; i < l; i++) {
+                int thisLabel = (int)(prob.y[i]);
+                int j;
+                for (j = 0; j < nrClass; j++) {
+                    if (thisLabel == labels[j]) {
+                        ++counts[j];
+                        break;
+                    }
+                }
+                dataLabel[i] = j;
+                if (j == nrClass) {
+                    if (nrClass == labels.length) {
+                        labels = java.util.Arrays.copyOf(labels, 2*nrClass);
+                        counts = java.util.Arrays.copyOf(counts, 2*nrClass);
+                    }
+                    labels[nrClass] = thisLabel;
+                    counts[nrClass] = 1;
+                    ++nrClass;
+                }
+            }
+            // Two-class sets are left to svm_train, so libsvm's swap of
+            // the labels -1 and +1 is not needed here.
+            label = java.util.Arrays.copyOf(labels, nrClass);
+            count = java.util.Arrays.copyOf(counts, nrClass);
+            start = new int[nrClass];
+            for (int i = 1; i < nrClass; i++) {
+                start[i] = start[i - 1] + count[i - 1];
+            }
+            perm = new int[l];
+            int[] next = start.clone();
+            for (int i = 0; i < l; i++) {
+                perm[next[dataLabel[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Trains the two-class models of the pairs of classes in an interval.
+     */
+    private static class TrainPairAction extends ParallelizedAction
+    {
+        final svm_node[][]  _x;
+        final Groups        _groups;
+        final svm_parameter _param;
+        final double[]      _weightedC;
+        final double        _cacheSize;
+        final int[]         _first;
+        final int[]         _second;
+        final double[][]    _alpha;
+        final svm_model[]   _binary;
+
+        TrainPairAction(svm_node[][]  x,
+                        Groups        groups,
+                        svm_parameter param,
+                        double[]      weightedC,
+                        double        cacheSize,
+                        int[]         first,
+                        int[]         second,
+                        double[][]    alpha,
+                        svm_model[]   binary,
+                        int firstPair, int lastPair)
+        {
+            super(firstPair, lastPair);
+            _x = x;
+            _groups = groups;
+            _param = param;
+            _weightedC = weightedC;
+            _cacheSize = cacheSize;
+            _first = first;
+            _second = second;
+            _alpha = alpha;
+            _binary = binary;
+        }
+
+        @Override
+        protected void compute(int p)
+        {
+            int i = _first[p];
+            int j = _second[p];
+            svm_model model = trainPair(_x, _groups, _param, _weightedC,
+                                        _cacheSize, i, j);
+            // Expand the coefficients of the support vectors to the
+            // coefficient of each instance of the sub-problem.
+            double[] alpha =
+                new double[_groups.count[i] + _groups.count[j]];
+            for (int k = 0; k < model.l; k++) {
+                alpha[model.sv_indices[k] - 1] = model.sv_coef[0][k];
+            }
+            _alpha[p] = alpha;
+            _binary[p] = model;
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new TrainPairAction(_x, _groups, _param, _weightedC,
+                                       _cacheSize, _first, _second,
+                                       _alpha, _binary, first, last);
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.concurrent.atomic.AtomicReference;
 
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
@@ -32,17 +34,26 @@ import se.hb.jcp.ml.IClassifier;
 import se.hb.jcp.ml.ISVMClassifier;
 import se.hb.jcp.ml.IClassProbabilityClassifier;
 import se.hb.jcp.ml.ClassifierBase;
+import se.hb.jcp.ml.LinearSVMModel;
+import se.hb.jcp.ml.SVMDecisionValues;
+import se.hb.jcp.util.CSRDoubleMatrix1D;
 
 public class SVMClassifier
     extends ClassifierBase
     implements ISVMClassifier, //IClassProbabilityClassifier // FIXME: disabled.
                java.io.Serializable
 {
+    // Fixed to the value computed before the decision values were added
+    // so that saved models remain readable.
+    private static final long serialVersionUID = -3319297691560727135L;
+
     private static final SparseDoubleMatrix1D _storageTemplate =
         new SparseDoubleMatrix1D(0);
     protected svm_parameter _parameters;
     protected svm_model _model;
     AtomicReference<double[]> _cachedW = new AtomicReference<double[]>();
+    // The weight vectors of a linear kernel model. Created on demand.
+    private transient volatile LinearSVMModel _linearModel;
 
     public SVMClassifier()
     {
@@ -162,7 +173,8 @@ public class SVMClassifier
         problem.x = tmp_x.rows;
         problem.y = y;
 
-        _model = svm.svm_train(problem, _parameters);
+        _model = ParallelSVMTrainer.svm_train(problem, _parameters);
+        _linearModel = createLinearModel(x.columns());
     }
 
     public IClassifier fitNew(DoubleMatrix2D x, double[] y)
@@ -174,31 +186,31 @@ public class SVMClassifier
 
     public double predict(DoubleMatrix1D instance)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
-        } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
+        LinearSVMModel linear = getLinearModel();
+        if (linear != null) {
+            double[] decValues = new double[linear.getDecisionValueCount()];
+            dot(linear, instance, decValues);
+            return linear.predictValues(decValues);
         }
-
-        return svm.svm_predict(_model, tmp_instance.nodes);
+        return svm.svm_predict(_model, InstanceBuffer.nodesOf(instance));
     }
 
     public double predict(DoubleMatrix1D instance,
                           double[] probabilityEstimates)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
+        double prediction;
+        LinearSVMModel linear = getLinearModel();
+        if (linear != null) {
+            double[] decValues = new double[linear.getDecisionValueCount()];
+            dot(linear, instance, decValues);
+            prediction = linear.predictProbability(decValues,
+                                                   probabilityEstimates);
         } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
+            prediction =
+                svm.svm_predict_probability(_model,
+                                            InstanceBuffer.nodesOf(instance),
+                                            probabilityEstimates);
         }
-
-        double prediction = svm.svm_predict_probability(_model,
-                                                        tmp_instance.nodes,
-                                                        probabilityEstimates);
         // jlibsvm seem to use the reverse order of labels, so reverse
         // the array of probability estimates before returning them.
         // FIXME: Verify for more data sets. Use svm_model.label[c] and
@@ -229,8 +241,24 @@ public class SVMClassifier
         double   b = computeB();
         if (_model.nr_class == 2) {
             double distance = b;
-            for (int i = 0; i < instance.size(); i++) {
-                distance += w[i] * instance.get(i);
+            if (instance instanceof SparseDoubleMatrix1D) {
+                // Only the non-zero attributes contribute.
+                svm_node[] nodes = ((SparseDoubleMatrix1D)instance).nodes;
+                for (int i = 0; i < nodes.length; i++) {
+                    if (nodes[i].index < w.length) {
+                        distance += w[nodes[i].index] * nodes[i].value;
+                    }
+                }
+            } else {
+                IntArrayList indexList = new IntArrayList();
+                DoubleArrayList valueList = new DoubleArrayList();
+                instance.getNonZeros(indexList, valueList);
+                for (int i = 0; i < indexList.size(); i++) {
+                    if (indexList.getQuick(i) < w.length) {
+                        distance += w[indexList.getQuick(i)] *
+                                    valueList.getQuick(i);
+                    }
+                }
             }
             return distance;
         } else {
@@ -238,6 +266,23 @@ public class SVMClassifier
         }
     }
 
+    public void decisionValues(DoubleMatrix1D instance,
+                               double[] decisionValues)
+    {
+        double[] modelValues =
+            new double[SVMDecisionValues.count(_model.nr_class)];
+        LinearSVMModel linear = getLinearModel();
+        if (linear != null) {
+            dot(linear, instance, modelValues);
+            linear.predictValues(modelValues);
+        } else {
+            svm.svm_predict_values(_model, InstanceBuffer.nodesOf(instance),
+                                   modelValues);
+        }
+        SVMDecisionValues.toAscendingOrder(_model.label, modelValues,
+                                           decisionValues);
+    }
+
     public DoubleMatrix1D nativeStorageTemplate()
     {
         return _storageTemplate;
@@ -294,6 +339,89 @@ public class SVMClassifier
         return w;
     }
 
+    /**
+     * Returns the weight vectors of the model or <tt>null</tt> if it does
+     * not have a linear kernel.
+     */
+    private LinearSVMModel getLinearModel()
+    {
+        LinearSVMModel linear = _linearModel;
+        if (linear == null &&
+            _parameters.kernel_type == svm_parameter.LINEAR &&
+            _model != null) {
+            linear = createLinearModel(getAttributeCount());
+            _linearModel = linear;
+        }
+        return linear;
+    }
+
+    /**
+     * Collapses the support vectors of a linear kernel model into one
+     * weight vector per decision function. Returns <tt>null</tt> if the
+     * model does not have a linear kernel or has too many classes and
+     * attributes.
+     */
+    private LinearSVMModel createLinearModel(int columns)
+    {
+        if (_parameters.kernel_type != svm_parameter.LINEAR ||
+            !LinearSVMModel.isFeasible(_model.nr_class, columns)) {
+            return null;
+        }
+        LinearSVMModel linear =
+            new LinearSVMModel(columns, _model.param.svm_type,
+                               _model.nr_class, _model.label, _model.nSV,
+                               _model.rho, _model.probA, _model.probB);
+        double[] coef = new double[_model.sv_coef.length];
+        for (int l = 0; l < _model.l; l++) {
+            svm_node[] sv = _model.SV[l];
+            int[] indices = new int[sv.length];
+            double[] values = new double[sv.length];
+            for (int i = 0; i < sv.length; i++) {
+                indices[i] = sv[i].index;
+                values[i] = sv[i].value;
+            }
+            for (int k = 0; k < coef.length; k++) {
+                coef[k] = _model.sv_coef[k][l];
+            }
+            linear.addSupportVector(l, coef, indices, values, 0, sv.length);
+        }
+        return linear;
+    }
+
+    /**
+     * Computes the dot products of the instance with the weight vectors of
+     * the linear model using only the non-zero attributes.
+     */
+    private static void dot(LinearSVMModel linear,
+                            DoubleMatrix1D instance,
+                            double[]       decValues)
+    {
+        if (instance instanceof SparseDoubleMatrix1D) {
+            svm_node[] nodes = ((SparseDoubleMatrix1D)instance).nodes;
+            for (int p = 0; p < decValues.length; p++) {
+                double[] w = linear.getWeights(p);
+                double sum = 0;
+                for (int i = 0; i < nodes.length; i++) {
+                    if (nodes[i].index < w.length) {
+                        sum += w[nodes[i].index] * nodes[i].value;
+                    }
+                }
+                decValues[p] = sum;
+            }
+        } else if (instance instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)instance;
+            linear.dot(csr.getMatrix().getColumnIndices(),
+                       csr.getMatrix().getValues(),
+                       csr.getStart(), csr.cardinality(), decValues);
+        } else {
+            IntArrayList indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            instance.getNonZeros(indexList, valueList);
+            linear.dot(indexList.elements(), valueList.elements(),
+                       0, indexList.size(), decValues);
+        }
+    }
+
     private void writeObject(ObjectOutputStream oos)
         throws java.io.IOException
     {
@@ -24,6 +24,8 @@ import cern.colt.list.IntArrayList;
 
 import libsvm.svm_node;
 
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+
 /**
  * Class for sparse 1-d matrices (aka <i>vectors</i>) holding
  * <tt>double</tt> elements in the sparse format expected by the Java
@@ -35,6 +37,10 @@ import libsvm.svm_node;
 
 public class SparseDoubleMatrix1D extends DoubleMatrix1D
 {
+    // Fixed to the value computed before the CSR adapters were added so
+    // that saved transductive models remain readable.
+    private static final long serialVersionUID = -8856000414477378261L;
+
     /**
      * Internal array of svm_nodes nodes as the Java version of libsvm expects.
      */
@@ -74,12 +80,7 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
                                 double[] values)
     {
         setUp(columns);
-        nodes = new svm_node[indices.length];
-        for (int i = 0; i < indices.length; i++) {
-            nodes[i] = new svm_node();
-            nodes[i].index = indices[i];
-            nodes[i].value = values[i];
-        }
+        nodes = createNodes(indices, values, 0, indices.length);
     }
 
     /**
@@ -124,16 +125,19 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
             // FIXME: Should this be a deep copy?
             this.nodes = ((SparseDoubleMatrix1D)other).nodes;
             return this;
+        } else if (other instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)other;
+            nodes = createNodes(csr.getMatrix().getColumnIndices(),
+                                csr.getMatrix().getValues(),
+                                csr.getStart(),
+                                csr.getEnd() - csr.getStart());
+            return this;
         } else {
             IntArrayList indexList = new IntArrayList();
             DoubleArrayList valueList = new DoubleArrayList();
             other.getNonZeros(indexList, valueList);
-            nodes = new svm_node[indexList.size()];
-            for (int i = 0; i < indexList.size(); i++) {
-                nodes[i] = new svm_node();
-                nodes[i].index = indexList.get(i);
-                nodes[i].value = valueList.get(i);
-            }
+            nodes = createNodes(indexList.elements(), valueList.elements(),
+                                0, indexList.size());
             return this;
         }
     }
@@ -245,4 +249,22 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
         // FIXME: If needed.
         throw new UnsupportedOperationException("Not implemented");
     }
+
+    /**
+     * Creates the svm_node nodes for length elements of the index and value
+     * arrays starting at offset.
+     */
+    static svm_node[] createNodes(int[]    indices,
+                                  double[] values,
+                                  int      offset,
+                                  int      length)
+    {
+        svm_node[] nodes = new svm_node[length];
+        for (int i = 0; i < length; i++) {
+            nodes[i] = new svm_node();
+            nodes[i].index = indices[offset + i];
+            nodes[i].value = values[offset + i];
+        }
+        return nodes;
+    }
 }
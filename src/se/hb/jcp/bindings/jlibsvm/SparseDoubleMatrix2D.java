@@ -17,11 +17,15 @@
 // The public interface is based on cern.colt.matrix.DoubleMatrix2D.
 package se.hb.jcp.bindings.jlibsvm;
 
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import libsvm.svm_node;
 
+import se.hb.jcp.util.CSRDoubleMatrix2D;
+
 /**
  * Class for sparse 2-d matrices holding <tt>double</tt> elements in
  * the sparse format expected by the Java version of libsvm. See the
@@ -33,6 +37,10 @@ import libsvm.svm_node;
 
 public class SparseDoubleMatrix2D extends DoubleMatrix2D
 {
+    // Fixed to the value computed before the CSR adapters were added so
+    // that saved transductive models remain readable.
+    private static final long serialVersionUID = 2931669743076245596L;
+
     /**
      * Internal array of array of svm_node nodes as the Java version of
      * libsvm expects.
@@ -58,7 +66,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
     {
         setUp(rows, columns);
         this.rows = new svm_node[rows][];
-        for (int r = 0; r < rows; r++) {
+        for (int r = 0; r < rows(); r++) {
             this.rows[r] = new svm_node[0];
         }
     }
@@ -122,6 +130,47 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    /**
+     * Replaces all cell values of the receiver with the values of another
+     * matrix. Both matrices must have the same number of rows and columns.
+     * The rows are converted one at a time, directly from the arrays if the
+     * other matrix is a <tt>CSRDoubleMatrix2D</tt>.
+     *
+     * @param other the source matrix to copy from (may be identical to the receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException if <tt>columns() != other.columns() ||
+     *         rows() != other.rows()</tt>
+     */
+    public DoubleMatrix2D assign(DoubleMatrix2D other)
+    {
+        if (other == this) {
+            return this;
+        }
+        checkShape(other);
+        IntArrayList indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        for (int r = 0; r < rows(); r++) {
+            svm_node[] nodes;
+            if (other instanceof CSRDoubleMatrix2D) {
+                CSRDoubleMatrix2D csr = (CSRDoubleMatrix2D)other;
+                nodes = SparseDoubleMatrix1D.createNodes
+                    (csr.getColumnIndices(), csr.getValues(),
+                     csr.getRowStart(r),
+                     csr.getRowEnd(r) - csr.getRowStart(r));
+            } else {
+                other.viewRow(r).getNonZeros(indexList, valueList);
+                nodes = SparseDoubleMatrix1D.createNodes
+                    (indexList.elements(), valueList.elements(),
+                     0, indexList.size());
+            }
+            this.rows[r] = nodes;
+            if (_rowViews[r] != null) {
+                _rowViews[r].nodes = nodes;
+            }
+        }
+        return this;
+    }
+
     /**
      * Returns the matrix cell value at coordinate <tt>[row,column]</tt>.
      *
@@ -184,7 +233,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
     {
         checkRow(row);
         if (_rowViews[row] == null) {
-            _rowViews[row] = new SparseDoubleMatrix1D(columns, rows[row]);
+            _rowViews[row] = new RowView(this, row);
         }
         return _rowViews[row];
     }
@@ -235,4 +284,34 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
         super.setUp(rows, columns);
         _rowViews = new SparseDoubleMatrix1D[rows];
     }
+
+    /**
+     * A view of a row of a matrix. Changes that replace the nodes of the
+     * view, e.g. <tt>assign</tt>, also replace the row in the matrix.
+     */
+    private static class RowView extends SparseDoubleMatrix1D
+    {
+        private final SparseDoubleMatrix2D _matrix;
+        private final int _row;
+
+        RowView(SparseDoubleMatrix2D matrix, int row)
+        {
+            super(matrix.columns, matrix.rows[row]);
+            _matrix = matrix;
+            _row = row;
+        }
+
+        public DoubleMatrix1D assign(DoubleMatrix1D other)
+        {
+            super.assign(other);
+            _matrix.rows[_row] = nodes;
+            return this;
+        }
+
+        public void setQuick(int index, double value)
+        {
+            super.setQuick(index, value);
+            _matrix.rows[_row] = nodes;
+        }
+    }
 }
@@ -0,0 +1,146 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.libsvm;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounting and reclamation of the native storage of the libsvm binding.
+ *
+ * The native storage of each <tt>SparseDoubleMatrix2D</tt> and stand-alone
+ * <tt>SparseDoubleMatrix1D</tt> is registered here as a resource owned by
+ * the Java object. The storage is released when the owner is closed or,
+ * failing that, by a <tt>java.lang.ref.Cleaner</tt> once the owner has
+ * become unreachable.
+ *
+ * The native sizes are estimated from the number of stored elements, since
+ * the garbage collector does not see the native heap. Rows shared between
+ * matrices are counted once for each matrix.
+ *
+ * @author agent(at)local
+ */
+public final class NativeMemory
+{
+    /**
+     * The estimated size of a native pointer.
+     */
+    static final long POINTER_SIZE = 8;
+    /**
+     * The estimated size of a native svm_node.
+     */
+    static final long NODE_SIZE = 16;
+
+    private static final AtomicLong    _bytesInUse   = new AtomicLong();
+    private static final AtomicInteger _objectsInUse = new AtomicInteger();
+    private static final Cleaner       _cleaner      = Cleaner.create();
+
+    private NativeMemory()
+    {
+    }
+
+    /**
+     * Returns the estimated number of bytes of native storage held by the
+     * unreleased libsvm matrices and vectors.
+     *
+     * @return the estimated number of native bytes in use.
+     */
+    public static long getBytesInUse()
+    {
+        return _bytesInUse.get();
+    }
+
+    /**
+     * Returns the number of unreleased libsvm matrices and vectors owning
+     * native storage.
+     *
+     * @return the number of native objects in use.
+     */
+    public static int getObjectsInUse()
+    {
+        return _objectsInUse.get();
+    }
+
+    /**
+     * Returns the estimated native size of a row or vector.
+     *
+     * @param nonZeros  the number of stored elements.
+     * @return the estimated size in bytes.
+     */
+    static long rowBytes(long nonZeros)
+    {
+        // The row pointer, the nodes and the terminating node.
+        return POINTER_SIZE + (nonZeros + 1) * NODE_SIZE;
+    }
+
+    /**
+     * Native storage owned by a Java object. Subclasses must not refer to
+     * the owner, since that would keep it reachable.
+     */
+    abstract static class Resource implements Runnable
+    {
+        private long                    _bytes;
+        private boolean                 _released = false;
+        private final Cleaner.Cleanable _cleanable;
+
+        Resource(Object owner, long bytes)
+        {
+            _bytes = bytes;
+            _bytesInUse.addAndGet(bytes);
+            _objectsInUse.incrementAndGet();
+            _cleanable = _cleaner.register(owner, this);
+        }
+
+        /**
+         * Adjusts the estimated size of the storage.
+         */
+        final synchronized void resize(long delta)
+        {
+            if (!_released) {
+                _bytes += delta;
+                _bytesInUse.addAndGet(delta);
+            }
+        }
+
+        /**
+         * Releases the native storage. Only the first call has an effect.
+         */
+        final void release()
+        {
+            _cleanable.clean();
+        }
+
+        /**
+         * Called by the cleaner, at most once.
+         */
+        public final void run()
+        {
+            synchronized (this) {
+                _released = true;
+                _bytesInUse.addAndGet(-_bytes);
+            }
+            _objectsInUse.decrementAndGet();
+            free();
+        }
+
+        /**
+         * Frees the native storage.
+         */
+        abstract void free();
+    }
+}
@@ -16,6 +16,11 @@
 //
 package se.hb.jcp.bindings.libsvm;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
@@ -26,6 +31,10 @@ import se.hb.jcp.ml.IClassifier;
 import se.hb.jcp.ml.ISVMClassifier;
 import se.hb.jcp.ml.IClassProbabilityClassifier;
 import se.hb.jcp.ml.ClassifierBase;
+import se.hb.jcp.ml.LinearSVMModel;
+import se.hb.jcp.ml.PreparedInstance;
+import se.hb.jcp.ml.SVMDecisionValues;
+import se.hb.jcp.util.CSRDoubleMatrix1D;
 
 public class SVMClassifier
     extends ClassifierBase
@@ -33,10 +42,42 @@ public class SVMClassifier
                IClassProbabilityClassifier,
                java.io.Serializable
 {
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = -3004583736567416099L;
+
     private static final SparseDoubleMatrix1D _storageTemplate =
         new SparseDoubleMatrix1D(0);
+    // The storage format of linear kernel classifiers, which predict all
+    // instances with the weight vectors.
+    private static final CSRDoubleMatrix1D _linearStorageTemplate =
+        new CSRDoubleMatrix1D(0);
+    // Reusable native vectors for converting instances in other formats.
+    private static final ThreadLocal<PreparedInstance> _conversionBuffer =
+        new ThreadLocal<PreparedInstance>() {
+            @Override
+            protected PreparedInstance initialValue()
+            {
+                return new PreparedInstance(_storageTemplate);
+            }
+        };
+    // Reusable node arrays, element lists and decision value buffers.
+    private static final ThreadLocal<DecisionValueBuffer>
+        _decisionValueBuffer =
+            new ThreadLocal<DecisionValueBuffer>() {
+                @Override
+                protected DecisionValueBuffer initialValue()
+                {
+                    return new DecisionValueBuffer();
+                }
+            };
+
     protected svm_parameter _parameters;
     protected svm_model _model;
+    // The weight vectors of a linear kernel model, used for all instances
+    // when present. Created from the training instances by fit and from
+    // the saved model on deserialization, see createLinearModel.
+    private transient LinearSVMModel _linearModel;
 
     public SVMClassifier()
     {
@@ -144,15 +185,21 @@ public class SVMClassifier
 
     protected void internalFit(DoubleMatrix2D x, double[] y)
     {
-        SparseDoubleMatrix2D tmp_x;
         if (x instanceof se.hb.jcp.bindings.libsvm.SparseDoubleMatrix2D) {
-            tmp_x = (SparseDoubleMatrix2D)x;
+            _model = svm.svm_train(_parameters, (SparseDoubleMatrix2D)x, y);
+            _linearModel = createLinearModel(x);
         } else {
-            tmp_x = new SparseDoubleMatrix2D(x.rows(), x.columns());
-            tmp_x.assign(x);
+            SparseDoubleMatrix2D tmp_x =
+                new SparseDoubleMatrix2D(x.rows(), x.columns());
+            try {
+                tmp_x.assign(x);
+                // The model keeps its support vectors alive on the C side.
+                _model = svm.svm_train(_parameters, tmp_x, y);
+                _linearModel = createLinearModel(tmp_x);
+            } finally {
+                tmp_x.close();
+            }
         }
-
-        _model = svm.svm_train(_parameters, tmp_x, y);
     }
 
     public IClassifier fitNew(DoubleMatrix2D x, double[] y)
@@ -164,43 +211,24 @@ public class SVMClassifier
 
     public double predict(DoubleMatrix1D instance)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof
-                se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
-        } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
+        LinearSVMModel linear = _linearModel;
+        if (linear != null) {
+            double[] decValues = dot(linear, instance);
+            return linear.predictValues(decValues);
         }
-
+        SparseDoubleMatrix1D tmp_instance = toNative(instance);
         return svm.svm_predict(_model, tmp_instance);
     }
 
     public double predict(DoubleMatrix1D instance,
                           double[] probabilityEstimates)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof
-                se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
-        } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
-        }
-
-        double prediction = svm.svm_predict_probability(_model,
-                                                        tmp_instance,
-                                                        probabilityEstimates);
+        double prediction = predictProbability(instance,
+                                               probabilityEstimates);
         // libsvm seems to use the opposite order of labels, so reverse
         // the array of probability estimates before returning them.
         // FIXME: Verify for more data sets.
-        int i = 0;
-        int j = probabilityEstimates.length-1;
-        for (; i < j; i++, j--) {
-            double tmp = probabilityEstimates[i];
-            probabilityEstimates[i] = probabilityEstimates[j];
-            probabilityEstimates[j] = tmp;
-        }
+        reverse(probabilityEstimates, 0, probabilityEstimates.length);
 
         return prediction;
     }
@@ -213,19 +241,243 @@ public class SVMClassifier
      */
     public double distanceFromSeparatingPlane(DoubleMatrix1D instance)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof
-                se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
+        LinearSVMModel linear = _linearModel;
+        if (linear != null && linear.getDecisionValueCount() == 1) {
+            // As the jlibsvm binding, the distance is signed so that it is
+            // positive on the side of the label 1.0.
+            double[] decValues = dot(linear, instance);
+            int[] labels = _decisionValueBuffer.get().labels(2);
+            svm.svm_get_labels(_model, labels);
+            double sign = labels[0] == -1 ? -1.0 : 1.0;
+            return sign * (decValues[0] - linear.getRho(0));
+        }
+        SparseDoubleMatrix1D tmp_instance = toNative(instance);
+        return svm.svm_distance_from_separating_plane(_model,
+                                                      tmp_instance);
+    }
+
+    /**
+     * Computes the one-vs-one decision values of the instance in ascending
+     * label order. Without the weight vectors of a linear kernel the
+     * native code only computes decision values for instances passed as
+     * an array of nodes. The arrays and buffers of the current thread are
+     * reused for that, but reading the elements of a native instance
+     * still costs one JNI call per attribute.
+     *
+     * @param instance        the instance.
+     * @param decisionValues  a <tt>double[]</tt> array to store the decision values in.
+     */
+    public void decisionValues(DoubleMatrix1D instance,
+                               double[] decisionValues)
+    {
+        int nrClass = svm.svm_get_nr_class(_model);
+        DecisionValueBuffer buffer = _decisionValueBuffer.get();
+        LinearSVMModel linear = _linearModel;
+        double[] modelValues;
+        if (linear != null) {
+            modelValues = dot(linear, instance);
+            linear.predictValues(modelValues);
         } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
+            modelValues =
+                buffer.modelValues(SVMDecisionValues.count(nrClass));
+            svm.svm_predict_values(_model, buffer.nodes(instance),
+                                   modelValues);
         }
-        return svm.svm_distance_from_separating_plane(_model, tmp_instance);
+        int[] labels = buffer.labels(nrClass);
+        svm.svm_get_labels(_model, labels);
+        SVMDecisionValues.toAscendingOrder(labels, modelValues,
+                                           decisionValues);
+    }
+
+    /**
+     * Returns a pure Java predictor for the trained model, see
+     * {@link SVMPredictor}. Like libsvm the predictor uses the opposite
+     * order of the labels for the probability estimates.
+     *
+     * @return a pure Java predictor for the trained model.
+     * @throws IOException if the model could not be extracted.
+     */
+    public SVMPredictor createPredictor()
+        throws IOException
+    {
+        return SVMPredictor.load(_model);
     }
 
+    /**
+     * Returns the storage format of the instances. Linear kernel
+     * classifiers predict all instances with the weight vectors and use
+     * compressed sparse rows, which are read without JNI calls, rather
+     * than native vectors.
+     *
+     * @return an instance of the preferred storage format.
+     */
     public DoubleMatrix1D nativeStorageTemplate()
     {
+        if (_parameters.kernel_type == svm_parameter.LINEAR) {
+            return _linearStorageTemplate;
+        }
         return _storageTemplate;
     }
+
+    /**
+     * Predicts the target and the probabilities, in libsvm's label order,
+     * of the instance.
+     */
+    private double predictProbability(DoubleMatrix1D instance,
+                                      double[]       probabilityEstimates)
+    {
+        LinearSVMModel linear = _linearModel;
+        if (linear != null) {
+            double[] decValues = dot(linear, instance);
+            return linear.predictProbability(decValues, probabilityEstimates);
+        }
+        SparseDoubleMatrix1D tmp_instance = toNative(instance);
+        return svm.svm_predict_probability(_model,
+                                           tmp_instance,
+                                           probabilityEstimates);
+    }
+
+    /**
+     * Returns the weight vectors of a linear kernel model, see
+     * {@link LinearSVMModel}, or <tt>null</tt> if the model does not have
+     * a linear kernel, the weight vectors would be too large or the model
+     * could not be extracted. The weight vectors are then used for the
+     * instances in every storage format, so that the predictions do not
+     * depend on it.
+     *
+     * The coefficients are extracted through a saved model file, see
+     * {@link SVMPredictor#load(svm_model)}. The support vector values
+     * are taken from the training instances x if given. Otherwise they
+     * are the rounded values of the saved model, which is also what a
+     * deserialized native model uses.
+     */
+    private LinearSVMModel createLinearModel(DoubleMatrix2D x)
+    {
+        int columns = x != null ? x.columns() : getAttributeCount();
+        if (_parameters.kernel_type != svm_parameter.LINEAR ||
+            !LinearSVMModel.isFeasible(svm.svm_get_nr_class(_model),
+                                       columns)) {
+            return null;
+        }
+        try {
+            SVMPredictor predictor = createPredictor();
+            if (x == null) {
+                return predictor.createLinearModel(columns);
+            }
+            int[] svIndices = new int[svm.svm_get_nr_sv(_model)];
+            svm.svm_get_sv_indices(_model, svIndices);
+            return predictor.createLinearModel(x, svIndices);
+        } catch (IOException e) {
+            System.err.println("se.hb.jcp.bindings.libsvm.SVMClassifier: " +
+                               "Using the native code as the weight " +
+                               "vectors could not be extracted: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Computes the dot products of the instance with the weight vectors of
+     * the linear model using only the non-zero attributes. The elements
+     * and the returned decision values are held in the buffers of the
+     * current thread.
+     */
+    private static double[] dot(LinearSVMModel linear,
+                                DoubleMatrix1D instance)
+    {
+        DecisionValueBuffer buffer = _decisionValueBuffer.get();
+        double[] decValues =
+            buffer.modelValues(linear.getDecisionValueCount());
+        if (instance instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)instance;
+            linear.dot(csr.getMatrix().getColumnIndices(),
+                       csr.getMatrix().getValues(),
+                       csr.getStart(), csr.cardinality(), decValues);
+        } else {
+            instance.getNonZeros(buffer.indices, buffer.values);
+            linear.dot(buffer.indices.elements(), buffer.values.elements(),
+                       0, buffer.indices.size(), decValues);
+        }
+        return decValues;
+    }
+
+    /**
+     * Returns the instance in the native format, converting it into the
+     * conversion buffer of the current thread if needed.
+     */
+    private static SparseDoubleMatrix1D toNative(DoubleMatrix1D instance)
+    {
+        return (SparseDoubleMatrix1D)_conversionBuffer.get().prepare(instance);
+    }
+
+    private void readObject(ObjectInputStream ois)
+        throws ClassNotFoundException, IOException
+    {
+        ois.defaultReadObject();
+        if (_model != null) {
+            _linearModel = createLinearModel(null);
+        }
+    }
+
+    /**
+     * Reverses the order of length elements of values starting at offset.
+     */
+    private static void reverse(double[] values, int offset, int length)
+    {
+        int i = offset;
+        int j = offset + length - 1;
+        for (; i < j; i++, j--) {
+            double tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * The node array and decision value buffers of a thread. The node
+     * objects are kept between instances and only the array is replaced
+     * when the number of non-zero attributes changes.
+     */
+    private static final class DecisionValueBuffer
+    {
+        final IntArrayList    indices = new IntArrayList();
+        final DoubleArrayList values  = new DoubleArrayList();
+        svm_node[] nodes       = new svm_node[0];
+        double[]   modelValues = new double[0];
+        int[]      labels      = new int[0];
+
+        svm_node[] nodes(DoubleMatrix1D instance)
+        {
+            instance.getNonZeros(indices, values);
+            int size = indices.size();
+            if (nodes.length != size) {
+                svm_node[] old = nodes;
+                nodes = new svm_node[size];
+                System.arraycopy(old, 0, nodes, 0, Math.min(old.length, size));
+                for (int i = old.length; i < size; i++) {
+                    nodes[i] = new svm_node();
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                nodes[i].index = indices.getQuick(i);
+                nodes[i].value = values.getQuick(i);
+            }
+            return nodes;
+        }
+
+        double[] modelValues(int count)
+        {
+            if (modelValues.length != count) {
+                modelValues = new double[count];
+            }
+            return modelValues;
+        }
+
+        int[] labels(int nrClass)
+        {
+            if (labels.length != nrClass) {
+                labels = new int[nrClass];
+            }
+            return labels;
+        }
+    }
 }
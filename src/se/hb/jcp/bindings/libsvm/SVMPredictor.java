@@ -0,0 +1,760 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// The prediction algorithms follow libsvm 3.18 by Chih-Chung Chang and
+// Chih-Jen Lin.
+package se.hb.jcp.bindings.libsvm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.ml.LinearSVMModel;
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+
+/**
+ * Pure Java predictor for trained libsvm models.
+ *
+ * The support vectors, coefficients, rho and probability (Platt) parameters
+ * of a model are held in flat primitive arrays, the support vectors in
+ * compressed sparse row form. The predictions are computed in the same way
+ * and in the same order as by libsvm so the results are identical to those
+ * of the native code for a model read from the same libsvm model file.
+ * The kernel value of each support vector is computed once per instance and
+ * shared between all one-vs-one class pairs.
+ *
+ * The indices in the model are the column indices of the instances, as for
+ * the native matrices of this binding. Like libsvm the probability
+ * estimates are in the order of the labels of the model, see
+ * {@link #getLabels()}.
+ *
+ * An <tt>SVMPredictor</tt> is immutable and thread-safe.
+ *
+ * @author agent(at)local
+ */
+public final class SVMPredictor
+    implements java.io.Serializable
+{
+    private static final String[] SVM_TYPES =
+    {
+        "c_svc", "nu_svc", "one_class", "epsilon_svr", "nu_svr"
+    };
+    private static final String[] KERNEL_TYPES =
+    {
+        "linear", "polynomial", "rbf", "sigmoid", "precomputed"
+    };
+
+    private int      _svmType;
+    private int      _kernelType;
+    private int      _degree;
+    private double   _gamma;
+    private double   _coef0;
+    private int      _nrClass;
+    // The number of support vectors.
+    private int      _l;
+    private int[]    _label;
+    private int[]    _nSV;
+    // The first support vector of each class.
+    private int[]    _start;
+    private double[] _rho;
+    private double[] _probA;
+    private double[] _probB;
+    // The nrClass - 1 coefficient vectors of length l each.
+    private double[] _svCoef;
+    // The support vectors in compressed sparse row form.
+    private int[]    _svPointers;
+    private int[]    _svIndices;
+    private double[] _svValues;
+
+    private SVMPredictor()
+    {
+    }
+
+    /**
+     * Extracts a trained native libsvm model into a pure Java predictor.
+     * The model is transferred through a temporary libsvm model file, so
+     * the parameters have the precision of a saved model: the
+     * coefficients, rho and the probability parameters are written with
+     * <tt>%.17g</tt> and are exact, but the support vector values are
+     * written with <tt>%.8g</tt> and are rounded to 8 significant digits.
+     * The predictions of the extracted predictor can therefore differ
+     * from those of the in-memory native model by about <tt>1e-8</tt>
+     * relative to the decision values; they are identical to those of
+     * the native model loaded from the same file.
+     *
+     * @param model  the trained native model.
+     * @return a predictor for the model.
+     * @throws IOException if the model could not be transferred.
+     */
+    public static SVMPredictor load(svm_model model)
+        throws IOException
+    {
+        File file = File.createTempFile("jcp", ".libsvm");
+        try {
+            svm.svm_save_model(file.getPath(), model);
+            return read(file.getPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Reads a libsvm model file into a pure Java predictor. No native code
+     * is used.
+     *
+     * @param fileName  the name of the libsvm model file.
+     * @return a predictor for the model.
+     * @throws IOException if reading fails or the file is malformed.
+     */
+    public static SVMPredictor read(String fileName)
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            return read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads a model in the libsvm model file format into a pure Java
+     * predictor. No native code is used.
+     *
+     * @param reader  the reader to read the model from.
+     * @return a predictor for the model.
+     * @throws IOException if reading fails or the model is malformed.
+     */
+    public static SVMPredictor read(BufferedReader reader)
+        throws IOException
+    {
+        SVMPredictor p = new SVMPredictor();
+        p.readHeader(reader);
+        int m = p._nrClass - 1;
+        p._svCoef = new double[m * p._l];
+        p._svPointers = new int[p._l + 1];
+        IntArrayList indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        for (int i = 0; i < p._l; i++) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Truncated libsvm model.");
+            }
+            StringTokenizer st = new StringTokenizer(line, " \t\n\r\f:");
+            for (int k = 0; k < m; k++) {
+                p._svCoef[k * p._l + i] = Double.parseDouble(st.nextToken());
+            }
+            while (st.hasMoreTokens()) {
+                indexList.add(Integer.parseInt(st.nextToken()));
+                valueList.add(Double.parseDouble(st.nextToken()));
+            }
+            p._svPointers[i + 1] = indexList.size();
+        }
+        indexList.trimToSize();
+        valueList.trimToSize();
+        p._svIndices = indexList.elements();
+        p._svValues = valueList.elements();
+        if (p._kernelType == svm_parameter.PRECOMPUTED) {
+            // FIXME: If needed.
+            throw new UnsupportedOperationException("Not implemented");
+        }
+        p._start = new int[p._nrClass];
+        if (p._nSV != null) {
+            for (int i = 1; i < p._nrClass; i++) {
+                p._start[i] = p._start[i - 1] + p._nSV[i - 1];
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Returns the libsvm type of the model, see {@link svm_parameter}.
+     *
+     * @return the type of the model.
+     */
+    public int getSVMType()
+    {
+        return _svmType;
+    }
+
+    /**
+     * Returns the libsvm kernel type of the model, see
+     * {@link svm_parameter}.
+     *
+     * @return the kernel type of the model.
+     */
+    public int getKernelType()
+    {
+        return _kernelType;
+    }
+
+    /**
+     * Returns the number of classes of the model.
+     *
+     * @return the number of classes.
+     */
+    public int getNrClass()
+    {
+        return _nrClass;
+    }
+
+    /**
+     * Returns the labels of the model in libsvm's order or <tt>null</tt>
+     * for one-class and regression models.
+     *
+     * @return the labels of the model.
+     */
+    public int[] getLabels()
+    {
+        return _label == null ? null : _label.clone();
+    }
+
+    /**
+     * Returns the number of decision values of a prediction.
+     *
+     * @return the number of decision values.
+     */
+    public int getDecisionValueCount()
+    {
+        return isClassification() ? _nrClass * (_nrClass - 1) / 2 : 1;
+    }
+
+    /**
+     * Returns whether the model has the parameters for probability
+     * estimates.
+     *
+     * @return <tt>true</tt> if the model can estimate class probabilities.
+     */
+    public boolean hasProbabilityModel()
+    {
+        return isClassification() && _probA != null && _probB != null;
+    }
+
+    /**
+     * Collapses the support vectors of a linear kernel model into one
+     * weight vector per decision function, see {@link LinearSVMModel}.
+     *
+     * @param columns  the number of attributes.
+     * @return the linear model or <tt>null</tt> if the model does not have a linear kernel or the weight vectors would be too large.
+     */
+    public LinearSVMModel createLinearModel(int columns)
+    {
+        if (_kernelType != svm_parameter.LINEAR ||
+            !LinearSVMModel.isFeasible(_nrClass, columns)) {
+            return null;
+        }
+        LinearSVMModel linear =
+            new LinearSVMModel(columns, _svmType, _nrClass, _label, _nSV,
+                               _rho, _probA, _probB);
+        double[] coef = new double[Math.max(1, _nrClass - 1)];
+        for (int i = 0; i < _l; i++) {
+            for (int k = 0; k < coef.length; k++) {
+                coef[k] = _svCoef[k * _l + i];
+            }
+            linear.addSupportVector(i, coef, _svIndices, _svValues,
+                                    _svPointers[i],
+                                    _svPointers[i + 1] - _svPointers[i]);
+        }
+        return linear;
+    }
+
+    /**
+     * Collapses the support vectors of a linear kernel model into one
+     * weight vector per decision function like
+     * {@link #createLinearModel(int)}, but takes the support vector values
+     * from the training instances instead of the rounded values of the
+     * model file, so that the weights are those of the in-memory model.
+     *
+     * @param x          the training instances of the model.
+     * @param svIndices  the 1-based indices of the support vectors among the training instances, see <tt>svm.svm_get_sv_indices</tt>.
+     * @return the linear model or <tt>null</tt> if the model does not have a linear kernel or the weight vectors would be too large.
+     */
+    public LinearSVMModel createLinearModel(DoubleMatrix2D x, int[] svIndices)
+    {
+        if (_kernelType != svm_parameter.LINEAR ||
+            !LinearSVMModel.isFeasible(_nrClass, x.columns())) {
+            return null;
+        }
+        if (svIndices.length != _l) {
+            throw new IllegalArgumentException
+                          ("The model has " + _l + " support vectors, not " +
+                           svIndices.length + ".");
+        }
+        LinearSVMModel linear =
+            new LinearSVMModel(x.columns(), _svmType, _nrClass, _label, _nSV,
+                               _rho, _probA, _probB);
+        double[] coef = new double[Math.max(1, _nrClass - 1)];
+        IntArrayList indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        for (int i = 0; i < _l; i++) {
+            for (int k = 0; k < coef.length; k++) {
+                coef[k] = _svCoef[k * _l + i];
+            }
+            x.viewRow(svIndices[i] - 1).getNonZeros(indexList, valueList);
+            linear.addSupportVector(i, coef,
+                                    indexList.elements(),
+                                    valueList.elements(),
+                                    0, indexList.size());
+        }
+        return linear;
+    }
+
+    /**
+     * Predicts the target of the instance x.
+     *
+     * @param x  the instance.
+     * @return the predicted target.
+     */
+    public double predict(DoubleMatrix1D x)
+    {
+        return predictValues(x, new double[getDecisionValueCount()]);
+    }
+
+    /**
+     * Predicts the target of the instance x as <tt>svm_predict_values</tt>.
+     *
+     * @param x          the instance.
+     * @param decValues  a <tt>double[]</tt> array for the decision values, see {@link #getDecisionValueCount()}.
+     * @return the predicted target.
+     */
+    public double predictValues(DoubleMatrix1D x, double[] decValues)
+    {
+        if (x instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)x;
+            int start = csr.getStart();
+            return predictValues(csr.getMatrix().getColumnIndices(),
+                                 csr.getMatrix().getValues(),
+                                 start, csr.getEnd() - start, decValues);
+        } else {
+            IntArrayList indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            x.getNonZeros(indexList, valueList);
+            return predictValues(indexList.elements(), valueList.elements(),
+                                 0, indexList.size(), decValues);
+        }
+    }
+
+    /**
+     * Predicts the target and the class probabilities of the instance x as
+     * <tt>svm_predict_probability</tt>. If the model lacks probability
+     * parameters the probabilities are left unchanged.
+     *
+     * @param x              the instance.
+     * @param probEstimates  a <tt>double[]</tt> array for the class probabilities in the order of {@link #getLabels()}.
+     * @return the predicted target.
+     */
+    public double predictProbability(DoubleMatrix1D x, double[] probEstimates)
+    {
+        if (x instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D csr = (CSRDoubleMatrix1D)x;
+            int start = csr.getStart();
+            return predictProbability(csr.getMatrix().getColumnIndices(),
+                                      csr.getMatrix().getValues(),
+                                      start, csr.getEnd() - start,
+                                      probEstimates);
+        } else {
+            IntArrayList indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            x.getNonZeros(indexList, valueList);
+            return predictProbability(indexList.elements(),
+                                      valueList.elements(),
+                                      0, indexList.size(), probEstimates);
+        }
+    }
+
+    /**
+     * Predicts the target of a sparse instance as
+     * <tt>svm_predict_values</tt>.
+     *
+     * @param indices    the strictly increasing indices of the instance.
+     * @param values     the values of the instance.
+     * @param offset     the position of the first element of the instance.
+     * @param length     the number of elements of the instance.
+     * @param decValues  a <tt>double[]</tt> array for the decision values, see {@link #getDecisionValueCount()}.
+     * @return the predicted target.
+     */
+    public double predictValues(int[] indices, double[] values,
+                                int offset, int length,
+                                double[] decValues)
+    {
+        if (!isClassification()) {
+            double sum = 0;
+            for (int i = 0; i < _l; i++) {
+                sum += _svCoef[i] * kernel(indices, values, offset, length, i);
+            }
+            sum -= _rho[0];
+            decValues[0] = sum;
+
+            if (_svmType == svm_parameter.ONE_CLASS) {
+                return (sum > 0) ? 1 : -1;
+            } else {
+                return sum;
+            }
+        }
+
+        // Each kernel value is shared by all class pairs.
+        double[] kvalue = new double[_l];
+        for (int i = 0; i < _l; i++) {
+            kvalue[i] = kernel(indices, values, offset, length, i);
+        }
+
+        int[] vote = new int[_nrClass];
+        int p = 0;
+        for (int i = 0; i < _nrClass; i++) {
+            for (int j = i + 1; j < _nrClass; j++) {
+                double sum = 0;
+                int si = _start[i];
+                int sj = _start[j];
+                int ci = _nSV[i];
+                int cj = _nSV[j];
+
+                int coef1 = (j - 1) * _l;
+                int coef2 = i * _l;
+                for (int k = 0; k < ci; k++) {
+                    sum += _svCoef[coef1 + si + k] * kvalue[si + k];
+                }
+                for (int k = 0; k < cj; k++) {
+                    sum += _svCoef[coef2 + sj + k] * kvalue[sj + k];
+                }
+                sum -= _rho[p];
+                decValues[p] = sum;
+
+                if (decValues[p] > 0) {
+                    ++vote[i];
+                } else {
+                    ++vote[j];
+                }
+                p++;
+            }
+        }
+
+        int voteMaxIdx = 0;
+        for (int i = 1; i < _nrClass; i++) {
+            if (vote[i] > vote[voteMaxIdx]) {
+                voteMaxIdx = i;
+            }
+        }
+        return _label[voteMaxIdx];
+    }
+
+    /**
+     * Predicts the target and the class probabilities of a sparse instance
+     * as <tt>svm_predict_probability</tt>. If the model lacks probability
+     * parameters the probabilities are left unchanged.
+     *
+     * @param indices        the strictly increasing indices of the instance.
+     * @param values         the values of the instance.
+     * @param offset         the position of the first element of the instance.
+     * @param length         the number of elements of the instance.
+     * @param probEstimates  a <tt>double[]</tt> array for the class probabilities in the order of {@link #getLabels()}.
+     * @return the predicted target.
+     */
+    public double predictProbability(int[] indices, double[] values,
+                                     int offset, int length,
+                                     double[] probEstimates)
+    {
+        double[] decValues = new double[getDecisionValueCount()];
+        if (!hasProbabilityModel()) {
+            return predictValues(indices, values, offset, length, decValues);
+        }
+        predictValues(indices, values, offset, length, decValues);
+
+        double minProb = 1e-7;
+        double[][] pairwiseProb = new double[_nrClass][_nrClass];
+        int k = 0;
+        for (int i = 0; i < _nrClass; i++) {
+            for (int j = i + 1; j < _nrClass; j++) {
+                pairwiseProb[i][j] =
+                    Math.min(Math.max(sigmoidPredict(decValues[k],
+                                                     _probA[k], _probB[k]),
+                                      minProb),
+                             1 - minProb);
+                pairwiseProb[j][i] = 1 - pairwiseProb[i][j];
+                k++;
+            }
+        }
+        multiclassProbability(_nrClass, pairwiseProb, probEstimates);
+
+        int probMaxIdx = 0;
+        for (int i = 1; i < _nrClass; i++) {
+            if (probEstimates[i] > probEstimates[probMaxIdx]) {
+                probMaxIdx = i;
+            }
+        }
+        return _label[probMaxIdx];
+    }
+
+    private boolean isClassification()
+    {
+        return _svmType == svm_parameter.C_SVC ||
+               _svmType == svm_parameter.NU_SVC;
+    }
+
+    /**
+     * Computes the kernel value of the instance and support vector sv.
+     */
+    private double kernel(int[] indices, double[] values,
+                          int offset, int length, int sv)
+    {
+        switch (_kernelType) {
+        case svm_parameter.LINEAR:
+            return dot(indices, values, offset, length, sv);
+        case svm_parameter.POLY:
+            return powi(_gamma * dot(indices, values, offset, length, sv) +
+                        _coef0,
+                        _degree);
+        case svm_parameter.RBF:
+            return Math.exp(-_gamma *
+                            squaredDistance(indices, values,
+                                            offset, length, sv));
+        case svm_parameter.SIGMOID:
+            return Math.tanh(_gamma *
+                             dot(indices, values, offset, length, sv) +
+                             _coef0);
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Computes the dot product of the instance and support vector sv.
+     */
+    private double dot(int[] indices, double[] values,
+                       int offset, int length, int sv)
+    {
+        double sum = 0;
+        int i = offset;
+        int iEnd = offset + length;
+        int j = _svPointers[sv];
+        int jEnd = _svPointers[sv + 1];
+        while (i < iEnd && j < jEnd) {
+            if (indices[i] == _svIndices[j]) {
+                sum += values[i++] * _svValues[j++];
+            } else if (indices[i] > _svIndices[j]) {
+                ++j;
+            } else {
+                ++i;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the squared distance between the instance and support
+     * vector sv, summed in the same order as libsvm.
+     */
+    private double squaredDistance(int[] indices, double[] values,
+                                   int offset, int length, int sv)
+    {
+        double sum = 0;
+        int i = offset;
+        int iEnd = offset + length;
+        int j = _svPointers[sv];
+        int jEnd = _svPointers[sv + 1];
+        while (i < iEnd && j < jEnd) {
+            if (indices[i] == _svIndices[j]) {
+                double d = values[i++] - _svValues[j++];
+                sum += d * d;
+            } else if (indices[i] > _svIndices[j]) {
+                sum += _svValues[j] * _svValues[j];
+                ++j;
+            } else {
+                sum += values[i] * values[i];
+                ++i;
+            }
+        }
+        while (i < iEnd) {
+            sum += values[i] * values[i];
+            ++i;
+        }
+        while (j < jEnd) {
+            sum += _svValues[j] * _svValues[j];
+            ++j;
+        }
+        return sum;
+    }
+
+    private static double powi(double base, int times)
+    {
+        double tmp = base, ret = 1.0;
+
+        for (int t = times; t > 0; t /= 2) {
+            if (t % 2 == 1) {
+                ret *= tmp;
+            }
+            tmp = tmp * tmp;
+        }
+        return ret;
+    }
+
+    private static double sigmoidPredict(double decisionValue,
+                                         double A, double B)
+    {
+        double fApB = decisionValue * A + B;
+        if (fApB >= 0) {
+            return Math.exp(-fApB) / (1.0 + Math.exp(-fApB));
+        } else {
+            return 1.0 / (1 + Math.exp(fApB));
+        }
+    }
+
+    /**
+     * Method 2 from the multiclass_prob paper by Wu, Lin, and Weng.
+     */
+    private static void multiclassProbability(int k, double[][] r, double[] p)
+    {
+        int t, j;
+        int iter = 0, maxIter = Math.max(100, k);
+        double[][] Q = new double[k][k];
+        double[] Qp = new double[k];
+        double pQp, eps = 0.005 / k;
+
+        for (t = 0; t < k; t++) {
+            p[t] = 1.0 / k;  // Valid if k = 1
+            Q[t][t] = 0;
+            for (j = 0; j < t; j++) {
+                Q[t][t] += r[j][t] * r[j][t];
+                Q[t][j] = Q[j][t];
+            }
+            for (j = t + 1; j < k; j++) {
+                Q[t][t] += r[j][t] * r[j][t];
+                Q[t][j] = -r[j][t] * r[t][j];
+            }
+        }
+        for (iter = 0; iter < maxIter; iter++) {
+            // Stopping condition, recalculate QP,pQP for numerical accuracy.
+            pQp = 0;
+            for (t = 0; t < k; t++) {
+                Qp[t] = 0;
+                for (j = 0; j < k; j++) {
+                    Qp[t] += Q[t][j] * p[j];
+                }
+                pQp += p[t] * Qp[t];
+            }
+            double maxError = 0;
+            for (t = 0; t < k; t++) {
+                double error = Math.abs(Qp[t] - pQp);
+                if (error > maxError) {
+                    maxError = error;
+                }
+            }
+            if (maxError < eps) {
+                break;
+            }
+
+            for (t = 0; t < k; t++) {
+                double diff = (-Qp[t] + pQp) / Q[t][t];
+                p[t] += diff;
+                pQp = (pQp + diff * (diff * Q[t][t] + 2 * Qp[t])) /
+                      (1 + diff) / (1 + diff);
+                for (j = 0; j < k; j++) {
+                    Qp[j] = (Qp[j] + diff * Q[t][j]) / (1 + diff);
+                    p[j] /= (1 + diff);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the header of a libsvm model up to and including the SV line.
+     */
+    private void readHeader(BufferedReader reader)
+        throws IOException
+    {
+        while (true) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Truncated libsvm model.");
+            }
+            StringTokenizer st = new StringTokenizer(line);
+            if (!st.hasMoreTokens()) {
+                continue;
+            }
+            String cmd = st.nextToken();
+            if (cmd.equals("svm_type")) {
+                _svmType = find(SVM_TYPES, st.nextToken(), "svm type");
+            } else if (cmd.equals("kernel_type")) {
+                _kernelType =
+                    find(KERNEL_TYPES, st.nextToken(), "kernel function");
+            } else if (cmd.equals("degree")) {
+                _degree = Integer.parseInt(st.nextToken());
+            } else if (cmd.equals("gamma")) {
+                _gamma = Double.parseDouble(st.nextToken());
+            } else if (cmd.equals("coef0")) {
+                _coef0 = Double.parseDouble(st.nextToken());
+            } else if (cmd.equals("nr_class")) {
+                _nrClass = Integer.parseInt(st.nextToken());
+            } else if (cmd.equals("total_sv")) {
+                _l = Integer.parseInt(st.nextToken());
+            } else if (cmd.equals("rho")) {
+                _rho = parseDoubles(st, _nrClass * (_nrClass - 1) / 2);
+            } else if (cmd.equals("label")) {
+                _label = parseInts(st, _nrClass);
+            } else if (cmd.equals("probA")) {
+                _probA = parseDoubles(st, _nrClass * (_nrClass - 1) / 2);
+            } else if (cmd.equals("probB")) {
+                _probB = parseDoubles(st, _nrClass * (_nrClass - 1) / 2);
+            } else if (cmd.equals("nr_sv")) {
+                _nSV = parseInts(st, _nrClass);
+            } else if (cmd.equals("SV")) {
+                break;
+            } else {
+                throw new IOException("Unknown text in libsvm model: [" +
+                                      cmd + "]");
+            }
+        }
+        if (_rho == null || (isClassification() &&
+                             (_label == null || _nSV == null))) {
+            throw new IOException("Incomplete libsvm model header.");
+        }
+    }
+
+    private static int find(String[] names, String name, String what)
+        throws IOException
+    {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IOException("Unknown " + what + " in libsvm model: " + name);
+    }
+
+    private static double[] parseDoubles(StringTokenizer st, int n)
+    {
+        double[] result = new double[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = Double.parseDouble(st.nextToken());
+        }
+        return result;
+    }
+
+    private static int[] parseInts(StringTokenizer st, int n)
+    {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = Integer.parseInt(st.nextToken());
+        }
+        return result;
+    }
+}
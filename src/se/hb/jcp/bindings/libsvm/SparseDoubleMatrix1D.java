@@ -24,17 +24,23 @@ import cern.colt.list.IntArrayList;
 
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
 
 /**
  * Class for sparse 1-d matrices (aka <i>vectors</i>) holding
  * <tt>double</tt> elements in the sparse format expected by the C
  * library libsvm. See the documentation for libsvm for more details.
  *
+ * The native storage of a vector that is not a row view is released by
+ * {@link #close()} or, at the latest, some time after the vector has
+ * become unreachable, see {@link NativeMemory}.
+ *
  * @author anders.gidenstam(at)hb.se
 */
 // TODO: Make sure to adhere to colt's conventions.
 
 public class SparseDoubleMatrix1D extends DoubleMatrix1D
+    implements AutoCloseable
 {
     /**
      * C-side pointer to a pointer to an array of svm_nodes storing the matrix
@@ -46,6 +52,15 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
      * SparseDoubleMatrix2D row views.
      */
     protected SparseDoubleMatrix2D parent;
+    /**
+     * The registration of the native storage with NativeMemory.
+     * Row views have none.
+     */
+    private transient Storage _storage;
+    /**
+     * The number of stored elements, for the native storage estimate.
+     */
+    int _length;
 
     /**
      * Constructs a matrix with a copy of the given values.
@@ -62,6 +77,8 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
         }
         setUp(values.length);
         Cptr = native_vector_create_from(indices, values);
+        _length = indices.length;
+        _storage = new Storage(this, Cptr, _length);
     }
 
     /**
@@ -80,6 +97,8 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
     {
         setUp(columns);
         Cptr = native_vector_create_from(indices, values);
+        _length = indices.length;
+        _storage = new Storage(this, Cptr, _length);
     }
 
     /**
@@ -93,6 +112,7 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
     {
         setUp(columns);
         Cptr = native_vector_create(columns);
+        _storage = new Storage(this, Cptr, 0);
     }
 
     /**
@@ -135,18 +155,25 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
             return this;
         }
         checkSize(other);
+        checkOpen();
         if (other instanceof SparseDoubleMatrix1D) {
             native_vector_assign(this.Cptr, ((SparseDoubleMatrix1D)other).Cptr);
+            resize(((SparseDoubleMatrix1D)other)._length);
             return this;
         } else {
             IntArrayList indexList = new IntArrayList();
             DoubleArrayList valueList = new DoubleArrayList();
             other.getNonZeros(indexList, valueList);
-            // FIXME: This will leak the base pointer storage for the temporary
-            //        matrix.
-            native_vector_assign
-                (this.Cptr, native_vector_create_from(indexList.elements(),
-                                                      valueList.elements()));
+            int size = indexList.size();
+            long tmp =
+                native_vector_create_from
+                    (Arrays.copyOf(indexList.elements(), size),
+                     Arrays.copyOf(valueList.elements(), size));
+            native_vector_assign(this.Cptr, tmp);
+            // The node array is now shared with this vector, so freeing the
+            // temporary vector only releases its base pointer storage.
+            native_vector_free(tmp);
+            resize(size);
             return this;
         }
 }
@@ -202,6 +229,7 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
      */
     public double getQuick(int column)
     {
+        checkOpen();
         return native_vector_get(Cptr, column);
     }
 
@@ -215,14 +243,39 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
      * the coordinate is within bounds.</b>
      * Precondition (unchecked): <tt>index&lt;0 || index&gt;=size()</tt>.
      *
+     * The native storage estimate counts every non-zero value set as a new
+     * element, up to the size of the vector, instead of reading back the
+     * old value of the cell.
+     *
      * @param index  the index of the cell.
      * @param value  the value to be filled into the specified cell.
      */
     public void setQuick(int index, double value)
     {
+        checkOpen();
+        if (value != 0.0 && _length < size) {
+            resize(_length + 1);
+        }
         native_vector_set(Cptr, index, value);
     }
 
+    /**
+     * Releases the native storage of this vector. Storage shared with
+     * matrices, other vectors or models remains until those are released
+     * too. Closing a row view has no effect; the storage belongs to the
+     * matrix. The vector must not be used afterwards; its accessors throw
+     * an <tt>IllegalStateException</tt>.
+     */
+    @Override
+    public void close()
+    {
+        if (_storage != null) {
+            _storage.release();
+            _storage = null;
+            Cptr = 0;
+        }
+    }
+
     /**
      * Construct and returns a new selection view.
      *
@@ -235,12 +288,50 @@ public class SparseDoubleMatrix1D extends DoubleMatrix1D
         throw new UnsupportedOperationException("Not implemented");
     }
 
-    protected void finalize() throws Throwable
+    /**
+     * Detaches a row view from the storage of its closed parent matrix.
+     */
+    void invalidate()
     {
-        if (Cptr != 0 && isNoView) {
-            native_vector_free(Cptr);
-        }
         Cptr = 0;
+        _length = 0;
+    }
+
+    private void checkOpen()
+    {
+        if (Cptr == 0) {
+            throw new IllegalStateException("The vector has been closed.");
+        }
+    }
+
+    /**
+     * Updates the native storage estimate for a new number of elements.
+     */
+    private void resize(int length)
+    {
+        if (_storage != null) {
+            _storage.resize((length - _length) * NativeMemory.NODE_SIZE);
+        }
+        _length = length;
+    }
+
+    /**
+     * The native storage of a vector.
+     */
+    private static final class Storage extends NativeMemory.Resource
+    {
+        private final long _ptr;
+
+        Storage(SparseDoubleMatrix1D owner, long ptr, int length)
+        {
+            super(owner, NativeMemory.rowBytes(length));
+            _ptr = ptr;
+        }
+
+        void free()
+        {
+            native_vector_free(_ptr);
+        }
     }
 
     private void writeObject(ObjectOutputStream oos)
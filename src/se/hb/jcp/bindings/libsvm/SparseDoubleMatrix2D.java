@@ -28,11 +28,17 @@ import java.io.ObjectOutputStream;
  * the sparse format expected by the C library libsvm. See the
  * documentation for libsvm for more details.
  *
+ * The native storage is released by {@link #close()} or, at the latest,
+ * some time after the matrix has become unreachable, see
+ * {@link NativeMemory}. Temporary matrices should be closed explicitly
+ * since the garbage collector does not see the native storage.
+ *
  * @author anders.gidenstam(at)hb.se
 */
 // TODO: Make sure to adhere to colt's conventions.
 
 public class SparseDoubleMatrix2D extends DoubleMatrix2D
+    implements AutoCloseable
 {
     /**
      * C-side pointer to an array of svm_node arrays storing the matrix
@@ -44,6 +50,15 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
      * These are created and stored on demand.
      */
     protected SparseDoubleMatrix1D[] rowViews;
+    /**
+     * The registration of the native storage with NativeMemory.
+     */
+    private transient Storage _storage;
+    /**
+     * The number of stored elements of each row, for the native storage
+     * estimate.
+     */
+    private int[] _rowLengths;
 
     /**
      * Constructs a matrix with a given number of rows and columns.
@@ -58,6 +73,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
     {
         setUp(rows, columns);
         Cptr = native_matrix_create(rows, columns);
+        _storage = new Storage(this, Cptr, rows);
     }
 
     /**
@@ -135,6 +151,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
      */
     public double getQuick(int row, int column)
     {
+        checkOpen();
         return native_matrix_get(Cptr, row, column);
     }
 
@@ -149,12 +166,20 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
      * Precondition (unchecked): <tt>0 &lt;= column &lt; columns() &amp;&amp;
      *                               0 &lt;= row &lt; rows()</tt>.
      *
+     * The native storage estimate counts every non-zero value set as a new
+     * element, up to the number of columns, instead of reading back the
+     * old value of the cell.
+     *
      * @param row     the index of the row-coordinate.
      * @param column  the index of the column-coordinate.
      * @param value   the value to be filled into the specified cell.
      */
     public void setQuick(int row, int column, double value)
     {
+        checkOpen();
+        if (value != 0.0 && _rowLengths[row] < columns) {
+            resizeRow(row, _rowLengths[row] + 1);
+        }
         native_matrix_set(Cptr, row, column, value);
     }
 
@@ -168,6 +193,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
     public SparseDoubleMatrix1D getRow(int row)
     {
         checkRow(row);
+        checkOpen();
         if (rowViews[row] == null) {
             // NOTE: This is a view, it should not increase the RC as its
             //       content is shared with the matrix. The parent pointer
@@ -176,6 +202,7 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
                 new SparseDoubleMatrix1D(columns,
                                          this,
                                          native_matrix_get_row(Cptr, row));
+            rowViews[row]._length = _rowLengths[row];
         }
         return rowViews[row];
     }
@@ -224,6 +251,30 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
         if (rowViews[row] != null) {
             rowViews[row].Cptr = newRow;
         }
+        resizeRow(row, indices.length);
+    }
+
+    /**
+     * Releases the native storage of this matrix. Rows shared with other
+     * matrices or models remain until those are released too.
+     * The matrix and its row views must not be used afterwards; their
+     * accessors throw an <tt>IllegalStateException</tt>.
+     * Closing a matrix more than once has no effect.
+     */
+    @Override
+    public void close()
+    {
+        if (_storage != null) {
+            _storage.release();
+            _storage = null;
+            Cptr = 0;
+            for (int r = 0; r < rows; r++) {
+                if (rowViews[r] != null) {
+                    rowViews[r].invalidate();
+                    rowViews[r] = null;
+                }
+            }
+        }
     }
 
     /**
@@ -251,13 +302,28 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
     {
         super.setUp(rows,columns);
         rowViews = new SparseDoubleMatrix1D[rows];
+        _rowLengths = new int[rows];
     }
 
-    protected void finalize() throws Throwable
+    private void checkOpen()
     {
-        if (Cptr != 0 && isNoView) {
-            native_matrix_free(Cptr, rows);
-            Cptr = 0;
+        if (Cptr == 0) {
+            throw new IllegalStateException("The matrix has been closed.");
+        }
+    }
+
+    /**
+     * Updates the native storage estimate for a new length of a row.
+     */
+    private void resizeRow(int row, int length)
+    {
+        if (_storage != null) {
+            _storage.resize((length - _rowLengths[row]) *
+                            NativeMemory.NODE_SIZE);
+        }
+        _rowLengths[row] = length;
+        if (rowViews[row] != null) {
+            rowViews[row]._length = length;
         }
     }
 
@@ -275,6 +341,27 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    /**
+     * The native storage of a matrix.
+     */
+    private static final class Storage extends NativeMemory.Resource
+    {
+        private final long _ptr;
+        private final int  _rows;
+
+        Storage(SparseDoubleMatrix2D owner, long ptr, int rows)
+        {
+            super(owner, rows * NativeMemory.rowBytes(0));
+            _ptr = ptr;
+            _rows = rows;
+        }
+
+        void free()
+        {
+            native_matrix_free(_ptr, _rows);
+        }
+    }
+
     // Internal native functions.
     private static native long native_matrix_create(int rows, int columns);
     private static native void native_matrix_free(long ptr, int rows);
@@ -289,7 +376,6 @@ public class SparseDoubleMatrix2D extends DoubleMatrix2D
                                                      int row,
                                                      int[] columns,
                                                      double[] values);
-
     static {
         // FIXME: It would have been better not to repeat this here and
         //        keep it only in the svm class.
@@ -18,102 +18,154 @@ package se.hb.jcp.bindings.opencv;
 
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
 
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import org.json.JSONException;
+import org.opencv.core.Mat;
 import org.opencv.core.TermCriteria;
 import org.opencv.ml.CvStatModel;
 
 import org.json.JSONObject;
 
-import se.hb.jcp.ml.IClassifier;
-
 abstract class ClassifierBase
     extends se.hb.jcp.ml.ClassifierBase
-    implements IClassifier,
-               java.io.Serializable
+    implements java.io.Serializable
 {
-    private static final boolean DEBUG = true;
+    // Fixed to the value computed before batch prediction was added so
+    // that saved models remain readable.
+    private static final long serialVersionUID = -2422912762559236683L;
+
+    // The maximal number of elements converted at a time by copyRows().
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static volatile boolean _debug =
+        Boolean.getBoolean("se.hb.jcp.bindings.opencv.debug");
     private static final DenseDoubleMatrix1D _storageTemplate =
         new DenseDoubleMatrix1D(0);
 
+    // Reusable buffers for converting instances in other formats.
+    private static final ThreadLocal<ConversionBuffer> _conversionBuffer =
+        new ThreadLocal<ConversionBuffer>() {
+            @Override
+            protected ConversionBuffer initialValue()
+            {
+                return new ConversionBuffer();
+            }
+        };
+
     protected CvStatModel _model;
     protected JSONObject _jsonParameters;
 
+    /**
+     * Returns whether the OpenCV classifiers report conversions of data in
+     * other formats than the native one on <tt>System.err</tt>. The initial
+     * value is taken from the system property
+     * <tt>se.hb.jcp.bindings.opencv.debug</tt>.
+     *
+     * @return <tt>true</tt> if the conversions are reported.
+     */
+    public static boolean isDebug()
+    {
+        return _debug;
+    }
+
+    /**
+     * Sets whether the OpenCV classifiers report conversions of data in
+     * other formats than the native one on <tt>System.err</tt>.
+     *
+     * @param debug  <tt>true</tt> to report the conversions.
+     */
+    public static void setDebug(boolean debug)
+    {
+        _debug = debug;
+    }
+
     protected DenseDoubleMatrix2D asDDM2D(DoubleMatrix2D x)
     {
-        DenseDoubleMatrix2D tmp_x;
         if ((!isTrained() || x.columns() == getAttributeCount()) &&
             x instanceof se.hb.jcp.bindings.opencv.DenseDoubleMatrix2D) {
-            tmp_x = (DenseDoubleMatrix2D)x;
-        } else {
-            if (DEBUG) {
-                System.out.println
-                    ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM2D(): " +
-                     "slow path.");
-            }
-            if (isTrained() && x.columns() != getAttributeCount()) {
-                // Truncate/extend as needed. The mismatch isn't necessarily
-                // an error when sparse data is used.
-                if (DEBUG) {
-                    System.out.println
-                        ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM2D():" +
-                         " The number of attributes does not match: " +
-                         "model " + getAttributeCount() +
-                         "; data " + x.columns() + ".");
-                }
-                tmp_x = new DenseDoubleMatrix2D(x.rows(), getAttributeCount());
-                for (int r = 0; r < x.rows(); r++) {
-                    for (int c = 0;
-                         c < Math.min(getAttributeCount(), x.columns());
-                         c++) {
-                        tmp_x.setQuick(r, c, x.getQuick(r, c));
-                    }
-                }
-            } else {
-                tmp_x = new DenseDoubleMatrix2D(x.rows(), x.columns());
-                tmp_x.assign(x);
-            }
+            return (DenseDoubleMatrix2D)x;
+        }
+        if (_debug) {
+            System.err.println
+                ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM2D(): " +
+                 "slow path.");
         }
+        int columns = isTrained() ? getAttributeCount() : x.columns();
+        if (_debug && columns != x.columns()) {
+            // Truncate/extend as needed. The mismatch isn't necessarily
+            // an error when sparse data is used.
+            System.err.println
+                ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM2D():" +
+                 " The number of attributes does not match: " +
+                 "model " + getAttributeCount() +
+                 "; data " + x.columns() + ".");
+        }
+        DenseDoubleMatrix2D tmp_x = new DenseDoubleMatrix2D(x.rows(), columns);
+        copyRows(x, 0, x.rows(), tmp_x.asMat(), columns);
         return tmp_x;
     }
 
+    /**
+     * Returns the rows first to last - 1 of x as an OpenCV matrix. Rows of
+     * a matrix in the native format are viewed in place, other rows are
+     * copied.
+     */
+    protected Mat asMat(DoubleMatrix2D x, int first, int last)
+    {
+        if (first < 0 || last > x.rows() || first > last) {
+            throw new IndexOutOfBoundsException
+                          ("Rows " + first + " to " + last + " of a " +
+                           x.rows() + " row matrix.");
+        }
+        if ((!isTrained() || x.columns() == getAttributeCount()) &&
+            x instanceof se.hb.jcp.bindings.opencv.DenseDoubleMatrix2D) {
+            return ((DenseDoubleMatrix2D)x).asMat().rowRange(first, last);
+        }
+        if (_debug) {
+            System.err.println
+                ("se.hb.jcp.bindings.opencv.ClassifierBase.asMat(): " +
+                 "slow path.");
+        }
+        int columns = isTrained() ? getAttributeCount() : x.columns();
+        DenseDoubleMatrix2D tmp_x =
+            new DenseDoubleMatrix2D(last - first, columns);
+        copyRows(x, first, last, tmp_x.asMat(), columns);
+        return tmp_x.asMat();
+    }
+
+    /**
+     * Returns the instance in the native format. An instance in another
+     * format or of another size than the model is converted into a buffer
+     * owned by the current thread, which is only valid until the next
+     * conversion by the same thread.
+     */
     protected DenseDoubleMatrix1D asDDM1D(DoubleMatrix1D x)
     {
-        DenseDoubleMatrix1D tmp_x;
         if ((!isTrained() || x.size() == getAttributeCount()) &&
             x instanceof se.hb.jcp.bindings.opencv.DenseDoubleMatrix1D) {
-            tmp_x = (DenseDoubleMatrix1D)x;
-        } else {
-            if (DEBUG) {
-                System.out.println
-                    ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM1D(): " +
-                     "slow path.");
-            }
-            if (isTrained() && x.size() != getAttributeCount()) {
-                // Truncate/extend as needed. The mismatch isn't necessarily
-                // an error when sparse data is used.
-                if (DEBUG) {
-                    System.out.println
-                        ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM1D():" +
-                         " The number of attributes does not match: " +
-                         "model " + getAttributeCount() +
-                         "; data " + x.size() + ".");
-                }
-                tmp_x = new DenseDoubleMatrix1D(getAttributeCount());
-                for (int c = 0;
-                     c < Math.min(getAttributeCount(), x.size());
-                     c++) {
-                    tmp_x.setQuick(c, x.getQuick(c));
-                }
-            } else {
-                tmp_x = new DenseDoubleMatrix1D(x.size());
-                tmp_x.assign(x);
-            }
+            return (DenseDoubleMatrix1D)x;
         }
-        return tmp_x;
+        if (_debug) {
+            System.err.println
+                ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM1D(): " +
+                 "slow path.");
+        }
+        int columns = isTrained() ? getAttributeCount() : x.size();
+        if (_debug && columns != x.size()) {
+            // Truncate/extend as needed. The mismatch isn't necessarily
+            // an error when sparse data is used.
+            System.err.println
+                ("se.hb.jcp.bindings.opencv.ClassifierBase.asDDM1D():" +
+                 " The number of attributes does not match: " +
+                 "model " + getAttributeCount() +
+                 "; data " + x.size() + ".");
+        }
+        return _conversionBuffer.get().convert(x, columns);
     }
 
     protected DenseDoubleMatrix1D asDDM1D(double[] y)
@@ -153,6 +205,43 @@ abstract class ClassifierBase
         }
     }
 
+    /**
+     * Copies the first columns of the rows from to to - 1 of x into the
+     * OpenCV matrix mat, starting at its first row. The rows are copied in
+     * blocks of at most BLOCK_SIZE elements with one bulk transfer per
+     * block.
+     */
+    private static void copyRows(DoubleMatrix2D x, int from, int to,
+                                 Mat mat, int columns)
+    {
+        if (columns == 0) {
+            return;
+        }
+        IntArrayList indices = new IntArrayList();
+        DoubleArrayList values = new DoubleArrayList();
+        int blockRows = Math.max(1, BLOCK_SIZE / columns);
+        float[] block = null;
+        for (int first = from; first < to; first += blockRows) {
+            int rows = Math.min(blockRows, to - first);
+            if (block == null || block.length != rows * columns) {
+                block = new float[rows * columns];
+            } else {
+                Arrays.fill(block, 0.0f);
+            }
+            for (int r = 0; r < rows; r++) {
+                x.viewRow(first + r).getNonZeros(indices, values);
+                int offset = r * columns;
+                for (int i = 0; i < indices.size(); i++) {
+                    int c = indices.getQuick(i);
+                    if (c < columns) {
+                        block[offset + c] = (float)values.getQuick(i);
+                    }
+                }
+            }
+            mat.put(first - from, 0, block);
+        }
+    }
+
     private void writeObject(ObjectOutputStream oos)
         throws java.io.IOException
     {
@@ -195,4 +284,35 @@ abstract class ClassifierBase
             _model.load(fileName);
         }
     }
+
+    /**
+     * A per-thread instance buffer. The values are written to the OpenCV
+     * matrix with a single bulk copy.
+     */
+    private static class ConversionBuffer
+    {
+        private final IntArrayList    _indices = new IntArrayList();
+        private final DoubleArrayList _values  = new DoubleArrayList();
+        private DenseDoubleMatrix1D   _instance;
+        private float[]               _row;
+
+        DenseDoubleMatrix1D convert(DoubleMatrix1D x, int columns)
+        {
+            if (_instance == null || _instance.size() != columns) {
+                _instance = new DenseDoubleMatrix1D(columns);
+                _row = new float[columns];
+            } else {
+                Arrays.fill(_row, 0.0f);
+            }
+            x.getNonZeros(_indices, _values);
+            for (int i = 0; i < _indices.size(); i++) {
+                int c = _indices.getQuick(i);
+                if (c < columns) {
+                    _row[c] = (float)_values.getQuick(i);
+                }
+            }
+            _instance.asMat().put(0, 0, _row);
+            return _instance;
+        }
+    }
 }
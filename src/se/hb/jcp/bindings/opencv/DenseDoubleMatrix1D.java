@@ -122,10 +122,13 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D
                   _mat.copyTo(_mat);
             return this;
         } else {
-            double[] values = other.toArray();
-
-            for (int i = 0; i < values.length; i++) {
-                _mat.put(0, i, values[i]);
+            // Copy all values with one bulk transfer.
+            float[] values = new float[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = (float)other.getQuick(i);
+            }
+            if (size > 0) {
+                _mat.put(0, 0, values);
             }
 
             return this;
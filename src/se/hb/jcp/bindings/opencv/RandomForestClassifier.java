@@ -36,6 +36,10 @@ public class RandomForestClassifier
     extends ClassifierBase
     implements java.io.Serializable
 {
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = -3391384023669818403L;
+
     public RandomForestClassifier()
     {
     }
@@ -20,6 +20,7 @@ import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import org.json.JSONException;
+import org.opencv.core.Mat;
 import org.opencv.ml.CvStatModel;
 import org.opencv.ml.CvSVM;
 import org.opencv.ml.CvSVMParams;
@@ -27,12 +28,18 @@ import org.opencv.core.TermCriteria;
 
 import org.json.JSONObject;
 
+import se.hb.jcp.ml.IBatchClassifier;
 import se.hb.jcp.ml.IClassifier;
 
 public class SVMClassifier
     extends ClassifierBase
-    implements java.io.Serializable
+    implements IBatchClassifier,
+               java.io.Serializable
 {
+    // Fixed to the value computed before batch prediction was added so
+    // that saved models remain readable.
+    private static final long serialVersionUID = 7753272992217659212L;
+
     public SVMClassifier()
     {
     }
@@ -67,6 +74,34 @@ public class SVMClassifier
         return ((CvSVM)_model).predict(asDDM1D(instance).asMat());
     }
 
+    /**
+     * Predicts the targets for the rows first to last - 1 of the supplied
+     * instances with a single <tt>CvSVM.predict_all</tt> call. Rows in
+     * another format than the native one are converted for each call.
+     *
+     * @param instances    the instances.
+     * @param first        the first row to predict.
+     * @param last         the row after the last row to predict.
+     * @param predictions  a <tt>double[]</tt> array of at least <tt>last - first</tt> elements for storing the predicted target of each row.
+     */
+    public void predict(DoubleMatrix2D instances,
+                        int first,
+                        int last,
+                        double[] predictions)
+    {
+        Mat samples = asMat(instances, first, last);
+        if (samples.rows() == 0) {
+            return;
+        }
+        Mat results = new Mat();
+        ((CvSVM)_model).predict_all(samples, results);
+        float[] values = new float[samples.rows()];
+        results.get(0, 0, values);
+        for (int i = 0; i < values.length; i++) {
+            predictions[i] = values[i];
+        }
+    }
+
     protected CvStatModel getNewInstance()
     {
         return new CvSVM();
@@ -18,12 +18,16 @@ package se.hb.jcp.cli;
 
 import java.io.*;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
 import java.util.SortedSet;
 
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
 import org.json.JSONException;
 import org.json.JSONWriter;
 
 import se.hb.jcp.cp.*;
+import se.hb.jcp.io.DataSetBlockReader;
 import se.hb.jcp.cp.measures.AggregatedObservedMeasures;
 import se.hb.jcp.cp.measures.AggregatedPriorMeasures;
 
@@ -43,6 +47,35 @@ public class CCTools
                                double significanceLevel,
                                boolean debug)
             throws IOException, JSONException {
+        runTest(modelFileName, dataSetFileName, jsonOutputFileName,
+                pValuesOutputFileName, labelsOutputFileName,
+                significanceLevel, debug, 0);
+    }
+
+    /**
+     * Tests a conformal classifier model on a data set file.
+     * With a positive block size the data set is read and predicted in
+     * blocks of at most that many instances so that the memory use is
+     * independent of the size of the data set.
+     *
+     * @param modelFileName          the model file.
+     * @param dataSetFileName        the test set file.
+     * @param jsonOutputFileName     the JSON output file or <tt>null</tt>.
+     * @param pValuesOutputFileName  the p-values output file or <tt>null</tt>.
+     * @param labelsOutputFileName   the labels output file or <tt>null</tt>.
+     * @param significanceLevel      the significance level.
+     * @param debug                  whether to include debug output in the JSON output.
+     * @param blockSize              the number of instances per block or 0 to load the whole data set.
+     */
+    public static void runTest(String modelFileName,
+                               String dataSetFileName,
+                               String jsonOutputFileName,
+                               String pValuesOutputFileName,
+                               String labelsOutputFileName,
+                               double significanceLevel,
+                               boolean debug,
+                               int blockSize)
+            throws IOException, JSONException {
         System.out.println("Loading the model '" + modelFileName +
                            "'.");
         long t1 = System.currentTimeMillis();
@@ -50,14 +83,26 @@ public class CCTools
         long t2 = System.currentTimeMillis();
         System.out.println("Duration " + (double)(t2 - t1)/1000.0 + " sec.");
 
-        System.out.println("Loading the data set '" + dataSetFileName +
-                           "'.");
-        DataSet testSet = DataSetTools.loadDataSet(dataSetFileName, cc);
-        long t3 = System.currentTimeMillis();
-        System.out.println("Duration " + (double)(t3 - t2)/1000.0 + " sec.");
+        if (blockSize > 0) {
+            System.out.println("Opening the data set '" + dataSetFileName +
+                               "'.");
+            FileInputStream file = new FileInputStream(dataSetFileName);
+            DataSetBlockReader testSet =
+                DataSetTools.readBlocks(file, dataSetFileName, cc, blockSize);
+            runTest(cc, testSet, jsonOutputFileName, pValuesOutputFileName,
+                    labelsOutputFileName, significanceLevel, debug);
+            file.close();
+        } else {
+            System.out.println("Loading the data set '" + dataSetFileName +
+                               "'.");
+            DataSet testSet = DataSetTools.loadDataSet(dataSetFileName, cc);
+            long t3 = System.currentTimeMillis();
+            System.out.println("Duration " + (double)(t3 - t2)/1000.0 +
+                               " sec.");
 
-        runTest(cc, testSet, jsonOutputFileName, pValuesOutputFileName,
-                labelsOutputFileName, significanceLevel, debug);
+            runTest(cc, testSet, jsonOutputFileName, pValuesOutputFileName,
+                    labelsOutputFileName, significanceLevel, debug);
+        }
 
         long t4 = System.currentTimeMillis();
         System.out.println("Total Duration " + (double)(t4 - t1)/1000.0 +
@@ -72,37 +117,16 @@ public class CCTools
                                double significanceLevel,
                                boolean debug)
             throws IOException, JSONException {
-        BufferedWriter jsonOutputBW = null;
-        JSONWriter jsonOutput = null;
-        if (jsonOutputFileName != null) {
-            jsonOutputBW =
-                new BufferedWriter
-                    (new OutputStreamWriter
-                        (new FileOutputStream(jsonOutputFileName), "utf-8"));
-            jsonOutput = new JSONWriter(jsonOutputBW);
-            jsonOutput.array();
-        }
-        BufferedWriter pValuesOutput = null;
-        if (pValuesOutputFileName != null) {
-            pValuesOutput =
-                new BufferedWriter
-                    (new OutputStreamWriter
-                        (new FileOutputStream(pValuesOutputFileName), "utf-8"));
-        }
-        BufferedWriter labelsOutput = null;
-        if (labelsOutputFileName != null) {
-            labelsOutput =
-                new BufferedWriter
-                    (new OutputStreamWriter
-                        (new FileOutputStream(labelsOutputFileName), "utf-8"));
-        }
+        TestEvaluation evaluation =
+            new TestEvaluation(jsonOutputFileName, pValuesOutputFileName,
+                               labelsOutputFileName, significanceLevel,
+                               debug);
 
         long t1 = System.currentTimeMillis();
         System.out.println("Extracting the labels/classes from the test set.");
         SimpleEntry<double[],SortedSet<Double>> pair =
             DataSetTools.extractClasses(testSet);
-        double[] classes = pair.getKey();
-        SortedSet<Double> classSet = pair.getValue();
+        evaluation.setClasses(pair.getKey());
         long t2 = System.currentTimeMillis();
         System.out.println("Duration " + (double)(t2 - t1)/1000.0 + " sec.");
 
@@ -116,134 +140,82 @@ public class CCTools
         ConformalClassification[] predictions = cc.predict(testSet.x);
         long t3 = System.currentTimeMillis();
 
-        int noPredictions = testSet.y.length;
-        int correct = 0;
-        int[] predictionsAtSize = new int[classSet.size()+1];
-        int[] correctAtSize = new int[classSet.size()+1];
-        int[] predictionsForClass = new int[classSet.size()];
-        int[] correctForClass = new int[classSet.size()];
-        int[][] predictionsForClassAtSize =
-            new int[classSet.size()][classSet.size()+1];
-        int[][] correctForClassAtSize =
-            new int[classSet.size()][classSet.size()+1];
-        AggregatedPriorMeasures priorMeasures = new AggregatedPriorMeasures();
-        AggregatedObservedMeasures observedMeasures =
-            new AggregatedObservedMeasures();
-
         // FIXME: Parallelize the computation of the performance measures.
         for (int i = 0; i < predictions.length; i++){
-            int classIndex = classSet.headSet(testSet.y[i]).size();
-            int predictionSize = 0;
-            for (int c = 0; c < classes.length; c++) {
-                double pValue = predictions[i].getPValues().get(c);
-                if (pValuesOutput != null) {
-                    pValuesOutput.write("" + pValue + " ");
-                }
-                if (pValue >= significanceLevel) {
-                    // This label cannot be excluded.
-                    predictionSize++;
-                    if (labelsOutput != null) {
-                        labelsOutput.write("" + classes[c] + " ");
-                    }
-                }
-            }
-            if (jsonOutput != null) {
-                if (debug) {
-                    IOTools.writeAsJSON(predictions[i],
-                                        testSet.x.viewRow(i),
-                                        testSet.y[i],
-                                        jsonOutput);
-                } else {
-                    IOTools.writeAsJSON(predictions[i], jsonOutput);
-                }
-            }
-            if (pValuesOutput != null) {
-                pValuesOutput.newLine();
-            }
-            if (labelsOutput != null) {
-                labelsOutput.newLine();
-            }
-
-            predictionsAtSize[predictionSize]++;
-            predictionsForClass[classIndex]++;
-            predictionsForClassAtSize[classIndex][predictionSize]++;
-
-            if (predictions[i].getPValues().get(classIndex) >=
-                significanceLevel) {
-                correct++;
-                correctAtSize[predictionSize]++;
-                correctForClass[classIndex]++;
-                correctForClassAtSize[classIndex][predictionSize]++;
-            }
-            priorMeasures.add(predictions[i]);
-            observedMeasures.add(predictions[i], testSet.y[i]);
+            evaluation.add(predictions[i], testSet.x.viewRow(i),
+                           testSet.y[i]);
         }
         long t4 = System.currentTimeMillis();
 
-        if (jsonOutput != null) {
-            jsonOutput.endArray();
-            jsonOutputBW.close();
-        }
-        if (pValuesOutput != null) {
-            pValuesOutput.close();
-        }
-        if (labelsOutput != null) {
-            labelsOutput.close();
-        }
+        evaluation.close();
+        evaluation.printResults(t3 - t2, t4 - t3);
+    }
 
-        System.out.println("Test Duration " +
-                           (double)(t3 - t2)/1000.0 + " sec.");
-        double avgLabelSetSize = 0;
-        for (int s = 0; s < predictionsAtSize.length; s++) {
-            avgLabelSetSize += (double)predictionsAtSize[s]/noPredictions * s;
-        }
-        System.out.println("Accuracy " +
-                           ((double)correct / noPredictions) +
-                           ", Single label prediction accuracy " +
-                           ((double)correctAtSize[1] / noPredictions));
-        System.out.println("OneC efficiency " +
-                           "(fraction predictions with single label) " +
-                           ((double)predictionsAtSize[1] / noPredictions) +
-                           ", AvgC efficiency (average label set size) " +
-                           avgLabelSetSize);
-        System.out.println("Per prediction set size:");
-        for (int s = 0; s < predictionsAtSize.length; s++) {
-            System.out.println
-                ("  #predictions with " + s + " classes: " +
-                 predictionsAtSize[s] + ". Accuracy: " +
-                 ((double)correctAtSize[s] / predictionsAtSize[s]));
+    /**
+     * Tests a conformal classifier on a data set that is read block by
+     * block. The p-values of each block are computed with
+     * <tt>predictPValues(DoubleMatrix2D)</tt> and the performance measures
+     * are accumulated incrementally, so only one block is kept in memory.
+     * Since the test set is not known in advance the classes are those of
+     * the model.
+     *
+     * @param cc                     the conformal classifier.
+     * @param testSet                the test set blocks.
+     * @param jsonOutputFileName     the JSON output file or <tt>null</tt>.
+     * @param pValuesOutputFileName  the p-values output file or <tt>null</tt>.
+     * @param labelsOutputFileName   the labels output file or <tt>null</tt>.
+     * @param significanceLevel      the significance level.
+     * @param debug                  whether to include debug output in the JSON output.
+     */
+    public static void runTest(IConformalClassifier cc,
+                               DataSetBlockReader testSet,
+                               String jsonOutputFileName,
+                               String pValuesOutputFileName,
+                               String labelsOutputFileName,
+                               double significanceLevel,
+                               boolean debug)
+            throws IOException, JSONException {
+        TestEvaluation evaluation =
+            new TestEvaluation(jsonOutputFileName, pValuesOutputFileName,
+                               labelsOutputFileName, significanceLevel,
+                               debug);
+        Double[] labels = cc.getLabels();
+        double[] classes = new double[labels.length];
+        for (int c = 0; c < classes.length; c++) {
+            classes[c] = labels[c];
         }
-        System.out.println("Per true class/label:");
-        for (int i = 0; i < predictionsForClass.length; i++) {
-            System.out.println
-                ("  #instances with true class " + i +
-                 " (label '" + classes[i] + "'): " + predictionsForClass[i] +
-                 ". Accuracy: " +
-                 ((double)correctForClass[i] / predictionsForClass[i]));
-            for (int s = 0; s < predictionsAtSize.length; s++) {
-                System.out.println
-                    ("    #predictions with " + s + " classes: " +
-                     predictionsForClassAtSize[i][s] + ". Accuracy: " +
-                     ((double)correctForClassAtSize[i][s] /
-                      predictionsForClassAtSize[i][s]));
+        evaluation.setClasses(classes);
+
+        System.out.println("Testing in blocks of " + testSet.getBlockSize() +
+                           " instances at a significance level of " +
+                           significanceLevel + ".");
+
+        long testDuration = 0;
+        long evaluationDuration = 0;
+        while (true) {
+            long t1 = System.currentTimeMillis();
+            DataSet block = testSet.nextBlock();
+            if (block == null) {
+                break;
             }
-        }
-        System.err.println("Observed measures over " +
-                           observedMeasures.getMeasure(0)
-                               .getNumberOfObservations() +
-                           " instances:");
-        for (int i = 0; i < observedMeasures.size(); i++) {
-            System.err.println("  " + observedMeasures.getMeasure(i).toString());
-        }
-        System.err.println("Prior efficiency measures over " +
-                           priorMeasures.getMeasure(0).getNumberOfObservations() +
-                           " instances:");
-        for (int i = 0; i < priorMeasures.size(); i++) {
-            System.err.println("  " + priorMeasures.getMeasure(i).toString());
+            DoubleMatrix2D pValues = cc.predictPValues(block.x);
+            long t2 = System.currentTimeMillis();
+
+            for (int i = 0; i < block.y.length; i++) {
+                evaluation.add(new ConformalClassification(cc,
+                                                           pValues.viewRow(i)),
+                               block.x.viewRow(i),
+                               block.y[i]);
+            }
+            long t3 = System.currentTimeMillis();
+            testDuration += t2 - t1;
+            evaluationDuration += t3 - t2;
         }
 
-        System.out.println("Evaluation Duration " +
-                           (double)(t4 - t3)/1000.0 + " sec.");
+        evaluation.close();
+        System.out.println("Tested " + evaluation.getNumberOfPredictions() +
+                           " instances.");
+        evaluation.printResults(testDuration, evaluationDuration);
     }
 
     public static IConformalClassifier loadModel(String filename)
@@ -282,4 +254,220 @@ public class CCTools
                     e.getStackTrace());
         }
     }
+
+    /**
+     * Accumulates the performance measures of test predictions one
+     * prediction at a time and writes the optional output files.
+     */
+    private static class TestEvaluation
+    {
+        private final double        _significanceLevel;
+        private final boolean       _debug;
+        private final BufferedWriter _jsonOutputBW;
+        private final JSONWriter    _jsonOutput;
+        private final BufferedWriter _pValuesOutput;
+        private final BufferedWriter _labelsOutput;
+
+        private double[] _classes;
+        private int      _noPredictions = 0;
+        private int      _correct = 0;
+        private int[]    _predictionsAtSize;
+        private int[]    _correctAtSize;
+        private int[]    _predictionsForClass;
+        private int[]    _correctForClass;
+        private int[][]  _predictionsForClassAtSize;
+        private int[][]  _correctForClassAtSize;
+        private final AggregatedPriorMeasures _priorMeasures =
+            new AggregatedPriorMeasures();
+        private final AggregatedObservedMeasures _observedMeasures =
+            new AggregatedObservedMeasures();
+
+        TestEvaluation(String jsonOutputFileName,
+                       String pValuesOutputFileName,
+                       String labelsOutputFileName,
+                       double significanceLevel,
+                       boolean debug)
+                throws IOException, JSONException {
+            _significanceLevel = significanceLevel;
+            _debug = debug;
+            if (jsonOutputFileName != null) {
+                _jsonOutputBW =
+                    new BufferedWriter
+                        (new OutputStreamWriter
+                            (new FileOutputStream(jsonOutputFileName),
+                             "utf-8"));
+                _jsonOutput = new JSONWriter(_jsonOutputBW);
+                _jsonOutput.array();
+            } else {
+                _jsonOutputBW = null;
+                _jsonOutput = null;
+            }
+            if (pValuesOutputFileName != null) {
+                _pValuesOutput =
+                    new BufferedWriter
+                        (new OutputStreamWriter
+                            (new FileOutputStream(pValuesOutputFileName),
+                             "utf-8"));
+            } else {
+                _pValuesOutput = null;
+            }
+            if (labelsOutputFileName != null) {
+                _labelsOutput =
+                    new BufferedWriter
+                        (new OutputStreamWriter
+                            (new FileOutputStream(labelsOutputFileName),
+                             "utf-8"));
+            } else {
+                _labelsOutput = null;
+            }
+        }
+
+        void setClasses(double[] classes)
+        {
+            _classes = classes;
+            _predictionsAtSize = new int[classes.length+1];
+            _correctAtSize = new int[classes.length+1];
+            _predictionsForClass = new int[classes.length];
+            _correctForClass = new int[classes.length];
+            _predictionsForClassAtSize =
+                new int[classes.length][classes.length+1];
+            _correctForClassAtSize =
+                new int[classes.length][classes.length+1];
+        }
+
+        int getNumberOfPredictions()
+        {
+            return _noPredictions;
+        }
+
+        void add(ConformalClassification prediction,
+                 DoubleMatrix1D instance,
+                 double label)
+                throws IOException, JSONException {
+            // The number of classes less than the label.
+            int classIndex = Arrays.binarySearch(_classes, label);
+            if (classIndex < 0) {
+                classIndex = -classIndex - 1;
+            }
+            DoubleMatrix1D pValues = prediction.getPValues();
+            int predictionSize = 0;
+            for (int c = 0; c < _classes.length; c++) {
+                double pValue = pValues.get(c);
+                if (_pValuesOutput != null) {
+                    _pValuesOutput.write("" + pValue + " ");
+                }
+                if (pValue >= _significanceLevel) {
+                    // This label cannot be excluded.
+                    predictionSize++;
+                    if (_labelsOutput != null) {
+                        _labelsOutput.write("" + _classes[c] + " ");
+                    }
+                }
+            }
+            if (_jsonOutput != null) {
+                if (_debug) {
+                    IOTools.writeAsJSON(prediction, instance, label,
+                                        _jsonOutput);
+                } else {
+                    IOTools.writeAsJSON(prediction, _jsonOutput);
+                }
+            }
+            if (_pValuesOutput != null) {
+                _pValuesOutput.newLine();
+            }
+            if (_labelsOutput != null) {
+                _labelsOutput.newLine();
+            }
+
+            _noPredictions++;
+            _predictionsAtSize[predictionSize]++;
+            _predictionsForClass[classIndex]++;
+            _predictionsForClassAtSize[classIndex][predictionSize]++;
+
+            if (pValues.get(classIndex) >= _significanceLevel) {
+                _correct++;
+                _correctAtSize[predictionSize]++;
+                _correctForClass[classIndex]++;
+                _correctForClassAtSize[classIndex][predictionSize]++;
+            }
+            _priorMeasures.add(prediction);
+            _observedMeasures.add(prediction, label);
+        }
+
+        void close()
+                throws IOException, JSONException {
+            if (_jsonOutput != null) {
+                _jsonOutput.endArray();
+                _jsonOutputBW.close();
+            }
+            if (_pValuesOutput != null) {
+                _pValuesOutput.close();
+            }
+            if (_labelsOutput != null) {
+                _labelsOutput.close();
+            }
+        }
+
+        void printResults(long testDuration, long evaluationDuration)
+        {
+            int noPredictions = _noPredictions;
+            System.out.println("Test Duration " +
+                               (double)testDuration/1000.0 + " sec.");
+            double avgLabelSetSize = 0;
+            for (int s = 0; s < _predictionsAtSize.length; s++) {
+                avgLabelSetSize +=
+                    (double)_predictionsAtSize[s]/noPredictions * s;
+            }
+            System.out.println("Accuracy " +
+                               ((double)_correct / noPredictions) +
+                               ", Single label prediction accuracy " +
+                               ((double)_correctAtSize[1] / noPredictions));
+            System.out.println("OneC efficiency " +
+                               "(fraction predictions with single label) " +
+                               ((double)_predictionsAtSize[1] / noPredictions) +
+                               ", AvgC efficiency (average label set size) " +
+                               avgLabelSetSize);
+            System.out.println("Per prediction set size:");
+            for (int s = 0; s < _predictionsAtSize.length; s++) {
+                System.out.println
+                    ("  #predictions with " + s + " classes: " +
+                     _predictionsAtSize[s] + ". Accuracy: " +
+                     ((double)_correctAtSize[s] / _predictionsAtSize[s]));
+            }
+            System.out.println("Per true class/label:");
+            for (int i = 0; i < _predictionsForClass.length; i++) {
+                System.out.println
+                    ("  #instances with true class " + i +
+                     " (label '" + _classes[i] + "'): " +
+                     _predictionsForClass[i] + ". Accuracy: " +
+                     ((double)_correctForClass[i] / _predictionsForClass[i]));
+                for (int s = 0; s < _predictionsAtSize.length; s++) {
+                    System.out.println
+                        ("    #predictions with " + s + " classes: " +
+                         _predictionsForClassAtSize[i][s] + ". Accuracy: " +
+                         ((double)_correctForClassAtSize[i][s] /
+                          _predictionsForClassAtSize[i][s]));
+                }
+            }
+            System.err.println("Observed measures over " +
+                               _observedMeasures.getMeasure(0)
+                                   .getNumberOfObservations() +
+                               " instances:");
+            for (int i = 0; i < _observedMeasures.size(); i++) {
+                System.err.println("  " +
+                                   _observedMeasures.getMeasure(i).toString());
+            }
+            System.err.println("Prior efficiency measures over " +
+                               _priorMeasures.getMeasure(0)
+                                   .getNumberOfObservations() +
+                               " instances:");
+            for (int i = 0; i < _priorMeasures.size(); i++) {
+                System.err.println("  " +
+                                   _priorMeasures.getMeasure(i).toString());
+            }
+
+            System.out.println("Evaluation Duration " +
+                               (double)evaluationDuration/1000.0 + " sec.");
+        }
+    }
 }
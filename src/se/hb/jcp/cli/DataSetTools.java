@@ -37,9 +37,9 @@ public class DataSetTools
     public static DataSet loadDataSet(String filename)
         throws IOException
     {
-        return
-            loadDataSet(filename,
-                        new cern.colt.matrix.impl.SparseDoubleMatrix1D(0));
+        // Without a template libsvm files are stored in CSR matrices
+        // and .jcpd files are used in place memory-mapped.
+        return loadDataSet(filename, (DoubleMatrix1D)null);
     }
 
     public static DataSet loadDataSet(String filename,
@@ -65,15 +65,80 @@ public class DataSetTools
     {
         FileInputStream file;
         file = new FileInputStream(filename);
-        DataSet dataSet = new libsvmReader().read(file, template);
+        DataSetReader reader = getReader(filename);
+        if (!(reader instanceof libsvmReader)) {
+            DataSet dataSet = reader.read(file, template);
+            file.close();
+
+            System.err.println("Loaded the dataset " + filename +
+                               " containing " + dataSet.x.rows() +
+                               " instances with " + dataSet.x.columns() +
+                               " attributes.");
+            return dataSet;
+        }
+        CSRBuilder csr = ((libsvmReader)reader).readCSR(file);
         file.close();
+        DataSet dataSet = csr.toDataSet(template);
 
         System.err.println("Loaded the dataset " + filename + " containing " +
-                           dataSet.x.rows() + " instances with " +
-                           dataSet.x.columns() + " attributes.");
+                           csr.rows() + " instances with " +
+                           csr.columns() + " attributes and " +
+                           csr.nonZeros() + " non-zero values.");
         return dataSet;
     }
 
+    /**
+     * Returns a block reader for a data set file, see
+     * {@link DataSetReader#readBlocks(InputStream, DoubleMatrix1D, int)}.
+     * The blocks are stored in the native storage format of the classifier
+     * and have at least as many columns as the number of attributes of the
+     * classifier.
+     *
+     * @param file       the opened data set file.
+     * @param filename   the name of the data set file.
+     * @param cc         the conformal classifier.
+     * @param blockSize  the maximum number of instances in a block.
+     * @return a block reader for the data set.
+     */
+    public static DataSetBlockReader readBlocks(FileInputStream file,
+                                                String filename,
+                                                IConformalClassifier cc,
+                                                int blockSize)
+        throws IOException
+    {
+        DataSetBlockReader blocks =
+            readBlocks(file, filename, cc.nativeStorageTemplate(), blockSize);
+        if (cc.isTrained()) {
+            blocks.setColumns(cc.getAttributeCount());
+        }
+        return blocks;
+    }
+
+    public static DataSetBlockReader readBlocks(FileInputStream file,
+                                                String filename,
+                                                DoubleMatrix1D template,
+                                                int blockSize)
+        throws IOException
+    {
+        return getReader(filename).readBlocks(file, template, blockSize);
+    }
+
+    /**
+     * Returns a reader for the format of the data set file, which is chosen
+     * by the file name extension.
+     *
+     * @param filename  the name of the data set file.
+     * @return a <tt>DataSetReader</tt>.
+     */
+    public static DataSetReader getReader(String filename)
+    {
+        if (filename.endsWith(jcpdReader.FILE_EXTENSION)) {
+            return new jcpdReader();
+        } else {
+            return new libsvmReader();
+        }
+    }
+
     public static
         SimpleEntry<double[],SortedSet<Double>> extractClasses(DataSet dataSet)
     {
@@ -0,0 +1,124 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cli;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import se.hb.jcp.io.CSRBuilder;
+import se.hb.jcp.io.jcpdWriter;
+import se.hb.jcp.io.libsvmReader;
+
+/**
+ * Command line tool for converting a data set file in the libsvm format to
+ * the binary <tt>.jcpd</tt> format, which is memory-mapped when loaded.
+ *
+ * @author agent(at)local
+ */
+
+public class jcp_convert
+{
+    private String  _inputFileName;
+    private String  _outputFileName;
+    private boolean _floatValues = false;
+
+    public jcp_convert()
+    {
+    }
+
+    public void run(String[] args)
+        throws IOException
+    {
+        processArguments(args);
+
+        convert();
+    }
+
+    private void processArguments(String[] args)
+    {
+        if (args.length < 2) {
+            printUsage();
+            System.exit(-1);
+        } else {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-h")) {
+                    printUsage();
+                    System.exit(0);
+                } else if (args[i].equals("-f")) {
+                    _floatValues = true;
+                } else if (_inputFileName == null) {
+                    // The first unknown argument should be the input file.
+                    _inputFileName = args[i];
+                } else {
+                    // The second unknown argument should be the output file.
+                    _outputFileName = args[i];
+                }
+            }
+        }
+        if (_inputFileName == null || _outputFileName == null) {
+            System.err.println
+                ("Error: No input or output data set file name given.");
+            System.err.println();
+            printUsage();
+            System.exit(-1);
+        }
+    }
+
+    private void printUsage()
+    {
+        System.out.println
+            ("Usage: jcp_convert [options] <libsvm formatted data set> " +
+             "<output .jcpd file>");
+        System.out.println();
+        System.out.println
+            ("  -h                Print this message and exit.");
+        System.out.println
+            ("  -f                Store the values as 32-bit floats.");
+    }
+
+    private void convert()
+        throws IOException
+    {
+        long t1 = System.currentTimeMillis();
+        FileInputStream input = new FileInputStream(_inputFileName);
+        CSRBuilder csr = new libsvmReader().readCSR(input);
+        input.close();
+        System.err.println("Loaded the dataset " + _inputFileName +
+                           " containing " + csr.rows() +
+                           " instances with " + csr.columns() +
+                           " attributes and " + csr.nonZeros() +
+                           " non-zero values.");
+        long t2 = System.currentTimeMillis();
+        System.err.println("Duration " + (double)(t2 - t1)/1000.0 + " sec.");
+
+        jcpdWriter writer = new jcpdWriter();
+        writer.setFloatValues(_floatValues);
+        FileOutputStream output = new FileOutputStream(_outputFileName);
+        writer.write(csr, output);
+        output.close();
+        long t3 = System.currentTimeMillis();
+        System.err.println("Saved the dataset " + _outputFileName + ".");
+        System.err.println("Duration " + (double)(t3 - t2)/1000.0 + " sec.");
+    }
+
+    public static void main(String[] args)
+        throws IOException
+    {
+        new jcp_convert().run(args);
+    }
+}
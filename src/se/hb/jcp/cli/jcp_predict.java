@@ -20,6 +20,7 @@ import java.io.*;
 
 import org.json.JSONException;
 import se.hb.jcp.cp.*;
+import se.hb.jcp.io.DataSetBlockReader;
 
 import se.hb.jcp.ml.IClassifier;
 
@@ -39,6 +40,7 @@ public class jcp_predict
     private double  _significanceLevel = 0.10;
     private boolean _useCP = true;
     private boolean _debug = false;
+    private int     _blockSize = 0;
 
     public jcp_predict()
     {
@@ -54,10 +56,11 @@ public class jcp_predict
                             _jsonOutputFileName,
                             _pValuesOutputFileName, _labelsOutputFileName,
                             _significanceLevel,
-                            _debug);
+                            _debug,
+                            _blockSize);
         } else {
             runPlainTest(_modelFileName, _testSetFileName,
-                         _labelsOutputFileName);
+                         _labelsOutputFileName, _blockSize);
         }
     }
 
@@ -140,6 +143,33 @@ public class jcp_predict
                         printUsage();
                         System.exit(-1);
                     }
+                } else if (args[i].equals("-b")) {
+                    if (++i < args.length) {
+                        boolean ok = false;
+                        try {
+                            int b = Integer.parseInt(args[i]);
+                            if (b > 0) {
+                                _blockSize = b;
+                                ok = true;
+                            }
+                        } catch (Exception e) {
+                            // Handled below as ok is false.
+                        }
+                        if (!ok) {
+                            System.err.println
+                                ("Error: Illegal block size '" + args[i] +
+                                 "' given to -b.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    } else {
+                        System.err.println
+                            ("Error: No block size given to -b.");
+                        System.err.println();
+                        printUsage();
+                        System.exit(-1);
+                    }
                 } else if (args[i].equals("-nocp")) {
                     _useCP = false;
                 } else if (args[i].equals("-debug")) {
@@ -199,6 +229,9 @@ public class jcp_predict
             ("  -sl <file>        Save the predicted labels in <file>.");
         System.out.println
             ("  -sp <file>        Save the predicted p-values in <file>.");
+        System.out.println
+            ("  -b <size>         Read and predict the data set in blocks " +
+             "of <size> instances.");
         System.out.println
             ("  -nocp             Use a classifier without " +
              "conformal prediction. Must be given for -nocp models.");
@@ -208,7 +241,8 @@ public class jcp_predict
 
     private static void runPlainTest(String modelFileName,
                                      String dataSetFileName,
-                                     String labelsOutputFileName)
+                                     String labelsOutputFileName,
+                                     int    blockSize)
         throws IOException
     {
         System.out.println("Loading the model '" + modelFileName +
@@ -218,10 +252,40 @@ public class jcp_predict
         long t2 = System.currentTimeMillis();
         System.out.println("Duration " + (double)(t2 - t1)/1000.0 + " sec.");
 
-        System.out.println("Loading the data set '" + dataSetFileName +
-                           "'.");
-        DataSet testSet = DataSetTools.loadDataSet(dataSetFileName,
-                                                   c.nativeStorageTemplate());
+        FileInputStream file = null;
+        DataSetBlockReader testSet;
+        if (blockSize > 0) {
+            System.out.println("Opening the data set '" + dataSetFileName +
+                               "'.");
+            file = new FileInputStream(dataSetFileName);
+            testSet = DataSetTools.readBlocks(file, dataSetFileName,
+                                              c.nativeStorageTemplate(),
+                                              blockSize);
+            System.out.println("Testing accuracy in blocks of " + blockSize +
+                               " instances.");
+        } else {
+            System.out.println("Loading the data set '" + dataSetFileName +
+                               "'.");
+            final DataSet dataSet =
+                DataSetTools.loadDataSet(dataSetFileName,
+                                         c.nativeStorageTemplate());
+            // The whole data set as a single block.
+            testSet = new DataSetBlockReader(Math.max(1, dataSet.y.length)) {
+                private boolean _done = false;
+
+                @Override
+                public DataSet nextBlock()
+                {
+                    if (_done || dataSet.y.length == 0) {
+                        return null;
+                    }
+                    _done = true;
+                    return dataSet;
+                }
+            };
+            System.out.println("Testing accuracy on " + dataSet.x.rows() +
+                               " instances.");
+        }
         long t3 = System.currentTimeMillis();
         System.out.println("Duration " + (double)(t3 - t2)/1000.0 + " sec.");
 
@@ -233,30 +297,35 @@ public class jcp_predict
                         (new FileOutputStream(labelsOutputFileName), "utf-8"));
         }
 
-        System.out.println("Testing accuracy on " + testSet.x.rows() +
-                           " instances.");
-
         int correct = 0;
-        for (int i = 0; i < testSet.x.rows(); i++) {
-            double prediction =
-                c.predict(testSet.x.viewRow(i));
-            if (labelsOutput != null) {
-                labelsOutput.write("" + prediction + " ");
-            }
-            if (prediction == testSet.y[i]) {
-                correct++;
-            }
-            if (labelsOutput != null) {
-                labelsOutput.newLine();
+        int total = 0;
+        DataSet block;
+        while ((block = testSet.nextBlock()) != null) {
+            for (int i = 0; i < block.x.rows(); i++) {
+                double prediction =
+                    c.predict(block.x.viewRow(i));
+                if (labelsOutput != null) {
+                    labelsOutput.write("" + prediction + " ");
+                }
+                if (prediction == block.y[i]) {
+                    correct++;
+                }
+                if (labelsOutput != null) {
+                    labelsOutput.newLine();
+                }
             }
+            total += block.y.length;
         }
         long t4 = System.currentTimeMillis();
         if (labelsOutput != null) {
             labelsOutput.close();
         }
+        if (file != null) {
+            file.close();
+        }
 
         System.out.println("Accuracy " +
-                           ((double)correct / testSet.y.length));
+                           ((double)correct / total));
         System.out.println("Duration " +
                            (double)(t4 - t3)/1000.0 + " sec.");
 
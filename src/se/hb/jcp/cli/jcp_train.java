@@ -30,8 +30,10 @@ import org.json.JSONTokener;
 import se.hb.jcp.cp.*;
 import se.hb.jcp.nc.*;
 
+import se.hb.jcp.ml.BaggingClassifier;
 import se.hb.jcp.ml.ClassifierFactory;
 import se.hb.jcp.ml.IClassifier;
+import se.hb.jcp.ml.IOutOfBagClassProbabilityClassifier;
 
 /**
  * Command line training tool for JCP.
@@ -42,6 +44,10 @@ import se.hb.jcp.ml.IClassifier;
 public class jcp_train
 {
     private int     _ncFunctionType = 0;
+    // Several nonconformity functions with combined p-values, or null.
+    private int[]   _ncFunctionTypes;
+    private int     _pValueCombination =
+        CombinedInductiveConformalClassifier.BONFERRONI;
     private IClassifier _classifier;
     private String  _dataSetFileName;
     private String  _calibrationSetFileName;
@@ -52,6 +58,8 @@ public class jcp_train
     private DataSet _test;
     private boolean _useLCCC = false;
     private boolean _useTCC = false;
+    private boolean _useOOB = false;
+    private int     _bagMembers = 10;
     private boolean _useCP = true;
     private boolean _useMPC = false;
     private boolean _validate = false;
@@ -73,6 +81,9 @@ public class jcp_train
         if (_useCP && _useTCC) {
             // Supports train and save and/or test.
             trainTCC(_dataSetFileName);
+        } else if (_useCP && _useOOB) {
+            // Supports train and save and/or test.
+            trainOOB(_dataSetFileName);
         } else if (_useCP) {
             // Supports train, calibrate and save and/or test.
           if (_calibrationSetFileName != null) {
@@ -124,6 +135,40 @@ public class jcp_train
                             System.exit(-1);
                         }
                     }
+                } else if (args[i].equals("-ncs")) {
+                    if (++i < args.length) {
+                        boolean ok = false;
+                        try {
+                            String[] items = args[i].split(",");
+                            String[] NCFs =
+                                ClassificationNonconformityFunctionFactory.
+                                    getInstance().getNonconformityFunctions();
+                            int[] types = new int[items.length];
+                            ok = true;
+                            for (int t = 0; t < items.length; t++) {
+                                types[t] = Integer.parseInt(items[t].trim());
+                                if (!(0 <= types[t] &&
+                                      types[t] < NCFs.length)) {
+                                    ok = false;
+                                }
+                            }
+                            _ncFunctionTypes = types;
+                        } catch (Exception e) {
+                            // Handled below as ok is false.
+                        }
+                        if (!ok) {
+                            System.err.println
+                                ("Error: Illegal nonconformity function " +
+                                 "numbers '" + args[i] +
+                                 "' given to -ncs.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    }
+                } else if (args[i].equals("-avgp")) {
+                    _pValueCombination =
+                        CombinedInductiveConformalClassifier.AVERAGE;
                 } else if (args[i].equals("-c")) {
                     if (++i < args.length) {
                         boolean ok = false;
@@ -208,6 +253,36 @@ public class jcp_train
                     _validate = true;
                 } else if (args[i].equals("-tcc")) {
                     _useTCC = true;
+                } else if (args[i].equals("-oob")) {
+                    _useOOB = true;
+                } else if (args[i].equals("-bags")) {
+                    if (++i < args.length) {
+                        boolean ok = false;
+                        try {
+                            int b = Integer.parseInt(args[i]);
+                            if (0 < b) {
+                                _bagMembers = b;
+                                ok = true;
+                            }
+                        } catch (Exception e) {
+                            // Handled below as ok is false.
+                        }
+                        if (!ok) {
+                            System.err.println
+                                ("Error: Illegal number of members '" +
+                                 args[i] +
+                                 "' given to -bags.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    } else {
+                        System.err.println
+                            ("Error: No number of members given to -bags.");
+                        System.err.println();
+                        printUsage();
+                        System.exit(-1);
+                    }
                 } else if (args[i].equals("-lccc")) {
                     _useLCCC = true;
                 } else if (args[i].equals("-mpc")) {
@@ -291,9 +366,40 @@ public class jcp_train
             printUsage();
             System.exit(-1);
         }
+        if (_ncFunctionTypes != null && (_useTCC || _useOOB || !_useCP)) {
+            System.err.println
+                ("Error: -ncs is only supported for inductive conformal " +
+                 "classification.");
+            System.err.println();
+            printUsage();
+            System.exit(-1);
+        }
+        if (_useOOB && (_useTCC || !_useCP)) {
+            System.err.println
+                ("Error: -oob is only supported for inductive conformal " +
+                 "classification.");
+            System.err.println();
+            printUsage();
+            System.exit(-1);
+        }
+        if (_useOOB &&
+            !ClassificationNonconformityFunctionFactory.getInstance().
+                isClassProbabilityBased(_ncFunctionType)) {
+            System.err.println
+                ("Error: -oob requires a nonconformity function based on " +
+                 "class probabilities.");
+            System.err.println();
+            printUsage();
+            System.exit(-1);
+        }
         _classifier =
             ClassifierFactory.getInstance().createClassifier(classifierType,
                                                              classifierConfig);
+        if (_useOOB &&
+            !(_classifier instanceof IOutOfBagClassProbabilityClassifier)) {
+            // Out-of-bag calibration needs a bagged ensemble.
+            _classifier = new BaggingClassifier(_classifier, _bagMembers);
+        }
     }
 
     private void printUsage()
@@ -330,6 +436,19 @@ public class jcp_train
                 }
             }
         }
+        System.out.println
+            ("  -ncs <ncfunc #,...> Combine the p-values of several " +
+             "nonconformity functions");
+        System.out.println
+            ("                    sharing one trained classifier, e.g. " +
+             "-ncs 0,1,3. By default the");
+        System.out.println
+            ("                    Bonferroni combination is used. " +
+             "Applies to inductive conformal");
+        System.out.println
+            ("                    classification.");
+        System.out.println
+            ("  -avgp             Combine the p-values of -ncs by averaging.");
         System.out.println
             ("  -c <classifier #> Select the classifier to use.");
         System.out.println
@@ -360,6 +479,20 @@ public class jcp_train
              "(default).");
         System.out.println
             ("  -tcc              Use transductive conformal classification.");
+        System.out.println
+            ("  -oob              Use out-of-bag conformal classification. " +
+             "The whole training set");
+        System.out.println
+            ("                    is used for both training and " +
+             "calibration. Classifiers that are");
+        System.out.println
+            ("                    not bagged ensembles, e.g. random " +
+             "forests, are bagged.");
+        System.out.println
+            ("  -bags <members>   Use <members> bagged classifiers for " +
+             "out-of-bag conformal");
+        System.out.println
+            ("                    classification (default 10).");
         System.out.println
             ("  -lccc             Use the label conditional extension to " +
              "conformal classification.");
@@ -458,16 +591,32 @@ public class jcp_train
                                " instances.");
         }
 
-        IConformalClassifier icc =
-            new InductiveConformalClassifier
-                    (ClassificationNonconformityFunctionFactory.getInstance().
-                         createNonconformityFunction(_ncFunctionType,
-                                                     classes,
-                                                     _classifier),
-                     classes, _useLCCC);
-
-        ((InductiveConformalClassifier)icc).fit(_training.x, _training.y,
-                                                _calibration.x, _calibration.y);
+        IConformalClassifier icc;
+        if (_ncFunctionTypes == null) {
+            icc = new InductiveConformalClassifier
+                      (ClassificationNonconformityFunctionFactory.
+                           getInstance().
+                           createNonconformityFunction(_ncFunctionType,
+                                                       classes,
+                                                       _classifier),
+                       classes, _useLCCC);
+            // Precompute the label set thresholds for the selected
+            // significance.
+            ((InductiveConformalClassifier)icc).
+                setSignificanceLevels(_significanceLevel);
+
+            ((InductiveConformalClassifier)icc).
+                fit(_training.x, _training.y, _calibration.x, _calibration.y);
+        } else {
+            icc = new CombinedInductiveConformalClassifier
+                      (createNonconformityFunctions(classes),
+                       classes, _pValueCombination, _useLCCC);
+            ((CombinedInductiveConformalClassifier)icc).
+                setSignificanceLevels(_significanceLevel);
+
+            ((CombinedInductiveConformalClassifier)icc).
+                fit(_training.x, _training.y, _calibration.x, _calibration.y);
+        }
         if (_useMPC) {
             icc = new ConformalMultiProbabilisticClassifier(icc);
             ((ConformalMultiProbabilisticClassifier)icc)
@@ -493,6 +642,37 @@ public class jcp_train
         }
     }
 
+  /**
+   * Creates the nonconformity functions selected by -ncs on the same
+   * classifier so that it is only trained once.
+   */
+  private IClassificationNonconformityFunction[]
+      createNonconformityFunctions(double[] classes)
+  {
+        ClassificationNonconformityFunctionFactory factory =
+            ClassificationNonconformityFunctionFactory.getInstance();
+        IClassificationNonconformityFunction[] ncs =
+            new IClassificationNonconformityFunction[_ncFunctionTypes.length];
+        // The class probability wrapper of the classifier, if needed.
+        IClassifier wrapper = null;
+        for (int i = 0; i < ncs.length; i++) {
+            ncs[i] = factory.createNonconformityFunction(_ncFunctionTypes[i],
+                                                         classes,
+                                                         _classifier);
+            IClassifier classifier = ncs[i].getClassifier();
+            if (classifier != null && classifier != _classifier) {
+                // Share one wrapper rather than one per function.
+                if (wrapper == null) {
+                    wrapper = classifier;
+                } else {
+                    ncs[i] = factory.createNonconformityFunction
+                                 (_ncFunctionTypes[i], classes, wrapper);
+                }
+            }
+        }
+        return ncs;
+  }
+
   private void trainTCC(String dataSetFileName)
           throws IOException, JSONException {
         long t1 = System.currentTimeMillis();
@@ -556,6 +736,72 @@ public class jcp_train
         }
     }
 
+  private void trainOOB(String dataSetFileName)
+          throws IOException, JSONException {
+        long t1 = System.currentTimeMillis();
+        _full = DataSetTools.loadDataSet(dataSetFileName);
+        SimpleEntry<double[],SortedSet<Double>> pair =
+            DataSetTools.extractClasses(_full);
+        double[] classes = pair.getKey();
+        long t2 = System.currentTimeMillis();
+        System.out.println("Duration " + (double)(t2 - t1)/1000.0 + " sec.");
+
+        if (!_useMPC) {
+            _calibrationFraction = 0.0;
+        }
+        if (_validate) {
+            splitDataset((1 - _validationFraction)*(1 - _calibrationFraction),
+                         (1 - _validationFraction)*_calibrationFraction);
+        } else {
+            splitDataset((1 - _calibrationFraction), _calibrationFraction);
+        }
+        long t3 = System.currentTimeMillis();
+        System.out.println("Duration " + (double)(t3 - t2)/1000.0 + " sec.");
+
+        System.out.println("Training and calibrating out-of-bag on " +
+                           _training.x.rows() + " instances.");
+        if (_useMPC) {
+            System.out.println("MPC calibration set " + _calibration.x.rows() +
+                               " instances.");
+        }
+
+        IConformalClassifier oob =
+            new OutOfBagConformalClassifier
+                    (ClassificationNonconformityFunctionFactory.getInstance().
+                         createNonconformityFunction(_ncFunctionType,
+                                                     classes,
+                                                     _classifier),
+                     classes, _useLCCC);
+        // Precompute the label set thresholds for the selected significance.
+        ((OutOfBagConformalClassifier)oob).
+            setSignificanceLevels(_significanceLevel);
+
+        ((OutOfBagConformalClassifier)oob).fit(_training.x, _training.y);
+        if (_useMPC) {
+            oob = new ConformalMultiProbabilisticClassifier(oob);
+            ((ConformalMultiProbabilisticClassifier)oob)
+                .calibrate(_calibration.x, _calibration.y);
+        }
+        long t4 = System.currentTimeMillis();
+        System.out.println("Training complete.");
+        System.out.println("Duration " + (double)(t4 - t3)/1000.0 + " sec.");
+
+        if (_validate) {
+            CCTools.runTest(oob, _test, null, null, null, _significanceLevel,
+                            false);
+            long t5 = System.currentTimeMillis();
+            System.out.println("Total Duration " + (double)(t5 - t1)/1000.0 +
+                               " sec.");
+        }
+
+        if (_modelFileName != null) {
+            System.out.println("Saving the model to '" +
+                               _modelFileName + "'...");
+            CCTools.saveModel(oob, _modelFileName);
+            System.out.println("... Done.");
+        }
+    }
+
     private void trainPlainClassifier(String dataSetFileName)
         throws IOException
     {
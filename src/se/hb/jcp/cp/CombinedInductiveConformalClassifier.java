@@ -0,0 +1,654 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+import se.hb.jcp.ml.BogusClassProbabilityClassifier;
+import se.hb.jcp.ml.IClassifier;
+import se.hb.jcp.ml.IClassProbabilityClassifier;
+import se.hb.jcp.ml.PreparedInstance;
+import se.hb.jcp.nc.ClassProbabilityNonconformityFunctionBase;
+import se.hb.jcp.nc.ClassifierNonconformityFunctionBase;
+import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.nc.SVMDistanceNonconformityFunction;
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * Represents an inductive conformal classifier that combines the p-values
+ * of several non-conformity functions based on the same underlying
+ * classifier.
+ *
+ * The underlying classifier is trained once and all non-conformity
+ * functions are calibrated in a single pass over the calibration set.
+ * The class probabilities of an instance are predicted once and shared by
+ * all class probability based non-conformity functions, and the
+ * SVM distance non-conformity function computes the decision values once
+ * for all labels. The calibration and the p-values of each non-conformity
+ * function are handled by an {@link InductiveConformalClassifier}.
+ * The p-value of a label is either the Bonferroni
+ * combination, i.e. the smallest p-value times the number of
+ * non-conformity functions (at most 1), or the average of the p-values
+ * of the non-conformity functions. The Bonferroni combination is valid
+ * while the average is valid at twice the significance level.
+ *
+ * @author agent(at)local
+ */
+public class CombinedInductiveConformalClassifier
+    implements IConformalClassifier, java.io.Serializable
+{
+    /** Combine the p-values by the Bonferroni correction. */
+    public static final int BONFERRONI = 0;
+    /** Combine the p-values by averaging. */
+    public static final int AVERAGE = 1;
+
+    private IClassificationNonconformityFunction[] _ncs;
+    // The calibration of each non-conformity function.
+    private InductiveConformalClassifier[] _iccs;
+    private int      _combination;
+    private Double[] _classes;
+    // Unboxed copy of _classes. Sorted so that the index of a class can be
+    // found by binary search.
+    private double[] _classLabels;
+    // For significance-threshold prediction.
+    private double[] _significanceLevels = new double[0];
+    // Runtime configuration. Not saved.
+    private transient ExecutionPolicy _executionPolicy;
+
+    /**
+      * Creates a combined inductive conformal classifier using the supplied
+      * information.
+      *
+      * @param ncs          the untrained non-conformity functions to use. Those based on a classifier should share the same classifier object.
+      * @param targets      the class labels.
+      * @param combination  how to combine the p-values, {@link #BONFERRONI} or {@link #AVERAGE}.
+      */
+    public CombinedInductiveConformalClassifier
+               (IClassificationNonconformityFunction[] ncs,
+                double[] targets,
+                int      combination)
+    {
+        this(ncs, targets, combination, false);
+    }
+
+    /**
+      * Creates a combined inductive conformal classifier using the supplied
+      * information.
+      *
+      * @param ncs                    the untrained non-conformity functions to use. Those based on a classifier should share the same classifier object.
+      * @param targets                the class labels.
+      * @param combination            how to combine the p-values, {@link #BONFERRONI} or {@link #AVERAGE}.
+      * @param useLabelConditionalCP  a boolean indicating whether label conditional conformal prediction should be used.
+      */
+    public CombinedInductiveConformalClassifier
+               (IClassificationNonconformityFunction[] ncs,
+                double[] targets,
+                int      combination,
+                boolean  useLabelConditionalCP)
+    {
+        if (ncs.length == 0) {
+            throw new IllegalArgumentException
+                          ("At least one non-conformity function is needed.");
+        }
+        if (combination != BONFERRONI && combination != AVERAGE) {
+            throw new IllegalArgumentException
+                          ("Unknown p-value combination " + combination + ".");
+        }
+        _ncs = ncs.clone();
+        _iccs = new InductiveConformalClassifier[_ncs.length];
+        for (int k = 0; k < _ncs.length; k++) {
+            _iccs[k] = new InductiveConformalClassifier(_ncs[k], targets,
+                                                        useLabelConditionalCP);
+        }
+        _combination = combination;
+        _classes = _iccs[0].getLabels();
+        _classLabels = Util.sortedDistinct(targets);
+    }
+
+    /**
+     * Trains and calibrates this conformal classifier using the supplied data.
+     * Each distinct underlying classifier is only trained once.
+     *
+     * @param xtr           the attributes of the training instances.
+     * @param ytr           the targets of the training instances.
+     * @param xcal          the attributes of the calibration instances.
+     * @param ycal          the targets of the calibration instances.
+     */
+    public void fit(DoubleMatrix2D xtr, double[] ytr,
+                    DoubleMatrix2D xcal, double[] ycal)
+    {
+        List<IClassifier> trained = new ArrayList<IClassifier>();
+        // Classifiers wrapped to give class probabilities are trained
+        // first as that also trains the wrapped classifier.
+        for (IClassificationNonconformityFunction nc : _ncs) {
+            IClassifier classifier = nc.getClassifier();
+            if (classifier instanceof BogusClassProbabilityClassifier &&
+                !containsIdentical(trained, classifier)) {
+                nc.fit(xtr, ytr);
+                trained.add(classifier);
+                trained.add(((BogusClassProbabilityClassifier)classifier).
+                                getClassifier());
+            }
+        }
+        for (IClassificationNonconformityFunction nc : _ncs) {
+            IClassifier classifier = nc.getClassifier();
+            if (classifier == null) {
+                nc.fit(xtr, ytr);
+            } else if (!containsIdentical(trained, classifier)) {
+                nc.fit(xtr, ytr);
+                trained.add(classifier);
+            }
+        }
+        calibrate(xcal, ycal);
+    }
+
+    /**
+     * Calibrates this conformal classifier using the supplied data.
+     * The non-conformity functions must have been trained first.
+     *
+     * @param xcal          the attributes of the calibration instances.
+     * @param ycal          the targets of the calibration instances.
+     */
+    public void calibrate(DoubleMatrix2D xcal, double[] ycal)
+    {
+        for (IClassificationNonconformityFunction nc : _ncs) {
+            if (!nc.isTrained()) {
+                throw new UnsupportedOperationException
+                              ("The non-conformity functions of the " +
+                               "conformal classifier must be trained before " +
+                               "the classifier can be calibrated.");
+            }
+        }
+        int n = xcal.rows();
+        // The scores of calibration instance i start at i * _ncs.length.
+        double[] scores = new double[n * _ncs.length];
+        new CalculateNCScoresAction(xcal, ycal, scores, 0, n).
+            start(getExecutionPolicy());
+
+        for (int k = 0; k < _ncs.length; k++) {
+            double[] calibrationScores = new double[n];
+            for (int i = 0; i < n; i++) {
+                calibrationScores[i] = scores[i * _ncs.length + k];
+            }
+            _iccs[k].calibrate(calibrationScores, ycal, k == 0);
+        }
+    }
+
+    /**
+     * Sets the significance levels for which label sets can be predicted
+     * by {@link #predictLabelSet(DoubleMatrix1D, int)}.
+     *
+     * @param significanceLevels  the significance levels (0.0-1.0).
+     */
+    public void setSignificanceLevels(double... significanceLevels)
+    {
+        for (double significanceLevel : significanceLevels) {
+            if (!(0.0 <= significanceLevel && significanceLevel <= 1.0)) {
+                throw new IllegalArgumentException
+                              ("Illegal significance level " +
+                               significanceLevel + ".");
+            }
+        }
+        _significanceLevels = significanceLevels.clone();
+    }
+
+    /**
+     * Returns the significance levels for which label sets can be predicted
+     * by {@link #predictLabelSet(DoubleMatrix1D, int)}.
+     *
+     * @return the configured significance levels.
+     */
+    public double[] getSignificanceLevels()
+    {
+        return _significanceLevels.clone();
+    }
+
+    /**
+     * Predicts the label set for the instance x at the configured
+     * significance level with index significanceLevelIndex, i.e. the
+     * labels whose combined p-value is greater than the significance
+     * level. At most 64 classes are supported.
+     *
+     * @param x                       the instance.
+     * @param significanceLevelIndex  the index of the significance level, see {@link #setSignificanceLevels(double...)}.
+     * @return a bitmask with bit c set if class c is included in the label set.
+     */
+    public long predictLabelSet(DoubleMatrix1D x, int significanceLevelIndex)
+    {
+        if (_classes.length > Long.SIZE) {
+            throw new UnsupportedOperationException
+                          ("Too many classes for a long bitmask label set.");
+        }
+        if (!(0 <= significanceLevelIndex &&
+              significanceLevelIndex < _significanceLevels.length)) {
+            throw new IllegalStateException
+                          ("No significance level with index " +
+                           significanceLevelIndex + " has been set. " +
+                           "See setSignificanceLevels().");
+        }
+        double significanceLevel = _significanceLevels[significanceLevelIndex];
+        DoubleMatrix1D pValues = predictPValues(x);
+        long labelSet = 0L;
+        for (int c = 0; c < _classes.length; c++) {
+            if (pValues.getQuick(c) > significanceLevel) {
+                labelSet |= 1L << c;
+            }
+        }
+        return labelSet;
+    }
+
+    /**
+     * Makes a prediction for each instance in x.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @return an array containing a <tt>ConformalClassification</tt> for each instance.
+     */
+    @Override
+    public ConformalClassification[] predict(DoubleMatrix2D x)
+    {
+        int n = x.rows();
+        DoubleMatrix2D pValues = predictPValues(x);
+        ConformalClassification[] predictions = new ConformalClassification[n];
+        for (int i = 0; i < n; i++) {
+            predictions[i] = new ConformalClassification(this,
+                                                         pValues.viewRow(i));
+        }
+        return predictions;
+    }
+
+    /**
+     * Makes a prediction for the instance x.
+     *
+     * @param x             the instance.
+     * @return a prediction in the form of a <tt>ConformalClassification</tt>.
+     */
+    @Override
+    public ConformalClassification predict(DoubleMatrix1D x)
+    {
+        return new ConformalClassification(this, predictPValues(x));
+    }
+
+    /**
+     * Computes the predicted p-values for each target and instance in x.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @return an <tt>DoubleMatrix2D</tt> containing the predicted p-values for each instance.
+     */
+    @Override
+    public DoubleMatrix2D predictPValues(DoubleMatrix2D x)
+    {
+        int n = x.rows();
+        DoubleMatrix2D response = new DenseDoubleMatrix2D(n, _classes.length);
+        new ClassifyPValuesAction(x, response, 0, n).
+            start(getExecutionPolicy());
+        return response;
+    }
+
+   /**
+     * Computes the predicted p-values for the instance x.
+     *
+     * @param x    the instance.
+     * @return an <tt>DoubleMatrix1D</tt> containing the predicted p-values.
+     */
+    @Override
+    public DoubleMatrix1D predictPValues(DoubleMatrix1D x)
+    {
+        DoubleMatrix1D response = new DenseDoubleMatrix1D(_classes.length);
+        predictPValues(x, response);
+        return response;
+    }
+
+   /**
+     * Computes the predicted p-values for the instance x.
+     *
+     * @param x          the instance.
+     * @param pValues    an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     */
+    @Override
+    public void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues)
+    {
+        predictPValues(x, pValues,
+                       new double[_ncs.length * _classes.length],
+                       new double[_classes.length],
+                       new DoubleMatrix1D[_ncs.length]);
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x using the supplied
+     * buffers.
+     *
+     * @param x            the instance.
+     * @param pValues      an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     * @param ncScores     a <tt>double[]</tt> buffer for the non-conformity scores of each function and class.
+     * @param probability  a <tt>double[]</tt> buffer for the class probabilities.
+     * @param prepared     a <tt>DoubleMatrix1D[]</tt> buffer for the instance prepared for each function.
+     */
+    private void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues,
+                                double[] ncScores, double[] probability,
+                                DoubleMatrix1D[] prepared)
+    {
+        calculateNonConformityScores(x, _classLabels, ncScores, probability,
+                                     prepared);
+        int k = _ncs.length;
+        for (int c = 0; c < _classLabels.length; c++) {
+            double combined = (_combination == BONFERRONI) ? 1.0 : 0.0;
+            for (int f = 0; f < k; f++) {
+                double pValue =
+                    _iccs[f].calculatePValue
+                        (ncScores[f * _classLabels.length + c], c);
+                if (_combination == BONFERRONI) {
+                    combined = Math.min(combined, k * pValue);
+                } else {
+                    combined += pValue / k;
+                }
+            }
+            pValues.setQuick(c, combined);
+        }
+    }
+
+    /**
+     * Computes the non-conformity scores of the instance x for each
+     * non-conformity function and target. The scores of function f start
+     * at <tt>f * targets.length</tt> in ncScores. The instance is prepared
+     * once per distinct native storage format and the class probabilities
+     * of the instance are predicted at most once per distinct classifier.
+     *
+     * @param x            the instance.
+     * @param targets      the targets/classes/labels.
+     * @param ncScores     a <tt>double[]</tt> buffer for the non-conformity scores.
+     * @param probability  a <tt>double[]</tt> buffer for the class probabilities.
+     * @param prepared     a <tt>DoubleMatrix1D[]</tt> buffer for the instance prepared for each function.
+     */
+    private void calculateNonConformityScores(DoubleMatrix1D x,
+                                              double[] targets,
+                                              double[] ncScores,
+                                              double[] probability,
+                                              DoubleMatrix1D[] prepared)
+    {
+        prepareInstance(x, prepared);
+        // The classifier whose class probabilities are in probability.
+        IClassifier predicted = null;
+        for (int f = 0; f < _ncs.length; f++) {
+            IClassificationNonconformityFunction nc = _ncs[f];
+            DoubleMatrix1D instance = prepared[f];
+            int offset = f * targets.length;
+            if (nc instanceof ClassProbabilityNonconformityFunctionBase) {
+                ClassProbabilityNonconformityFunctionBase pnc =
+                    (ClassProbabilityNonconformityFunctionBase)nc;
+                if (pnc.getClassifier() != predicted) {
+                    predicted = pnc.getClassifier();
+                    ((IClassProbabilityClassifier)predicted).
+                        predict(instance, probability);
+                }
+                for (int t = 0; t < targets.length; t++) {
+                    ncScores[offset + t] =
+                        pnc.calculateNonConformityScoreFromProbabilities
+                            (instance, targets[t], probability);
+                }
+            } else if (nc instanceof SVMDistanceNonconformityFunction &&
+                       targets.length > 1) {
+                ((SVMDistanceNonconformityFunction)nc).
+                    calculateNonConformityScores(instance, targets,
+                                                 ncScores, offset);
+            } else {
+                for (int t = 0; t < targets.length; t++) {
+                    ncScores[offset + t] =
+                        nc.calculateNonConformityScore(instance, targets[t]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts x to the native format of the model of each non-conformity
+     * function. Functions with the same native storage format share the
+     * converted instance, so x is converted once per distinct format
+     * rather than in each evaluation.
+     *
+     * @param x         the instance.
+     * @param prepared  a <tt>DoubleMatrix1D[]</tt> to store the instance prepared for each function in.
+     */
+    private void prepareInstance(DoubleMatrix1D x, DoubleMatrix1D[] prepared)
+    {
+        for (int f = 0; f < _ncs.length; f++) {
+            Class<?> format = _ncs[f].nativeStorageTemplate().getClass();
+            prepared[f] = null;
+            for (int g = 0; g < f; g++) {
+                if (_ncs[g].nativeStorageTemplate().getClass() == format) {
+                    prepared[f] = prepared[g];
+                    break;
+                }
+            }
+            if (prepared[f] == null) {
+                prepared[f] = PreparedInstance.prepare(_ncs[f], x);
+            }
+        }
+    }
+
+    /**
+     * Returns the first non-conformity function.
+     *
+     * @return the first <tt>IClassificationNonconformityFunction</tt>.
+     */
+    @Override
+    public IClassificationNonconformityFunction getNonconformityFunction()
+    {
+        return _ncs[0];
+    }
+
+    /**
+     * Returns the combined non-conformity functions.
+     *
+     * @return the <tt>IClassificationNonconformityFunction</tt>s in the order given at construction.
+     */
+    public IClassificationNonconformityFunction[] getNonconformityFunctions()
+    {
+        return _ncs.clone();
+    }
+
+    /**
+     * Returns how the p-values are combined.
+     *
+     * @return {@link #BONFERRONI} or {@link #AVERAGE}.
+     */
+    public int getCombination()
+    {
+        return _combination;
+    }
+
+    /**
+     * Returns the execution policy used for the parallelized methods of
+     * this conformal classifier.
+     *
+     * @return the execution policy.
+     */
+    public ExecutionPolicy getExecutionPolicy()
+    {
+        return ExecutionPolicy.orDefault(_executionPolicy);
+    }
+
+    /**
+     * Sets the execution policy used for the parallelized methods of this
+     * conformal classifier and its non-conformity functions.
+     *
+     * @param policy  the execution policy or <tt>null</tt> for the default execution policy.
+     */
+    public void setExecutionPolicy(ExecutionPolicy policy)
+    {
+        _executionPolicy = policy;
+        for (IClassificationNonconformityFunction nc : _ncs) {
+            if (nc instanceof ClassifierNonconformityFunctionBase) {
+                ((ClassifierNonconformityFunctionBase)nc).
+                    setExecutionPolicy(policy);
+            }
+        }
+    }
+
+    /**
+     * Returns whether this classifier has been trained and calibrated.
+     *
+     * @return <tt>true</tt> if the classifier has been trained and calibrated or <tt>false</tt> otherwise.
+     */
+    @Override
+    public boolean isTrained()
+    {
+        return _iccs[0].isTrained();
+    }
+
+    @Override
+    public int getAttributeCount()
+    {
+        return _ncs[0].getAttributeCount();
+    }
+
+    @Override
+    public Double[] getLabels()
+    {
+        return _classes;
+    }
+
+    @Override
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _ncs[0].nativeStorageTemplate();
+    }
+
+    private static boolean containsIdentical(List<IClassifier> classifiers,
+                                             IClassifier classifier)
+    {
+        for (IClassifier c : classifiers) {
+            if (c == classifier) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    class ClassifyPValuesAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        DoubleMatrix2D _response;
+        double[] _ncScores;
+        double[] _probability;
+        DoubleMatrix1D[] _prepared;
+
+        public ClassifyPValuesAction(DoubleMatrix2D x,
+                                     DoubleMatrix2D response,
+                                     int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _response = response;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _ncScores = new double[_ncs.length * _classes.length];
+            _probability = new double[_classes.length];
+            _prepared = new DoubleMatrix1D[_ncs.length];
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _ncScores = null;
+            _probability = null;
+            _prepared = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            predictPValues(_x.viewRow(i), _response.viewRow(i),
+                           _ncScores, _probability, _prepared);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new ClassifyPValuesAction(_x, _response, first, last);
+        }
+    }
+
+    class CalculateNCScoresAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _y;
+        double[] _nonConformityScores;
+        double[] _target;
+        double[] _ncScores;
+        double[] _probability;
+        DoubleMatrix1D[] _prepared;
+
+        public CalculateNCScoresAction(DoubleMatrix2D x,
+                                       double[]       y,
+                                       double[]       nonConformityScores,
+                                       int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _y = y;
+            _nonConformityScores = nonConformityScores;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _target = new double[1];
+            _ncScores = new double[_ncs.length];
+            _probability = new double[_classes.length];
+            _prepared = new DoubleMatrix1D[_ncs.length];
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _target = null;
+            _ncScores = null;
+            _probability = null;
+            _prepared = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _target[0] = _y[i];
+            calculateNonConformityScores(_x.viewRow(i), _target,
+                                         _ncScores, _probability, _prepared);
+            System.arraycopy(_ncScores, 0,
+                             _nonConformityScores, i * _ncs.length,
+                             _ncs.length);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new CalculateNCScoresAction(_x, _y, _nonConformityScores,
+                                               first, last);
+        }
+    }
+}
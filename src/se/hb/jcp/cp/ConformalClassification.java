@@ -108,8 +108,15 @@ public class ConformalClassification
                     return i;
                 }
             }
-            significanceLevel -=
+            double nextSignificanceLevel =
+                significanceLevel -
                 0.5*(significanceLevel - targetSignificanceLevel);
+            if (nextSignificanceLevel == significanceLevel) {
+                // No representable level remains above the target, which
+                // happens when the two largest p-values are equal.
+                break;
+            }
+            significanceLevel = nextSignificanceLevel;
         }
         return -1;
     }
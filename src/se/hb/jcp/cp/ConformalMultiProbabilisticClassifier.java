@@ -23,6 +23,8 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
 import se.hb.jcp.util.RealIndexedMatrix2D;
 
 /**
@@ -39,11 +41,16 @@ import se.hb.jcp.util.RealIndexedMatrix2D;
 public class ConformalMultiProbabilisticClassifier
     implements IConformalClassifier, java.io.Serializable
 {
-    private static final boolean PARALLEL = false;
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = 3494427179469965233L;
+
     private static final double RESOLUTION = 5;
 
     private final IConformalClassifier _classifier;
     private RealIndexedMatrix2D<Double> _calibration;
+    // Runtime configuration. Not saved.
+    private transient ExecutionPolicy _executionPolicy;
 
     /**
      * Creates a multi-probabilistic conformal classifier with
@@ -116,15 +123,36 @@ public class ConformalMultiProbabilisticClassifier
         int n = x.rows();
         ConformalMultiProbabilisticClassification[] predictions
             = new ConformalMultiProbabilisticClassification[n];
-        if (!PARALLEL) {
+        predict(x, predictions);
+        return predictions;
+    }
+
+    /**
+     * Makes a prediction for each instance in x and stores it in
+     * predictions.
+     * The method is parallellized over the instances.
+     * If the work is cancelled through the execution policy a
+     * <tt>CancellationException</tt> is thrown. The predictions completed
+     * before that remain in predictions while the others are left
+     * <tt>null</tt>.
+     *
+     * @param x             the instances.
+     * @param predictions   an array to store a <tt>ConformalMultiProbabilisticClassification</tt> for each instance in.
+     */
+    public void predict(DoubleMatrix2D x,
+                        ConformalMultiProbabilisticClassification[] predictions)
+    {
+        int n = x.rows();
+        if (!getExecutionPolicy().isParallel()) {
             for (int i = 0; i < n; i++) {
+                getExecutionPolicy().checkCancelled();
                 DoubleMatrix1D instance = x.viewRow(i);
                 predictions[i] = predict(instance);
             }
         } else {
-            // FIXME!
+            ClassifyAction all = new ClassifyAction(x, predictions, 0, n);
+            all.start(getExecutionPolicy());
         }
-        return predictions;
     }
 
     /**
@@ -173,6 +201,28 @@ public class ConformalMultiProbabilisticClassifier
         _classifier.predictPValues(x, pValues);
     }
 
+    /**
+     * Returns the execution policy used for the parallelized methods of
+     * this conformal classifier.
+     *
+     * @return the execution policy.
+     */
+    public ExecutionPolicy getExecutionPolicy()
+    {
+        return ExecutionPolicy.orDefault(_executionPolicy);
+    }
+
+    /**
+     * Sets the execution policy used for the parallelized methods of this
+     * conformal classifier.
+     *
+     * @param policy  the execution policy or <tt>null</tt> for the default execution policy.
+     */
+    public void setExecutionPolicy(ExecutionPolicy policy)
+    {
+        _executionPolicy = policy;
+    }
+
     /**
      * Returns the underlying conformal classifier.
      *
@@ -294,4 +344,32 @@ public class ConformalMultiProbabilisticClassifier
         }
         return changed;
     }
+
+    class ClassifyAction extends se.hb.jcp.util.ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        ConformalMultiProbabilisticClassification[] _predictions;
+
+        public ClassifyAction
+                   (DoubleMatrix2D x,
+                    ConformalMultiProbabilisticClassification[] predictions,
+                    int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _predictions = predictions;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _predictions[i] = predict(_x.viewRow(i));
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new ClassifyAction(_x, _predictions, first, last);
+        }
+    }
 }
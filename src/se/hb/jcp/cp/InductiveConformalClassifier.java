@@ -24,12 +24,18 @@ import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
 
 import java.util.Arrays;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.BitSet;
 
+import se.hb.jcp.ml.IBatchClassProbabilityClassifier;
+import se.hb.jcp.ml.PreparedInstance;
+import se.hb.jcp.nc.ClassProbabilityNonconformityFunctionBase;
+import se.hb.jcp.nc.ClassifierNonconformityFunctionBase;
 import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.nc.SVMDistanceNonconformityFunction;
+import se.hb.jcp.util.ExecutionPolicy;
 import se.hb.jcp.util.ParallelizedAction;
 
 /**
@@ -39,16 +45,25 @@ import se.hb.jcp.util.ParallelizedAction;
 public class InductiveConformalClassifier
     implements IConformalClassifier, java.io.Serializable
 {
-    private static final boolean PARALLEL = true;
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = -5615845180340672393L;
 
     private IClassificationNonconformityFunction _nc;
     private Double[] _classes;
-    private SortedMap<Double, Integer> _classIndex;
+    // Unboxed copy of _classes. Sorted so that the index of a class can be
+    // found by binary search.
+    private double[] _classLabels;
     // For normal conformal prediction.
     private double[] _calibrationScores;
     // For label/class-conditional conformal prediction.
     private boolean    _useLabelConditionalCP;
     private double[][] _classCalibrationScores;
+    // For significance-threshold prediction.
+    private double[]   _significanceLevels = new double[0];
+    private double[][] _ncThresholds;
+    // Runtime configuration. Not saved.
+    private ExecutionPolicy _executionPolicy;
 
     /**
       * Creates an inductive conformal classifier using the supplied
@@ -77,12 +92,11 @@ public class InductiveConformalClassifier
     {
         _nc = nc;
         _useLabelConditionalCP = useLabelConditionalCP;
-        _classIndex = new TreeMap<Double, Integer>();
-        for (int c = 0; c < targets.length; c++) {
-            _classIndex.put(targets[c], c);
+        _classLabels = Util.sortedDistinct(targets);
+        _classes = new Double[_classLabels.length];
+        for (int c = 0; c < _classLabels.length; c++) {
+            _classes[c] = _classLabels[c];
         }
-        _classes = _classIndex.keySet().toArray(new Double[0]);
-        Arrays.sort(_classes); // FIXME: Redundant?
     }
 
     /**
@@ -117,55 +131,325 @@ public class InductiveConformalClassifier
                            "can be calibrated.");
         }
         int n = xcal.rows();
-        _calibrationScores = new double[n];
-        if (_useLabelConditionalCP) {
-            _classCalibrationScores = new double[_classes.length][];
-            for (int c = 0; c < _classes.length; c++) {
-                _classCalibrationScores[c] = new double[n];
-                Arrays.fill(_classCalibrationScores[c], -Double.MAX_VALUE);
-            }
-        }
-        if (!PARALLEL) {
+        double[] calibrationScores = new double[n];
+        if (!getExecutionPolicy().isParallel()) {
             for (int i = 0; i < n; i++) {
+                getExecutionPolicy().checkCancelled();
                 DoubleMatrix1D instance = xcal.viewRow(i);
-                _calibrationScores[i] =
+                calibrationScores[i] =
                     _nc.calculateNonConformityScore(instance, ycal[i]);
-                if (_useLabelConditionalCP) {
-                    _classCalibrationScores[_classIndex.get(ycal[i])][i] =
-                        _calibrationScores[i];
-                }
             }
         } else {
             CalculateNCScoresAction all =
-                new CalculateNCScoresAction(xcal, ycal, _calibrationScores,
-                                            _classCalibrationScores,
+                new CalculateNCScoresAction(xcal, ycal, calibrationScores,
                                             0, n);
-            all.start();
+            all.start(getExecutionPolicy());
         }
-        Arrays.sort(_calibrationScores);
+        calibrate(calibrationScores, ycal);
+    }
+
+    /**
+     * Calibrates this conformal classifier using the supplied non-conformity
+     * scores of the calibration instances. The array of scores is taken over
+     * by this classifier.
+     *
+     * @param calibrationScores  the non-conformity scores of the calibration instances.
+     * @param ycal               the targets of the calibration instances.
+     */
+    protected void calibrate(double[] calibrationScores, double[] ycal)
+    {
+        calibrate(calibrationScores, ycal, true);
+    }
+
+    /**
+     * Calibrates this conformal classifier using the supplied non-conformity
+     * scores of the calibration instances. The array of scores is taken over
+     * by this classifier.
+     *
+     * @param calibrationScores  the non-conformity scores of the calibration instances.
+     * @param ycal               the targets of the calibration instances.
+     * @param reportClassSizes   a boolean indicating whether the calibration set size of each class should be printed for label conditional conformal prediction.
+     */
+    void calibrate(double[] calibrationScores, double[] ycal,
+                   boolean reportClassSizes)
+    {
+        // The calibration is built in local arrays so that a cancelled
+        // calibration leaves this classifier unchanged.
+        double[][] classCalibrationScores = null;
         if (_useLabelConditionalCP) {
-            // FIXME: This is ugly.
+            int[] classCounts = new int[_classes.length];
+            for (int i = 0; i < ycal.length; i++) {
+                classCounts[classIndexOf(ycal[i])]++;
+            }
+            classCalibrationScores = new double[_classes.length][];
             for (int c = 0; c < _classes.length; c++) {
-                Arrays.sort(_classCalibrationScores[c]);
-                int i = 0;
-                while(i < _classCalibrationScores[c].length &&
-                      _classCalibrationScores[c][i] == -Double.MAX_VALUE) {
-                    i++;
+                classCalibrationScores[c] = new double[classCounts[c]];
+                classCounts[c] = 0;
+            }
+            for (int i = 0; i < ycal.length; i++) {
+                int c = classIndexOf(ycal[i]);
+                classCalibrationScores[c][classCounts[c]++] =
+                    calibrationScores[i];
+            }
+            for (int c = 0; c < _classes.length; c++) {
+                Arrays.sort(classCalibrationScores[c]);
+                if (reportClassSizes) {
+                    System.out.println("Calibration set size for class " + c +
+                                       " label " + _classes[c] + " is " +
+                                       classCalibrationScores[c].length);
                 }
-                if (i < _classCalibrationScores[c].length) {
-                    _classCalibrationScores[c] =
-                        Arrays.copyOfRange(_classCalibrationScores[c],
-                                           i,
-                                           _classCalibrationScores[c].length);
+            }
+        }
+        Arrays.sort(calibrationScores);
+        _calibrationScores = calibrationScores;
+        _classCalibrationScores = classCalibrationScores;
+        calculateNCThresholds();
+    }
+
+    /**
+     * Sets the significance levels for which label sets can be predicted
+     * by {@link #predictLabelSet(DoubleMatrix1D, int, PredictionScratch)}.
+     * The non-conformity score threshold for each class and significance
+     * level is precomputed at calibration time, or immediately if this
+     * classifier already has been calibrated.
+     *
+     * @param significanceLevels  the significance levels (0.0-1.0).
+     */
+    public void setSignificanceLevels(double... significanceLevels)
+    {
+        for (double significanceLevel : significanceLevels) {
+            if (!(0.0 <= significanceLevel && significanceLevel <= 1.0)) {
+                throw new IllegalArgumentException
+                              ("Illegal significance level " +
+                               significanceLevel + ".");
+            }
+        }
+        _significanceLevels = significanceLevels.clone();
+        calculateNCThresholds();
+    }
+
+    /**
+     * Returns the significance levels for which label sets can be predicted
+     * by {@link #predictLabelSet(DoubleMatrix1D, int, PredictionScratch)}.
+     *
+     * @return the configured significance levels.
+     */
+    public double[] getSignificanceLevels()
+    {
+        return _significanceLevels.clone();
+    }
+
+    /**
+     * Predicts the label set for the instance x at the configured
+     * significance level with index significanceLevelIndex.
+     * Each label is included or excluded by a single comparison of its
+     * non-conformity score to the precomputed threshold. The result is
+     * the same as for the unsmoothed p-values, i.e. a label is included if
+     * its unsmoothed p-value is greater than the significance level.
+     * No memory is allocated if x is in the native storage format of the
+     * underlying model. At most 64 classes are supported.
+     *
+     * @param x                       the instance.
+     * @param significanceLevelIndex  the index of the significance level, see {@link #setSignificanceLevels(double...)}.
+     * @param scratch                 the prediction buffers to use.
+     * @return a bitmask with bit c set if class c is included in the label set.
+     */
+    public long predictLabelSet(DoubleMatrix1D x,
+                                int significanceLevelIndex,
+                                PredictionScratch scratch)
+    {
+        if (_classes.length > Long.SIZE) {
+            throw new UnsupportedOperationException
+                          ("Too many classes for a long bitmask label set.");
+        }
+        double[] ncScores = scratch.getNCScores();
+        calculateNonConformityScores(x, ncScores, scratch.getProbability());
+        double[] thresholds = getNCThresholds(significanceLevelIndex);
+        long labelSet = 0L;
+        for (int c = 0; c < ncScores.length; c++) {
+            if (ncScores[c] <= thresholds[c]) {
+                labelSet |= 1L << c;
+            }
+        }
+        return labelSet;
+    }
+
+    /**
+     * Predicts the label set for the instance x at the configured
+     * significance level with index significanceLevelIndex.
+     * See {@link #predictLabelSet(DoubleMatrix1D, int, PredictionScratch)}.
+     *
+     * @param x                       the instance.
+     * @param significanceLevelIndex  the index of the significance level, see {@link #setSignificanceLevels(double...)}.
+     * @param scratch                 the prediction buffers to use.
+     * @param labelSet                a <tt>BitSet</tt> to store the label set in. Bit c is set if class c is included.
+     */
+    public void predictLabelSet(DoubleMatrix1D x,
+                                int significanceLevelIndex,
+                                PredictionScratch scratch,
+                                BitSet labelSet)
+    {
+        double[] ncScores = scratch.getNCScores();
+        calculateNonConformityScores(x, ncScores, scratch.getProbability());
+        double[] thresholds = getNCThresholds(significanceLevelIndex);
+        labelSet.clear();
+        for (int c = 0; c < ncScores.length; c++) {
+            if (ncScores[c] <= thresholds[c]) {
+                labelSet.set(c);
+            }
+        }
+    }
+
+    /**
+     * Predicts the k most conforming labels for the instance x.
+     * Intended for large label spaces: the labels are ranked once by their
+     * non-conformity score, which orders them by p-value, and the exact
+     * p-value is only computed for the k highest ranked labels.
+     * The class indices are stored in decreasing p-value order in the first
+     * k elements of {@link PredictionScratch#getLabelOrder()} and their
+     * p-values in {@link PredictionScratch#getPValues()}. The p-values of
+     * the other classes are set to <tt>Double.NaN</tt>.
+     * Label conditional conformal prediction is not supported.
+     *
+     * @param x        the instance.
+     * @param k        the number of labels to predict.
+     * @param scratch  the prediction buffers to use.
+     * @return the number of labels predicted, i.e. the smaller of k and the number of classes.
+     */
+    public int predictTopLabels(DoubleMatrix1D x, int k,
+                                PredictionScratch scratch)
+    {
+        rankLabels(x, scratch);
+        int count = Math.min(k, _classLabels.length);
+        calculateRankedPValues(scratch, count);
+        return count;
+    }
+
+    /**
+     * Predicts the label set for the instance x at the configured
+     * significance level with index significanceLevelIndex.
+     * Intended for large label spaces: the labels are ranked once by their
+     * non-conformity score and the significance cut-off is found by binary
+     * search, so that the exact p-value is only computed for the labels in
+     * the label set. The label set is the same as for
+     * {@link #predictLabelSet(DoubleMatrix1D, int, PredictionScratch)}.
+     * The class indices in the label set are stored in decreasing p-value
+     * order in the first elements of {@link PredictionScratch#getLabelOrder()}
+     * and their p-values in {@link PredictionScratch#getPValues()}.
+     * The p-values of the other classes are set to <tt>Double.NaN</tt>.
+     * Label conditional conformal prediction is not supported.
+     *
+     * @param x                       the instance.
+     * @param significanceLevelIndex  the index of the significance level, see {@link #setSignificanceLevels(double...)}.
+     * @param scratch                 the prediction buffers to use.
+     * @return the number of labels in the label set.
+     */
+    public int predictRankedLabelSet(DoubleMatrix1D x,
+                                     int significanceLevelIndex,
+                                     PredictionScratch scratch)
+    {
+        rankLabels(x, scratch);
+        // Without label conditional CP all classes share the same threshold.
+        double threshold = getNCThresholds(significanceLevelIndex)[0];
+        double[] ncScores = scratch.getNCScores();
+        int[] order = scratch.getLabelOrder();
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ncScores[order[mid]] <= threshold) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        calculateRankedPValues(scratch, low);
+        return low;
+    }
+
+    /**
+     * Computes the non-conformity scores of the instance x for each class
+     * and orders the class indices by increasing non-conformity score.
+     */
+    private void rankLabels(DoubleMatrix1D x, PredictionScratch scratch)
+    {
+        if (_useLabelConditionalCP) {
+            throw new UnsupportedOperationException
+                          ("Ranked prediction requires a shared calibration " +
+                           "set. Label conditional CP is not supported.");
+        }
+        double[] ncScores = scratch.getNCScores();
+        calculateNonConformityScores(x, ncScores, scratch.getProbability());
+        int[] order = scratch.getLabelOrder();
+        for (int c = 0; c < order.length; c++) {
+            order[c] = c;
+        }
+        Util.sortIndicesByValue(order, ncScores);
+    }
+
+    /**
+     * Computes the p-values of the count highest ranked classes.
+     */
+    private void calculateRankedPValues(PredictionScratch scratch, int count)
+    {
+        double[] ncScores = scratch.getNCScores();
+        int[] order = scratch.getLabelOrder();
+        DoubleMatrix1D pValues = scratch.getPValues();
+        pValues.assign(Double.NaN);
+        for (int r = 0; r < count; r++) {
+            pValues.setQuick(order[r],
+                             Util.calculatePValue(ncScores[order[r]],
+                                                  _calibrationScores));
+        }
+    }
+
+    /**
+     * Returns the non-conformity score threshold of each class for the
+     * configured significance level with index significanceLevelIndex.
+     */
+    private double[] getNCThresholds(int significanceLevelIndex)
+    {
+        if (_ncThresholds == null) {
+            throw new IllegalStateException
+                          ("The conformal classifier must be calibrated " +
+                           "before label sets can be predicted.");
+        }
+        if (!(0 <= significanceLevelIndex &&
+              significanceLevelIndex < _ncThresholds.length)) {
+            throw new IllegalStateException
+                          ("No significance level with index " +
+                           significanceLevelIndex + " has been set. " +
+                           "See setSignificanceLevels().");
+        }
+        return _ncThresholds[significanceLevelIndex];
+    }
+
+    /**
+     * Precomputes the non-conformity score thresholds for each
+     * configured significance level and class.
+     */
+    private void calculateNCThresholds()
+    {
+        if (_calibrationScores == null) {
+            _ncThresholds = null;
+            return;
+        }
+        double[][] thresholds =
+            new double[_significanceLevels.length][_classes.length];
+        for (int s = 0; s < _significanceLevels.length; s++) {
+            for (int c = 0; c < _classes.length; c++) {
+                if (_useLabelConditionalCP) {
+                    thresholds[s][c] =
+                        Util.calculateNCThreshold(_significanceLevels[s],
+                                                  _classCalibrationScores[c]);
                 } else {
-                    // There were no examples with this class/label.
-                    _classCalibrationScores[c] = new double[0];
+                    thresholds[s][c] =
+                        Util.calculateNCThreshold(_significanceLevels[s],
+                                                  _calibrationScores);
                 }
-                System.out.println("Calibration set size for class " + c +
-                                   " label " + _classes[c] + " is " +
-                                   _classCalibrationScores[c].length);
             }
         }
+        _ncThresholds = thresholds;
     }
 
     /**
@@ -180,17 +464,37 @@ public class InductiveConformalClassifier
     {
         int n = x.rows();
         ConformalClassification[] predictions = new ConformalClassification[n];
-        if (!PARALLEL) {
+        predict(x, predictions);
+        return predictions;
+    }
+
+    /**
+     * Makes a prediction for each instance in x and stores it in
+     * predictions.
+     * The method is parallellized over the instances.
+     * If the work is cancelled through the execution policy a
+     * <tt>CancellationException</tt> is thrown. The predictions completed
+     * before that remain in predictions while the others are left
+     * <tt>null</tt>.
+     *
+     * @param x             the instances.
+     * @param predictions   an array to store a <tt>ConformalClassification</tt> for each instance in.
+     */
+    public void predict(DoubleMatrix2D x,
+                        ConformalClassification[] predictions)
+    {
+        int n = x.rows();
+        if (!getExecutionPolicy().isParallel()) {
             for (int i = 0; i < n; i++) {
+                getExecutionPolicy().checkCancelled();
                 DoubleMatrix1D instance = x.viewRow(i);
                 predictions[i] = predict(instance);
             }
         } else {
             ClassifyAction all =
                 new ClassifyAction(x, predictions, 0, n);
-            all.start();
+            all.start(getExecutionPolicy());
         }
-        return predictions;
     }
 
     /**
@@ -217,8 +521,27 @@ public class InductiveConformalClassifier
     {
         int n = x.rows();
         DoubleMatrix2D response = new DenseDoubleMatrix2D(n, _classes.length);
-        if (!PARALLEL) {
+        predictPValues(x, response);
+        return response;
+    }
+
+    /**
+     * Computes the predicted p-values for each target and instance in x and
+     * stores them in the corresponding row of response.
+     * The method is parallellized over the instances.
+     * If the work is cancelled through the execution policy a
+     * <tt>CancellationException</tt> is thrown. The rows completed before
+     * that remain in response while the others are left unchanged.
+     *
+     * @param x             the instances.
+     * @param response      an initialized <tt>DoubleMatrix2D</tt> to store the p-values for each instance in.
+     */
+    public void predictPValues(DoubleMatrix2D x, DoubleMatrix2D response)
+    {
+        int n = x.rows();
+        if (!getExecutionPolicy().isParallel()) {
             for (int i = 0; i < n; i++) {
+                getExecutionPolicy().checkCancelled();
                 DoubleMatrix1D instance = x.viewRow(i);
                 DoubleMatrix1D pValues  = response.viewRow(i);
                 predictPValues(instance, pValues);
@@ -226,9 +549,8 @@ public class InductiveConformalClassifier
         } else {
             ClassifyPValuesAction all =
                 new ClassifyPValuesAction(x, response, 0, n);
-            all.start();
+            all.start(getExecutionPolicy());
         }
-        return response;
     }
 
    /**
@@ -254,19 +576,166 @@ public class InductiveConformalClassifier
     @Override
     public void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues)
     {
-        for (int i = 0; i < _classes.length; i++) {
-            // TODO: The underlying model should really only have to predict
-            //       once per instance.
-            double ncScore = _nc.calculateNonConformityScore(x, _classes[i]);
-            double pValue;
-            if (_useLabelConditionalCP) {
-                pValue = Util.calculatePValue(ncScore,
-                                              _classCalibrationScores[i]);
-            } else {
-                pValue = Util.calculatePValue(ncScore,
-                                              _calibrationScores);
+        predictPValues(x, pValues,
+                       new double[_classes.length],
+                       new double[_classes.length]);
+    }
+
+    /**
+     * Creates a set of prediction buffers for use with
+     * {@link #predictPValues(DoubleMatrix1D, PredictionScratch)}.
+     * The classifier must have been trained.
+     *
+     * @return a new <tt>PredictionScratch</tt> sized for this classifier.
+     */
+    public PredictionScratch createPredictionScratch()
+    {
+        return new PredictionScratch(this);
+    }
+
+    /**
+     * Computes the predicted p-values for the instance held in the
+     * instance buffer of the supplied prediction buffers.
+     *
+     * @param scratch  the prediction buffers, see {@link #predictPValues(DoubleMatrix1D, PredictionScratch)}.
+     * @return the <tt>DoubleMatrix1D</tt> in <tt>scratch</tt> containing the predicted p-values.
+     */
+    public DoubleMatrix1D predictPValues(PredictionScratch scratch)
+    {
+        return predictPValues(scratch.getInstance(), scratch);
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x using caller-owned
+     * buffers. The underlying model is evaluated once for the instance and
+     * no memory is allocated if x is in the native storage format of the
+     * underlying model, e.g. the instance buffer of <tt>scratch</tt>.
+     *
+     * @param x        the instance.
+     * @param scratch  the prediction buffers to use. Must not be used concurrently by other threads.
+     * @return the <tt>DoubleMatrix1D</tt> in <tt>scratch</tt> containing the predicted p-values.
+     */
+    public DoubleMatrix1D predictPValues(DoubleMatrix1D x,
+                                         PredictionScratch scratch)
+    {
+        predictPValues(x, scratch.getPValues(),
+                       scratch.getNCScores(), scratch.getProbability());
+        return scratch.getPValues();
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x using the supplied
+     * buffers.
+     *
+     * @param x            the instance.
+     * @param pValues      an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     * @param ncScores     a <tt>double[]</tt> buffer for the non-conformity scores of each class.
+     * @param probability  a <tt>double[]</tt> buffer for the class probabilities.
+     */
+    private void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues,
+                                double[] ncScores, double[] probability)
+    {
+        calculateNonConformityScores(x, ncScores, probability);
+        calculatePValues(ncScores, 0, pValues);
+    }
+
+    /**
+     * Computes the p-values for each class from the non-conformity scores
+     * stored starting at offset in ncScores.
+     *
+     * @param ncScores  a <tt>double[]</tt> array with the non-conformity scores of each class.
+     * @param offset    the position of the score of the first class.
+     * @param pValues   an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     */
+    private void calculatePValues(double[] ncScores, int offset,
+                                  DoubleMatrix1D pValues)
+    {
+        for (int i = 0; i < _classLabels.length; i++) {
+            pValues.setQuick(i, calculatePValue(ncScores[offset + i], i));
+        }
+    }
+
+    /**
+     * Computes the p-value of the class with index classIndex from its
+     * non-conformity score.
+     *
+     * @param ncScore     the non-conformity score of the class.
+     * @param classIndex  the index of the class.
+     * @return the p-value of the class.
+     */
+    double calculatePValue(double ncScore, int classIndex)
+    {
+        if (_useLabelConditionalCP) {
+            return Util.calculatePValue(ncScore,
+                                        _classCalibrationScores[classIndex]);
+        } else {
+            return Util.calculatePValue(ncScore, _calibrationScores);
+        }
+    }
+
+    /**
+     * Returns whether the non-conformity scores can be computed by batch
+     * predictions of the underlying model.
+     */
+    private boolean isBatchPredicting()
+    {
+        return _nc instanceof ClassProbabilityNonconformityFunctionBase &&
+               _nc.getClassifier() instanceof IBatchClassProbabilityClassifier;
+    }
+
+    /**
+     * Computes the non-conformity scores for each class of the rows first
+     * to last - 1 of x with a single batch prediction by the underlying
+     * model, if the non-conformity function supports that.
+     *
+     * @param x      the instances.
+     * @param first  the first row.
+     * @param last   the row after the last row.
+     * @return the non-conformity scores of row i for each class starting at <tt>(i - first) * _classLabels.length</tt> or <tt>null</tt> if batch prediction is not supported.
+     */
+    private double[] calculateNonConformityScores(DoubleMatrix2D x,
+                                                  int first, int last)
+    {
+        if (isBatchPredicting()) {
+            double[] ncScores = new double[(last - first) *
+                                           _classLabels.length];
+            ((ClassProbabilityNonconformityFunctionBase)_nc).
+                calculateTargetNonConformityScores(x, first, last,
+                                                   _classLabels, ncScores);
+            return ncScores;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the non-conformity scores of the instance x for each class.
+     *
+     * @param x            the instance.
+     * @param ncScores     a <tt>double[]</tt> buffer for the non-conformity scores of each class.
+     * @param probability  a <tt>double[]</tt> buffer for the class probabilities.
+     */
+    private void calculateNonConformityScores(DoubleMatrix1D x,
+                                              double[] ncScores,
+                                              double[] probability)
+    {
+        // Convert x to the native format of the underlying model once
+        // rather than in each evaluation.
+        x = PreparedInstance.prepare(_nc, x);
+        if (_nc instanceof ClassProbabilityNonconformityFunctionBase) {
+            // The underlying model only has to predict once per instance.
+            ((ClassProbabilityNonconformityFunctionBase)_nc).
+                calculateNonConformityScores(x, _classLabels,
+                                             ncScores, probability);
+        } else if (_nc instanceof SVMDistanceNonconformityFunction) {
+            // The decision values are only computed once per instance.
+            ((SVMDistanceNonconformityFunction)_nc).
+                calculateNonConformityScores(x, _classLabels, ncScores);
+        } else {
+            for (int i = 0; i < _classLabels.length; i++) {
+                ncScores[i] =
+                    _nc.calculateNonConformityScore(x, _classLabels[i]);
             }
-            pValues.set(i, pValue);
         }
     }
 
@@ -289,6 +758,33 @@ public class InductiveConformalClassifier
         _nc = nc;
         _calibrationScores = null;
         _classCalibrationScores = null;
+        _ncThresholds = null;
+    }
+
+    /**
+     * Returns the execution policy used for the parallelized methods of
+     * this conformal classifier.
+     *
+     * @return the execution policy.
+     */
+    public ExecutionPolicy getExecutionPolicy()
+    {
+        return ExecutionPolicy.orDefault(_executionPolicy);
+    }
+
+    /**
+     * Sets the execution policy used for the parallelized methods of this
+     * conformal classifier and its non-conformity function.
+     *
+     * @param policy  the execution policy or <tt>null</tt> for the default execution policy.
+     */
+    public void setExecutionPolicy(ExecutionPolicy policy)
+    {
+        _executionPolicy = policy;
+        if (_nc instanceof ClassifierNonconformityFunctionBase) {
+            ((ClassifierNonconformityFunctionBase)_nc).
+                setExecutionPolicy(policy);
+        }
     }
 
     /**
@@ -324,7 +820,7 @@ public class InductiveConformalClassifier
         if (getNonconformityFunction() != null) {
             return getNonconformityFunction().nativeStorageTemplate();
         } else {
-            return new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
+            return new se.hb.jcp.util.CSRDoubleMatrix1D(0);
         }
     }
 
@@ -333,29 +829,64 @@ public class InductiveConformalClassifier
     {
         oos.writeObject(_nc);
         oos.writeObject(_classes);
-        oos.writeObject(_classIndex);
+        // Kept in the stream for compatibility with earlier versions.
+        oos.writeObject(Util.classIndexMap(_classes));
         oos.writeObject(_calibrationScores);
         oos.writeObject(_useLabelConditionalCP);
         oos.writeObject(_classCalibrationScores);
+        oos.writeObject(_significanceLevels);
+        oos.writeObject(_ncThresholds);
     }
 
-    @SuppressWarnings("unchecked") // There is not much to do if the saved
-                                   // value doesn't match the expected type.
     private void readObject(ObjectInputStream ois)
         throws ClassNotFoundException, java.io.IOException
     {
         _nc = (IClassificationNonconformityFunction)ois.readObject();
         _classes = (Double[])ois.readObject();
-        _classIndex = (SortedMap<Double, Integer>)ois.readObject();
+        _classLabels = unbox(_classes);
+        // The class index map is not used. See writeObject.
+        ois.readObject();
         _calibrationScores = (double[])ois.readObject();
         _useLabelConditionalCP = (Boolean) ois.readObject();
         _classCalibrationScores = (double[][])ois.readObject();
+        try {
+            _significanceLevels = (double[])ois.readObject();
+            _ncThresholds = (double[][])ois.readObject();
+        } catch (OptionalDataException e) {
+            // Saved before the significance levels were added.
+            _significanceLevels = new double[0];
+            calculateNCThresholds();
+        }
+    }
+
+    /**
+     * Returns the class index of the label y.
+     *
+     * @param y    the class label.
+     * @return the class index of y or a negative value if y is not a known label.
+     */
+    private int classIndexOf(double y)
+    {
+        return Arrays.binarySearch(_classLabels, y);
+    }
+
+    private static double[] unbox(Double[] values)
+    {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
     }
 
     class ClassifyPValuesAction extends se.hb.jcp.util.ParallelizedAction
     {
         DoubleMatrix2D _x;
         DoubleMatrix2D _response;
+        double[] _ncScores;
+        double[] _probability;
+        double[] _batchNCScores;
+        int _first;
 
         public ClassifyPValuesAction(DoubleMatrix2D x,
                                      DoubleMatrix2D response,
@@ -366,12 +897,36 @@ public class InductiveConformalClassifier
             _response = response;
         }
 
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _ncScores = new double[_classes.length];
+            _probability = new double[_classes.length];
+            _batchNCScores = calculateNonConformityScores(_x, first, last);
+            _first = first;
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _ncScores = null;
+            _probability = null;
+            _batchNCScores = null;
+        }
+
         @Override
         protected void compute(int i)
         {
-            DoubleMatrix1D instance = _x.viewRow(i);
             DoubleMatrix1D pValues  = _response.viewRow(i);
-            predictPValues(instance, pValues);
+            if (_batchNCScores != null) {
+                calculatePValues(_batchNCScores,
+                                 (i - _first) * _classLabels.length,
+                                 pValues);
+            } else {
+                DoubleMatrix1D instance = _x.viewRow(i);
+                predictPValues(instance, pValues,
+                               _ncScores, _probability);
+            }
         }
 
         @Override
@@ -386,6 +941,10 @@ public class InductiveConformalClassifier
     {
         DoubleMatrix2D _x;
         ConformalClassification[] _response;
+        double[] _ncScores;
+        double[] _probability;
+        double[] _batchNCScores;
+        int _first;
 
         public ClassifyAction(DoubleMatrix2D x,
                               ConformalClassification[] response,
@@ -396,13 +955,39 @@ public class InductiveConformalClassifier
             _response = response;
         }
 
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _ncScores = new double[_classes.length];
+            _probability = new double[_classes.length];
+            _batchNCScores = calculateNonConformityScores(_x, first, last);
+            _first = first;
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _ncScores = null;
+            _probability = null;
+            _batchNCScores = null;
+        }
+
         @Override
         protected void compute(int i)
         {
-            DoubleMatrix1D instance = _x.viewRow(i);
+            DoubleMatrix1D pValues  = new DenseDoubleMatrix1D(_classes.length);
+            if (_batchNCScores != null) {
+                calculatePValues(_batchNCScores,
+                                 (i - _first) * _classLabels.length,
+                                 pValues);
+            } else {
+                DoubleMatrix1D instance = _x.viewRow(i);
+                predictPValues(instance, pValues,
+                               _ncScores, _probability);
+            }
             _response[i] =
                 new ConformalClassification(InductiveConformalClassifier.this,
-                                            predictPValues(instance));
+                                            pValues);
         }
 
         @Override
@@ -418,30 +1003,39 @@ public class InductiveConformalClassifier
         DoubleMatrix2D _x;
         double[] _y;
         double[] _nonConformityScores;
-        double[][] _classNonConformityScores;
+        boolean _batched;
 
         public CalculateNCScoresAction(DoubleMatrix2D x,
                                        double[]       y,
                                        double[]       nonConformityScores,
-                                       double[][]     classNonConformityScores,
                                        int first, int last)
         {
             super(first, last);
             _x = x;
             _y = y;
             _nonConformityScores = nonConformityScores;
-            _classNonConformityScores = classNonConformityScores;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _batched = isBatchPredicting();
+            if (_batched) {
+                // The underlying model predicts the sub-interval at once.
+                ((ClassProbabilityNonconformityFunctionBase)_nc).
+                    calculateNonConformityScores(_x, _y,
+                                                 _nonConformityScores,
+                                                 first, last);
+            }
         }
 
         @Override
         protected void compute(int i)
         {
-            DoubleMatrix1D instance = _x.viewRow(i);
-            _nonConformityScores[i] =
-                _nc.calculateNonConformityScore(instance, _y[i]);
-            if (_classNonConformityScores != null) {
-                _classNonConformityScores[_classIndex.get(_y[i])][i] =
-                    _nonConformityScores[i];
+            if (!_batched) {
+                DoubleMatrix1D instance = _x.viewRow(i);
+                _nonConformityScores[i] =
+                    _nc.calculateNonConformityScore(instance, _y[i]);
             }
         }
 
@@ -449,7 +1043,6 @@ public class InductiveConformalClassifier
         protected ParallelizedAction createSubtask(int first, int last)
         {
             return new CalculateNCScoresAction(_x, _y, _nonConformityScores,
-                                               _classNonConformityScores,
                                                first, last);
         }
     }
@@ -0,0 +1,175 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.ml.IOutOfBagClassProbabilityClassifier;
+import se.hb.jcp.nc.ClassProbabilityNonconformityFunctionBase;
+import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * Represents an out-of-bag conformal classifier, see U. Johansson,
+ * H. Bostrom, T. Lofstrom and H. Linusson, "Regression conformal
+ * prediction with random forests", Machine Learning 97(1-2), 2014.
+ *
+ * The underlying classifier is a bagged ensemble that is trained on the
+ * whole training set. Each training instance is calibrated with its
+ * non-conformity score computed from the out-of-bag class probabilities,
+ * i.e. by the members of the ensemble that were not trained on it, so no
+ * instances have to be set aside for calibration. New instances are
+ * predicted by the whole ensemble. Instances that were in the bootstrap
+ * sample of every member are left out of the calibration.
+ *
+ * @author agent(at)local
+ */
+public class OutOfBagConformalClassifier
+    extends InductiveConformalClassifier
+{
+    /**
+      * Creates an out-of-bag conformal classifier using the supplied
+      * information.
+      *
+      * @param nc         the untrained class probability based non-conformity function to use. Its classifier must be an <tt>IOutOfBagClassProbabilityClassifier</tt>.
+      * @param targets    the class labels.
+      */
+    public OutOfBagConformalClassifier(IClassificationNonconformityFunction nc,
+                                       double[] targets)
+    {
+        this(nc, targets, false);
+    }
+
+    /**
+      * Creates an out-of-bag conformal classifier using the supplied
+      * information.
+      *
+      * @param nc                     the untrained class probability based non-conformity function to use. Its classifier must be an <tt>IOutOfBagClassProbabilityClassifier</tt>.
+      * @param targets                the class labels.
+      * @param useLabelConditionalCP  a boolean indicating whether label conditional conformal prediction should be used.
+      */
+    public OutOfBagConformalClassifier(IClassificationNonconformityFunction nc,
+                                       double[] targets,
+                                       boolean  useLabelConditionalCP)
+    {
+        super(nc, targets, useLabelConditionalCP);
+        if (!(nc instanceof ClassProbabilityNonconformityFunctionBase) ||
+            !(nc.getClassifier() instanceof
+              IOutOfBagClassProbabilityClassifier)) {
+            throw new IllegalArgumentException
+                          ("Out-of-bag conformal classification requires a " +
+                           "class probability based non-conformity " +
+                           "function with an out-of-bag classifier.");
+        }
+    }
+
+    /**
+     * Trains the ensemble of this conformal classifier using the supplied
+     * data and calibrates it with the out-of-bag non-conformity scores of
+     * the same data.
+     *
+     * @param x             the attributes of the training instances.
+     * @param y             the targets of the training instances.
+     */
+    public void fit(DoubleMatrix2D x, double[] y)
+    {
+        getNonconformityFunction().fit(x, y);
+
+        int n = x.rows();
+        double[] scores = new double[n];
+        boolean[] calibrated = new boolean[n];
+        new CalculateOutOfBagNCScoresAction(x, y, scores, calibrated, 0, n).
+            start(getExecutionPolicy());
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (calibrated[i]) {
+                count++;
+            }
+        }
+        double[] calibrationScores = new double[count];
+        double[] ycal = new double[count];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (calibrated[i]) {
+                calibrationScores[j] = scores[i];
+                ycal[j] = y[i];
+                j++;
+            }
+        }
+        System.out.println("Calibrated out-of-bag on " + count + " of " + n +
+                           " training instances.");
+        calibrate(calibrationScores, ycal);
+    }
+
+    /**
+     * Computes the out-of-bag non-conformity scores of the training
+     * instances in an interval.
+     */
+    class CalculateOutOfBagNCScoresAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _y;
+        double[] _nonConformityScores;
+        boolean[] _calibrated;
+        double[] _probability;
+
+        public CalculateOutOfBagNCScoresAction(DoubleMatrix2D x,
+                                               double[]       y,
+                                               double[]       nonConformityScores,
+                                               boolean[]      calibrated,
+                                               int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _y = y;
+            _nonConformityScores = nonConformityScores;
+            _calibrated = calibrated;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _probability = new double[getLabels().length];
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            ClassProbabilityNonconformityFunctionBase nc =
+                (ClassProbabilityNonconformityFunctionBase)
+                    getNonconformityFunction();
+            IOutOfBagClassProbabilityClassifier classifier =
+                (IOutOfBagClassProbabilityClassifier)nc.getClassifier();
+            if (classifier.predictOutOfBag(i, _probability)) {
+                _nonConformityScores[i] =
+                    nc.calculateNonConformityScoreFromProbabilities
+                        (_x.viewRow(i), _y[i], _probability);
+                _calibrated[i] = true;
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new CalculateOutOfBagNCScoresAction(_x, _y,
+                                                       _nonConformityScores,
+                                                       _calibrated,
+                                                       first, last);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.impl.DenseDoubleMatrix1D;
+
+/**
+ * Caller-owned buffers for low-latency single instance predictions.
+ *
+ * A <tt>PredictionScratch</tt> holds an instance buffer in the native storage
+ * format of the conformal classifier's underlying model, the class
+ * probability and non-conformity score buffers and the p-value output.
+ * Once created it can be reused for any number of predictions so that the
+ * steady-state prediction path does not allocate memory.
+ *
+ * A <tt>PredictionScratch</tt> is not thread-safe and should be owned by a
+ * single thread.
+ *
+ * @author agent(at)local
+ */
+public class PredictionScratch
+{
+    private final DoubleMatrix1D _instance;
+    private final double[]       _probability;
+    private final double[]       _ncScores;
+    private final DoubleMatrix1D _pValues;
+    private final int[]          _labelOrder;
+
+    /**
+     * Creates a set of prediction buffers sized for the supplied trained
+     * conformal classifier.
+     *
+     * @param cc  the conformal classifier the buffers will be used with.
+     */
+    public PredictionScratch(IConformalClassifier cc)
+    {
+        this(cc.nativeStorageTemplate(),
+             Math.max(cc.getAttributeCount(), 0),
+             cc.getLabels().length);
+    }
+
+    /**
+     * Creates a set of prediction buffers.
+     *
+     * @param template    an instance of the native storage format to use for the instance buffer.
+     * @param attributes  the number of attributes of an instance.
+     * @param classes     the number of classes/labels.
+     */
+    public PredictionScratch(DoubleMatrix1D template,
+                             int attributes,
+                             int classes)
+    {
+        _instance    = template.like(attributes);
+        _probability = new double[classes];
+        _ncScores    = new double[classes];
+        _pValues     = new DenseDoubleMatrix1D(classes);
+        _labelOrder  = new int[classes];
+    }
+
+    /**
+     * Returns the instance buffer. The buffer is in the native storage
+     * format of the conformal classifier's underlying model, so instances
+     * written to it can be predicted without any conversion.
+     *
+     * @return the instance buffer.
+     */
+    public DoubleMatrix1D getInstance()
+    {
+        return _instance;
+    }
+
+    /**
+     * Returns the class probability buffer.
+     *
+     * @return the class probability buffer.
+     */
+    public double[] getProbability()
+    {
+        return _probability;
+    }
+
+    /**
+     * Returns the buffer for the non-conformity scores for each class/label
+     * computed by the latest prediction.
+     *
+     * @return the non-conformity score buffer.
+     */
+    public double[] getNCScores()
+    {
+        return _ncScores;
+    }
+
+    /**
+     * Returns the p-values computed by the latest prediction.
+     * The content is overwritten by the next prediction using this buffer.
+     *
+     * @return the p-values computed by the latest prediction.
+     */
+    public DoubleMatrix1D getPValues()
+    {
+        return _pValues;
+    }
+
+    /**
+     * Returns the class indices ordered from the most to the least
+     * conforming class as computed by the latest ranked prediction.
+     *
+     * @return the class indices in order of increasing non-conformity score.
+     */
+    public int[] getLabelOrder()
+    {
+        return _labelOrder;
+    }
+}
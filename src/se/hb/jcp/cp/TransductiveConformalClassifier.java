@@ -26,24 +26,27 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.AbstractMap.SimpleImmutableEntry;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+import se.hb.jcp.nc.ClassifierNonconformityFunctionBase;
 import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.util.ExecutionPolicy;
 import se.hb.jcp.util.ParallelizedAction;
 
 public class TransductiveConformalClassifier
     implements IConformalClassifier, java.io.Serializable
 {
-    private static final boolean PARALLEL = true;
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = -3454586108483695260L;
 
     private IClassificationNonconformityFunction _nc;
     private Double[] _classes;
-    private SortedMap<Double, Integer> _classIndex;
     private boolean _useLabelConditionalCP;
 
     private DoubleMatrix2D _xtr;   
     private double[] _ytr;
+    // Runtime configuration. Not saved.
+    private ExecutionPolicy _executionPolicy;
 
     /**
       * Creates a transductive conformal classifier using the supplied
@@ -74,12 +77,11 @@ public class TransductiveConformalClassifier
     {
         _nc = nc;
         _useLabelConditionalCP = useLabelConditionalCP;
-        _classIndex = new TreeMap<Double, Integer>();
-        for (int c = 0; c < targets.length; c++) {
-            _classIndex.put(targets[c], c);
+        double[] classLabels = Util.sortedDistinct(targets);
+        _classes = new Double[classLabels.length];
+        for (int c = 0; c < classLabels.length; c++) {
+            _classes[c] = classLabels[c];
         }
-        _classes = _classIndex.keySet().toArray(new Double[0]);
-        Arrays.sort(_classes);  // FIXME: Redundant?
     }
 
    /**
@@ -106,8 +108,27 @@ public class TransductiveConformalClassifier
     {
         int n = x.rows();
         ConformalClassification[] predictions = new ConformalClassification[n];
+        predict(x, predictions);
+        return predictions;
+    }
 
-        if (!PARALLEL) {
+    /**
+     * Makes a prediction for each instance in x and stores it in
+     * predictions.
+     * The method is parallellized over the instances.
+     * If the work is cancelled through the execution policy a
+     * <tt>CancellationException</tt> is thrown. The predictions completed
+     * before that remain in predictions while the others are left
+     * <tt>null</tt>.
+     *
+     * @param x             the instances.
+     * @param predictions   an array to store a <tt>ConformalClassification</tt> for each instance in.
+     */
+    public void predict(DoubleMatrix2D x,
+                        ConformalClassification[] predictions)
+    {
+        int n = x.rows();
+        if (!getExecutionPolicy().isParallel()) {
             // Create a local copy of the training set with one free slot
             // for the instance to be predicted.
             SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
@@ -115,16 +136,19 @@ public class TransductiveConformalClassifier
             DoubleMatrix2D myXtr = mytr.getKey();
             double[] myYtr = mytr.getValue();
 
-            for (int i = 0; i < n; i++) {
-                DoubleMatrix1D instance = x.viewRow(i);
-                predictions[i] = predict(instance, myXtr, myYtr);
+            try {
+                for (int i = 0; i < n; i++) {
+                    DoubleMatrix1D instance = x.viewRow(i);
+                    predictions[i] = predict(instance, myXtr, myYtr);
+                }
+            } finally {
+                release(myXtr);
             }
         } else {
             ClassifyAllAction all =
                 new ClassifyAllAction(x, predictions, 0, n);
-            all.start();
+            all.start(getExecutionPolicy());
         }
-        return predictions;
     }
 
     /**
@@ -168,7 +192,25 @@ public class TransductiveConformalClassifier
     {
         int n = x.rows();
         DoubleMatrix2D response = new DenseDoubleMatrix2D(n, _classes.length);
-        if (!PARALLEL) {
+        predictPValues(x, response);
+        return response;
+    }
+
+    /**
+     * Computes the predicted p-values for each target and instance in x and
+     * stores them in the corresponding row of response.
+     * The method is parallellized over the instances.
+     * If the work is cancelled through the execution policy a
+     * <tt>CancellationException</tt> is thrown. The rows completed before
+     * that remain in response while the others are left unchanged.
+     *
+     * @param x             the instances.
+     * @param response      an initialized <tt>DoubleMatrix2D</tt> to store the p-values for each instance in.
+     */
+    public void predictPValues(DoubleMatrix2D x, DoubleMatrix2D response)
+    {
+        int n = x.rows();
+        if (!getExecutionPolicy().isParallel()) {
             // Create a local copy of the training set with one free slot
             // for the instance to be predicted.
             SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
@@ -176,17 +218,20 @@ public class TransductiveConformalClassifier
             DoubleMatrix2D myXtr = mytr.getKey();
             double[] myYtr = mytr.getValue();
 
-            for (int i = 0; i < n; i++) {
-                DoubleMatrix1D instance = x.viewRow(i);
-                DoubleMatrix1D pValues  = response.viewRow(i);
-                predictPValues(instance, pValues, myXtr, myYtr);
+            try {
+                for (int i = 0; i < n; i++) {
+                    DoubleMatrix1D instance = x.viewRow(i);
+                    DoubleMatrix1D pValues  = response.viewRow(i);
+                    predictPValues(instance, pValues, myXtr, myYtr);
+                }
+            } finally {
+                release(myXtr);
             }
         } else {
             ClassifyPValuesAction all =
                 new ClassifyPValuesAction(x, response, 0, n);
-            all.start();
+            all.start(getExecutionPolicy());
         }
-        return response;
     }
 
     /**
@@ -224,7 +269,11 @@ public class TransductiveConformalClassifier
             createLocalTrainingSet();
         DoubleMatrix2D myXtr = mytr.getKey();
         double[] myYtr = mytr.getValue();
-        predictPValues(x, pValues, myXtr, myYtr);
+        try {
+            predictPValues(x, pValues, myXtr, myYtr);
+        } finally {
+            release(myXtr);
+        }
     }
 
     /**
@@ -244,17 +293,21 @@ public class TransductiveConformalClassifier
         // Set up the training set for this prediction.
         int last = xtr.rows() - 1;
         xtr.viewRow(last).assign(x);
+        // The p-values are only stored once all are computed so that a
+        // cancelled prediction leaves pValues unchanged.
+        double[] result = new double[_classes.length];
         for (int i = 0; i < _classes.length; i++) {
+            getExecutionPolicy().checkCancelled();
             // Set up the target for this prediction.
             ytr[last] = _classes[i];
 
             // Create a nonconformity function instance and predict.
             SimpleImmutableEntry<Double, double[]> ncScores =
                 calculateNonConformityScore(xtr, ytr, _useLabelConditionalCP);
-            double pValue  = Util.calculatePValue(ncScores.getKey(),
-                                                  ncScores.getValue());
-            pValues.set(i, pValue);
+            result[i] = Util.calculatePValue(ncScores.getKey(),
+                                             ncScores.getValue());
         }
+        pValues.assign(result);
     }
 
     @Override
@@ -275,6 +328,32 @@ public class TransductiveConformalClassifier
         _nc = nc;
     }
 
+    /**
+     * Returns the execution policy used for the parallelized methods of
+     * this conformal classifier.
+     *
+     * @return the execution policy.
+     */
+    public ExecutionPolicy getExecutionPolicy()
+    {
+        return ExecutionPolicy.orDefault(_executionPolicy);
+    }
+
+    /**
+     * Sets the execution policy used for the parallelized methods of this
+     * conformal classifier and its non-conformity function.
+     *
+     * @param policy  the execution policy or <tt>null</tt> for the default execution policy.
+     */
+    public void setExecutionPolicy(ExecutionPolicy policy)
+    {
+        _executionPolicy = policy;
+        if (_nc instanceof ClassifierNonconformityFunctionBase) {
+            ((ClassifierNonconformityFunctionBase)_nc).
+                setExecutionPolicy(policy);
+        }
+    }
+
     @Override
     public boolean isTrained()
     {
@@ -303,7 +382,7 @@ public class TransductiveConformalClassifier
         if (getNonconformityFunction() != null) {
             return getNonconformityFunction().nativeStorageTemplate();
         } else {
-            return new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
+            return new se.hb.jcp.util.CSRDoubleMatrix1D(0);
         }
     }
 
@@ -325,6 +404,10 @@ public class TransductiveConformalClassifier
         // nonconformity scores for the instance and the calibration set.
         IClassificationNonconformityFunction ncf =
             _nc.fitNew(xtr, ytr);
+        if (ncf instanceof ClassifierNonconformityFunctionBase) {
+            ((ClassifierNonconformityFunctionBase)ncf).
+                setExecutionPolicy(_executionPolicy);
+        }
 
         double[] nc = ncf.calc_nc(xtr, ytr);
         double ncScore = nc[nc.length - 1];
@@ -371,6 +454,23 @@ public class TransductiveConformalClassifier
         return new SimpleImmutableEntry<DoubleMatrix2D, double[]>(myXtr, myYtr);
     }
 
+    /**
+     * Releases the native storage of a local training set right away
+     * rather than when it is garbage collected.
+     *
+     * @param xtr    the local training set.
+     */
+    private static void release(DoubleMatrix2D xtr)
+    {
+        if (xtr instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)xtr).close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
     private void writeObject(ObjectOutputStream oos)
         throws java.io.IOException
     {
@@ -380,21 +480,20 @@ public class TransductiveConformalClassifier
         oos.writeObject(_nc);
         // Save the targets.
         oos.writeObject(_classes);
-        oos.writeObject(_classIndex);
+        // Kept in the stream for compatibility with earlier versions.
+        oos.writeObject(Util.classIndexMap(_classes));
         oos.writeObject(_useLabelConditionalCP);
-        // Save the training set in a space efficient representation.
-        // FIXME: What representation is space efficient?
-        //        Colt SparseDoubleMatrix2D isn't.
+        // Save the training set in a space efficient representation,
+        // the primitive CSR arrays of a CSRDoubleMatrix2D.
         // FIXME: The training set is currently always loaded back into the
         //        classifier's preferred representation.
         DoubleMatrix2D tmp_xtr;
-        if (_xtr instanceof se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix2D) {
+        if (_xtr instanceof se.hb.jcp.util.CSRDoubleMatrix2D) {
             tmp_xtr = _xtr;
         } else {
             tmp_xtr =
-                new se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix2D
-                        (_xtr.rows(),
-                         _xtr.columns());
+                new se.hb.jcp.util.CSRDoubleMatrix2D(_xtr.rows(),
+                                                     _xtr.columns());
             tmp_xtr.assign(_xtr);
         }
         oos.writeObject(tmp_xtr);
@@ -408,7 +507,8 @@ public class TransductiveConformalClassifier
     {
         _nc = (IClassificationNonconformityFunction)ois.readObject();
         _classes = (Double[])ois.readObject();
-        _classIndex = (SortedMap<Double, Integer>)ois.readObject();
+        // The class index map is not used. See writeObject.
+        ois.readObject();
         _useLabelConditionalCP = (Boolean) ois.readObject();
         DoubleMatrix2D tmp_xtr =
             (DoubleMatrix2D)ois.readObject();
@@ -452,6 +552,7 @@ public class TransductiveConformalClassifier
         {
             super.finalize(first, last);
             // Allow faster reclamation.
+            release(_myXtr);
             _myXtr = null;
             _myYtr = null;
         }
@@ -18,6 +18,8 @@
 package se.hb.jcp.cp;
 
 import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class Util
@@ -63,4 +65,147 @@ public class Util
         }
         return p_value;
     }
+
+    /**
+     * Computes the largest non-conformity score that is included in the
+     * prediction region at the significance level, i.e. a label with the
+     * non-conformity score nc_pred has an unsmoothed p-value greater than
+     * significanceLevel if and only if nc_pred &lt;= the returned threshold.
+     *
+     * @param significanceLevel  the significance level.
+     * @param nc_cal             the sorted non-conformity scores of the calibration set.
+     * @return the non-conformity score threshold. <tt>Double.POSITIVE_INFINITY</tt> if all labels are included and <tt>Double.NEGATIVE_INFINITY</tt> if none is.
+     */
+    public static double calculateNCThreshold(double significanceLevel,
+                                              double[] nc_cal)
+    {
+        // The unsmoothed p-value of nc_pred is (k + 1) / (n + 1) where k is
+        // the number of calibration scores greater than or equal to nc_pred.
+        // Find the smallest k that gives a p-value above the significance
+        // level using the same floating point expression as for p-values.
+        int n = nc_cal.length;
+        int k = Math.max(0, (int)Math.floor(significanceLevel * (n + 1.0)) - 1);
+        while (k > 0 && k / (n + 1.0) > significanceLevel) {
+            k--;
+        }
+        while (k <= n && !((k + 1) / (n + 1.0) > significanceLevel)) {
+            k++;
+        }
+        if (k == 0) {
+            return Double.POSITIVE_INFINITY;
+        } else if (k > n) {
+            return Double.NEGATIVE_INFINITY;
+        } else {
+            // At least k calibration scores must be >= nc_pred.
+            return nc_cal[n - k];
+        }
+    }
+
+    /**
+     * Returns the distinct values of an array in ascending order.
+     *
+     * @param values  the values.
+     * @return a new array with the distinct values in ascending order.
+     */
+    public static double[] sortedDistinct(double[] values)
+    {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || Double.compare(sorted[n - 1], sorted[i]) != 0) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    /**
+     * Sorts the indices in ascending order of their values without
+     * allocating memory. Ties are ordered arbitrarily.
+     *
+     * @param indices  the indices into values to sort.
+     * @param values   the values to sort the indices by.
+     */
+    public static void sortIndicesByValue(int[] indices, double[] values)
+    {
+        sortIndicesByValue(indices, values, 0, indices.length - 1);
+    }
+
+    private static void sortIndicesByValue(int[] indices, double[] values,
+                                           int first, int last)
+    {
+        while (last - first > 16) {
+            // Quicksort partitioning around the median of three.
+            int mid = (first + last) >>> 1;
+            if (values[indices[mid]] < values[indices[first]]) {
+                swap(indices, first, mid);
+            }
+            if (values[indices[last]] < values[indices[first]]) {
+                swap(indices, first, last);
+            }
+            if (values[indices[last]] < values[indices[mid]]) {
+                swap(indices, mid, last);
+            }
+            double pivot = values[indices[mid]];
+            int i = first;
+            int j = last;
+            while (i <= j) {
+                while (values[indices[i]] < pivot) {
+                    i++;
+                }
+                while (pivot < values[indices[j]]) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(indices, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller part to bound the stack depth.
+            if (j - first < last - i) {
+                sortIndicesByValue(indices, values, first, j);
+                first = i;
+            } else {
+                sortIndicesByValue(indices, values, i, last);
+                last = j;
+            }
+        }
+        // Insertion sort for short ranges.
+        for (int i = first + 1; i <= last; i++) {
+            int index = indices[i];
+            double value = values[index];
+            int j = i - 1;
+            while (j >= first && value < values[indices[j]]) {
+                indices[j + 1] = indices[j];
+                j--;
+            }
+            indices[j + 1] = index;
+        }
+    }
+
+    /**
+     * Returns a map from each class label to its class index. Saved models
+     * contain such a map in place of the class index lookup of earlier
+     * versions.
+     *
+     * @param classes  the class labels in ascending order.
+     * @return a new map from class label to class index.
+     */
+    static SortedMap<Double, Integer> classIndexMap(Double[] classes)
+    {
+        SortedMap<Double, Integer> classIndex = new TreeMap<Double, Integer>();
+        for (int c = 0; c < classes.length; c++) {
+            classIndex.put(classes[c], c);
+        }
+        return classIndex;
+    }
+
+    private static void swap(int[] a, int i, int j)
+    {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
 }
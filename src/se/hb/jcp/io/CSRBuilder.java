@@ -0,0 +1,361 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.io;
+
+import java.util.Arrays;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.cp.DataSet;
+import se.hb.jcp.util.CSRDoubleMatrix2D;
+
+/**
+ * Builder for a labelled sparse data set in compressed sparse row (CSR)
+ * form backed by growable primitive arrays.
+ *
+ * Row r holds the column indices <tt>getColumnIndices()[k]</tt> and values
+ * <tt>getValues()[k]</tt> for <tt>getRowPointers()[r] &lt;= k &lt;
+ * getRowPointers()[r+1]</tt>. Column indices are 0-based.
+ *
+ * @author agent(at)local
+ */
+public class CSRBuilder
+{
+    private static final int INITIAL_ROWS = 1024;
+    private static final int INITIAL_NON_ZEROS = 16 * 1024;
+    /** The largest number of rows or non-zero elements a builder holds. */
+    static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    private double[] _labels;
+    private int[]    _rowPointers;
+    private int[]    _columnIndices;
+    private double[] _values;
+    private int      _rows;
+    private int      _nonZeros;
+    private int      _columns;
+    // Whether the column indices of each row are strictly increasing.
+    private boolean  _rowsSorted = true;
+
+    /**
+     * Creates an empty CSR builder.
+     */
+    public CSRBuilder()
+    {
+        this(INITIAL_ROWS, INITIAL_NON_ZEROS);
+    }
+
+    /**
+     * Creates an empty CSR builder with the specified initial capacity.
+     *
+     * @param rows      the initial row capacity.
+     * @param nonZeros  the initial non-zero element capacity.
+     */
+    public CSRBuilder(int rows, int nonZeros)
+    {
+        _labels        = new double[rows];
+        _rowPointers   = new int[rows + 1];
+        _columnIndices = new int[nonZeros];
+        _values        = new double[nonZeros];
+    }
+
+    /**
+     * Starts a new row.
+     *
+     * @param label  the label/target of the new row.
+     */
+    public void startRow(double label)
+    {
+        if (_rows == _labels.length) {
+            int capacity = grow(_labels.length);
+            _labels      = Arrays.copyOf(_labels, capacity);
+            _rowPointers = Arrays.copyOf(_rowPointers, capacity + 1);
+        }
+        _labels[_rows] = label;
+        _rows++;
+        _rowPointers[_rows] = _nonZeros;
+    }
+
+    /**
+     * Adds an element to the current row. Zero values are not stored but
+     * still count towards the number of columns.
+     *
+     * @param column  the 0-based column index.
+     * @param value   the value.
+     */
+    public void add(int column, double value)
+    {
+        if (column >= _columns) {
+            _columns = column + 1;
+        }
+        if (value == 0.0) {
+            return;
+        }
+        if (_nonZeros == _values.length) {
+            int capacity = grow(_values.length);
+            _columnIndices = Arrays.copyOf(_columnIndices, capacity);
+            _values        = Arrays.copyOf(_values, capacity);
+        }
+        if (_nonZeros > _rowPointers[_rows - 1] &&
+            _columnIndices[_nonZeros - 1] >= column) {
+            _rowsSorted = false;
+        }
+        _columnIndices[_nonZeros] = column;
+        _values[_nonZeros] = value;
+        _nonZeros++;
+        _rowPointers[_rows] = _nonZeros;
+    }
+
+    /**
+     * Ensures that the number of columns is at least the specified number.
+     *
+     * @param columns  the minimum number of columns.
+     */
+    public void ensureColumns(int columns)
+    {
+        _columns = Math.max(_columns, columns);
+    }
+
+    /**
+     * Appends all rows of another builder after the rows of this one.
+     *
+     * @param other  the builder to append.
+     */
+    public void append(CSRBuilder other)
+    {
+        long newRows = (long)_rows + other._rows;
+        long newNonZeros = (long)_nonZeros + other._nonZeros;
+        if (newRows > MAX_SIZE || newNonZeros > MAX_SIZE) {
+            throw new OutOfMemoryError("The data set is too large.");
+        }
+        int rows = (int)newRows;
+        if (rows > _labels.length) {
+            _labels      = Arrays.copyOf(_labels, rows);
+            _rowPointers = Arrays.copyOf(_rowPointers, rows + 1);
+        }
+        int nonZeros = (int)newNonZeros;
+        if (nonZeros > _values.length) {
+            _columnIndices = Arrays.copyOf(_columnIndices, nonZeros);
+            _values        = Arrays.copyOf(_values, nonZeros);
+        }
+        System.arraycopy(other._labels, 0, _labels, _rows, other._rows);
+        for (int r = 1; r <= other._rows; r++) {
+            _rowPointers[_rows + r] = _nonZeros + other._rowPointers[r];
+        }
+        System.arraycopy(other._columnIndices, 0,
+                         _columnIndices, _nonZeros, other._nonZeros);
+        System.arraycopy(other._values, 0,
+                         _values, _nonZeros, other._nonZeros);
+        _rows = rows;
+        _nonZeros = nonZeros;
+        _columns = Math.max(_columns, other._columns);
+        _rowsSorted = _rowsSorted && other._rowsSorted;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int rows()
+    {
+        return _rows;
+    }
+
+    /**
+     * Returns the number of columns, i.e. one more than the largest column
+     * index seen.
+     *
+     * @return the number of columns.
+     */
+    public int columns()
+    {
+        return _columns;
+    }
+
+    /**
+     * Returns the number of stored non-zero elements.
+     *
+     * @return the number of non-zero elements.
+     */
+    public int nonZeros()
+    {
+        return _nonZeros;
+    }
+
+    /**
+     * Returns whether the column indices of each row are strictly
+     * increasing.
+     *
+     * @return <tt>true</tt> if the rows are sorted.
+     */
+    public boolean isRowsSorted()
+    {
+        return _rowsSorted;
+    }
+
+    /**
+     * Returns the label array. Only the first <tt>rows()</tt> elements
+     * are valid.
+     *
+     * @return the label array.
+     */
+    public double[] getLabels()
+    {
+        return _labels;
+    }
+
+    /**
+     * Returns the row pointer array. Only the first <tt>rows() + 1</tt>
+     * elements are valid.
+     *
+     * @return the row pointer array.
+     */
+    public int[] getRowPointers()
+    {
+        return _rowPointers;
+    }
+
+    /**
+     * Returns the column index array. Only the first <tt>nonZeros()</tt>
+     * elements are valid.
+     *
+     * @return the column index array.
+     */
+    public int[] getColumnIndices()
+    {
+        return _columnIndices;
+    }
+
+    /**
+     * Returns the value array. Only the first <tt>nonZeros()</tt> elements
+     * are valid.
+     *
+     * @return the value array.
+     */
+    public double[] getValues()
+    {
+        return _values;
+    }
+
+    /**
+     * Creates a <tt>DataSet</tt> from the rows in this builder.
+     * The instances are stored in the native storage format of the template
+     * or, if the template is <tt>null</tt>, in a <tt>CSRDoubleMatrix2D</tt>
+     * that takes over the arrays of this builder without copying them if
+     * the rows are sorted. The builder must not be modified afterwards.
+     *
+     * @param template  an instance of the desired storage format or <tt>null</tt>.
+     * @return a new <tt>DataSet</tt>.
+     */
+    public DataSet toDataSet(DoubleMatrix1D template)
+    {
+        DataSet dataSet = new DataSet();
+        dataSet.y = Arrays.copyOf(_labels, _rows);
+        if (template != null) {
+            dataSet.x = template.like2D(_rows, _columns);
+        } else if (_rowsSorted) {
+            // Default to CSR data storage over the arrays of this builder.
+            dataSet.x = new CSRDoubleMatrix2D(_rows, _columns, _rowPointers,
+                                              _columnIndices, _values);
+            return dataSet;
+        } else {
+            dataSet.x = new CSRDoubleMatrix2D(_rows, _columns);
+        }
+        copyInto(dataSet.x);
+        return dataSet;
+    }
+
+    /**
+     * Stores the rows of this builder in the supplied matrix, which must have
+     * the same number of rows and at least as many columns.
+     * The row-wise bulk storage of the CSR and sparse binding matrices is
+     * used when available. Otherwise the non-zero elements are set one by one.
+     *
+     * @param x  the matrix to store the rows in.
+     */
+    public void copyInto(DoubleMatrix2D x)
+    {
+        boolean bulk = _rowsSorted && hasRowStorage(x);
+        for (int r = 0; r < _rows; r++) {
+            int first = _rowPointers[r];
+            int last  = _rowPointers[r + 1];
+            if (bulk) {
+                setRow(x, r,
+                       Arrays.copyOfRange(_columnIndices, first, last),
+                       Arrays.copyOfRange(_values, first, last));
+            } else {
+                for (int k = first; k < last; k++) {
+                    x.setQuick(r, _columnIndices[k], _values[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the matrix has row-wise bulk storage, see
+     * {@link #setRow(DoubleMatrix2D, int, int[], double[])}.
+     *
+     * @param x  the matrix.
+     * @return <tt>true</tt> if the matrix is a CSR or sparse binding matrix.
+     */
+    static boolean hasRowStorage(DoubleMatrix2D x)
+    {
+        return
+            x instanceof CSRDoubleMatrix2D ||
+            x instanceof se.hb.jcp.bindings.jliblinear.SparseDoubleMatrix2D ||
+            x instanceof se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix2D ||
+            x instanceof se.hb.jcp.bindings.libsvm.SparseDoubleMatrix2D;
+    }
+
+    /**
+     * Replaces a row of a matrix with row-wise bulk storage.
+     *
+     * @param x        the matrix, see {@link #hasRowStorage(DoubleMatrix2D)}.
+     * @param row      the row to replace.
+     * @param indices  the strictly increasing column indices of the row.
+     * @param values   the values of the row.
+     */
+    static void setRow(DoubleMatrix2D x, int row,
+                       int[] indices, double[] values)
+    {
+        if (x instanceof CSRDoubleMatrix2D) {
+            ((CSRDoubleMatrix2D)x).setRow(row, indices, values);
+        } else if (x instanceof se.hb.jcp.bindings.jliblinear.SparseDoubleMatrix2D) {
+            ((se.hb.jcp.bindings.jliblinear.SparseDoubleMatrix2D)x).
+                setRow(row, indices, values);
+        } else if (x instanceof se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix2D) {
+            ((se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix2D)x).
+                setRow(row, indices, values);
+        } else {
+            ((se.hb.jcp.bindings.libsvm.SparseDoubleMatrix2D)x).
+                setRow(row, indices, values);
+        }
+    }
+
+    private static int grow(int capacity)
+    {
+        long newCapacity = capacity + (capacity >> 1) + 16;
+        if (newCapacity > MAX_SIZE) {
+            if (capacity >= MAX_SIZE) {
+                throw new OutOfMemoryError("The data set is too large.");
+            }
+            newCapacity = MAX_SIZE;
+        }
+        return (int)newCapacity;
+    }
+}
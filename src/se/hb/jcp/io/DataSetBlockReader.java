@@ -0,0 +1,106 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.io;
+
+import java.io.IOException;
+
+import se.hb.jcp.cp.DataSet;
+
+/**
+ * Iterator over consecutive blocks of rows of a data set that is read
+ * incrementally, see
+ * {@link DataSetReader#readBlocks(java.io.InputStream, cern.colt.matrix.DoubleMatrix1D, int)}.
+ * Only the current block needs to be kept in memory, so data sets larger
+ * than the available memory can be processed block by block.
+ *
+ * @author agent(at)local
+ */
+public abstract class DataSetBlockReader
+{
+    private final int _blockSize;
+    private int       _columns = 0;
+    private int       _seenColumns = 0;
+
+    /**
+     * Creates a block reader.
+     *
+     * @param blockSize  the maximum number of rows in a block.
+     */
+    protected DataSetBlockReader(int blockSize)
+    {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be positive.");
+        }
+        _blockSize = blockSize;
+    }
+
+    /**
+     * Returns the next block of rows.
+     * Blocks have between 1 and <tt>getBlockSize()</tt> rows.
+     *
+     * @return the next block or <tt>null</tt> at the end of the data set.
+     * @throws IOException if reading fails or the input is malformed.
+     */
+    public abstract DataSet nextBlock()
+        throws IOException;
+
+    /**
+     * Returns the maximum number of rows in a block.
+     *
+     * @return the maximum number of rows in a block.
+     */
+    public int getBlockSize()
+    {
+        return _blockSize;
+    }
+
+    /**
+     * Returns the minimum number of columns of the blocks.
+     *
+     * @return the minimum number of columns.
+     */
+    public int getColumns()
+    {
+        return _columns;
+    }
+
+    /**
+     * Sets the minimum number of columns of the blocks, e.g. the number of
+     * attributes of a trained model. Since the total number of columns of
+     * a data set in a sparse format is only known after the last row, each
+     * block otherwise has the largest number of columns seen so far.
+     *
+     * @param columns  the minimum number of columns.
+     */
+    public void setColumns(int columns)
+    {
+        _columns = columns;
+    }
+
+    /**
+     * Returns the number of columns for the next block given the number of
+     * columns needed for the rows of that block.
+     *
+     * @param columns  the number of columns needed for the rows of the block.
+     * @return the number of columns of the block.
+     */
+    protected int blockColumns(int columns)
+    {
+        _seenColumns = Math.max(_seenColumns, columns);
+        return Math.max(_seenColumns, _columns);
+    }
+}
@@ -40,4 +40,40 @@ public abstract class DataSetReader
     {
         return read(source, null);
     }
+
+    /**
+     * Returns a block reader that reads the data set incrementally in
+     * blocks of at most blockSize rows. The source must remain open until
+     * the last block has been read.
+     * This default implementation reads the whole data set and returns it
+     * as a single block, so readers that can read incrementally should
+     * override it.
+     *
+     * @param source     the input stream to read from.
+     * @param template   an instance of the desired storage format or <tt>null</tt>.
+     * @param blockSize  the maximum number of rows in a block.
+     * @return a block reader for the data set.
+     * @throws IOException if reading fails or the input is malformed.
+     */
+    public DataSetBlockReader readBlocks(final InputStream    source,
+                                         final DoubleMatrix1D template,
+                                         int                  blockSize)
+        throws IOException
+    {
+        return new DataSetBlockReader(blockSize) {
+            private boolean _done = false;
+
+            @Override
+            public DataSet nextBlock()
+                throws IOException
+            {
+                if (_done) {
+                    return null;
+                }
+                _done = true;
+                DataSet dataSet = read(source, template);
+                return dataSet.y.length > 0 ? dataSet : null;
+            }
+        };
+    }
 }
@@ -0,0 +1,150 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// The public interface is based on cern.colt.matrix.DoubleMatrix1D.
+package se.hb.jcp.io;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+import se.hb.jcp.util.CSRDoubleMatrix2D;
+
+/**
+ * Class for read-only sparse 1-d matrices (aka <i>vectors</i>) holding
+ * <tt>double</tt> elements. Instances are row views of a
+ * {@link MappedSparseDoubleMatrix2D}.
+ *
+ * @author agent(at)local
+ */
+
+public class MappedSparseDoubleMatrix1D extends DoubleMatrix1D
+{
+    private final MappedSparseDoubleMatrix2D _matrix;
+    private final int _first;
+    private final int _last;
+
+    MappedSparseDoubleMatrix1D(MappedSparseDoubleMatrix2D matrix,
+                               int columns,
+                               int first,
+                               int last)
+    {
+        setUp(columns);
+        isNoView = false;
+        _matrix = matrix;
+        _first = first;
+        _last = last;
+    }
+
+    /**
+     * Returns the number of cells having non-zero values.
+     *
+     * @return the number of non-zero cells.
+     */
+    public int cardinality()
+    {
+        return _last - _first;
+    }
+
+    /**
+     * Fills the coordinates and values of cells having non-zero values into
+     * the specified lists. The coordinates are in increasing order.
+     *
+     * @param indexList  the list to be filled with indexes, can have any size.
+     * @param valueList  the list to be filled with values, can have any size.
+     */
+    public void getNonZeros(IntArrayList indexList, DoubleArrayList valueList)
+    {
+        int size = _last - _first;
+        indexList.setSize(size);
+        valueList.setSize(size);
+        _matrix.copyElements(_first, _last,
+                             indexList.elements(), valueList.elements());
+    }
+
+    /**
+     * Construct and returns a new empty matrix <i>of the same dynamic
+     * type</i> as the receiver, having the specified size.
+     * Since this matrix is read-only, the new matrix is a
+     * <tt>CSRDoubleMatrix1D</tt>.
+     *
+     * @param size  the number of cell the matrix shall have.
+     * @return  a new empty matrix.
+     */
+    public DoubleMatrix1D like(int size)
+    {
+        return new CSRDoubleMatrix1D(size);
+    }
+
+    /**
+     * Construct and returns a new 2-d matrix <i>of the corresponding
+     * dynamic type</i>, entirelly independent of the receiver.
+     * Since this matrix is read-only, the new matrix is a
+     * <tt>CSRDoubleMatrix2D</tt>.
+     *
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @return  a new matrix.
+     */
+    public DoubleMatrix2D like2D(int rows, int columns)
+    {
+        return new CSRDoubleMatrix2D(rows, columns);
+    }
+
+    /**
+     * Returns the matrix cell value at coordinate <tt>column</tt>.
+     *
+     * <p>Provided with invalid parameters this method may return invalid
+     * objects without throwing any exception.
+     * <b>You should only use this method when you are absolutely sure that
+     * the coordinate is within bounds.</b>
+     * Precondition (unchecked): <tt>0 &lt;= column &lt; size()</tt>.
+     *
+     * @param column  the index of the column-coordinate.
+     * @return the value at the specified coordinate.
+     */
+    public double getQuick(int column)
+    {
+        int k = _matrix.find(_first, _last, column);
+        return k >= 0 ? _matrix.value(k) : 0.0;
+    }
+
+    /**
+     * Not supported since the matrix is read-only.
+     *
+     * @param column  the index of the column-coordinate.
+     * @param value   the value to be filled into the specified cell.
+     * @throws UnsupportedOperationException always.
+     */
+    public void setQuick(int column, double value)
+    {
+        throw new UnsupportedOperationException("The matrix is read-only.");
+    }
+
+    /**
+     * Construct and returns a new selection view.
+     *
+     * @param offsets the offsets of the visible elements.
+     * @return a new view.
+     */
+    protected DoubleMatrix1D viewSelectionLike(int[] offsets)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+}
@@ -0,0 +1,268 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// The public interface is based on cern.colt.matrix.DoubleMatrix2D.
+package se.hb.jcp.io;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+import se.hb.jcp.util.CSRDoubleMatrix2D;
+
+/**
+ * Class for read-only sparse 2-d matrices holding <tt>double</tt> elements
+ * in compressed sparse row (CSR) form directly in <tt>java.nio</tt> buffer
+ * views, typically of a memory-mapped <tt>.jcpd</tt> file, see
+ * {@link jcpdReader}. The elements are never copied to the Java heap.
+ *
+ * Each array is split into segments of at most 2<sup>27</sup> elements so
+ * that arrays larger than a single 2 GB buffer can be accessed.
+ *
+ * @author agent(at)local
+ */
+
+public class MappedSparseDoubleMatrix2D extends DoubleMatrix2D
+{
+    static final int SEGMENT_SHIFT = 27;
+    static final int SEGMENT_SIZE  = 1 << SEGMENT_SHIFT;
+    static final int SEGMENT_MASK  = SEGMENT_SIZE - 1;
+
+    // The first row of this matrix in the row pointer array.
+    private final int            _firstRow;
+    private final LongBuffer[]   _rowPointers;
+    private final IntBuffer[]    _columnIndices;
+    // Exactly one of _values and _floatValues is non-null.
+    private final DoubleBuffer[] _values;
+    private final FloatBuffer[]  _floatValues;
+
+    MappedSparseDoubleMatrix2D(int            rows,
+                               int            columns,
+                               LongBuffer[]   rowPointers,
+                               IntBuffer[]    columnIndices,
+                               DoubleBuffer[] values,
+                               FloatBuffer[]  floatValues)
+    {
+        this(0, rows, columns, rowPointers, columnIndices, values, floatValues);
+    }
+
+    private MappedSparseDoubleMatrix2D(int            firstRow,
+                                       int            rows,
+                                       int            columns,
+                                       LongBuffer[]   rowPointers,
+                                       IntBuffer[]    columnIndices,
+                                       DoubleBuffer[] values,
+                                       FloatBuffer[]  floatValues)
+    {
+        setUp(rows, columns);
+        _firstRow = firstRow;
+        _rowPointers = rowPointers;
+        _columnIndices = columnIndices;
+        _values = values;
+        _floatValues = floatValues;
+    }
+
+    /**
+     * Construct and returns a new empty matrix <i>of the same dynamic type</i>
+     * as the receiver, having the specified number of rows and columns.
+     * Since this matrix is read-only, the new matrix is a
+     * <tt>CSRDoubleMatrix2D</tt>.
+     *
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @return  a new empty matrix.
+     */
+    public DoubleMatrix2D like(int rows, int columns)
+    {
+        return new CSRDoubleMatrix2D(rows, columns);
+    }
+
+    /**
+     * Construct and returns a new 1-d matrix <i>of the corresponding dynamic
+     * type</i>, entirelly independent of the receiver.
+     * Since this matrix is read-only, the new matrix is a
+     * <tt>CSRDoubleMatrix1D</tt>.
+     *
+     * @param  size the number of cells the matrix shall have.
+     * @return  a new matrix.
+     */
+    public DoubleMatrix1D like1D(int size)
+    {
+        return new CSRDoubleMatrix1D(size);
+    }
+
+    /**
+     * Construct and returns a new 1-d matrix <i>of the corresponding dynamic
+     * type</i>, sharing the same cells.
+     *
+     * @param size the number of cells the matrix shall have.
+     * @param zero the index of the first element.
+     * @param stride the number of indexes between any two elements, i.e.
+     *        <tt>index(i+1)-index(i)</tt>.
+     * @return  a new matrix of the corresponding dynamic type.
+     */
+    protected DoubleMatrix1D like1D(int size, int zero, int stride)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    /**
+     * Returns the matrix cell value at coordinate <tt>[row,column]</tt>.
+     *
+     * <p>Provided with invalid parameters this method may return invalid
+     * objects without throwing any exception.
+     * <b>You should only use this method when you are absolutely sure that
+     * the coordinate is within bounds.</b>
+     * Precondition (unchecked): <tt>0 &lt;= column &lt; columns() &amp;&amp;
+     * 0 &lt;= row &lt; rows()</tt>.
+     *
+     * @param row     the index of the row-coordinate.
+     * @param column  the index of the column-coordinate.
+     * @return the value at the specified coordinate.
+     */
+    public double getQuick(int row, int column)
+    {
+        int k = find(rowStart(row), rowStart(row + 1), column);
+        return k >= 0 ? value(k) : 0.0;
+    }
+
+    /**
+     * Not supported since the matrix is read-only.
+     *
+     * @param row     the index of the row-coordinate.
+     * @param column  the index of the column-coordinate.
+     * @param value   the value to be filled into the specified cell.
+     * @throws UnsupportedOperationException always.
+     */
+    public void setQuick(int row, int column, double value)
+    {
+        throw new UnsupportedOperationException("The matrix is read-only.");
+    }
+
+    /**
+       Constructs and returns a new <i>slice view</i> representing the
+       columns of the given row.
+       The returned view is backed by this matrix and is read-only.
+
+       @param row the row to fix.
+       @return a new slice view.
+       @throws IndexOutOfBoundsException if <tt>row &lt; 0 ||
+               row &gt;= rows()</tt>.
+       @see #viewColumn(int)
+    */
+    public DoubleMatrix1D viewRow(int row)
+    {
+        checkRow(row);
+        return new MappedSparseDoubleMatrix1D(this, columns,
+                                              rowStart(row),
+                                              rowStart(row + 1));
+    }
+
+    /**
+     * Construct and returns a new selection view.
+     *
+     * @param rowOffsets the offsets of the visible elements.
+     * @param columnOffsets the offsets of the visible elements.
+     * @return a new view.
+     */
+    protected DoubleMatrix2D viewSelectionLike(int[] rowOffsets,
+                                               int[] columnOffsets)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    /**
+     * Returns a new matrix sharing the buffers of this one that consists of
+     * the specified rows of this matrix.
+     *
+     * @param first    the first row.
+     * @param rows     the number of rows.
+     * @param columns  the number of columns, at least <tt>columns()</tt>.
+     * @return a new matrix.
+     */
+    MappedSparseDoubleMatrix2D viewRows(int first, int rows, int columns)
+    {
+        return new MappedSparseDoubleMatrix2D(_firstRow + first, rows, columns,
+                                              _rowPointers, _columnIndices,
+                                              _values, _floatValues);
+    }
+
+    /**
+     * Returns the position of the first element of the row in the column
+     * index and value arrays.
+     */
+    int rowStart(int row)
+    {
+        row += _firstRow;
+        return (int)_rowPointers[row >>> SEGMENT_SHIFT].
+            get(row & SEGMENT_MASK);
+    }
+
+    int columnIndex(int k)
+    {
+        return _columnIndices[k >>> SEGMENT_SHIFT].get(k & SEGMENT_MASK);
+    }
+
+    double value(int k)
+    {
+        if (_values != null) {
+            return _values[k >>> SEGMENT_SHIFT].get(k & SEGMENT_MASK);
+        } else {
+            return _floatValues[k >>> SEGMENT_SHIFT].get(k & SEGMENT_MASK);
+        }
+    }
+
+    /**
+     * Copies the column indices and values of the elements at the positions
+     * [first, last) to the arrays.
+     */
+    void copyElements(int first, int last, int[] indices, double[] values)
+    {
+        for (int k = first; k < last; k++) {
+            indices[k - first] = columnIndex(k);
+            values[k - first] = value(k);
+        }
+    }
+
+    /**
+     * Returns the position of the column among the positions
+     * [first, last) or -1 if the column has no stored element.
+     */
+    int find(int first, int last, int column)
+    {
+        int low = first;
+        int high = last - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = columnIndex(mid);
+            if (c < column) {
+                low = mid + 1;
+            } else if (c > column) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
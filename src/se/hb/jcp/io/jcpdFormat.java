@@ -0,0 +1,150 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the binary <tt>.jcpd</tt> data set format.
+ *
+ * A <tt>.jcpd</tt> file is little-endian and consists of a 64 byte header
+ * followed by four sections, each starting at an 8 byte aligned offset:
+ * <ol>
+ * <li>the labels, <tt>double[rows]</tt>;</li>
+ * <li>the CSR row pointers, <tt>long[rows + 1]</tt>;</li>
+ * <li>the 0-based column indices, <tt>int[nonZeros]</tt>, strictly
+ *     increasing within each row;</li>
+ * <li>the values, <tt>double[nonZeros]</tt> or, if the float values flag is
+ *     set, <tt>float[nonZeros]</tt>.</li>
+ * </ol>
+ * The header holds the magic bytes <tt>JCPD</tt>, the format version
+ * (int), the flags (int), a reserved int and the number of rows, columns and
+ * non-zero values (longs).
+ *
+ * @author agent(at)local
+ */
+final class jcpdFormat
+{
+    static final int  MAGIC = 0x4450434a; // "JCPD" read as a little-endian int.
+    static final int  VERSION = 1;
+    static final int  FLAG_FLOAT_VALUES = 1;
+    static final int  HEADER_SIZE = 64;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    final int  flags;
+    final int  rows;
+    final int  columns;
+    final int  nonZeros;
+
+    jcpdFormat(int rows, int columns, int nonZeros, int flags)
+    {
+        this.rows = rows;
+        this.columns = columns;
+        this.nonZeros = nonZeros;
+        this.flags = flags;
+    }
+
+    /**
+     * Reads and validates a header from the buffer.
+     */
+    static jcpdFormat readHeader(ByteBuffer header)
+        throws IOException
+    {
+        header.order(BYTE_ORDER);
+        if (header.remaining() < HEADER_SIZE ||
+            header.getInt(0) != MAGIC) {
+            throw new IOException("Not a jcpd data set file.");
+        }
+        int version = header.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported jcpd format version " +
+                                  version + ".");
+        }
+        int flags = header.getInt(8);
+        long rows = header.getLong(16);
+        long columns = header.getLong(24);
+        long nonZeros = header.getLong(32);
+        if (rows < 0 || columns < 0 || nonZeros < 0) {
+            throw new IOException("Malformed jcpd header.");
+        }
+        if (rows >= Integer.MAX_VALUE || columns > Integer.MAX_VALUE ||
+            nonZeros > Integer.MAX_VALUE) {
+            throw new IOException("The jcpd data set is too large.");
+        }
+        return new jcpdFormat((int)rows, (int)columns, (int)nonZeros, flags);
+    }
+
+    /**
+     * Writes the header to the buffer.
+     */
+    void writeHeader(ByteBuffer header)
+    {
+        header.order(BYTE_ORDER);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(flags);
+        header.putInt(0);
+        header.putLong(rows);
+        header.putLong(columns);
+        header.putLong(nonZeros);
+        while (header.position() < HEADER_SIZE) {
+            header.put((byte)0);
+        }
+    }
+
+    boolean hasFloatValues()
+    {
+        return (flags & FLAG_FLOAT_VALUES) != 0;
+    }
+
+    int valueSize()
+    {
+        return hasFloatValues() ? 4 : 8;
+    }
+
+    long labelsOffset()
+    {
+        return HEADER_SIZE;
+    }
+
+    long rowPointersOffset()
+    {
+        return align(labelsOffset() + 8L * rows);
+    }
+
+    long columnIndicesOffset()
+    {
+        return align(rowPointersOffset() + 8L * (rows + 1L));
+    }
+
+    long valuesOffset()
+    {
+        return align(columnIndicesOffset() + 4L * nonZeros);
+    }
+
+    long size()
+    {
+        return align(valuesOffset() + (long)valueSize() * nonZeros);
+    }
+
+    static long align(long offset)
+    {
+        return (offset + 7) & ~7L;
+    }
+}
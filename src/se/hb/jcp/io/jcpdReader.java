@@ -0,0 +1,398 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.io;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.cp.DataSet;
+
+/**
+ * Data set reader for the binary <tt>.jcpd</tt> data set format, see
+ * {@link jcpdWriter}. The format stores the labels and the compressed
+ * sparse row arrays of a data set so that they can be used in place.
+ *
+ * Without a template the instances of a file are returned as a read-only
+ * {@link MappedSparseDoubleMatrix2D} directly over a read-only memory
+ * mapping of the file. Loading is then independent of the size of the data
+ * set and the pages are shared between all processes using the same file.
+ * With a template the instances are copied into the storage format of the
+ * template.
+ *
+ * @author agent(at)local
+ */
+
+public class jcpdReader
+    extends DataSetReader
+{
+    /**
+     * The conventional file name extension of the format.
+     */
+    public static final String FILE_EXTENSION = ".jcpd";
+
+    @Override
+    public DataSet read(InputStream    source,
+                        DoubleMatrix1D template)
+        throws IOException
+    {
+        if (source instanceof FileInputStream) {
+            return read(((FileInputStream)source).getChannel(), template);
+        }
+        return read(new StreamSections(source), template);
+    }
+
+    /**
+     * Reads a data set in the <tt>.jcpd</tt> format starting at the current
+     * position of the file channel. The sections of the file are
+     * memory-mapped and remain valid after the channel has been closed.
+     *
+     * @param channel   the file channel to read from.
+     * @param template  an instance of the desired storage format or <tt>null</tt> for a memory-mapped read-only matrix.
+     * @return the data set.
+     * @throws IOException if reading fails or the file is malformed.
+     */
+    public DataSet read(FileChannel    channel,
+                        DoubleMatrix1D template)
+        throws IOException
+    {
+        return read(new MappedSections(channel), template);
+    }
+
+    /**
+     * Returns a block reader for a data set in the <tt>.jcpd</tt> format.
+     * If the source is a <tt>FileInputStream</tt> the file is memory-mapped
+     * and, without a template, each block is a read-only view of the mapped
+     * rows. Otherwise the whole data set is read into heap buffers first.
+     *
+     * @param source     the input stream to read from.
+     * @param template   an instance of the desired storage format or <tt>null</tt>.
+     * @param blockSize  the maximum number of rows in a block.
+     * @return a block reader for the data set.
+     * @throws IOException if reading fails or the file is malformed.
+     */
+    @Override
+    public DataSetBlockReader readBlocks(InputStream          source,
+                                         final DoubleMatrix1D template,
+                                         int                  blockSize)
+        throws IOException
+    {
+        Sections sections;
+        if (source instanceof FileInputStream) {
+            sections = new MappedSections(((FileInputStream)source).
+                                              getChannel());
+        } else {
+            sections = new StreamSections(source);
+        }
+        final Mapping mapping = map(sections);
+        return new DataSetBlockReader(blockSize) {
+            private int _row = 0;
+
+            @Override
+            public DataSet nextBlock()
+                throws IOException
+            {
+                int rows = Math.min(getBlockSize(), mapping.x.rows() - _row);
+                if (rows <= 0) {
+                    return null;
+                }
+                int columns = blockColumns(mapping.x.columns());
+                DataSet block =
+                    mapping.createDataSet(_row, rows, columns, template);
+                _row += rows;
+                return block;
+            }
+        };
+    }
+
+    private DataSet read(Sections sections, DoubleMatrix1D template)
+        throws IOException
+    {
+        Mapping mapping = map(sections);
+        return mapping.createDataSet(0, mapping.x.rows(), mapping.x.columns(),
+                                     template);
+    }
+
+    private static Mapping map(Sections sections)
+        throws IOException
+    {
+        jcpdFormat format = jcpdFormat.readHeader(sections.header());
+        int rows = format.rows;
+        int nonZeros = format.nonZeros;
+
+        ByteBuffer[] labelSegments =
+            sections.get(format.labelsOffset(), rows, 8);
+        DoubleBuffer[] labels = new DoubleBuffer[labelSegments.length];
+        for (int s = 0; s < labels.length; s++) {
+            labels[s] = labelSegments[s].asDoubleBuffer();
+        }
+        ByteBuffer[] rowPointerSegments =
+            sections.get(format.rowPointersOffset(), rows + 1, 8);
+        LongBuffer[] rowPointers = new LongBuffer[rowPointerSegments.length];
+        for (int s = 0; s < rowPointers.length; s++) {
+            rowPointers[s] = rowPointerSegments[s].asLongBuffer();
+        }
+        ByteBuffer[] indexSegments =
+            sections.get(format.columnIndicesOffset(), nonZeros, 4);
+        IntBuffer[] columnIndices = new IntBuffer[indexSegments.length];
+        for (int s = 0; s < columnIndices.length; s++) {
+            columnIndices[s] = indexSegments[s].asIntBuffer();
+        }
+        ByteBuffer[] valueSegments =
+            sections.get(format.valuesOffset(), nonZeros, format.valueSize());
+        DoubleBuffer[] values = null;
+        FloatBuffer[] floatValues = null;
+        if (format.hasFloatValues()) {
+            floatValues = new FloatBuffer[valueSegments.length];
+            for (int s = 0; s < floatValues.length; s++) {
+                floatValues[s] = valueSegments[s].asFloatBuffer();
+            }
+        } else {
+            values = new DoubleBuffer[valueSegments.length];
+            for (int s = 0; s < values.length; s++) {
+                values[s] = valueSegments[s].asDoubleBuffer();
+            }
+        }
+        sections.finish(format.size());
+
+        MappedSparseDoubleMatrix2D x =
+            new MappedSparseDoubleMatrix2D(rows, format.columns,
+                                           rowPointers, columnIndices,
+                                           values, floatValues);
+        if (x.rowStart(0) != 0 || x.rowStart(rows) != nonZeros) {
+            throw new IOException("Malformed jcpd row pointers.");
+        }
+        return new Mapping(labels, x);
+    }
+
+    /**
+     * The labels and instances of a mapped <tt>.jcpd</tt> file.
+     */
+    private static class Mapping
+    {
+        final DoubleBuffer[]             labels;
+        final MappedSparseDoubleMatrix2D x;
+
+        Mapping(DoubleBuffer[] labels, MappedSparseDoubleMatrix2D x)
+        {
+            this.labels = labels;
+            this.x = x;
+        }
+
+        /**
+         * Creates a data set of the specified rows.
+         */
+        DataSet createDataSet(int first, int rows, int columns,
+                              DoubleMatrix1D template)
+        {
+            DataSet dataSet = new DataSet();
+            dataSet.y = new double[rows];
+            for (int r = 0; r < rows; r++) {
+                int row = first + r;
+                dataSet.y[r] =
+                    labels[row >>> MappedSparseDoubleMatrix2D.SEGMENT_SHIFT].
+                        get(row & MappedSparseDoubleMatrix2D.SEGMENT_MASK);
+            }
+            MappedSparseDoubleMatrix2D view = x.viewRows(first, rows, columns);
+            if (template == null) {
+                dataSet.x = view;
+            } else {
+                dataSet.x = template.like2D(rows, columns);
+                copyInto(view, dataSet.x);
+            }
+            return dataSet;
+        }
+    }
+
+    /**
+     * Copies the rows of the source matrix into the destination matrix.
+     */
+    private static void copyInto(MappedSparseDoubleMatrix2D source,
+                                 DoubleMatrix2D             destination)
+    {
+        boolean bulk = CSRBuilder.hasRowStorage(destination);
+        for (int r = 0; r < source.rows(); r++) {
+            int first = source.rowStart(r);
+            int last  = source.rowStart(r + 1);
+            if (bulk) {
+                int[] indices = new int[last - first];
+                double[] values = new double[last - first];
+                source.copyElements(first, last, indices, values);
+                CSRBuilder.setRow(destination, r, indices, values);
+            } else {
+                for (int k = first; k < last; k++) {
+                    destination.setQuick(r, source.columnIndex(k),
+                                         source.value(k));
+                }
+            }
+        }
+    }
+
+    /**
+     * Access to the sections of a <tt>.jcpd</tt> file. The sections must be
+     * requested in file order.
+     */
+    private static abstract class Sections
+    {
+        /**
+         * Returns a buffer with the header.
+         */
+        abstract ByteBuffer header()
+            throws IOException;
+
+        /**
+         * Returns a section of count elements of elementSize bytes at the
+         * offset from the start of the file as little-endian byte buffers of
+         * at most <tt>MappedSparseDoubleMatrix2D.SEGMENT_SIZE</tt> elements
+         * each.
+         */
+        ByteBuffer[] get(long offset, long count, int elementSize)
+            throws IOException
+        {
+            int segments =
+                (int)((count + MappedSparseDoubleMatrix2D.SEGMENT_SIZE - 1) >>>
+                      MappedSparseDoubleMatrix2D.SEGMENT_SHIFT);
+            ByteBuffer[] result = new ByteBuffer[Math.max(1, segments)];
+            for (int s = 0; s < result.length; s++) {
+                long first = (long)s * MappedSparseDoubleMatrix2D.SEGMENT_SIZE;
+                long length =
+                    Math.min(count - first,
+                             MappedSparseDoubleMatrix2D.SEGMENT_SIZE);
+                result[s] = get(offset + first * elementSize,
+                                (int)(length * elementSize));
+                result[s].order(jcpdFormat.BYTE_ORDER);
+            }
+            return result;
+        }
+
+        abstract ByteBuffer get(long offset, int size)
+            throws IOException;
+
+        /**
+         * Called after all sections have been obtained.
+         */
+        abstract void finish(long size)
+            throws IOException;
+    }
+
+    /**
+     * Sections memory-mapped from a file channel.
+     */
+    private static class MappedSections extends Sections
+    {
+        private final FileChannel _channel;
+        private final long        _start;
+
+        MappedSections(FileChannel channel)
+            throws IOException
+        {
+            _channel = channel;
+            _start = channel.position();
+        }
+
+        ByteBuffer header()
+            throws IOException
+        {
+            ByteBuffer header = ByteBuffer.allocate(jcpdFormat.HEADER_SIZE);
+            while (header.hasRemaining() &&
+                   _channel.read(header, _start + header.position()) > 0) {
+            }
+            header.flip();
+            return header;
+        }
+
+        ByteBuffer get(long offset, int size)
+            throws IOException
+        {
+            if (_start + offset + size > _channel.size()) {
+                throw new IOException("Truncated jcpd data set file.");
+            }
+            return _channel.map(FileChannel.MapMode.READ_ONLY,
+                                _start + offset, size);
+        }
+
+        void finish(long size)
+            throws IOException
+        {
+            _channel.position(_start + size);
+        }
+    }
+
+    /**
+     * Sections read from an input stream into heap buffers.
+     */
+    private static class StreamSections extends Sections
+    {
+        private final InputStream _source;
+        private long              _position = 0;
+
+        StreamSections(InputStream source)
+        {
+            _source = source;
+        }
+
+        ByteBuffer header()
+            throws IOException
+        {
+            return get(0, jcpdFormat.HEADER_SIZE);
+        }
+
+        ByteBuffer get(long offset, int size)
+            throws IOException
+        {
+            skipTo(offset);
+            byte[] bytes = new byte[size];
+            int filled = 0;
+            while (filled < size) {
+                int n = _source.read(bytes, filled, size - filled);
+                if (n < 0) {
+                    throw new EOFException("Truncated jcpd data set file.");
+                }
+                filled += n;
+            }
+            _position += size;
+            return ByteBuffer.wrap(bytes);
+        }
+
+        void finish(long size)
+            throws IOException
+        {
+            skipTo(size);
+        }
+
+        private void skipTo(long offset)
+            throws IOException
+        {
+            while (_position < offset) {
+                if (_source.read() < 0) {
+                    throw new EOFException("Truncated jcpd data set file.");
+                }
+                _position++;
+            }
+        }
+    }
+}
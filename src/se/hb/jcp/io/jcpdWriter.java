@@ -0,0 +1,220 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.io;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Data set writer for the binary <tt>.jcpd</tt> data set format, see
+ * {@link jcpdReader}.
+ *
+ * @author agent(at)local
+ */
+
+public class jcpdWriter
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private boolean _floatValues = false;
+
+    /**
+     * Returns whether the values are stored as 32-bit floats.
+     *
+     * @return <tt>true</tt> if the values are stored as 32-bit floats.
+     */
+    public boolean isFloatValues()
+    {
+        return _floatValues;
+    }
+
+    /**
+     * Sets whether the values are stored as 32-bit floats. This halves the
+     * size of the value section at the cost of precision.
+     *
+     * @param floatValues  <tt>true</tt> to store the values as 32-bit floats.
+     */
+    public void setFloatValues(boolean floatValues)
+    {
+        _floatValues = floatValues;
+    }
+
+    /**
+     * Writes the data set in the builder in the <tt>.jcpd</tt> format.
+     * Rows with unsorted or repeated column indices are sorted first and
+     * for repeated column indices the last value is kept.
+     *
+     * @param data         the data set to write.
+     * @param destination  the output stream to write to.
+     * @throws IOException if writing fails.
+     */
+    public void write(CSRBuilder data, OutputStream destination)
+        throws IOException
+    {
+        if (!data.isRowsSorted()) {
+            data = sortRows(data);
+        }
+        WritableByteChannel channel;
+        if (destination instanceof FileOutputStream) {
+            channel = ((FileOutputStream)destination).getChannel();
+        } else {
+            channel = Channels.newChannel(destination);
+        }
+        jcpdFormat format =
+            new jcpdFormat(data.rows(), data.columns(), data.nonZeros(),
+                           _floatValues ? jcpdFormat.FLAG_FLOAT_VALUES : 0);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.order(jcpdFormat.BYTE_ORDER);
+        // The number of bytes written to the channel so far.
+        long position = 0;
+
+        format.writeHeader(buffer);
+
+        double[] labels = data.getLabels();
+        for (int r = 0; r < format.rows; r++) {
+            position += ensureRemaining(channel, buffer, 8);
+            buffer.putDouble(labels[r]);
+        }
+        position += pad(channel, buffer, position, format.rowPointersOffset());
+
+        int[] rowPointers = data.getRowPointers();
+        for (int r = 0; r <= format.rows; r++) {
+            position += ensureRemaining(channel, buffer, 8);
+            buffer.putLong(rowPointers[r]);
+        }
+        position += pad(channel, buffer, position,
+                        format.columnIndicesOffset());
+
+        int[] columnIndices = data.getColumnIndices();
+        for (int k = 0; k < format.nonZeros; k++) {
+            position += ensureRemaining(channel, buffer, 4);
+            buffer.putInt(columnIndices[k]);
+        }
+        position += pad(channel, buffer, position, format.valuesOffset());
+
+        double[] values = data.getValues();
+        for (int k = 0; k < format.nonZeros; k++) {
+            position += ensureRemaining(channel, buffer, 8);
+            if (_floatValues) {
+                buffer.putFloat((float)values[k]);
+            } else {
+                buffer.putDouble(values[k]);
+            }
+        }
+        position += pad(channel, buffer, position, format.size());
+        flush(channel, buffer);
+    }
+
+    /**
+     * Makes room for at least size bytes in the buffer by writing it to the
+     * channel if needed.
+     *
+     * @return the number of bytes written.
+     */
+    private static int ensureRemaining(WritableByteChannel channel,
+                                       ByteBuffer buffer,
+                                       int size)
+        throws IOException
+    {
+        if (buffer.remaining() < size) {
+            return flush(channel, buffer);
+        }
+        return 0;
+    }
+
+    private static int flush(WritableByteChannel channel, ByteBuffer buffer)
+        throws IOException
+    {
+        buffer.flip();
+        int n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return n;
+    }
+
+    /**
+     * Pads the output with zeros up to the offset, counting the bytes still
+     * in the buffer.
+     *
+     * @return the number of bytes written to the channel.
+     */
+    private static int pad(WritableByteChannel channel, ByteBuffer buffer,
+                           long written, long offset)
+        throws IOException
+    {
+        int flushed = 0;
+        while (written + flushed + buffer.position() < offset) {
+            flushed += ensureRemaining(channel, buffer, 1);
+            buffer.put((byte)0);
+        }
+        return flushed;
+    }
+
+    /**
+     * Returns a copy of the data set with the elements of each row sorted by
+     * column index. Of repeated column indices the last one is kept.
+     */
+    private static CSRBuilder sortRows(CSRBuilder data)
+    {
+        CSRBuilder sorted = new CSRBuilder(data.rows() + 1,
+                                           data.nonZeros() + 1);
+        int[] rowPointers = data.getRowPointers();
+        int[] columnIndices = data.getColumnIndices();
+        double[] values = data.getValues();
+        int[] rowIndices = new int[0];
+        double[] rowValues = new double[0];
+        for (int r = 0; r < data.rows(); r++) {
+            int first = rowPointers[r];
+            int length = rowPointers[r + 1] - first;
+            if (rowIndices.length < length) {
+                rowIndices = new int[length];
+                rowValues = new double[length];
+            }
+            // Stable insertion sort by column index.
+            for (int i = 0; i < length; i++) {
+                int column = columnIndices[first + i];
+                double value = values[first + i];
+                int j = i - 1;
+                while (j >= 0 && rowIndices[j] > column) {
+                    rowIndices[j + 1] = rowIndices[j];
+                    rowValues[j + 1] = rowValues[j];
+                    j--;
+                }
+                rowIndices[j + 1] = column;
+                rowValues[j + 1] = value;
+            }
+            sorted.startRow(data.getLabels()[r]);
+            for (int i = 0; i < length; i++) {
+                if (i + 1 < length && rowIndices[i + 1] == rowIndices[i]) {
+                    continue;
+                }
+                sorted.add(rowIndices[i], rowValues[i]);
+            }
+        }
+        // Keep the column count, which includes trailing zero values.
+        if (data.columns() > sorted.columns()) {
+            sorted.add(data.columns() - 1, 0.0);
+        }
+        return sorted;
+    }
+}
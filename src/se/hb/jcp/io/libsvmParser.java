@@ -0,0 +1,261 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-level parser for the libsvm sparse data format.
+ * Parses whole lines directly from a <tt>ByteBuffer</tt> into a
+ * {@link CSRBuilder} without creating any intermediate objects.
+ *
+ * @author agent(at)local
+ */
+final class libsvmParser
+{
+    // Powers of ten that are exactly representable as doubles.
+    private static final double[] POWERS_OF_TEN = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21,
+        1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private libsvmParser()
+    {
+    }
+
+    /**
+     * Parses the complete lines in the buffer from its position to its limit
+     * and adds them as rows to the builder. The position of the buffer is
+     * moved to the start of the first incomplete line. If endOfInput is
+     * <tt>true</tt> a final line without line terminator is parsed too.
+     * Empty lines are skipped.
+     *
+     * @param buffer      the buffer to parse.
+     * @param builder     the builder to add the rows to.
+     * @param endOfInput  whether the buffer ends at the end of the input.
+     * @param firstLine   the line number of the first line in the buffer, for error messages.
+     * @return the number of lines consumed.
+     * @throws IOException if the input is malformed.
+     */
+    static int parse(ByteBuffer buffer,
+                     CSRBuilder builder,
+                     boolean    endOfInput,
+                     long       firstLine)
+        throws IOException
+    {
+        return parse(buffer, builder, endOfInput, firstLine,
+                     Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses complete lines in the buffer like
+     * {@link #parse(ByteBuffer, CSRBuilder, boolean, long)} but stops when
+     * the builder contains maxRows rows.
+     *
+     * @param buffer      the buffer to parse.
+     * @param builder     the builder to add the rows to.
+     * @param endOfInput  whether the buffer ends at the end of the input.
+     * @param firstLine   the line number of the first line in the buffer, for error messages.
+     * @param maxRows     the maximum number of rows in the builder.
+     * @return the number of lines consumed.
+     * @throws IOException if the input is malformed.
+     */
+    static int parse(ByteBuffer buffer,
+                     CSRBuilder builder,
+                     boolean    endOfInput,
+                     long       firstLine,
+                     int        maxRows)
+        throws IOException
+    {
+        int lines = 0;
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (position < limit && builder.rows() < maxRows) {
+            int end = position;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && !endOfInput) {
+                break;
+            }
+            parseLine(buffer, position, end, builder, firstLine + lines);
+            lines++;
+            position = end < limit ? end + 1 : end;
+        }
+        buffer.position(position);
+        return lines;
+    }
+
+    private static void parseLine(ByteBuffer buffer, int start, int end,
+                                  CSRBuilder builder, long line)
+        throws IOException
+    {
+        int i = skipWhitespace(buffer, start, end);
+        if (i == end) {
+            return;
+        }
+        int tokenEnd = i;
+        while (tokenEnd < end && !isWhitespace(buffer.get(tokenEnd))) {
+            tokenEnd++;
+        }
+        builder.startRow(parseDouble(buffer, i, tokenEnd, line));
+        i = skipWhitespace(buffer, tokenEnd, end);
+        while (i < end) {
+            // Parse the 1-based attribute index.
+            int index = 0;
+            int digitsStart = i;
+            while (i < end && isDigit(buffer.get(i))) {
+                int digit = buffer.get(i) - '0';
+                if (index > (Integer.MAX_VALUE - digit) / 10) {
+                    throw malformed(line, "attribute index out of range");
+                }
+                index = index * 10 + digit;
+                i++;
+            }
+            if (i == digitsStart || i == end || buffer.get(i) != ':' ||
+                index < 1) {
+                throw malformed(line, "expected index:value");
+            }
+            i++;
+            tokenEnd = i;
+            while (tokenEnd < end && !isWhitespace(buffer.get(tokenEnd))) {
+                tokenEnd++;
+            }
+            builder.add(index - 1, parseDouble(buffer, i, tokenEnd, line));
+            i = skipWhitespace(buffer, tokenEnd, end);
+        }
+    }
+
+    /**
+     * Parses a finite double in [start, end). Decimal numbers with at most 18
+     * significant digits and a small exponent are converted exactly using
+     * one floating point operation. Other numbers fall back to
+     * <tt>Double.parseDouble()</tt>, so the result is always identical to
+     * <tt>Double.parseDouble()</tt>.
+     */
+    private static double parseDouble(ByteBuffer buffer, int start, int end,
+                                      long line)
+        throws IOException
+    {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        while (i < end && isDigit(buffer.get(i))) {
+            mantissa = mantissa * 10 + (buffer.get(i) - '0');
+            if (mantissa != 0) {
+                significantDigits++;
+            }
+            anyDigits = true;
+            i++;
+        }
+        if (i < end && buffer.get(i) == '.') {
+            i++;
+            while (i < end && isDigit(buffer.get(i))) {
+                mantissa = mantissa * 10 + (buffer.get(i) - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+                exponent--;
+                anyDigits = true;
+                i++;
+            }
+        }
+        if (anyDigits && i < end &&
+            (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            int e = 0;
+            int exponentStart = i;
+            while (i < end && isDigit(buffer.get(i)) && e < 10000) {
+                e = e * 10 + (buffer.get(i) - '0');
+                i++;
+            }
+            if (i == exponentStart) {
+                anyDigits = false;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (anyDigits && i == end && significantDigits <= 18 &&
+            mantissa < MAX_EXACT_MANTISSA &&
+            -22 <= exponent && exponent <= 22) {
+            double value = exponent >= 0
+                ? mantissa * POWERS_OF_TEN[exponent]
+                : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return parseDoubleSlow(buffer, start, end, line);
+    }
+
+    private static double parseDoubleSlow(ByteBuffer buffer,
+                                          int start, int end,
+                                          long line)
+        throws IOException
+    {
+        byte[] token = new byte[end - start];
+        for (int i = 0; i < token.length; i++) {
+            token[i] = buffer.get(start + i);
+        }
+        double d;
+        try {
+            d = Double.parseDouble(new String(token, "US-ASCII"));
+        } catch (NumberFormatException e) {
+            throw malformed(line, "bad number");
+        }
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new IOException("NaN or Infinity in input data file.");
+        }
+        return d;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int i, int end)
+    {
+        while (i < end && isWhitespace(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    private static boolean isDigit(byte b)
+    {
+        return '0' <= b && b <= '9';
+    }
+
+    private static IOException malformed(long line, String reason)
+    {
+        return new IOException("Malformed input data file at line " + line +
+                               ": " + reason + ".");
+    }
+}
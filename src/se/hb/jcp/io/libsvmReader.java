@@ -16,17 +16,19 @@
 //
 package se.hb.jcp.io;
 
-import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 
 import cern.colt.matrix.DoubleMatrix1D;
-import cern.colt.matrix.DoubleFactory2D;
 
 import se.hb.jcp.cp.DataSet;
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
 
 /**
  * Data set reader for the libsvm sparse data format.
@@ -37,86 +39,371 @@ import se.hb.jcp.cp.DataSet;
 public class libsvmReader
     extends DataSetReader
 {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Files smaller than this are not split into chunks.
+    private static final long MIN_CHUNK_SIZE = 8L << 20;
+    // Limited by the maximum size of a memory mapping.
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private ExecutionPolicy _executionPolicy;
+
     @Override
     public DataSet read(InputStream    source,
                         DoubleMatrix1D template)
         throws IOException
     {
-        DataSet p;
-        // Read through the entire data set file and collect the information
-        // needed to instantiate the x and y matrices.
-        // FIXME: This is not very memory efficient.
-        try  {
-            BufferedReader br = new BufferedReader(new InputStreamReader(source));
-            // Read through the entire data set file and collect the information
-            // needed to instantiate the x and y matrices.
-            // FIXME: This is not very memory efficient.
-            int rows = 0;
-            int columns = 0;
-            ArrayList<Double>   vy = new ArrayList<Double>();
-            ArrayList<int[]>    vxi = new ArrayList<int[]>();
-            ArrayList<double[]> vxv = new ArrayList<double[]>();
-            while(true) {
-                String line = br.readLine();
-                if(line == null) break;
-
-                StringTokenizer st = new StringTokenizer(line, " \t\n\r\f:");
-
-                vy.add(parseDouble(st.nextToken()));
-                int m = st.countTokens()/2;
-                int[]    xi = new int[m];
-                double[] xv = new double[m];
-                for (int j=0; j<m; j++) {
-                    xi[j] = parseInt(st.nextToken());
-                    xv[j] = parseDouble(st.nextToken());
+        return readCSR(source).toDataSet(template);
+    }
+
+    /**
+     * Reads a data set in the libsvm sparse data format in a single pass
+     * into primitive compressed sparse row arrays.
+     * If the source is a <tt>FileInputStream</tt> on a regular file of known
+     * size the rest of the file is memory-mapped and parsed in parallel
+     * chunks, see {@link #readCSR(FileChannel)}. Pipes and other special
+     * files are read as streams.
+     *
+     * @param source  the input stream to read from.
+     * @return a <tt>CSRBuilder</tt> containing the data set.
+     * @throws IOException if reading fails or the input is malformed.
+     */
+    public CSRBuilder readCSR(InputStream source)
+        throws IOException
+    {
+        if (source instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream)source).getChannel();
+            if (isMappable(channel)) {
+                return readCSR(channel);
+            }
+        }
+        CSRBuilder builder = new CSRBuilder();
+        parse(source, builder);
+        return builder;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the channel has a known size beyond its
+     * current position. Pipes, terminals and devices report a size of 0
+     * or fail to report a position and are not memory-mapped.
+     */
+    private static boolean isMappable(FileChannel channel)
+    {
+        try {
+            return channel.size() > channel.position();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses the source into the builder through a reusable heap buffer.
+     */
+    private static void parse(InputStream source, CSRBuilder builder)
+        throws IOException
+    {
+        new StreamParser(source).parse(builder, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a block reader that parses the data set in the libsvm sparse
+     * data format incrementally from the source through a bounded heap
+     * buffer. Each block is stored in the native storage format of the
+     * template or, if the template is <tt>null</tt>, in a
+     * <tt>CSRDoubleMatrix2D</tt>.
+     *
+     * @param source     the input stream to read from.
+     * @param template   an instance of the desired storage format or <tt>null</tt>.
+     * @param blockSize  the maximum number of rows in a block.
+     * @return a block reader for the data set.
+     */
+    @Override
+    public DataSetBlockReader readBlocks(final InputStream    source,
+                                         final DoubleMatrix1D template,
+                                         final int            blockSize)
+    {
+        return new DataSetBlockReader(blockSize) {
+            private final StreamParser _parser = new StreamParser(source);
+
+            @Override
+            public DataSet nextBlock()
+                throws IOException
+            {
+                CSRBuilder builder =
+                    new CSRBuilder(Math.min(blockSize, 1024), 16 * 1024);
+                _parser.parse(builder, blockSize);
+                if (builder.rows() == 0) {
+                    return null;
+                }
+                builder.ensureColumns(blockColumns(builder.columns()));
+                return builder.toDataSet(template);
+            }
+        };
+    }
+
+    /**
+     * Reads a data set in the libsvm sparse data format from the current
+     * position to the end of the file channel. The file is memory-mapped,
+     * split at line boundaries into chunks and the chunks are parsed
+     * concurrently under the execution policy of this reader.
+     *
+     * @param channel  the file channel to read from.
+     * @return a <tt>CSRBuilder</tt> containing the data set.
+     * @throws IOException if reading fails or the input is malformed.
+     */
+    public CSRBuilder readCSR(FileChannel channel)
+        throws IOException
+    {
+        long start = channel.position();
+        long end   = channel.size();
+        ExecutionPolicy policy = new ExecutionPolicy(getExecutionPolicy());
+        // Each chunk is parsed by a single task.
+        policy.setGrainSize(1);
+        long chunkSize = MAX_CHUNK_SIZE;
+        if (policy.isParallel()) {
+            // A few chunks per worker for load balancing.
+            int parallelism = policy.getPool().getParallelism();
+            chunkSize =
+                Math.min(MAX_CHUNK_SIZE,
+                         Math.max(MIN_CHUNK_SIZE,
+                                  (end - start) / (4L * parallelism) + 1));
+        }
+        long[] boundaries = findChunkBoundaries(channel, start, end, chunkSize);
+
+        int chunks = boundaries.length - 1;
+        CSRBuilder[] parts = new CSRBuilder[chunks];
+        IOException[] errors = new IOException[chunks];
+        ParseChunkAction all =
+            new ParseChunkAction(channel, boundaries, parts, errors,
+                                 0, chunks);
+        all.start(policy);
+        long rows = 0;
+        long nonZeros = 0;
+        for (int c = 0; c < chunks; c++) {
+            if (errors[c] != null) {
+                throw errors[c];
+            }
+            rows += parts[c].rows();
+            nonZeros += parts[c].nonZeros();
+        }
+        if (rows > CSRBuilder.MAX_SIZE || nonZeros > CSRBuilder.MAX_SIZE) {
+            throw new IOException("The data set is too large: " + rows +
+                                  " rows and " + nonZeros +
+                                  " non-zero elements.");
+        }
+        channel.position(end);
+        if (chunks == 1) {
+            return parts[0];
+        }
+        // Concatenate the chunks in order.
+        CSRBuilder builder = new CSRBuilder((int)rows, (int)nonZeros);
+        for (int c = 0; c < chunks; c++) {
+            builder.append(parts[c]);
+            parts[c] = null;
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the execution policy used for parsing memory-mapped files.
+     *
+     * @return the execution policy.
+     */
+    public ExecutionPolicy getExecutionPolicy()
+    {
+        return ExecutionPolicy.orDefault(_executionPolicy);
+    }
+
+    /**
+     * Sets the execution policy used for parsing memory-mapped files.
+     *
+     * @param policy  the execution policy or <tt>null</tt> for the default execution policy.
+     */
+    public void setExecutionPolicy(ExecutionPolicy policy)
+    {
+        _executionPolicy = policy;
+    }
+
+    /**
+     * Splits [start, end) into chunks of about chunkSize bytes that each
+     * begin at the start of a line.
+     */
+    private static long[] findChunkBoundaries(FileChannel channel,
+                                              long start, long end,
+                                              long chunkSize)
+        throws IOException
+    {
+        ArrayList<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(start);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = start + chunkSize;
+        while (position < end) {
+            // Find the end of the line containing position.
+            long lineEnd = -1;
+            while (lineEnd < 0 && position < end) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                if (n <= 0) {
+                    break;
                 }
-                if (m > 0) {
-                    columns = Math.max(columns, xi[m-1]);
+                for (int i = 0; i < n; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lineEnd = position + i;
+                        break;
+                    }
                 }
-                vxi.add(xi);
-                vxv.add(xv);
-                rows++;
-            }   p = new DataSet();
-            // Create and initialize y.
-            p.y = new double[rows];
-            //p.y = DoubleFactory1D.dense.make(rows);
-            for (int r = 0; r < p.y.length; r++) {
-                p.y[r] = vy.get(r);
-                //p.y.set(r, vy.get(r));
-            }   // Create and initialize x.
-            if (template != null) {
-                p.x = template.like2D(rows, columns);
-            } else {
-                // Default to libsvm data storage.
-                //p.x = new se.hb.jcp.bindings.libsvm.SparseDoubleMatrix2D(rows, columns);
-                // Default to colt data storage.
-                p.x = DoubleFactory2D.sparse.make(rows, columns);
-            }   for (int r = 0; r < p.x.rows(); r++) {
-                int[]    xi = vxi.get(r);
-                double[] xv = vxv.get(r);
-                for (int a = 0; a < xi.length; a++) {
-                    p.x.set(r, xi[a] - 1, xv[a]);
+                if (lineEnd < 0) {
+                    position += n;
                 }
             }
-        }catch (Exception e){
-            throw new IOException("Nty in input data file.");
+            if (lineEnd < 0 || lineEnd + 1 >= end) {
+                break;
+            }
+            boundaries.add(lineEnd + 1);
+            position = lineEnd + 1 + chunkSize;
+        }
+        boundaries.add(end);
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
         }
+        return result;
+    }
+
+    class ParseChunkAction extends ParallelizedAction
+    {
+        FileChannel   _channel;
+        long[]        _boundaries;
+        CSRBuilder[]  _parts;
+        IOException[] _errors;
 
-        return p;
+        public ParseChunkAction(FileChannel   channel,
+                                long[]        boundaries,
+                                CSRBuilder[]  parts,
+                                IOException[] errors,
+                                int first, int last)
+        {
+            super(first, last);
+            _channel = channel;
+            _boundaries = boundaries;
+            _parts = parts;
+            _errors = errors;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            long offset = _boundaries[i];
+            long size = _boundaries[i + 1] - offset;
+            try {
+                MappedByteBuffer buffer =
+                    _channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                CSRBuilder part = new CSRBuilder();
+                // Bulk copies into a heap buffer are much faster than
+                // per-byte access to the mapped buffer.
+                parse(new ByteBufferInputStream(buffer), part);
+                _parts[i] = part;
+            } catch (IOException e) {
+                _errors[i] =
+                    new IOException("In the chunk starting at byte " +
+                                    offset + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new ParseChunkAction(_channel, _boundaries,
+                                        _parts, _errors, first, last);
+        }
     }
 
-    private static double parseDouble(String s)
-        throws IOException
+    /**
+     * Incremental parser for an input stream through a growable heap
+     * buffer that holds at least one whole line.
+     */
+    private static class StreamParser
     {
-        double d = Double.parseDouble(s);
-        if (Double.isNaN(d) || Double.isInfinite(d)) {
-            throw new IOException("NaN or Infinity in input data file.");
+        private final InputStream _source;
+        private byte[]     _bytes = new byte[BUFFER_SIZE];
+        private ByteBuffer _buffer = ByteBuffer.wrap(_bytes);
+        // The buffer holds unparsed bytes in [_consumed, _filled).
+        private int        _consumed = 0;
+        private int        _filled = 0;
+        private long       _line = 1;
+        private boolean    _endOfInput = false;
+
+        StreamParser(InputStream source)
+        {
+            _source = source;
+        }
+
+        /**
+         * Parses lines into the builder until it contains maxRows rows or
+         * the end of the input is reached.
+         */
+        void parse(CSRBuilder builder, int maxRows)
+            throws IOException
+        {
+            while (builder.rows() < maxRows) {
+                _buffer.limit(_filled);
+                _buffer.position(_consumed);
+                _line += libsvmParser.parse(_buffer, builder, _endOfInput,
+                                            _line, maxRows);
+                _consumed = _buffer.position();
+                if (builder.rows() >= maxRows ||
+                    (_endOfInput && _consumed == _filled)) {
+                    break;
+                }
+                // Move the incomplete last line to the start of the buffer.
+                System.arraycopy(_bytes, _consumed, _bytes, 0,
+                                 _filled - _consumed);
+                _filled -= _consumed;
+                _consumed = 0;
+                if (_filled == _bytes.length) {
+                    // A line longer than the buffer.
+                    byte[] larger = new byte[2 * _bytes.length];
+                    System.arraycopy(_bytes, 0, larger, 0, _filled);
+                    _bytes = larger;
+                    _buffer = ByteBuffer.wrap(_bytes);
+                }
+                int n = _source.read(_bytes, _filled, _bytes.length - _filled);
+                if (n < 0) {
+                    _endOfInput = true;
+                } else {
+                    _filled += n;
+                }
+            }
         }
-        return d;
     }
 
-    private static int parseInt(String s)
+    /**
+     * An <tt>InputStream</tt> reading the remaining bytes of a
+     * <tt>ByteBuffer</tt>.
+     */
+    private static class ByteBufferInputStream extends InputStream
     {
-        return Integer.parseInt(s);
+        private final ByteBuffer _buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (!_buffer.hasRemaining()) {
+                return length == 0 ? 0 : -1;
+            }
+            int n = Math.min(length, _buffer.remaining());
+            _buffer.get(bytes, offset, n);
+            return n;
+        }
     }
 }
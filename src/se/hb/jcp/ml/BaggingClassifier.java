@@ -0,0 +1,386 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * A bagged ensemble of any classifier, see L. Breiman, "Bagging
+ * Predictors", Machine Learning 24(2), 1996.
+ *
+ * Each member of the ensemble is trained by <tt>fitNew</tt> of the
+ * prototype classifier on a bootstrap sample of the training set and the
+ * members are trained in parallel under the default execution policy.
+ * The class probabilities are the average of the class probabilities of
+ * the members. Members that do not predict class probabilities vote for
+ * their predicted label. A member may not have seen every class in its
+ * bootstrap sample, so its labels are mapped onto the classes of the
+ * ensemble.
+ *
+ * The out-of-bag class probabilities of the training instances are
+ * computed by <tt>fit</tt>.
+ *
+ * @author agent(at)local
+ */
+public class BaggingClassifier
+    extends ClassifierBase
+    implements IOutOfBagClassProbabilityClassifier,
+               java.io.Serializable
+{
+    // Per-thread buffers for the class probabilities of a member.
+    private static final ThreadLocal<double[]> _probabilities =
+        new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue()
+            {
+                return new double[0];
+            }
+        };
+
+    private final IClassifier _prototype;
+    private final int         _memberCount;
+    private final Long        _seed;
+
+    private double[]      _classes;
+    private IClassifier[] _members;
+    // The index in _classes of each label of each member.
+    private int[][]       _memberClasses;
+
+    // The out-of-bag class probabilities of the training instances.
+    private transient double[] _oobProbabilities;
+    private transient int[]    _oobCounts;
+
+    /**
+     * Creates an untrained bagged ensemble.
+     *
+     * @param prototype    the untrained classifier the members are trained from.
+     * @param memberCount  the number of members of the ensemble.
+     */
+    public BaggingClassifier(IClassifier prototype, int memberCount)
+    {
+        this(prototype, memberCount, null);
+    }
+
+    /**
+     * Creates an untrained bagged ensemble with reproducible bootstrap
+     * samples.
+     *
+     * @param prototype    the untrained classifier the members are trained from.
+     * @param memberCount  the number of members of the ensemble.
+     * @param seed         the seed for the bootstrap samples.
+     */
+    public BaggingClassifier(IClassifier prototype, int memberCount,
+                             long seed)
+    {
+        this(prototype, memberCount, Long.valueOf(seed));
+    }
+
+    private BaggingClassifier(IClassifier prototype, int memberCount,
+                              Long seed)
+    {
+        if (memberCount < 1) {
+            throw new IllegalArgumentException
+                          ("The number of members must be positive.");
+        }
+        _prototype = prototype;
+        _memberCount = memberCount;
+        _seed = seed;
+    }
+
+    protected void internalFit(DoubleMatrix2D x, double[] y)
+    {
+        int n = x.rows();
+        Random random = (_seed != null) ? new Random(_seed) : new Random();
+
+        // The classes of the ensemble.
+        SortedSet<Double> uniqueLabels = new TreeSet<Double>();
+        for (int i = 0; i < n; i++) {
+            uniqueLabels.add(y[i]);
+        }
+        double[] classes = new double[uniqueLabels.size()];
+        int c = 0;
+        for (Double label : uniqueLabels) {
+            classes[c++] = label;
+        }
+
+        // Draw the bootstrap samples.
+        int[][] samples = new int[_memberCount][n];
+        BitSet[] inBag = new BitSet[_memberCount];
+        for (int m = 0; m < _memberCount; m++) {
+            inBag[m] = new BitSet(n);
+            for (int r = 0; r < n; r++) {
+                int i = random.nextInt(n);
+                samples[m][r] = i;
+                inBag[m].set(i);
+            }
+        }
+
+        ExecutionPolicy policy = new ExecutionPolicy(ExecutionPolicy.getDefault());
+        // Each member is trained by a single task.
+        policy.setGrainSize(1);
+        IClassifier[] members = new IClassifier[_memberCount];
+        new TrainMembersAction(x, y, samples, members, 0, _memberCount).
+            start(policy);
+
+        int[][] memberClasses = new int[_memberCount][];
+        for (int m = 0; m < _memberCount; m++) {
+            Double[] labels = members[m].getLabels();
+            memberClasses[m] = new int[labels.length];
+            for (int k = 0; k < labels.length; k++) {
+                memberClasses[m][k] = Arrays.binarySearch(classes, labels[k]);
+            }
+        }
+
+        _classes = classes;
+        _members = members;
+        _memberClasses = memberClasses;
+
+        // The out-of-bag predictions of the training instances.
+        _oobProbabilities = new double[n * classes.length];
+        _oobCounts = new int[n];
+        new OutOfBagAction(x, inBag, 0, n).
+            start(ExecutionPolicy.getDefault());
+    }
+
+    public IClassifier fitNew(DoubleMatrix2D x, double[] y)
+    {
+        BaggingClassifier clone =
+            new BaggingClassifier(_prototype, _memberCount, _seed);
+        clone.fit(x, y);
+        return clone;
+    }
+
+    public double predict(DoubleMatrix1D instance)
+    {
+        double[] probability = new double[_classes.length];
+        return predict(instance, probability);
+    }
+
+    public double predict(DoubleMatrix1D instance,
+                          double[] probabilityEstimates)
+    {
+        int nrClass = _classes.length;
+        for (int c = 0; c < nrClass; c++) {
+            probabilityEstimates[c] = 0.0;
+        }
+        instance = PreparedInstance.prepare(this, instance);
+        for (int m = 0; m < _members.length; m++) {
+            addMemberPrediction(m, instance, probabilityEstimates);
+        }
+        return _classes[normalize(probabilityEstimates, _members.length)];
+    }
+
+    public boolean predictOutOfBag(int i, double[] probabilityEstimates)
+    {
+        if (_oobCounts == null) {
+            throw new IllegalStateException
+                          ("No out-of-bag predictions are available.");
+        }
+        if (_oobCounts[i] == 0) {
+            return false;
+        }
+        System.arraycopy(_oobProbabilities, i * _classes.length,
+                         probabilityEstimates, 0, _classes.length);
+        return true;
+    }
+
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _prototype.nativeStorageTemplate();
+    }
+
+    /**
+     * Returns the number of members of the ensemble.
+     *
+     * @return the number of members.
+     */
+    public int getMemberCount()
+    {
+        return _memberCount;
+    }
+
+    /**
+     * Returns the prototype classifier the members are trained from.
+     *
+     * @return the prototype classifier.
+     */
+    public IClassifier getPrototype()
+    {
+        return _prototype;
+    }
+
+    /**
+     * Adds the class probabilities predicted by a member for the instance,
+     * which must be in the native storage format, to probabilities.
+     */
+    private void addMemberPrediction(int m, DoubleMatrix1D instance,
+                                     double[] probabilities)
+    {
+        IClassifier member = _members[m];
+        int[] memberClasses = _memberClasses[m];
+        if (member instanceof IClassProbabilityClassifier) {
+            double[] probability = probabilityBuffer(memberClasses.length);
+            ((IClassProbabilityClassifier)member).predict(instance,
+                                                          probability);
+            for (int k = 0; k < memberClasses.length; k++) {
+                probabilities[memberClasses[k]] += probability[k];
+            }
+        } else {
+            double label = member.predict(instance);
+            probabilities[Arrays.binarySearch(_classes, label)] += 1.0;
+        }
+    }
+
+    /**
+     * Divides the summed probabilities by the number of contributing
+     * members.
+     *
+     * @return the index of the most probable class.
+     */
+    private int normalize(double[] probabilities, int count)
+    {
+        int best = 0;
+        for (int c = 0; c < _classes.length; c++) {
+            probabilities[c] /= count;
+            if (probabilities[c] > probabilities[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the probability buffer of the current thread.
+     */
+    private static double[] probabilityBuffer(int size)
+    {
+        double[] buffer = _probabilities.get();
+        if (buffer.length < size) {
+            buffer = new double[size];
+            _probabilities.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Trains the members in an interval on their bootstrap samples.
+     */
+    private class TrainMembersAction extends ParallelizedAction
+    {
+        final DoubleMatrix2D _x;
+        final double[]       _y;
+        final int[][]        _samples;
+        final IClassifier[]  _members;
+
+        TrainMembersAction(DoubleMatrix2D x, double[] y, int[][] samples,
+                           IClassifier[] members, int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _y = y;
+            _samples = samples;
+            _members = members;
+        }
+
+        @Override
+        protected void compute(int m)
+        {
+            int[] sample = _samples[m];
+            DoubleMatrix2D xb =
+                _prototype.nativeStorageTemplate().like2D(sample.length,
+                                                          _x.columns());
+            double[] yb = new double[sample.length];
+            // Row views of some storage formats are copies, so the rows
+            // are copied element by element.
+            IntArrayList indices = new IntArrayList();
+            DoubleArrayList values = new DoubleArrayList();
+            for (int r = 0; r < sample.length; r++) {
+                _x.viewRow(sample[r]).getNonZeros(indices, values);
+                for (int k = 0; k < indices.size(); k++) {
+                    xb.setQuick(r, indices.getQuick(k), values.getQuick(k));
+                }
+                yb[r] = _y[sample[r]];
+            }
+            _members[m] = _prototype.fitNew(xb, yb);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new TrainMembersAction(_x, _y, _samples, _members,
+                                          first, last);
+        }
+    }
+
+    /**
+     * Computes the out-of-bag class probabilities of the training instances
+     * in an interval.
+     */
+    private class OutOfBagAction extends ParallelizedAction
+    {
+        final DoubleMatrix2D _x;
+        final BitSet[]       _inBag;
+
+        OutOfBagAction(DoubleMatrix2D x, BitSet[] inBag, int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _inBag = inBag;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            int nrClass = _classes.length;
+            double[] probability = new double[nrClass];
+            DoubleMatrix1D instance =
+                PreparedInstance.prepare(BaggingClassifier.this,
+                                         _x.viewRow(i));
+            int count = 0;
+            for (int m = 0; m < _members.length; m++) {
+                if (!_inBag[m].get(i)) {
+                    addMemberPrediction(m, instance, probability);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                normalize(probability, count);
+                System.arraycopy(probability, 0,
+                                 _oobProbabilities, i * nrClass, nrClass);
+            }
+            _oobCounts[i] = count;
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new OutOfBagAction(_x, _inBag, first, last);
+        }
+    }
+}
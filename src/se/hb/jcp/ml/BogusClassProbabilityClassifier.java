@@ -25,8 +25,12 @@ import cern.colt.matrix.DoubleMatrix2D;
  */
 public class BogusClassProbabilityClassifier
     extends ClassifierBase
-    implements IClassProbabilityClassifier
+    implements IBatchClassProbabilityClassifier
 {
+    // Fixed to the value computed before the accessor for the underlying
+    // classifier was added so that saved models remain readable.
+    private static final long serialVersionUID = -3806202509818419448L;
+
     private IClassifier _classifier;
     private double[]    _classes;
 
@@ -87,21 +91,77 @@ public class BogusClassProbabilityClassifier
                           double[] probabilityEstimates)
     {
         double prediction = _classifier.predict(instance);
+        probabilities(prediction, probabilityEstimates, 0);
+        return prediction;
+    }
+
+    /**
+     * Predicts the targets and target probabilities for the rows first to
+     * last - 1 of the supplied instances. If the underlying classifier is
+     * an <tt>IBatchClassifier</tt> the targets are predicted by a single
+     * call to it.
+     *
+     * @param instances              the instances.
+     * @param first                  the first row to predict.
+     * @param last                   the row after the last row to predict.
+     * @param predictions            a <tt>double[]</tt> array of at least <tt>last - first</tt> elements for storing the predicted target of each row.
+     * @param probabilityEstimates   a <tt>double[]</tt> array of at least <tt>(last - first) * classes</tt> elements for storing the predicted probabilities of each row.
+     */
+    @Override
+    public void predict(DoubleMatrix2D instances,
+                        int first,
+                        int last,
+                        double[] predictions,
+                        double[] probabilityEstimates)
+    {
+        if (_classifier instanceof IBatchClassifier) {
+            ((IBatchClassifier)_classifier).predict(instances, first, last,
+                                                    predictions);
+        } else {
+            for (int r = first; r < last; r++) {
+                predictions[r - first] =
+                    _classifier.predict(instances.viewRow(r));
+            }
+        }
+        for (int r = first; r < last; r++) {
+            probabilities(predictions[r - first], probabilityEstimates,
+                          (r - first) * _classes.length);
+        }
+    }
+
+    /**
+     * Returns the underlying classifier.
+     *
+     * @return the underlying <tt>IClassifier</tt>.
+     */
+    public IClassifier getClassifier()
+    {
+        return _classifier;
+    }
+
+    /**
+     * Stores the bogus class probabilities of a prediction starting at
+     * offset in probabilityEstimates.
+     */
+    private void probabilities(double   prediction,
+                               double[] probabilityEstimates,
+                               int      offset)
+    {
         switch (_classes.length) {
         case 1:
             // FIXME: Assumes 1 class labelled 1.0.
-            probabilityEstimates[0] = Math.min(0.0, Math.max(prediction, 1.0));
+            probabilityEstimates[offset] =
+                Math.min(0.0, Math.max(prediction, 1.0));
             break;
         case 2:
             // FIXME: Probability hack. Assumes 2 classes labelled -1.0 and 1.0.
-            probabilityEstimates[0] = 0.5 - 0.5*prediction;
-            probabilityEstimates[1] = 0.5 + 0.5*prediction;
+            probabilityEstimates[offset]     = 0.5 - 0.5*prediction;
+            probabilityEstimates[offset + 1] = 0.5 + 0.5*prediction;
             break;
         default:
             throw new UnsupportedOperationException
                           ("Unsupported number of classes.");
         }
-        return prediction;
     }
 
     /**
@@ -30,6 +30,10 @@ public abstract class ClassifierBase
     implements IClassifier,
                java.io.Serializable
 {
+    // Fixed to the value computed before setClassifierInformation was
+    // added so that saved models remain readable.
+    private static final long serialVersionUID = -6353467984094858323L;
+
     private int _attributeCount = -1;
     private Double[] _labels = null;
 
@@ -72,5 +76,19 @@ public abstract class ClassifierBase
         return _labels;
     }
 
+    /**
+     * Sets the classifier information for classifiers that are also
+     * trained by other means than <tt>fit</tt>, e.g. incrementally.
+     *
+     * @param attributeCount  the number of attributes.
+     * @param labels          the class labels.
+     */
+    protected final void setClassifierInformation(int attributeCount,
+                                                  Double[] labels)
+    {
+        _attributeCount = attributeCount;
+        _labels = labels;
+    }
+
     protected abstract void internalFit(DoubleMatrix2D x, double[] y) throws JSONException;
 }
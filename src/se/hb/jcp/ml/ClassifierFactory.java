@@ -35,7 +35,10 @@ public final class ClassifierFactory
             "se.hb.jcp.bindings.jlibsvm.SVMClassifier",
             "se.hb.jcp.bindings.jliblinear.LinearClassifier",
             "se.hb.jcp.bindings.opencv.SVMClassifier",
-            "se.hb.jcp.bindings.opencv.RandomForestClassifier"
+            "se.hb.jcp.bindings.opencv.RandomForestClassifier",
+            "se.hb.jcp.bindings.jliblinear.KernelApproximationClassifier",
+            "se.hb.jcp.ml.RandomForestClassifier",
+            "se.hb.jcp.ml.SGDLogisticRegressionClassifier"
         };
 
     private ClassifierFactory()
@@ -64,6 +67,12 @@ public final class ClassifierFactory
             return new se.hb.jcp.bindings.opencv.SVMClassifier(config);
         case 4:
             return new se.hb.jcp.bindings.opencv.RandomForestClassifier(config);
+        case 5:
+            return new se.hb.jcp.bindings.jliblinear.KernelApproximationClassifier(config);
+        case 6:
+            return new se.hb.jcp.ml.RandomForestClassifier(config);
+        case 7:
+            return new se.hb.jcp.ml.SGDLogisticRegressionClassifier(config);
         default:
             throw new UnsupportedOperationException("Unknown classifier type.");
         }
@@ -0,0 +1,184 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.util.Random;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * Base class for explicit feature maps that approximate a kernel, so that
+ * a linear model trained on the mapped instances approximates a kernel
+ * model at the cost of a linear one.
+ *
+ * The feature maps approximate the RBF kernel
+ * <tt>exp(-gamma*|x-y|^2)</tt>. The map is computed from the non-zero
+ * elements of an instance, so sparse instances are cheap to map.
+ * Attributes beyond those the map was fitted on are ignored.
+ *
+ * @author agent(at)local
+ */
+public abstract class FeatureMap
+    implements java.io.Serializable
+{
+    private final double _gammaParameter;
+    protected double     _gamma;
+    protected int        _inputDimension = -1;
+
+    /**
+     * Creates an unfitted feature map.
+     *
+     * @param gamma  the RBF kernel parameter or a non-positive value for <tt>1/attributes</tt>.
+     */
+    protected FeatureMap(double gamma)
+    {
+        _gammaParameter = gamma;
+    }
+
+    /**
+     * Fits the feature map to the supplied instances.
+     *
+     * @param x       the instances.
+     * @param random  the source of randomness for the map.
+     */
+    public void fit(DoubleMatrix2D x, Random random)
+    {
+        _inputDimension = x.columns();
+        if (_gammaParameter > 0.0) {
+            _gamma = _gammaParameter;
+        } else {
+            _gamma = 1.0 / Math.max(1, _inputDimension);
+        }
+        internalFit(x, random);
+    }
+
+    /**
+     * Returns the number of attributes the map has been fitted on.
+     *
+     * @return the number of attributes or <tt>-1</tt> if the map has not been fitted.
+     */
+    public int getInputDimension()
+    {
+        return _inputDimension;
+    }
+
+    /**
+     * Returns the number of features of the mapped instances.
+     *
+     * @return the number of features of the mapped instances.
+     */
+    public abstract int getOutputDimension();
+
+    /**
+     * Maps an instance given by its non-zero elements.
+     *
+     * @param indices  the column indices of the non-zero elements in increasing order, as filled in by <tt>getNonZeros</tt>.
+     * @param values   the values of the non-zero elements.
+     * @param z        a <tt>double[]</tt> array of at least {@link #getOutputDimension()} elements for storing the mapped instance.
+     */
+    public abstract void map(IntArrayList    indices,
+                             DoubleArrayList values,
+                             double[]        z);
+
+    /**
+     * Maps all rows of the supplied instances and passes each mapped row to
+     * the handler, which stores it in whatever form it needs. The rows are
+     * mapped in parallel blocks under the supplied execution policy, so
+     * the handler is called concurrently for different rows.
+     *
+     * @param x        the instances.
+     * @param policy   the execution policy to use.
+     * @param handler  the receiver of the mapped rows.
+     */
+    public void mapAll(DoubleMatrix2D   x,
+                       ExecutionPolicy  policy,
+                       MappedRowHandler handler)
+    {
+        MapRowsAction all = new MapRowsAction(x, handler, 0, x.rows());
+        all.start(policy);
+    }
+
+    /**
+     * Fits the map once the input dimension and gamma are known.
+     *
+     * @param x       the instances.
+     * @param random  the source of randomness for the map.
+     */
+    protected abstract void internalFit(DoubleMatrix2D x, Random random);
+
+    /**
+     * Receives the rows mapped by {@link FeatureMap#mapAll}.
+     */
+    public interface MappedRowHandler
+    {
+        /**
+         * Handles a mapped row.
+         *
+         * @param row  the index of the row.
+         * @param z    the mapped row, which is only valid during the call.
+         */
+        public void handle(int row, double[] z);
+    }
+
+    /**
+     * Maps the rows in an interval with one set of buffers per task.
+     */
+    private class MapRowsAction extends ParallelizedAction
+    {
+        final DoubleMatrix2D   _x;
+        final MappedRowHandler _handler;
+        IntArrayList    _indices;
+        DoubleArrayList _values;
+        double[]        _z;
+
+        MapRowsAction(DoubleMatrix2D   x,
+                      MappedRowHandler handler,
+                      int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _handler = handler;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _indices = new IntArrayList();
+            _values  = new DoubleArrayList();
+            _z       = new double[getOutputDimension()];
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _x.viewRow(i).getNonZeros(_indices, _values);
+            map(_indices, _values, _z);
+            _handler.handle(i, _z);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new MapRowsAction(_x, _handler, first, last);
+        }
+    }
+}
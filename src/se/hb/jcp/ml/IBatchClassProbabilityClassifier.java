@@ -0,0 +1,48 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Represents a class probability classifier that can predict a range of
+ * rows of a matrix into caller-provided arrays, so that the conformal
+ * classifiers avoid per-instance result allocations.
+ *
+ * @author agent(at)local
+ */
+public interface IBatchClassProbabilityClassifier
+    extends IClassProbabilityClassifier
+{
+    /**
+     * Predicts the targets and target probabilities for the rows first to
+     * last - 1 of the supplied instances. The probabilities of row r are
+     * stored in the order assumed by JCP starting at
+     * <tt>(r - first) * classes</tt> in probabilityEstimates.
+     *
+     * @param instances              the instances.
+     * @param first                  the first row to predict.
+     * @param last                   the row after the last row to predict.
+     * @param predictions            a <tt>double[]</tt> array of at least <tt>last - first</tt> elements for storing the predicted target of each row.
+     * @param probabilityEstimates   a <tt>double[]</tt> array of at least <tt>(last - first) * classes</tt> elements for storing the predicted probabilities of each row.
+     */
+    public void predict(DoubleMatrix2D instances,
+                        int first,
+                        int last,
+                        double[] predictions,
+                        double[] probabilityEstimates);
+}
@@ -0,0 +1,44 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Represents a classifier that can predict a range of instances at once
+ * with a single call into the underlying library. The conformal classifiers
+ * use it through {@link BogusClassProbabilityClassifier}.
+ *
+ * @author agent(at)local
+ */
+public interface IBatchClassifier
+    extends IClassifier
+{
+    /**
+     * Predicts the targets for the rows first to last - 1 of the supplied
+     * instances.
+     *
+     * @param instances    the instances.
+     * @param first        the first row to predict.
+     * @param last         the row after the last row to predict.
+     * @param predictions  a <tt>double[]</tt> array of at least <tt>last - first</tt> elements for storing the predicted target of each row.
+     */
+    public void predict(DoubleMatrix2D instances,
+                        int first,
+                        int last,
+                        double[] predictions);
+}
@@ -0,0 +1,40 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+/**
+ * Represents a bagged ensemble classifier that can predict the class
+ * probabilities of its training instances out-of-bag, i.e. using only the
+ * members of the ensemble that were not trained on the instance.
+ *
+ * The out-of-bag predictions are made available by <tt>fit</tt> and are
+ * not required to survive serialization.
+ *
+ * @author agent(at)local
+ */
+public interface IOutOfBagClassProbabilityClassifier
+    extends IClassProbabilityClassifier
+{
+    /**
+     * Returns the out-of-bag class probabilities of a training instance.
+     *
+     * @param i                      the row of the instance in the training set.
+     * @param probabilityEstimates   a <tt>double[]</tt> array for storing the out-of-bag probabilities for each of target values in the order assumed by JCP.
+     * @return <tt>true</tt> if the instance was out-of-bag for at least one member of the ensemble or <tt>false</tt> if it has no out-of-bag prediction.
+     */
+    public boolean predictOutOfBag(int i, double[] probabilityEstimates);
+}
@@ -38,4 +38,15 @@ public interface ISVMClassifier
      */
     public double distanceFromSeparatingPlane(DoubleMatrix1D instance);
 
+    /**
+     * Computes the one-vs-one decision values of a multi-class SVM for the
+     * instance. The classes are taken in ascending order of their labels,
+     * see {@link SVMDecisionValues} for the layout.
+     *
+     * @param instance        the instance.
+     * @param decisionValues  a <tt>double[]</tt> array of at least <tt>SVMDecisionValues.count(classes)</tt> elements to store the decision values in.
+     */
+    public void decisionValues(DoubleMatrix1D instance,
+                               double[] decisionValues);
+
 }
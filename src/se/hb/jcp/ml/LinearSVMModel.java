@@ -0,0 +1,383 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// The voting and probability estimates follow libsvm 3.18 by Chih-Chung
+// Chang and Chih-Jen Lin.
+package se.hb.jcp.ml;
+
+/**
+ * The decision functions of a trained libsvm model with a linear kernel
+ * collapsed into one dense weight vector per one-vs-one class pair.
+ *
+ * A decision value is then a single sparse dot product with the instance,
+ * independent of the number of support vectors. The caller computes the
+ * dot products with {@link #getWeights(int)} in whatever sparse format the
+ * instance is stored in and this class turns them into libsvm's
+ * prediction and probability estimates. The results are equal to libsvm's
+ * up to the rounding of the different summation order.
+ *
+ * The support vectors must be added with {@link #addSupportVector} before
+ * the model is used. The model is thread-safe after that.
+ *
+ * @author agent(at)local
+ */
+public final class LinearSVMModel
+    implements java.io.Serializable
+{
+    /**
+     * The maximal total number of weights, beyond which the weight vectors
+     * are not worthwhile compared to the support vectors.
+     */
+    public static final long MAX_WEIGHTS = 1L << 24;
+
+    // The libsvm svm_type values.
+    private static final int C_SVC     = 0;
+    private static final int NU_SVC    = 1;
+    private static final int ONE_CLASS = 2;
+
+    private final int        _svmType;
+    private final boolean    _classification;
+    private final int        _nrClass;
+    private final int[]      _label;
+    private final int[]      _start;
+    private final double[]   _rho;
+    private final double[]   _probA;
+    private final double[]   _probB;
+    private final double[][] _w;
+
+    /**
+     * Creates a linear model without any support vectors.
+     *
+     * @param columns         the number of attributes.
+     * @param svmType         the libsvm svm_type of the model.
+     * @param nrClass         the number of classes.
+     * @param label           the labels in libsvm's order, or <tt>null</tt>.
+     * @param nSV             the number of support vectors of each class, or <tt>null</tt>.
+     * @param rho             the constant terms of the decision functions.
+     * @param probA           the Platt parameters A, or <tt>null</tt>.
+     * @param probB           the Platt parameters B, or <tt>null</tt>.
+     */
+    public LinearSVMModel(int columns,
+                          int svmType,
+                          int nrClass,
+                          int[] label,
+                          int[] nSV,
+                          double[] rho,
+                          double[] probA,
+                          double[] probB)
+    {
+        _svmType = svmType;
+        _classification = svmType == C_SVC || svmType == NU_SVC;
+        _nrClass = nrClass;
+        _label = label;
+        _rho = rho;
+        _probA = probA;
+        _probB = probB;
+        _w = new double[getDecisionValueCount()][columns];
+        _start = new int[nrClass + 1];
+        if (_classification) {
+            for (int i = 0; i < nrClass; i++) {
+                _start[i + 1] = _start[i] + nSV[i];
+            }
+        }
+    }
+
+    /**
+     * Returns whether the weight vectors for a model would exceed
+     * {@link #MAX_WEIGHTS}.
+     *
+     * @param nrClass  the number of classes.
+     * @param columns  the number of attributes.
+     * @return <tt>true</tt> if the weight vectors are within the limit.
+     */
+    public static boolean isFeasible(int nrClass, int columns)
+    {
+        long pairs = Math.max(1L, (long)nrClass * (nrClass - 1) / 2);
+        return pairs * columns <= MAX_WEIGHTS;
+    }
+
+    /**
+     * Adds support vector sv to the weight vectors of the class pairs it
+     * takes part in. Indices at or beyond the number of attributes are
+     * ignored.
+     *
+     * @param sv       the index of the support vector in the model.
+     * @param coef     the nrClass - 1 coefficients of the support vector.
+     * @param indices  the indices of the support vector.
+     * @param values   the values of the support vector.
+     * @param offset   the position of the first element.
+     * @param length   the number of elements.
+     */
+    public void addSupportVector(int sv, double[] coef,
+                                 int[] indices, double[] values,
+                                 int offset, int length)
+    {
+        if (!_classification) {
+            addScaled(_w[0], coef[0], indices, values, offset, length);
+            return;
+        }
+        int c = 0;
+        while (sv >= _start[c + 1]) {
+            c++;
+        }
+        // As in svm_predict_values the pair (i, j) uses coefficient j - 1
+        // for the support vectors of class i and i for those of class j.
+        int p = 0;
+        for (int i = 0; i < _nrClass; i++) {
+            for (int j = i + 1; j < _nrClass; j++) {
+                if (c == i) {
+                    addScaled(_w[p], coef[j - 1],
+                              indices, values, offset, length);
+                } else if (c == j) {
+                    addScaled(_w[p], coef[i],
+                              indices, values, offset, length);
+                }
+                p++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of decision values, i.e. weight vectors.
+     *
+     * @return the number of decision values.
+     */
+    public int getDecisionValueCount()
+    {
+        return _classification ? _nrClass * (_nrClass - 1) / 2 : 1;
+    }
+
+    /**
+     * Returns the weight vector of decision function p. The returned array
+     * must not be modified.
+     *
+     * @param p  the index of the decision function.
+     * @return the weight vector.
+     */
+    public double[] getWeights(int p)
+    {
+        return _w[p];
+    }
+
+    /**
+     * Computes the dot product of a sparse instance with each weight
+     * vector. Indices at or beyond the number of attributes are ignored.
+     *
+     * @param indices    the indices of the instance.
+     * @param values     the values of the instance.
+     * @param offset     the position of the first element.
+     * @param length     the number of elements.
+     * @param decValues  a <tt>double[]</tt> array for the dot products, see {@link #getDecisionValueCount()}.
+     */
+    public void dot(int[] indices, double[] values, int offset, int length,
+                    double[] decValues)
+    {
+        for (int p = 0; p < _w.length; p++) {
+            double[] w = _w[p];
+            double sum = 0;
+            for (int k = offset; k < offset + length; k++) {
+                if (indices[k] < w.length) {
+                    sum += w[indices[k]] * values[k];
+                }
+            }
+            decValues[p] = sum;
+        }
+    }
+
+    /**
+     * Returns the constant term of decision function p.
+     *
+     * @param p  the index of the decision function.
+     * @return the constant term.
+     */
+    public double getRho(int p)
+    {
+        return _rho[p];
+    }
+
+    /**
+     * Returns whether the model has the parameters for probability
+     * estimates.
+     *
+     * @return <tt>true</tt> if the model can estimate class probabilities.
+     */
+    public boolean hasProbabilityModel()
+    {
+        return _classification && _probA != null && _probB != null;
+    }
+
+    /**
+     * Completes a prediction as <tt>svm_predict_values</tt>. On entry
+     * decValues holds the dot product of the instance with each weight
+     * vector; on return it holds the decision values.
+     *
+     * @param decValues  the dot products, replaced by the decision values.
+     * @return the predicted target.
+     */
+    public double predictValues(double[] decValues)
+    {
+        if (!_classification) {
+            decValues[0] -= _rho[0];
+            if (_svmType == ONE_CLASS) {
+                return (decValues[0] > 0) ? 1 : -1;
+            } else {
+                return decValues[0];
+            }
+        }
+        int[] vote = new int[_nrClass];
+        int p = 0;
+        for (int i = 0; i < _nrClass; i++) {
+            for (int j = i + 1; j < _nrClass; j++) {
+                decValues[p] -= _rho[p];
+                if (decValues[p] > 0) {
+                    ++vote[i];
+                } else {
+                    ++vote[j];
+                }
+                p++;
+            }
+        }
+        int voteMaxIdx = 0;
+        for (int i = 1; i < _nrClass; i++) {
+            if (vote[i] > vote[voteMaxIdx]) {
+                voteMaxIdx = i;
+            }
+        }
+        return _label[voteMaxIdx];
+    }
+
+    /**
+     * Completes a prediction as <tt>svm_predict_probability</tt>. On entry
+     * decValues holds the dot product of the instance with each weight
+     * vector. If the model lacks probability parameters the probabilities
+     * are left unchanged.
+     *
+     * @param decValues      the dot products, replaced by the decision values.
+     * @param probEstimates  a <tt>double[]</tt> array for the class probabilities in libsvm's label order.
+     * @return the predicted target.
+     */
+    public double predictProbability(double[] decValues,
+                                     double[] probEstimates)
+    {
+        if (!hasProbabilityModel()) {
+            return predictValues(decValues);
+        }
+        predictValues(decValues);
+
+        double minProb = 1e-7;
+        double[][] pairwiseProb = new double[_nrClass][_nrClass];
+        int k = 0;
+        for (int i = 0; i < _nrClass; i++) {
+            for (int j = i + 1; j < _nrClass; j++) {
+                pairwiseProb[i][j] =
+                    Math.min(Math.max(sigmoidPredict(decValues[k],
+                                                     _probA[k], _probB[k]),
+                                      minProb),
+                             1 - minProb);
+                pairwiseProb[j][i] = 1 - pairwiseProb[i][j];
+                k++;
+            }
+        }
+        multiclassProbability(_nrClass, pairwiseProb, probEstimates);
+
+        int probMaxIdx = 0;
+        for (int i = 1; i < _nrClass; i++) {
+            if (probEstimates[i] > probEstimates[probMaxIdx]) {
+                probMaxIdx = i;
+            }
+        }
+        return _label[probMaxIdx];
+    }
+
+    private static void addScaled(double[] w, double scale,
+                                  int[] indices, double[] values,
+                                  int offset, int length)
+    {
+        for (int k = offset; k < offset + length; k++) {
+            if (indices[k] < w.length) {
+                w[indices[k]] += scale * values[k];
+            }
+        }
+    }
+
+    private static double sigmoidPredict(double decisionValue,
+                                         double A, double B)
+    {
+        double fApB = decisionValue * A + B;
+        if (fApB >= 0) {
+            return Math.exp(-fApB) / (1.0 + Math.exp(-fApB));
+        } else {
+            return 1.0 / (1 + Math.exp(fApB));
+        }
+    }
+
+    /**
+     * Method 2 from the multiclass_prob paper by Wu, Lin, and Weng.
+     */
+    private static void multiclassProbability(int k, double[][] r, double[] p)
+    {
+        int t, j;
+        int iter = 0, maxIter = Math.max(100, k);
+        double[][] Q = new double[k][k];
+        double[] Qp = new double[k];
+        double pQp, eps = 0.005 / k;
+
+        for (t = 0; t < k; t++) {
+            p[t] = 1.0 / k;  // Valid if k = 1
+            Q[t][t] = 0;
+            for (j = 0; j < t; j++) {
+                Q[t][t] += r[j][t] * r[j][t];
+                Q[t][j] = Q[j][t];
+            }
+            for (j = t + 1; j < k; j++) {
+                Q[t][t] += r[j][t] * r[j][t];
+                Q[t][j] = -r[j][t] * r[t][j];
+            }
+        }
+        for (iter = 0; iter < maxIter; iter++) {
+            // Stopping condition, recalculate QP,pQP for numerical accuracy.
+            pQp = 0;
+            for (t = 0; t < k; t++) {
+                Qp[t] = 0;
+                for (j = 0; j < k; j++) {
+                    Qp[t] += Q[t][j] * p[j];
+                }
+                pQp += p[t] * Qp[t];
+            }
+            double maxError = 0;
+            for (t = 0; t < k; t++) {
+                double error = Math.abs(Qp[t] - pQp);
+                if (error > maxError) {
+                    maxError = error;
+                }
+            }
+            if (maxError < eps) {
+                break;
+            }
+
+            for (t = 0; t < k; t++) {
+                double diff = (-Qp[t] + pQp) / Q[t][t];
+                p[t] += diff;
+                pQp = (pQp + diff * (diff * Q[t][t] + 2 * Qp[t])) /
+                      (1 + diff) / (1 + diff);
+                for (j = 0; j < k; j++) {
+                    Qp[j] = (Qp[j] + diff * Q[t][j]) / (1 + diff);
+                    p[j] /= (1 + diff);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.linalg.EigenvalueDecomposition;
+
+import se.hb.jcp.util.CSRDoubleMatrix2D;
+
+/**
+ * Nystroem approximation of the RBF kernel, see C. K. I. Williams and
+ * M. Seeger, "Using the Nystroem Method to Speed Up Kernel Machines",
+ * NIPS 2000.
+ *
+ * The map is fitted by drawing m landmarks among the training instances.
+ * An instance x is mapped to <tt>K_mm^(-1/2) k(x)</tt>, where k(x) is the
+ * vector of kernel values between x and the landmarks and K_mm is the
+ * kernel matrix of the landmarks. Directions with negligible eigenvalues
+ * of K_mm are dropped, so the number of features may be less than m.
+ * The landmarks are kept as compressed sparse rows, so sparse landmarks
+ * take little space regardless of the number of attributes.
+ *
+ * @author agent(at)local
+ */
+public class NystroemFeatureMap
+    extends FeatureMap
+{
+    // Eigenvalues below this fraction of the largest one are dropped.
+    private static final double EIGENVALUE_THRESHOLD = 1e-10;
+    // Per-thread buffers for the kernel values of an instance.
+    private static final ThreadLocal<double[]> _kernelValues =
+        new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue()
+            {
+                return new double[0];
+            }
+        };
+
+    private final int _components;
+    private int _landmarkCount;
+    private int _featureCount;
+    private CSRDoubleMatrix2D _landmarks;
+    private double[] _landmarkNorms;
+    // Feature c of landmark i is stored at i*_featureCount + c.
+    private double[] _projection;
+
+    /**
+     * Creates an unfitted Nystroem feature map.
+     *
+     * @param components  the number of landmarks.
+     * @param gamma       the RBF kernel parameter or a non-positive value for <tt>1/attributes</tt>.
+     */
+    public NystroemFeatureMap(int components, double gamma)
+    {
+        super(gamma);
+        if (components < 1) {
+            throw new IllegalArgumentException
+                          ("The number of components must be positive.");
+        }
+        _components = components;
+    }
+
+    public int getOutputDimension()
+    {
+        return _featureCount;
+    }
+
+    public void map(IntArrayList indices, DoubleArrayList values, double[] z)
+    {
+        int m = _landmarkCount;
+        double[] k = kernelValueBuffer(m);
+        double norm = dotLandmarks(indices, values, k);
+        for (int i = 0; i < m; i++) {
+            double distance = norm + _landmarkNorms[i] - 2.0 * k[i];
+            k[i] = Math.exp(-_gamma * Math.max(0.0, distance));
+        }
+        int r = _featureCount;
+        for (int c = 0; c < r; c++) {
+            z[c] = 0.0;
+        }
+        for (int i = 0; i < m; i++) {
+            double ki = k[i];
+            int offset = i * r;
+            for (int c = 0; c < r; c++) {
+                z[c] += _projection[offset + c] * ki;
+            }
+        }
+    }
+
+    protected void internalFit(DoubleMatrix2D x, Random random)
+    {
+        int n = _inputDimension;
+        int m = Math.min(_components, x.rows());
+
+        // Draw the landmarks without replacement.
+        int[] rows = new int[x.rows()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        for (int i = 0; i < m; i++) {
+            int j = i + random.nextInt(rows.length - i);
+            int tmp = rows[i];
+            rows[i] = rows[j];
+            rows[j] = tmp;
+        }
+        CSRDoubleMatrix2D landmarks = new CSRDoubleMatrix2D(m, n);
+        double[] landmarkNorms = new double[m];
+        IntArrayList indices = new IntArrayList();
+        DoubleArrayList values = new DoubleArrayList();
+        for (int i = 0; i < m; i++) {
+            DoubleMatrix1D row = x.viewRow(rows[i]);
+            row.getNonZeros(indices, values);
+            landmarks.setRow(i,
+                             Arrays.copyOf(indices.elements(), indices.size()),
+                             Arrays.copyOf(values.elements(), values.size()));
+            for (int k = 0; k < values.size(); k++) {
+                double v = values.getQuick(k);
+                landmarkNorms[i] += v * v;
+            }
+        }
+        landmarks.trimToSize();
+
+        _landmarkCount = m;
+        _landmarks = landmarks;
+        _landmarkNorms = landmarkNorms;
+
+        // The kernel matrix of the landmarks.
+        DoubleMatrix2D kmm = new DenseDoubleMatrix2D(m, m);
+        double[] dots = new double[m];
+        for (int i = 0; i < m; i++) {
+            landmarks.viewRow(i).getNonZeros(indices, values);
+            dotLandmarks(indices, values, dots);
+            for (int j = 0; j < m; j++) {
+                double distance =
+                    landmarkNorms[i] + landmarkNorms[j] - 2.0 * dots[j];
+                kmm.setQuick(i, j,
+                             Math.exp(-_gamma * Math.max(0.0, distance)));
+            }
+        }
+
+        // K_mm = V diag(lambda) V^T gives the projection V diag(lambda)^-1/2.
+        EigenvalueDecomposition eig = new EigenvalueDecomposition(kmm);
+        DoubleMatrix1D lambda = eig.getRealEigenvalues();
+        DoubleMatrix2D v = eig.getV();
+        double maxLambda = 0.0;
+        for (int c = 0; c < m; c++) {
+            maxLambda = Math.max(maxLambda, lambda.getQuick(c));
+        }
+        int r = 0;
+        int[] kept = new int[m];
+        for (int c = 0; c < m; c++) {
+            if (lambda.getQuick(c) > EIGENVALUE_THRESHOLD * maxLambda) {
+                kept[r++] = c;
+            }
+        }
+        double[] projection = new double[m * r];
+        for (int c = 0; c < r; c++) {
+            double scale = 1.0 / Math.sqrt(lambda.getQuick(kept[c]));
+            for (int i = 0; i < m; i++) {
+                projection[i * r + c] = v.getQuick(i, kept[c]) * scale;
+            }
+        }
+
+        _featureCount = r;
+        _projection = projection;
+    }
+
+    /**
+     * Computes the dot product between the instance and each landmark by
+     * merging the increasing column indices of the two.
+     *
+     * @return the squared norm of the instance.
+     */
+    private double dotLandmarks(IntArrayList    indices,
+                                DoubleArrayList values,
+                                double[]        dots)
+    {
+        int[] index = indices.elements();
+        double[] value = values.elements();
+        int size = indices.size();
+        double norm = 0.0;
+        for (int k = 0; k < size; k++) {
+            if (index[k] < _inputDimension) {
+                norm += value[k] * value[k];
+            }
+        }
+        int[] columns = _landmarks.getColumnIndices();
+        double[] landmarkValues = _landmarks.getValues();
+        for (int i = 0; i < _landmarkCount; i++) {
+            int p = _landmarks.getRowStart(i);
+            int last = _landmarks.getRowEnd(i);
+            int k = 0;
+            double dot = 0.0;
+            while (p < last && k < size) {
+                if (columns[p] == index[k]) {
+                    dot += landmarkValues[p++] * value[k++];
+                } else if (columns[p] < index[k]) {
+                    p++;
+                } else {
+                    k++;
+                }
+            }
+            dots[i] = dot;
+        }
+        return norm;
+    }
+
+    /**
+     * Returns the kernel value buffer of the current thread.
+     */
+    private static double[] kernelValueBuffer(int size)
+    {
+        double[] buffer = _kernelValues.get();
+        if (buffer.length < size) {
+            buffer = new double[size];
+            _kernelValues.set(buffer);
+        }
+        return buffer;
+    }
+}
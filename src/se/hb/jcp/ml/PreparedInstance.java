@@ -0,0 +1,130 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * A reusable buffer for an instance converted to the native storage format
+ * of a classifier.
+ *
+ * An instance in another format is converted by {@link #prepare} once and
+ * the prepared instance can then be passed to any number of predictions,
+ * e.g. one for each label and non-conformity function, without being
+ * converted again by the underlying model. Instances that already are in
+ * the native format are used as they are. The buffer is reused for the
+ * next instance as long as the number of attributes stays the same.
+ *
+ * A <tt>PreparedInstance</tt> is not thread-safe. The static
+ * {@link #prepare(IClassifierInformation, DoubleMatrix1D)} uses one buffer
+ * per thread and storage format.
+ *
+ * @author agent(at)local
+ */
+public final class PreparedInstance
+{
+    private static final ThreadLocal<Map<Class<?>, PreparedInstance>>
+        _threadBuffers =
+            new ThreadLocal<Map<Class<?>, PreparedInstance>>() {
+                @Override
+                protected Map<Class<?>, PreparedInstance> initialValue()
+                {
+                    return new HashMap<Class<?>, PreparedInstance>();
+                }
+            };
+
+    private final DoubleMatrix1D _template;
+    private DoubleMatrix1D       _buffer;
+
+    /**
+     * Creates an empty buffer for instances in the storage format of the
+     * template.
+     *
+     * @param template  an instance of the native storage format.
+     */
+    public PreparedInstance(DoubleMatrix1D template)
+    {
+        _template = template;
+    }
+
+    /**
+     * Returns the instance in the native storage format. If x is not
+     * already in that format it is copied into the buffer, which is then
+     * returned. The returned instance must not be modified and is only
+     * valid until the next call to this method.
+     *
+     * @param x  the instance.
+     * @return the instance in the native storage format.
+     */
+    public DoubleMatrix1D prepare(DoubleMatrix1D x)
+    {
+        if (_template.getClass().isInstance(x)) {
+            return x;
+        }
+        if (_buffer == null || _buffer.size() != x.size()) {
+            close(_buffer);
+            _buffer = _template.like(x.size());
+        }
+        _buffer.assign(x);
+        return _buffer;
+    }
+
+    /**
+     * Returns the instance in the native storage format of the classifier
+     * using a buffer owned by the current thread, see
+     * {@link #prepare(DoubleMatrix1D)}. The returned instance is valid
+     * until the next instance in another format is prepared for a
+     * classifier with the same storage format by the same thread.
+     *
+     * @param classifier  the classifier the instance will be used with.
+     * @param x           the instance.
+     * @return the instance in the native storage format.
+     */
+    public static DoubleMatrix1D prepare(IClassifierInformation classifier,
+                                         DoubleMatrix1D         x)
+    {
+        DoubleMatrix1D template = classifier.nativeStorageTemplate();
+        if (template == null || template.getClass().isInstance(x)) {
+            return x;
+        }
+        Map<Class<?>, PreparedInstance> buffers = _threadBuffers.get();
+        PreparedInstance buffer = buffers.get(template.getClass());
+        if (buffer == null) {
+            buffer = new PreparedInstance(template);
+            buffers.put(template.getClass(), buffer);
+        }
+        return buffer.prepare(x);
+    }
+
+    /**
+     * Releases the storage of a replaced buffer right away if it holds
+     * native resources.
+     */
+    private static void close(DoubleMatrix1D buffer)
+    {
+        if (buffer instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)buffer).close();
+            } catch (Exception e) {
+                // The storage is reclaimed once the buffer is unreachable.
+            }
+        }
+    }
+}
@@ -0,0 +1,1203 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import cern.colt.Sorting;
+import cern.colt.function.IntComparator;
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * A random forest classifier in pure Java, see L. Breiman, "Random
+ * Forests", Machine Learning 45(1), 2001.
+ *
+ * Each tree is grown on a bootstrap sample of the training set with the
+ * split of each node chosen by the Gini index among a random subset of
+ * the attributes. The trees are grown in parallel under the default
+ * execution policy. The non-zero values of each attribute are sorted once
+ * for the whole forest into compressed sparse columns and each tree is
+ * grown level by level, so that one scan over the presorted non-zero
+ * values of an attribute, with the zero values counted as one group,
+ * evaluates all split points of that attribute for every node of the
+ * level. The memory use is therefore proportional to the number of
+ * non-zero values rather than to the number of attributes. Once
+ * the nodes have become small enough that sorting their instances is
+ * cheaper than such a scan the remaining subtrees are grown depth-first.
+ *
+ * The nodes of all trees are stored in flat primitive arrays. The class
+ * probabilities are the average of the class distributions of the leaves
+ * reached in each tree. The out-of-bag class probabilities of the training
+ * instances are computed by <tt>fit</tt>.
+ *
+ * The JSON configuration may contain <tt>max_num_of_trees</tt> (default
+ * 100), <tt>nactive_vars</tt> (the number of attributes tried at each
+ * split, default the square root of the number of attributes),
+ * <tt>max_depth</tt> (default 0, unlimited), <tt>min_sample_count</tt>
+ * (the smallest node that is split, default 2) and <tt>seed</tt>.
+ *
+ * @author agent(at)local
+ */
+public class RandomForestClassifier
+    extends ClassifierBase
+    implements IOutOfBagClassProbabilityClassifier,
+               java.io.Serializable
+{
+    private static final CSRDoubleMatrix1D _storageTemplate =
+        new CSRDoubleMatrix1D(0);
+    // Per-thread buffers for the class probabilities.
+    private static final ThreadLocal<double[]> _probabilities =
+        new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue()
+            {
+                return new double[0];
+            }
+        };
+
+    protected transient JSONObject _jsonParameters;
+
+    private double[] _classes;
+    // The root node of each tree.
+    private int[]    _roots;
+    // For an internal node the split attribute, the split threshold and
+    // the left child; the right child follows the left one. For a leaf the
+    // attribute is -1 and the child is the offset of the class distribution
+    // of the leaf in _distributions.
+    private int[]    _feature;
+    private double[] _threshold;
+    private int[]    _child;
+    private double[] _distributions;
+
+    // The out-of-bag class probabilities of the training instances.
+    private transient double[] _oobProbabilities;
+    private transient int[]    _oobCounts;
+
+    public RandomForestClassifier()
+    {
+    }
+
+    public RandomForestClassifier(JSONObject parameters)
+    {
+        this();
+        _jsonParameters = parameters;
+    }
+
+    protected void internalFit(DoubleMatrix2D x, double[] y)
+        throws JSONException
+    {
+        int trees = 100;
+        int activeVars = 0;
+        int maxDepth = 0;
+        int minSampleCount = 2;
+        Random random = new Random();
+        if (_jsonParameters != null) {
+            if (_jsonParameters.has("max_num_of_trees")) {
+                trees = _jsonParameters.getInt("max_num_of_trees");
+            }
+            if (_jsonParameters.has("nactive_vars")) {
+                activeVars = _jsonParameters.getInt("nactive_vars");
+            }
+            if (_jsonParameters.has("max_depth")) {
+                maxDepth = _jsonParameters.getInt("max_depth");
+            }
+            if (_jsonParameters.has("min_sample_count")) {
+                minSampleCount = _jsonParameters.getInt("min_sample_count");
+            }
+            if (_jsonParameters.has("seed")) {
+                random = new Random(_jsonParameters.getLong("seed"));
+            }
+        }
+        int n = x.rows();
+        int d = x.columns();
+        if (d == 0) {
+            throw new IllegalArgumentException
+                          ("se.hb.jcp.ml.RandomForestClassifier: " +
+                           "The instances have no attributes.");
+        }
+        if (activeVars <= 0) {
+            activeVars = (int)Math.round(Math.sqrt(d));
+        }
+        activeVars = Math.max(1, Math.min(d, activeVars));
+
+        // The classes and the class index of each instance.
+        SortedSet<Double> uniqueLabels = new TreeSet<Double>();
+        for (int i = 0; i < n; i++) {
+            uniqueLabels.add(y[i]);
+        }
+        double[] classes = new double[uniqueLabels.size()];
+        int c = 0;
+        for (Double label : uniqueLabels) {
+            classes[c++] = label;
+        }
+        int[] classOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            classOf[i] = Arrays.binarySearch(classes, y[i]);
+        }
+
+        ExecutionPolicy policy = new ExecutionPolicy(ExecutionPolicy.getDefault());
+        // Each attribute or tree is handled by a single task.
+        policy.setGrainSize(1);
+        SparseColumns columns = new SparseColumns(x, policy);
+
+        long[] seeds = new long[trees];
+        for (int t = 0; t < trees; t++) {
+            seeds[t] = random.nextLong();
+        }
+        TreeBuilder[] builders = new TreeBuilder[trees];
+        TreeBuilder prototype =
+            new TreeBuilder(columns, classOf, classes.length,
+                            activeVars, maxDepth, minSampleCount);
+        new GrowTreesAction(prototype, seeds, builders, 0, trees).
+            start(policy);
+
+        assemble(builders);
+        _classes = classes;
+
+        // The out-of-bag predictions of the training instances.
+        _oobProbabilities = new double[n * classes.length];
+        _oobCounts = new int[n];
+        new OutOfBagAction(builders, 0, n).
+            start(ExecutionPolicy.getDefault());
+    }
+
+    public IClassifier fitNew(DoubleMatrix2D x, double[] y)
+    {
+        RandomForestClassifier clone =
+            new RandomForestClassifier(_jsonParameters);
+        clone.fit(x, y);
+        return clone;
+    }
+
+    public double predict(DoubleMatrix1D instance)
+    {
+        double[] probability = probabilityBuffer(_classes.length);
+        return predict(instance, probability);
+    }
+
+    public double predict(DoubleMatrix1D instance,
+                          double[] probabilityEstimates)
+    {
+        int nrClass = _classes.length;
+        for (int c = 0; c < nrClass; c++) {
+            probabilityEstimates[c] = 0.0;
+        }
+        int size = instance.size();
+        for (int t = 0; t < _roots.length; t++) {
+            int node = _roots[t];
+            while (_feature[node] >= 0) {
+                int f = _feature[node];
+                double value = f < size ? instance.getQuick(f) : 0.0;
+                node = _child[node] + (value <= _threshold[node] ? 0 : 1);
+            }
+            int offset = _child[node];
+            for (int c = 0; c < nrClass; c++) {
+                probabilityEstimates[c] += _distributions[offset + c];
+            }
+        }
+        int best = 0;
+        for (int c = 0; c < nrClass; c++) {
+            probabilityEstimates[c] /= _roots.length;
+            if (probabilityEstimates[c] > probabilityEstimates[best]) {
+                best = c;
+            }
+        }
+        return _classes[best];
+    }
+
+    public boolean predictOutOfBag(int i, double[] probabilityEstimates)
+    {
+        if (_oobCounts == null) {
+            throw new IllegalStateException
+                          ("No out-of-bag predictions are available.");
+        }
+        if (_oobCounts[i] == 0) {
+            return false;
+        }
+        System.arraycopy(_oobProbabilities, i * _classes.length,
+                         probabilityEstimates, 0, _classes.length);
+        return true;
+    }
+
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _storageTemplate;
+    }
+
+    /**
+     * Returns the number of trees in the trained forest.
+     *
+     * @return the number of trees.
+     */
+    public int getTreeCount()
+    {
+        return _roots != null ? _roots.length : 0;
+    }
+
+    /**
+     * Concatenates the nodes of the trees into the flat arrays.
+     */
+    private void assemble(TreeBuilder[] builders)
+    {
+        int nodes = 0;
+        int distributions = 0;
+        for (TreeBuilder builder : builders) {
+            nodes += builder.feature.size();
+            distributions += builder.distributions.size();
+        }
+        int[]    roots     = new int[builders.length];
+        int[]    feature   = new int[nodes];
+        double[] threshold = new double[nodes];
+        int[]    child     = new int[nodes];
+        double[] dist      = new double[distributions];
+        int nodeBase = 0;
+        int distBase = 0;
+        for (int t = 0; t < builders.length; t++) {
+            TreeBuilder builder = builders[t];
+            roots[t] = nodeBase;
+            for (int k = 0; k < builder.feature.size(); k++) {
+                feature[nodeBase + k] = builder.feature.getQuick(k);
+                threshold[nodeBase + k] = builder.threshold.getQuick(k);
+                child[nodeBase + k] = builder.child.getQuick(k) +
+                    (feature[nodeBase + k] >= 0 ? nodeBase : distBase);
+            }
+            System.arraycopy(builder.distributions.elements(), 0,
+                             dist, distBase, builder.distributions.size());
+            nodeBase += builder.feature.size();
+            distBase += builder.distributions.size();
+        }
+        _roots = roots;
+        _feature = feature;
+        _threshold = threshold;
+        _child = child;
+        _distributions = dist;
+    }
+
+    /**
+     * Returns the probability buffer of the current thread.
+     */
+    private static double[] probabilityBuffer(int size)
+    {
+        double[] buffer = _probabilities.get();
+        if (buffer.length < size) {
+            buffer = new double[size];
+            _probabilities.set(buffer);
+        }
+        return buffer;
+    }
+
+    private void writeObject(ObjectOutputStream oos)
+        throws java.io.IOException
+    {
+        oos.defaultWriteObject();
+        // Save the model parameters.
+        if (_jsonParameters != null) {
+            oos.writeObject(_jsonParameters.toString());
+        } else {
+            oos.writeObject(null);
+        }
+    }
+
+    private void readObject(ObjectInputStream ois)
+        throws ClassNotFoundException, java.io.IOException, JSONException
+    {
+        ois.defaultReadObject();
+        // Load the model parameters.
+        String jsonText = (String)ois.readObject();
+        if (jsonText != null) {
+            _jsonParameters = new JSONObject(jsonText);
+        }
+    }
+
+    /**
+     * The training instances in compressed sparse row and column form.
+     * Only the non-zero values are stored. The non-zero values of each
+     * attribute are sorted in increasing order, so that the zero values
+     * need neither storage nor sorting.
+     */
+    private static final class SparseColumns
+    {
+        final int      _rows;
+        final int      _columns;
+        // The non-zero attributes of each instance in increasing order.
+        final int[]    _rowStart;
+        final int[]    _rowIndices;
+        final double[] _rowValues;
+        // The instances with a non-zero value of each attribute sorted by
+        // that value.
+        final int[]    _columnStart;
+        final int[]    _sortedRows;
+        final double[] _sortedValues;
+
+        SparseColumns(DoubleMatrix2D x, ExecutionPolicy policy)
+        {
+            _rows = x.rows();
+            _columns = x.columns();
+            _rowStart = new int[_rows + 1];
+            IntArrayList indices = new IntArrayList();
+            DoubleArrayList values = new DoubleArrayList();
+            IntArrayList allIndices = new IntArrayList();
+            DoubleArrayList allValues = new DoubleArrayList();
+            for (int i = 0; i < _rows; i++) {
+                x.viewRow(i).getNonZeros(indices, values);
+                sortByIndex(indices, values);
+                allIndices.addAllOf(indices);
+                allValues.addAllOf(values);
+                _rowStart[i + 1] = allIndices.size();
+            }
+            allIndices.trimToSize();
+            allValues.trimToSize();
+            _rowIndices = allIndices.elements();
+            _rowValues = allValues.elements();
+
+            // Distribute the non-zero values over the columns in row order
+            // and sort each column by value.
+            int nonZeros = _rowIndices.length;
+            _columnStart = new int[_columns + 1];
+            for (int k = 0; k < nonZeros; k++) {
+                _columnStart[_rowIndices[k] + 1]++;
+            }
+            for (int f = 0; f < _columns; f++) {
+                _columnStart[f + 1] += _columnStart[f];
+            }
+            _sortedRows = new int[nonZeros];
+            _sortedValues = new double[nonZeros];
+            int[] next = Arrays.copyOf(_columnStart, _columns);
+            for (int i = 0; i < _rows; i++) {
+                for (int k = _rowStart[i]; k < _rowStart[i + 1]; k++) {
+                    int r = next[_rowIndices[k]]++;
+                    _sortedRows[r] = i;
+                    _sortedValues[r] = _rowValues[k];
+                }
+            }
+            new PresortAction(this, 0, _columns).start(policy);
+        }
+
+        /**
+         * Returns the value of attribute f of instance i.
+         */
+        double value(int f, int i)
+        {
+            int k = Arrays.binarySearch(_rowIndices,
+                                        _rowStart[i], _rowStart[i + 1], f);
+            return k >= 0 ? _rowValues[k] : 0.0;
+        }
+
+        /**
+         * Returns the number of non-zero values.
+         */
+        int nonZeros()
+        {
+            return _rowIndices.length;
+        }
+
+        /**
+         * Sorts the non-zero elements of a row by index, if needed.
+         */
+        private static void sortByIndex(IntArrayList    indices,
+                                        DoubleArrayList values)
+        {
+            int size = indices.size();
+            final int[] index = indices.elements();
+            boolean sorted = true;
+            for (int k = 1; sorted && k < size; k++) {
+                sorted = index[k - 1] < index[k];
+            }
+            if (sorted) {
+                return;
+            }
+            int[] permutation = new int[size];
+            for (int k = 0; k < size; k++) {
+                permutation[k] = k;
+            }
+            Sorting.mergeSort(permutation, 0, size, new IntComparator() {
+                    public int compare(int a, int b)
+                    {
+                        return index[a] < index[b] ? -1 :
+                               (index[a] == index[b] ? 0 : 1);
+                    }
+                });
+            int[] oldIndex = Arrays.copyOf(index, size);
+            double[] oldValue = Arrays.copyOf(values.elements(), size);
+            for (int k = 0; k < size; k++) {
+                indices.setQuick(k, oldIndex[permutation[k]]);
+                values.setQuick(k, oldValue[permutation[k]]);
+            }
+        }
+    }
+
+    /**
+     * The split search state of the open nodes of one tree level.
+     */
+    private static final class Level
+    {
+        final double[]  counts;
+        final double[]  total;
+        final int[]     bestFeature;
+        final double[]  bestThreshold;
+        final double[]  bestScore;
+        final double[]  left;
+        final double[]  leftTotal;
+        final double[]  lastValue;
+        final boolean[] seen;
+        final boolean[] active;
+        // The class counts of the instances with a zero value of the
+        // current attribute.
+        final double[]  zeroCounts;
+        final double[]  zeroTotal;
+
+        Level(int k, int nrClass, double[] counts)
+        {
+            this.counts   = counts;
+            total         = new double[k];
+            bestFeature   = new int[k];
+            bestThreshold = new double[k];
+            bestScore     = new double[k];
+            left          = new double[k * nrClass];
+            leftTotal     = new double[k];
+            lastValue     = new double[k];
+            seen          = new boolean[k];
+            active        = new boolean[k];
+            zeroCounts    = new double[k * nrClass];
+            zeroTotal     = new double[k];
+        }
+    }
+
+    /**
+     * Grows one tree level by level over the presorted attributes.
+     */
+    private static final class TreeBuilder
+    {
+        final SparseColumns _columns;
+        final int[]      _classOf;
+        final int        _nrClass;
+        final int        _activeVars;
+        final int        _maxDepth;
+        final int        _minSampleCount;
+
+        // The nodes of the tree as in the forest but with tree local
+        // child indices and distribution offsets.
+        final IntArrayList    feature       = new IntArrayList();
+        final DoubleArrayList threshold     = new DoubleArrayList();
+        final IntArrayList    child         = new IntArrayList();
+        final DoubleArrayList distributions = new DoubleArrayList();
+        // Bit i is set if instance i is in the bootstrap sample.
+        long[] inBag;
+
+        TreeBuilder(SparseColumns columns, int[] classOf,
+                    int nrClass, int activeVars, int maxDepth,
+                    int minSampleCount)
+        {
+            _columns = columns;
+            _classOf = classOf;
+            _nrClass = nrClass;
+            _activeVars = activeVars;
+            _maxDepth = maxDepth;
+            _minSampleCount = minSampleCount;
+        }
+
+        TreeBuilder(TreeBuilder prototype)
+        {
+            this(prototype._columns, prototype._classOf,
+                 prototype._nrClass, prototype._activeVars,
+                 prototype._maxDepth, prototype._minSampleCount);
+        }
+
+        boolean isInBag(int i)
+        {
+            return (inBag[i >>> 6] & (1L << i)) != 0;
+        }
+
+        void grow(Random random)
+        {
+            int n = _classOf.length;
+            int d = _columns._columns;
+            int nrClass = _nrClass;
+            // The average number of non-zero values of an attribute.
+            double columnLength = (double)_columns.nonZeros() / d;
+
+            // The bootstrap sample.
+            int[] weight = new int[n];
+            for (int i = 0; i < n; i++) {
+                weight[random.nextInt(n)]++;
+            }
+            inBag = new long[(n + 63) >>> 6];
+
+            // The open node of each instance of the current level or -1.
+            int[] nodeOf = new int[n];
+            IntArrayList open = new IntArrayList();
+            open.add(newNode());
+            double[] counts = new double[nrClass];
+            int[] rowCount = new int[1];
+            for (int i = 0; i < n; i++) {
+                if (weight[i] > 0) {
+                    inBag[i >>> 6] |= 1L << i;
+                    nodeOf[i] = 0;
+                    counts[_classOf[i]] += weight[i];
+                    rowCount[0]++;
+                } else {
+                    nodeOf[i] = -1;
+                }
+            }
+
+            int[] features = new int[d];
+            for (int f = 0; f < d; f++) {
+                features[f] = f;
+            }
+            // The nodes of the level that try each attribute, created on
+            // demand, and the attributes tried by any node.
+            IntArrayList[] nodesOfFeature = new IntArrayList[d];
+            IntArrayList triedFeatures = new IntArrayList();
+
+            for (int depth = 0; open.size() > 0; depth++) {
+                int k = open.size();
+                // Grow the remaining nodes one at a time once sorting their
+                // instances is cheaper than scanning the presorted attributes.
+                double localCost = 0.0;
+                for (int j = 0; j < k; j++) {
+                    localCost += rowCount[j] * Math.log(rowCount[j] + 1);
+                }
+                localCost *= _activeVars;
+                double levelCost =
+                    Math.min(d, k * _activeVars) * (columnLength + k) + n;
+                if (localCost < levelCost) {
+                    growLocally(open, nodeOf, rowCount, weight, depth,
+                                features, random);
+                    break;
+                }
+
+                Level level = new Level(k, nrClass, counts);
+                double[] total = level.total;
+                for (int j = 0; j < k; j++) {
+                    for (int c = 0; c < nrClass; c++) {
+                        total[j] += counts[j * nrClass + c];
+                    }
+                    if (isSplittable(counts, j * nrClass, total[j], depth)) {
+                        // Draw the attributes to try for this node.
+                        drawFeatures(features, random);
+                        for (int a = 0; a < _activeVars; a++) {
+                            int f = features[a];
+                            if (nodesOfFeature[f] == null) {
+                                nodesOfFeature[f] = new IntArrayList();
+                            }
+                            if (nodesOfFeature[f].size() == 0) {
+                                triedFeatures.add(f);
+                            }
+                            nodesOfFeature[f].add(j);
+                        }
+                    }
+                }
+
+                // Find the best split of each node.
+                for (int j = 0; j < k; j++) {
+                    level.bestFeature[j] = -1;
+                    level.bestScore[j] =
+                        minimumScore(counts, j * nrClass, total[j]);
+                }
+                // In increasing order so that ties are broken as by a scan
+                // over all attributes.
+                triedFeatures.sort();
+                for (int t = 0; t < triedFeatures.size(); t++) {
+                    int f = triedFeatures.getQuick(t);
+                    findSplits(level, f, nodesOfFeature[f], nodeOf, weight);
+                    nodesOfFeature[f].clear();
+                }
+                triedFeatures.clear();
+                int[]    bestFeature   = level.bestFeature;
+                double[] bestThreshold = level.bestThreshold;
+
+                // Create the children and the leaves.
+                IntArrayList next = new IntArrayList();
+                int[] firstChild = new int[k];
+                for (int j = 0; j < k; j++) {
+                    int node = open.getQuick(j);
+                    if (bestFeature[j] >= 0) {
+                        int leftNode = split(node, bestFeature[j],
+                                             bestThreshold[j]);
+                        firstChild[j] = next.size();
+                        next.add(leftNode);
+                        next.add(leftNode + 1);
+                    } else {
+                        makeLeaf(node, counts, j * nrClass, total[j]);
+                    }
+                }
+                double[] nextCounts = new double[next.size() * nrClass];
+                int[] nextRowCount = new int[next.size()];
+                for (int i = 0; i < n; i++) {
+                    int j = nodeOf[i];
+                    if (j < 0) {
+                        continue;
+                    }
+                    if (bestFeature[j] < 0) {
+                        nodeOf[i] = -1;
+                    } else {
+                        double value = _columns.value(bestFeature[j], i);
+                        int to = firstChild[j] +
+                            (value <= bestThreshold[j] ? 0 : 1);
+                        nodeOf[i] = to;
+                        nextCounts[to * nrClass + _classOf[i]] += weight[i];
+                        nextRowCount[to]++;
+                    }
+                }
+                open = next;
+                counts = nextCounts;
+                rowCount = nextRowCount;
+            }
+        }
+
+        /**
+         * Evaluates all split points of attribute f for the nodes of the
+         * level. The presorted non-zero values are scanned in increasing
+         * order with the instances with a zero value of each node added as
+         * one group between the negative and the positive values.
+         */
+        private void findSplits(Level        level,
+                                int          f,
+                                IntArrayList nodes,
+                                int[]        nodeOf,
+                                int[]        weight)
+        {
+            int nrClass = _nrClass;
+            int from = _columns._columnStart[f];
+            int to   = _columns._columnStart[f + 1];
+            int[]    rows   = _columns._sortedRows;
+            double[] values = _columns._sortedValues;
+            for (int a = 0; a < nodes.size(); a++) {
+                int j = nodes.getQuick(a);
+                level.active[j] = true;
+                level.seen[j] = false;
+                level.leftTotal[j] = 0.0;
+                Arrays.fill(level.left, j * nrClass, (j + 1) * nrClass, 0.0);
+                System.arraycopy(level.counts, j * nrClass,
+                                 level.zeroCounts, j * nrClass, nrClass);
+                level.zeroTotal[j] = level.total[j];
+            }
+            for (int r = from; r < to; r++) {
+                int i = rows[r];
+                int j = nodeOf[i];
+                if (j >= 0 && level.active[j]) {
+                    level.zeroCounts[j * nrClass + _classOf[i]] -= weight[i];
+                    level.zeroTotal[j] -= weight[i];
+                }
+            }
+            int r = from;
+            for (; r < to && values[r] < 0.0; r++) {
+                int i = rows[r];
+                int j = nodeOf[i];
+                if (j >= 0 && level.active[j]) {
+                    considerSplit(level, j, f, values[r]);
+                    level.left[j * nrClass + _classOf[i]] += weight[i];
+                    level.leftTotal[j] += weight[i];
+                }
+            }
+            for (int a = 0; a < nodes.size(); a++) {
+                int j = nodes.getQuick(a);
+                if (level.zeroTotal[j] > 0.0) {
+                    considerSplit(level, j, f, 0.0);
+                    for (int c = 0; c < nrClass; c++) {
+                        level.left[j * nrClass + c] +=
+                            level.zeroCounts[j * nrClass + c];
+                    }
+                    level.leftTotal[j] += level.zeroTotal[j];
+                }
+            }
+            for (; r < to; r++) {
+                int i = rows[r];
+                int j = nodeOf[i];
+                if (j >= 0 && level.active[j]) {
+                    considerSplit(level, j, f, values[r]);
+                    level.left[j * nrClass + _classOf[i]] += weight[i];
+                    level.leftTotal[j] += weight[i];
+                }
+            }
+            for (int a = 0; a < nodes.size(); a++) {
+                level.active[nodes.getQuick(a)] = false;
+            }
+        }
+
+        /**
+         * Evaluates the split of node j below value on attribute f, before
+         * the instances with that value are added to the left side.
+         */
+        private void considerSplit(Level level, int j, int f, double value)
+        {
+            if (level.seen[j] && value > level.lastValue[j]) {
+                double score =
+                    splitScore(level.left, j * _nrClass, level.leftTotal[j],
+                               level.counts, level.total[j]);
+                if (score > level.bestScore[j]) {
+                    level.bestScore[j] = score;
+                    level.bestFeature[j] = f;
+                    level.bestThreshold[j] =
+                        splitPoint(level.lastValue[j], value);
+                }
+            }
+            level.lastValue[j] = value;
+            level.seen[j] = true;
+        }
+
+        /**
+         * Grows the subtrees of the open nodes depth-first, sorting the
+         * instances of each node by the attributes tried for it.
+         */
+        private void growLocally(IntArrayList open,
+                                 int[]        nodeOf,
+                                 int[]        rowCount,
+                                 int[]        weight,
+                                 int          depth,
+                                 int[]        features,
+                                 Random       random)
+        {
+            int k = open.size();
+            int nrClass = _nrClass;
+
+            // Group the instances by open node.
+            int[] start = new int[k + 1];
+            for (int j = 0; j < k; j++) {
+                start[j + 1] = start[j] + rowCount[j];
+            }
+            int[] rows = new int[start[k]];
+            int[] next = Arrays.copyOf(start, k);
+            for (int i = 0; i < nodeOf.length; i++) {
+                if (nodeOf[i] >= 0) {
+                    rows[next[nodeOf[i]]++] = i;
+                }
+            }
+
+            int[]    sorted = new int[rows.length];
+            double[] keys   = new double[rows.length];
+            double[] counts = new double[nrClass];
+            double[] left   = new double[nrClass];
+            // Stack of (node, first row, row after the last, depth).
+            IntArrayList stack = new IntArrayList();
+            for (int j = k - 1; j >= 0; j--) {
+                stack.add(open.getQuick(j));
+                stack.add(start[j]);
+                stack.add(start[j + 1]);
+                stack.add(depth);
+            }
+            while (stack.size() > 0) {
+                int s = stack.size() - 4;
+                int node      = stack.getQuick(s);
+                int from      = stack.getQuick(s + 1);
+                int to        = stack.getQuick(s + 2);
+                int nodeDepth = stack.getQuick(s + 3);
+                stack.setSize(s);
+
+                Arrays.fill(counts, 0.0);
+                double total = 0.0;
+                for (int r = from; r < to; r++) {
+                    int i = rows[r];
+                    counts[_classOf[i]] += weight[i];
+                    total += weight[i];
+                }
+                int bestFeature = -1;
+                double bestThreshold = 0.0;
+                if (isSplittable(counts, 0, total, nodeDepth)) {
+                    double bestScore = minimumScore(counts, 0, total);
+                    drawFeatures(features, random);
+                    for (int a = 0; a < _activeVars; a++) {
+                        int f = features[a];
+                        for (int r = from; r < to; r++) {
+                            sorted[r] = rows[r];
+                            keys[r] = _columns.value(f, rows[r]);
+                        }
+                        sortByKey(keys, sorted, from, to);
+                        Arrays.fill(left, 0.0);
+                        double leftTotal = 0.0;
+                        double lastValue = 0.0;
+                        for (int r = from; r < to; r++) {
+                            int i = sorted[r];
+                            double value = keys[r];
+                            if (r > from && value > lastValue) {
+                                double score =
+                                    splitScore(left, 0, leftTotal,
+                                               counts, total);
+                                if (score > bestScore) {
+                                    bestScore = score;
+                                    bestFeature = features[a];
+                                    bestThreshold =
+                                        splitPoint(lastValue, value);
+                                }
+                            }
+                            left[_classOf[i]] += weight[i];
+                            leftTotal += weight[i];
+                            lastValue = value;
+                        }
+                    }
+                }
+                if (bestFeature < 0) {
+                    makeLeaf(node, counts, 0, total);
+                    continue;
+                }
+
+                // Partition the instances of the node between the children.
+                int middle = from;
+                for (int r = from; r < to; r++) {
+                    int i = rows[r];
+                    if (_columns.value(bestFeature, i) <= bestThreshold) {
+                        rows[r] = rows[middle];
+                        rows[middle++] = i;
+                    }
+                }
+                int leftNode = split(node, bestFeature, bestThreshold);
+                stack.add(leftNode + 1);
+                stack.add(middle);
+                stack.add(to);
+                stack.add(nodeDepth + 1);
+                stack.add(leftNode);
+                stack.add(from);
+                stack.add(middle);
+                stack.add(nodeDepth + 1);
+            }
+        }
+
+        /**
+         * Sorts the interval [from, to) of keys in increasing order and
+         * applies the same permutation to the interval of rows. Uses a
+         * three-way partitioning quicksort, since sparse attributes have
+         * many equal values.
+         */
+        private static void sortByKey(double[] keys, int[] rows,
+                                      int from, int to)
+        {
+            while (to - from > 16) {
+                double pivot = median(keys[from],
+                                      keys[(from + to) >>> 1],
+                                      keys[to - 1]);
+                // Invariant: [from, lt) < pivot, [lt, i) == pivot and
+                // [gt, to) > pivot.
+                int lt = from;
+                int i  = from;
+                int gt = to;
+                while (i < gt) {
+                    double key = keys[i];
+                    if (key < pivot) {
+                        swap(keys, rows, lt++, i++);
+                    } else if (key > pivot) {
+                        swap(keys, rows, i, --gt);
+                    } else {
+                        i++;
+                    }
+                }
+                // Recurse into the smaller part.
+                if (lt - from < to - gt) {
+                    sortByKey(keys, rows, from, lt);
+                    from = gt;
+                } else {
+                    sortByKey(keys, rows, gt, to);
+                    to = lt;
+                }
+            }
+            for (int i = from + 1; i < to; i++) {
+                double key = keys[i];
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && keys[j] > key) {
+                    keys[j + 1] = keys[j];
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                rows[j + 1] = row;
+            }
+        }
+
+        private static double median(double a, double b, double c)
+        {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+
+        private static void swap(double[] keys, int[] rows, int i, int j)
+        {
+            double key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+        }
+
+        /**
+         * Returns whether a node with the class counts at offset in counts
+         * may be split.
+         */
+        private boolean isSplittable(double[] counts, int offset,
+                                     double total, int depth)
+        {
+            int nonEmpty = 0;
+            for (int c = 0; c < _nrClass; c++) {
+                if (counts[offset + c] > 0) {
+                    nonEmpty++;
+                }
+            }
+            return nonEmpty > 1 &&
+                   total >= _minSampleCount &&
+                   (_maxDepth <= 0 || depth < _maxDepth);
+        }
+
+        /**
+         * Returns the split score a split of the node must exceed, i.e.
+         * the score of not splitting it.
+         */
+        private double minimumScore(double[] counts, int offset,
+                                    double total)
+        {
+            double sum = 0.0;
+            for (int c = 0; c < _nrClass; c++) {
+                sum += counts[offset + c] * counts[offset + c];
+            }
+            return sum / total * (1.0 + 1e-12);
+        }
+
+        /**
+         * Draws the attributes to try into the first elements of features.
+         */
+        private void drawFeatures(int[] features, Random random)
+        {
+            for (int a = 0; a < _activeVars; a++) {
+                int b = a + random.nextInt(features.length - a);
+                int tmp = features[a];
+                features[a] = features[b];
+                features[b] = tmp;
+            }
+        }
+
+        /**
+         * Returns a threshold between two consecutive distinct values.
+         */
+        private static double splitPoint(double lastValue, double value)
+        {
+            double t = 0.5 * (lastValue + value);
+            return t < value ? t : lastValue;
+        }
+
+        /**
+         * Makes node an internal node with two new children.
+         *
+         * @return the left child.
+         */
+        private int split(int node, int f, double t)
+        {
+            int leftNode = newNode();
+            newNode();
+            feature.setQuick(node, f);
+            threshold.setQuick(node, t);
+            child.setQuick(node, leftNode);
+            return leftNode;
+        }
+
+        /**
+         * Makes node a leaf with the class distribution of the counts.
+         */
+        private void makeLeaf(int node, double[] counts, int offset,
+                              double total)
+        {
+            child.setQuick(node, distributions.size());
+            for (int c = 0; c < _nrClass; c++) {
+                distributions.add(counts[offset + c] / total);
+            }
+        }
+
+        /**
+         * Returns the sum over both sides of the split of the squared
+         * class counts divided by the total count. Maximizing it minimizes
+         * the weighted Gini index of the children.
+         */
+        private double splitScore(double[] left, int offset,
+                                  double leftTotal,
+                                  double[] counts, double total)
+        {
+            double rightTotal = total - leftTotal;
+            double leftSum = 0.0;
+            double rightSum = 0.0;
+            for (int c = 0; c < _nrClass; c++) {
+                double l = left[offset + c];
+                double r = counts[offset + c] - l;
+                leftSum += l * l;
+                rightSum += r * r;
+            }
+            return leftSum / leftTotal + rightSum / rightTotal;
+        }
+
+        private int newNode()
+        {
+            feature.add(-1);
+            threshold.add(0.0);
+            child.add(-1);
+            return feature.size() - 1;
+        }
+
+        /**
+         * Returns the tree local offset of the class distribution of the
+         * leaf reached by training instance i.
+         */
+        int leafOf(int i)
+        {
+            int node = 0;
+            while (feature.getQuick(node) >= 0) {
+                double value = _columns.value(feature.getQuick(node), i);
+                node = child.getQuick(node) +
+                    (value <= threshold.getQuick(node) ? 0 : 1);
+            }
+            return child.getQuick(node);
+        }
+    }
+
+    /**
+     * Sorts the non-zero values of each attribute in an interval.
+     */
+    private static class PresortAction extends ParallelizedAction
+    {
+        final SparseColumns _columns;
+
+        PresortAction(SparseColumns columns, int first, int last)
+        {
+            super(first, last);
+            _columns = columns;
+        }
+
+        @Override
+        protected void compute(int f)
+        {
+            int from = _columns._columnStart[f];
+            int to   = _columns._columnStart[f + 1];
+            if (to - from < 2) {
+                return;
+            }
+            final double[] values =
+                Arrays.copyOfRange(_columns._sortedValues, from, to);
+            int[] rows = Arrays.copyOfRange(_columns._sortedRows, from, to);
+            int[] order = new int[to - from];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            // Stable, so equal values stay in instance order.
+            Sorting.mergeSort(order, 0, order.length, new IntComparator() {
+                    public int compare(int a, int b)
+                    {
+                        return Double.compare(values[a], values[b]);
+                    }
+                });
+            for (int k = 0; k < order.length; k++) {
+                _columns._sortedRows[from + k] = rows[order[k]];
+                _columns._sortedValues[from + k] = values[order[k]];
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new PresortAction(_columns, first, last);
+        }
+    }
+
+    /**
+     * Grows the trees in an interval.
+     */
+    private static class GrowTreesAction extends ParallelizedAction
+    {
+        final TreeBuilder   _prototype;
+        final long[]        _seeds;
+        final TreeBuilder[] _builders;
+
+        GrowTreesAction(TreeBuilder prototype, long[] seeds,
+                        TreeBuilder[] builders, int first, int last)
+        {
+            super(first, last);
+            _prototype = prototype;
+            _seeds = seeds;
+            _builders = builders;
+        }
+
+        @Override
+        protected void compute(int t)
+        {
+            TreeBuilder builder = new TreeBuilder(_prototype);
+            builder.grow(new Random(_seeds[t]));
+            _builders[t] = builder;
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new GrowTreesAction(_prototype, _seeds, _builders,
+                                       first, last);
+        }
+    }
+
+    /**
+     * Computes the out-of-bag class probabilities of the training instances
+     * in an interval.
+     */
+    private class OutOfBagAction extends ParallelizedAction
+    {
+        final TreeBuilder[] _builders;
+
+        OutOfBagAction(TreeBuilder[] builders, int first, int last)
+        {
+            super(first, last);
+            _builders = builders;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            int nrClass = _classes.length;
+            int base = i * nrClass;
+            int count = 0;
+            for (int t = 0; t < _builders.length; t++) {
+                TreeBuilder builder = _builders[t];
+                if (!builder.isInBag(i)) {
+                    int offset = builder.leafOf(i);
+                    for (int c = 0; c < nrClass; c++) {
+                        _oobProbabilities[base + c] +=
+                            builder.distributions.getQuick(offset + c);
+                    }
+                    count++;
+                }
+            }
+            if (count > 0) {
+                for (int c = 0; c < nrClass; c++) {
+                    _oobProbabilities[base + c] /= count;
+                }
+            }
+            _oobCounts[i] = count;
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new OutOfBagAction(_builders, first, last);
+        }
+    }
+}
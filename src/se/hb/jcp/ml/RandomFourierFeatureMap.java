@@ -0,0 +1,201 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.util.Random;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Random Fourier features approximating the RBF kernel, see A. Rahimi and
+ * B. Recht, "Random Features for Large-Scale Kernel Machines", NIPS 2007.
+ *
+ * An instance x is mapped to <tt>sqrt(2/D) cos(W x + b)</tt> where the
+ * rows of the D x n matrix W are drawn from <tt>N(0, 2*gamma*I)</tt> and
+ * b is uniform in <tt>[0, 2*pi)</tt>. The map is independent of the
+ * training instances.
+ *
+ * The column of W for attribute j is generated from a seed of the map and
+ * j alone, so W is only stored when it has at most
+ * {@link #MAX_STORED_WEIGHTS} elements. Larger maps regenerate the column
+ * of each non-zero attribute of an instance when it is mapped, which
+ * gives the same mapped instances without storage proportional to the
+ * number of attributes.
+ *
+ * @author agent(at)local
+ */
+public class RandomFourierFeatureMap
+    extends FeatureMap
+{
+    /**
+     * The maximal number of elements of W that are stored.
+     */
+    public static final long MAX_STORED_WEIGHTS = 1L << 24;
+
+    // The increment of the SplitMix64 generator.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // Per-thread buffers for a generated column of W.
+    private static final ThreadLocal<double[]> _columnBuffer =
+        new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue()
+            {
+                return new double[0];
+            }
+        };
+
+    private final int _components;
+    private long   _seed;
+    private double _sigma;
+    // The weights of attribute j are stored at j*_components so that the
+    // non-zero elements of an instance are applied one at a time. Null if
+    // W is too large to be stored.
+    private double[] _weights;
+    private double[] _offsets;
+
+    /**
+     * Creates an unfitted random Fourier feature map.
+     *
+     * @param components  the number of random features.
+     * @param gamma       the RBF kernel parameter or a non-positive value for <tt>1/attributes</tt>.
+     */
+    public RandomFourierFeatureMap(int components, double gamma)
+    {
+        super(gamma);
+        if (components < 1) {
+            throw new IllegalArgumentException
+                          ("The number of components must be positive.");
+        }
+        _components = components;
+    }
+
+    public int getOutputDimension()
+    {
+        return _components;
+    }
+
+    public void map(IntArrayList indices, DoubleArrayList values, double[] z)
+    {
+        int D = _components;
+        int[] index = indices.elements();
+        double[] value = values.elements();
+        double[] column = null;
+        if (_weights == null) {
+            column = columnBuffer(D);
+        }
+        System.arraycopy(_offsets, 0, z, 0, D);
+        for (int k = 0; k < indices.size(); k++) {
+            int j = index[k];
+            if (j < _inputDimension) {
+                double v = value[k];
+                double[] w;
+                int offset;
+                if (_weights != null) {
+                    w = _weights;
+                    offset = j * D;
+                } else {
+                    generateColumn(j, column, 0);
+                    w = column;
+                    offset = 0;
+                }
+                for (int c = 0; c < D; c++) {
+                    z[c] += w[offset + c] * v;
+                }
+            }
+        }
+        double scale = Math.sqrt(2.0 / D);
+        for (int c = 0; c < D; c++) {
+            z[c] = scale * Math.cos(z[c]);
+        }
+    }
+
+    protected void internalFit(DoubleMatrix2D x, Random random)
+    {
+        int D = _components;
+        _seed = random.nextLong();
+        _sigma = Math.sqrt(2.0 * _gamma);
+        double[] offsets = new double[D];
+        for (int c = 0; c < D; c++) {
+            offsets[c] = 2.0 * Math.PI * random.nextDouble();
+        }
+        double[] weights = null;
+        if ((long)_inputDimension * D <= MAX_STORED_WEIGHTS) {
+            weights = new double[_inputDimension * D];
+            for (int j = 0; j < _inputDimension; j++) {
+                generateColumn(j, weights, j * D);
+            }
+        }
+        _weights = weights;
+        _offsets = offsets;
+    }
+
+    /**
+     * Generates the column of W for attribute j into w starting at offset.
+     * The N(0, 2*gamma) elements are drawn in pairs by the Box-Muller
+     * transform from a SplitMix64 sequence seeded by the map seed and j.
+     */
+    private void generateColumn(int j, double[] w, int offset)
+    {
+        int D = _components;
+        long state = mix(_seed + GOLDEN_GAMMA * (j + 1L));
+        for (int c = 0; c < D; c += 2) {
+            state += GOLDEN_GAMMA;
+            double u1 = uniform(state);
+            state += GOLDEN_GAMMA;
+            double u2 = uniform(state);
+            double radius = _sigma * Math.sqrt(-2.0 * Math.log(1.0 - u1));
+            double angle = 2.0 * Math.PI * u2;
+            w[offset + c] = radius * Math.cos(angle);
+            if (c + 1 < D) {
+                w[offset + c + 1] = radius * Math.sin(angle);
+            }
+        }
+    }
+
+    /**
+     * Returns the uniform value in [0, 1) of a SplitMix64 state.
+     */
+    private static double uniform(long state)
+    {
+        return (mix(state) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * The SplitMix64 output function.
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the column buffer of the current thread.
+     */
+    private static double[] columnBuffer(int size)
+    {
+        double[] buffer = _columnBuffer.get();
+        if (buffer.length < size) {
+            buffer = new double[size];
+            _columnBuffer.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,551 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import se.hb.jcp.cp.DataSet;
+import se.hb.jcp.io.DataSetBlockReader;
+import se.hb.jcp.util.CSRDoubleMatrix1D;
+import se.hb.jcp.util.ExecutionPolicy;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * A multinomial logistic regression classifier in pure Java trained by
+ * stochastic gradient descent.
+ *
+ * The instances of a pass are processed in parallel under the default
+ * execution policy without any locking, see F. Niu, B. Recht, C. Re and
+ * S. J. Wright, "HOGWILD!: A Lock-Free Approach to Parallelizing
+ * Stochastic Gradient Descent", NIPS 2011. Each step only updates the
+ * weights of the non-zero attributes of its instance, including their L2
+ * regularization, so the steps for sparse instances rarely overlap.
+ * The step size at step t is <tt>learning_rate / (1 + learning_rate *
+ * lambda * t)</tt>.
+ *
+ * Besides <tt>fit</tt> the classifier can be trained incrementally by
+ * <tt>partialFit</tt>, which makes one pass over a data set in memory or
+ * read block by block by a {@link DataSetBlockReader}, so the training
+ * set does not have to fit in memory. <tt>fitNew</tt> on a trained
+ * classifier starts from its weights.
+ *
+ * The JSON configuration may contain <tt>learning_rate</tt> (default
+ * 0.1), <tt>lambda</tt> (the L2 regularization, default 1e-4),
+ * <tt>epochs</tt> (the passes made by <tt>fit</tt>, default 5),
+ * <tt>warm_start_epochs</tt> (the passes made by <tt>fitNew</tt> from a
+ * trained classifier, default 1) and <tt>seed</tt>.
+ *
+ * @author agent(at)local
+ */
+public class SGDLogisticRegressionClassifier
+    extends ClassifierBase
+    implements IClassProbabilityClassifier
+{
+    private static final CSRDoubleMatrix1D _storageTemplate =
+        new CSRDoubleMatrix1D(0);
+    // Per-thread buffers for the non-zero elements and class scores.
+    private static final ThreadLocal<Scratch> _scratch =
+        new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue()
+            {
+                return new Scratch();
+            }
+        };
+
+    protected transient JSONObject _jsonParameters;
+
+    private double[] _classes;
+    // The number of attributes covered by the weights.
+    private int      _attributeCount = -1;
+    // The weight of attribute j for class c is stored at
+    // j*_classes.length + c so that the weights touched by an instance
+    // are contiguous.
+    private double[] _weights;
+    private double[] _bias;
+    // The number of SGD steps taken so far.
+    private long     _steps;
+
+    public SGDLogisticRegressionClassifier()
+    {
+    }
+
+    public SGDLogisticRegressionClassifier(JSONObject parameters)
+    {
+        this();
+        _jsonParameters = parameters;
+    }
+
+    /**
+     * Trains this classifier from scratch using the supplied data.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     */
+    @Override
+    protected void internalFit(DoubleMatrix2D x, double[] y)
+    {
+        _classes = null;
+        _attributeCount = -1;
+        _weights = null;
+        _bias = null;
+        _steps = 0;
+        train(x, y, getIntParameter("epochs", 5));
+    }
+
+    /**
+     * Trains and returns a copy of this classifier using the supplied data.
+     * If this classifier is trained the copy starts from its weights.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     * @return a new <tt>IClassifier</tt> instance trained with the supplied data.
+     */
+    public IClassifier fitNew(DoubleMatrix2D x, double[] y)
+    {
+        SGDLogisticRegressionClassifier clone =
+            new SGDLogisticRegressionClassifier(_jsonParameters);
+        if (isTrained()) {
+            clone._classes = _classes;
+            clone._attributeCount = _attributeCount;
+            clone._weights = _weights.clone();
+            clone._bias = _bias.clone();
+            clone._steps = _steps;
+            clone.train(x, y, getIntParameter("warm_start_epochs", 1));
+            clone.updateClassifierInformation();
+        } else {
+            clone.fit(x, y);
+        }
+        return clone;
+    }
+
+    /**
+     * Continues the training of this classifier with one pass over the
+     * supplied data.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     */
+    public void partialFit(DoubleMatrix2D x, double[] y)
+    {
+        train(x, y, 1);
+        updateClassifierInformation();
+    }
+
+    /**
+     * Continues the training of this classifier with one pass over the
+     * blocks of a data set read incrementally. Only the current block is
+     * kept in memory. The instances are visited in random order within
+     * each block.
+     *
+     * @param blocks   the block reader for the data set.
+     * @param classes  the class labels of the data set.
+     * @throws IOException if reading the data set fails.
+     */
+    public void partialFit(DataSetBlockReader blocks, double[] classes)
+        throws IOException
+    {
+        Random random = createRandom();
+        addClasses(classes);
+        DataSet block;
+        while ((block = blocks.nextBlock()) != null) {
+            pass(block.x, block.y, random);
+        }
+        updateClassifierInformation();
+    }
+
+    public double predict(DoubleMatrix1D instance)
+    {
+        Scratch scratch = _scratch.get();
+        return predict(instance, scratch.scores(_classes.length));
+    }
+
+    public double predict(DoubleMatrix1D instance,
+                          double[] probabilityEstimates)
+    {
+        Scratch scratch = _scratch.get();
+        scratch.setRow(instance);
+        softmax(scratch, probabilityEstimates);
+        scratch.release();
+        int best = 0;
+        for (int c = 1; c < _classes.length; c++) {
+            if (probabilityEstimates[c] > probabilityEstimates[best]) {
+                best = c;
+            }
+        }
+        return _classes[best];
+    }
+
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _storageTemplate;
+    }
+
+    /**
+     * Returns the number of SGD steps taken so far.
+     *
+     * @return the number of steps.
+     */
+    public long getSteps()
+    {
+        return _steps;
+    }
+
+    private void train(DoubleMatrix2D x, double[] y, int epochs)
+    {
+        SortedSet<Double> uniqueLabels = new TreeSet<Double>();
+        for (int i = 0; i < y.length; i++) {
+            uniqueLabels.add(y[i]);
+        }
+        double[] classes = new double[uniqueLabels.size()];
+        int c = 0;
+        for (Double label : uniqueLabels) {
+            classes[c++] = label;
+        }
+        addClasses(classes);
+
+        Random random = createRandom();
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            pass(x, y, random);
+        }
+    }
+
+    /**
+     * Makes one parallel pass over the instances in random order.
+     */
+    private void pass(DoubleMatrix2D x, double[] y, Random random)
+    {
+        int n = x.rows();
+        addAttributes(x.columns());
+        int[] classOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            classOf[i] = Arrays.binarySearch(_classes, y[i]);
+            if (classOf[i] < 0) {
+                throw new IllegalArgumentException
+                              ("Unknown class label " + y[i] + ".");
+            }
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        new SGDAction(x, classOf, order, _steps,
+                      getDoubleParameter("learning_rate", 0.1),
+                      getDoubleParameter("lambda", 1e-4),
+                      0, n).start(ExecutionPolicy.getDefault());
+        _steps += n;
+    }
+
+    /**
+     * Sets the classifier information from the classes and attributes
+     * covered by the weights after incremental training.
+     */
+    private void updateClassifierInformation()
+    {
+        Double[] labels = new Double[_classes.length];
+        for (int c = 0; c < _classes.length; c++) {
+            labels[c] = _classes[c];
+        }
+        setClassifierInformation(_attributeCount, labels);
+    }
+
+    /**
+     * Adds any new classes, keeping the weights of the existing ones.
+     */
+    private void addClasses(double[] classes)
+    {
+        SortedSet<Double> uniqueLabels = new TreeSet<Double>();
+        if (_classes != null) {
+            for (int c = 0; c < _classes.length; c++) {
+                uniqueLabels.add(_classes[c]);
+            }
+        }
+        for (int c = 0; c < classes.length; c++) {
+            uniqueLabels.add(classes[c]);
+        }
+        if (_classes != null && uniqueLabels.size() == _classes.length) {
+            return;
+        }
+        double[] newClasses = new double[uniqueLabels.size()];
+        int k = 0;
+        for (Double label : uniqueLabels) {
+            newClasses[k++] = label;
+        }
+        int d = Math.max(0, _attributeCount);
+        int K = newClasses.length;
+        double[] weights = new double[d * K];
+        double[] bias = new double[K];
+        if (_classes != null) {
+            int oldK = _classes.length;
+            for (int c = 0; c < oldK; c++) {
+                int nc = Arrays.binarySearch(newClasses, _classes[c]);
+                bias[nc] = _bias[c];
+                for (int j = 0; j < d; j++) {
+                    weights[j * K + nc] = _weights[j * oldK + c];
+                }
+            }
+        }
+        _classes = newClasses;
+        _weights = weights;
+        _bias = bias;
+        _attributeCount = d;
+    }
+
+    /**
+     * Extends the weights to at least the given number of attributes.
+     */
+    private void addAttributes(int attributes)
+    {
+        if (attributes > _attributeCount) {
+            _weights = Arrays.copyOf(_weights, attributes * _classes.length);
+            _attributeCount = attributes;
+        }
+    }
+
+    /**
+     * Computes the class probabilities of the instance in the scratch
+     * buffers under the current weights.
+     */
+    private void softmax(Scratch scratch, double[] probabilities)
+    {
+        int K = _classes.length;
+        double[] weights = _weights;
+        System.arraycopy(_bias, 0, probabilities, 0, K);
+        int[] index = scratch.index;
+        double[] value = scratch.value;
+        int limit = _attributeCount;
+        for (int k = scratch.start; k < scratch.end; k++) {
+            int j = index[k];
+            if (j < limit) {
+                double v = value[k];
+                int offset = j * K;
+                for (int c = 0; c < K; c++) {
+                    probabilities[c] += weights[offset + c] * v;
+                }
+            }
+        }
+        double max = probabilities[0];
+        for (int c = 1; c < K; c++) {
+            max = Math.max(max, probabilities[c]);
+        }
+        double sum = 0.0;
+        for (int c = 0; c < K; c++) {
+            probabilities[c] = Math.exp(probabilities[c] - max);
+            sum += probabilities[c];
+        }
+        for (int c = 0; c < K; c++) {
+            probabilities[c] /= sum;
+        }
+    }
+
+    private Random createRandom()
+    {
+        if (_jsonParameters != null && _jsonParameters.has("seed")) {
+            try {
+                return new Random(_jsonParameters.getLong("seed") + _steps);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return new Random();
+    }
+
+    private int getIntParameter(String name, int defaultValue)
+    {
+        if (_jsonParameters != null && _jsonParameters.has(name)) {
+            try {
+                return _jsonParameters.getInt(name);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return defaultValue;
+    }
+
+    private double getDoubleParameter(String name, double defaultValue)
+    {
+        if (_jsonParameters != null && _jsonParameters.has(name)) {
+            try {
+                return _jsonParameters.getDouble(name);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return defaultValue;
+    }
+
+    private void writeObject(ObjectOutputStream oos)
+        throws java.io.IOException
+    {
+        oos.defaultWriteObject();
+        // Save the model parameters.
+        if (_jsonParameters != null) {
+            oos.writeObject(_jsonParameters.toString());
+        } else {
+            oos.writeObject(null);
+        }
+    }
+
+    private void readObject(ObjectInputStream ois)
+        throws ClassNotFoundException, java.io.IOException, JSONException
+    {
+        ois.defaultReadObject();
+        // Load the model parameters.
+        String jsonText = (String)ois.readObject();
+        if (jsonText != null) {
+            _jsonParameters = new JSONObject(jsonText);
+        }
+    }
+
+    /**
+     * Takes the SGD steps for the instances in an interval of a pass. The
+     * weights are updated without locking.
+     */
+    private class SGDAction extends ParallelizedAction
+    {
+        final DoubleMatrix2D _x;
+        final int[]          _classOf;
+        final int[]          _order;
+        final long           _firstStep;
+        final double         _learningRate;
+        final double         _lambda;
+
+        SGDAction(DoubleMatrix2D x, int[] classOf, int[] order,
+                  long firstStep, double learningRate, double lambda,
+                  int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _classOf = classOf;
+            _order = order;
+            _firstStep = firstStep;
+            _learningRate = learningRate;
+            _lambda = lambda;
+        }
+
+        @Override
+        protected void compute(int k)
+        {
+            int i = _order[k];
+            int K = _classes.length;
+            double[] weights = _weights;
+            double[] bias = _bias;
+            Scratch scratch = _scratch.get();
+            double[] gradient = scratch.scores(K);
+            scratch.setRow(_x.viewRow(i));
+            softmax(scratch, gradient);
+            gradient[_classOf[i]] -= 1.0;
+
+            double eta =
+                _learningRate /
+                (1.0 + _learningRate * _lambda * (_firstStep + k));
+            double decay = 1.0 - eta * _lambda;
+            int[] index = scratch.index;
+            double[] value = scratch.value;
+            for (int p = scratch.start; p < scratch.end; p++) {
+                double v = value[p];
+                int offset = index[p] * K;
+                for (int c = 0; c < K; c++) {
+                    weights[offset + c] =
+                        decay * weights[offset + c] - eta * gradient[c] * v;
+                }
+            }
+            for (int c = 0; c < K; c++) {
+                bias[c] -= eta * gradient[c];
+            }
+            scratch.release();
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new SGDAction(_x, _classOf, _order, _firstStep,
+                                 _learningRate, _lambda, first, last);
+        }
+    }
+
+    /**
+     * The non-zero elements of the current instance of a thread and a
+     * buffer for its class scores. Instances in the CSR format are used
+     * in place.
+     */
+    private static final class Scratch
+    {
+        final IntArrayList    indices = new IntArrayList();
+        final DoubleArrayList values  = new DoubleArrayList();
+        double[] scores = new double[0];
+        int[]    index;
+        double[] value;
+        int      start;
+        int      end;
+
+        void setRow(DoubleMatrix1D x)
+        {
+            if (x instanceof CSRDoubleMatrix1D) {
+                CSRDoubleMatrix1D row = (CSRDoubleMatrix1D)x;
+                index = row.getMatrix().getColumnIndices();
+                value = row.getMatrix().getValues();
+                start = row.getStart();
+                end = row.getEnd();
+            } else {
+                x.getNonZeros(indices, values);
+                index = indices.elements();
+                value = values.elements();
+                start = 0;
+                end = indices.size();
+            }
+        }
+
+        /**
+         * Drops the references to the instance so that its matrix is not
+         * kept alive by the thread.
+         */
+        void release()
+        {
+            index = null;
+            value = null;
+        }
+
+        double[] scores(int size)
+        {
+            if (scores.length < size) {
+                scores = new double[size];
+            }
+            return scores;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+/**
+ * Helpers for the one-vs-one decision values of multi-class SVMs, see
+ * {@link ISVMClassifier#decisionValues(cern.colt.matrix.DoubleMatrix1D, double[])}.
+ *
+ * For k classes there is one decision value for each pair of classes
+ * i &lt; j, stored in the order (0,1), (0,2), ..., (0,k-1), (1,2), ...
+ * as by libsvm. The value is positive on the side of class i.
+ *
+ * @author agent(at)local
+ */
+public final class SVMDecisionValues
+{
+    private SVMDecisionValues()
+    {
+    }
+
+    /**
+     * Returns the number of one-vs-one decision values.
+     *
+     * @param classes  the number of classes.
+     * @return the number of decision values.
+     */
+    public static int count(int classes)
+    {
+        return classes * (classes - 1) / 2;
+    }
+
+    /**
+     * Returns the position of the decision value of a pair of classes.
+     *
+     * @param i        the first class.
+     * @param j        the second class, greater than i.
+     * @param classes  the number of classes.
+     * @return the position of the decision value.
+     */
+    public static int indexOf(int i, int j, int classes)
+    {
+        return i * classes - i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    /**
+     * Reorders decision values computed with the classes in the order of
+     * a model's labels into the ascending order of the labels assumed by
+     * JCP.
+     *
+     * @param modelLabels     the labels in the order of the model.
+     * @param modelValues     the decision values in the order of the model.
+     * @param decisionValues  a <tt>double[]</tt> array to store the decision values in ascending label order in.
+     */
+    public static void toAscendingOrder(int[]    modelLabels,
+                                        double[] modelValues,
+                                        double[] decisionValues)
+    {
+        int k = modelLabels.length;
+        // The position of each model class in ascending label order.
+        int[] rank = new int[k];
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b < k; b++) {
+                if (modelLabels[b] < modelLabels[a]) {
+                    rank[a]++;
+                }
+            }
+        }
+        int p = 0;
+        for (int a = 0; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                if (rank[a] < rank[b]) {
+                    decisionValues[indexOf(rank[a], rank[b], k)] =
+                        modelValues[p];
+                } else {
+                    decisionValues[indexOf(rank[b], rank[a], k)] =
+                        -modelValues[p];
+                }
+                p++;
+            }
+        }
+    }
+}
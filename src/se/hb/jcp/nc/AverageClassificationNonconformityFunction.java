@@ -20,16 +20,24 @@ package se.hb.jcp.nc;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 public class AverageClassificationNonconformityFunction
     implements IClassificationNonconformityFunction, java.io.Serializable
 {
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = 3654666280487871517L;
+
+    private static final se.hb.jcp.util.CSRDoubleMatrix1D _storageTemplate =
+        new se.hb.jcp.util.CSRDoubleMatrix1D(0);
+
     int[] _class_count;
     int _n_classes;
     double[] _classes;
-    Map<Double, Integer> _class_index = new TreeMap<Double, Integer>();
+    // The class labels in ascending order and their index in _classes.
+    double[] _sorted_classes;
+    int[]    _sorted_class_index;
     int _n_instances;
     int _attributeCount = -1;
 
@@ -39,16 +47,14 @@ public class AverageClassificationNonconformityFunction
         _class_count = new int[_n_classes];
 
         _classes = classes;
-        for (int i = 0; i < _n_classes; i++) {
-            _class_index.put(_classes[i], i);
-        }
+        indexClasses();
     }
 
     @Override
     public void fit(DoubleMatrix2D x, double[] y)
     {
         for (double y_ : y)
-            _class_count[_class_index.get(y_)]++;
+            _class_count[classIndexOf(y_)]++;
         _n_instances = y.length;
         _attributeCount = x.size();
     }
@@ -58,9 +64,9 @@ public class AverageClassificationNonconformityFunction
                      DoubleMatrix1D xtest, double ytest)
     {
         for (double y_ : ytr)
-            _class_count[_class_index.get(y_)]++;
+            _class_count[classIndexOf(y_)]++;
         
-        _class_count[_class_index.get(ytest)]++;
+        _class_count[classIndexOf(ytest)]++;
         _n_instances = ytr.length + 1;
     }
 
@@ -94,7 +100,7 @@ public class AverageClassificationNonconformityFunction
         double[] nc = new double[y.length];
         for (int i = 0; i < nc.length; i++) {
             nc[i] =
-                1 - (double)_class_count[_class_index.get(y[i])] / _n_instances;
+                1 - (double)_class_count[classIndexOf(y[i])] / _n_instances;
         }
         return nc;
     }
@@ -105,11 +111,11 @@ public class AverageClassificationNonconformityFunction
     {
         double[] nc = new double[ytr.length + 1];
         for (int i = 0; i < nc.length - 1; i++) {
-            nc[i] = 1 - (double)_class_count[_class_index.get(ytr[i])] /
+            nc[i] = 1 - (double)_class_count[classIndexOf(ytr[i])] /
                         _n_instances;
         }
         nc[nc.length - 1] =
-            1 - (double)_class_count[_class_index.get(ytest)] / _n_instances;
+            1 - (double)_class_count[classIndexOf(ytest)] / _n_instances;
         
         return nc;
     }
@@ -117,7 +123,7 @@ public class AverageClassificationNonconformityFunction
     @Override
     public double calculateNonConformityScore(DoubleMatrix1D x, double y)
     {
-        double nc = 1 - (double)_class_count[_class_index.get(y)] /
+        double nc = 1 - (double)_class_count[classIndexOf(y)] /
                         _n_instances;
         return nc;
     }
@@ -143,12 +149,41 @@ public class AverageClassificationNonconformityFunction
     @Override
     public final Double[] getLabels()
     {
-        return _class_index.keySet().toArray(new Double[0]);
+        Double[] labels = new Double[_sorted_classes.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = _sorted_classes[i];
+        }
+        return labels;
+    }
+
+    private int classIndexOf(double y)
+    {
+        return _sorted_class_index[Arrays.binarySearch(_sorted_classes, y)];
+    }
+
+    private void indexClasses()
+    {
+        _sorted_classes = se.hb.jcp.cp.Util.sortedDistinct(_classes);
+        _sorted_class_index = new int[_sorted_classes.length];
+        for (int i = 0; i < _n_classes; i++) {
+            _sorted_class_index
+                [Arrays.binarySearch(_sorted_classes, _classes[i])] = i;
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream ois)
+        throws ClassNotFoundException, java.io.IOException
+    {
+        ois.defaultReadObject();
+        if (_sorted_classes == null) {
+            // Saved before the sorted class labels were added.
+            indexClasses();
+        }
     }
 
     @Override
     public DoubleMatrix1D nativeStorageTemplate()
     {
-        return new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
+        return _storageTemplate;
     }
 }
@@ -19,7 +19,9 @@ package se.hb.jcp.nc;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
+import se.hb.jcp.ml.IBatchClassProbabilityClassifier;
 import se.hb.jcp.ml.IClassProbabilityClassifier;
+import se.hb.jcp.ml.PreparedInstance;
 
 /**
  * A base class for nonconformity functions based on the predicted class
@@ -31,6 +33,9 @@ public abstract class ClassProbabilityNonconformityFunctionBase
     extends ClassifierNonconformityFunctionBase
     implements java.io.Serializable
 {
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = 1914964373055791427L;
 
     public ClassProbabilityNonconformityFunctionBase
                (double[] classes,
@@ -53,16 +58,154 @@ public abstract class ClassProbabilityNonconformityFunctionBase
         }
         // FIXME: This safety check only works for 2 classes.
         if (_classes.length == 2 &&
-            probability[_class_index.get(label)] <
-            probability[_classes.length - 1 - _class_index.get(label)]) {
+            probability[classIndexOf(label)] <
+            probability[_classes.length - 1 - classIndexOf(label)]) {
             System.err.println("Warning! Poor model prediction (" +
                                label + ") - model label probability (" +
-                               probability[_class_index.get(label)] +
+                               probability[classIndexOf(label)] +
                                ") match!");
         }
         return nc;
     }
 
+    /**
+     * Computes the non-conformity score for the instance x with the target y
+     * using the supplied buffer for the class probabilities.
+     *
+     * @param x            the instance.
+     * @param y            the target/class/label.
+     * @param probability  a <tt>double[]</tt> array of at least the number of classes used as buffer for the class probabilities.
+     * @return the non-conformity score. Large means less conforming.
+     */
+    public final double calculateNonConformityScore(DoubleMatrix1D x, double y,
+                                                    double[] probability)
+    {
+        ((IClassProbabilityClassifier)_model).predict(x, probability);
+        return computeNCScore(x, y, probability);
+    }
+
+    /**
+     * Computes the non-conformity score for the instance x with the target y
+     * from class probabilities that have already been predicted for it, for
+     * instance out-of-bag by an ensemble classifier.
+     *
+     * @param x            the instance.
+     * @param y            the target/class/label.
+     * @param probability  a <tt>double[]</tt> array with the class probabilities of the instance.
+     * @return the non-conformity score. Large means less conforming.
+     */
+    public final double calculateNonConformityScoreFromProbabilities
+                            (DoubleMatrix1D x, double y, double[] probability)
+    {
+        return computeNCScore(x, y, probability);
+    }
+
+    /**
+     * Computes the non-conformity scores for the instance x for each of the
+     * supplied targets from a single prediction by the underlying classifier.
+     * An instance in another storage format than the native one of the
+     * classifier is converted once into a reusable per-thread buffer.
+     *
+     * @param x            the instance.
+     * @param y            the targets/classes/labels.
+     * @param ncScores     a <tt>double[]</tt> array to store the non-conformity score for each target in.
+     * @param probability  a <tt>double[]</tt> array of at least the number of classes used as buffer for the class probabilities.
+     */
+    public final void calculateNonConformityScores(DoubleMatrix1D x,
+                                                   double[] y,
+                                                   double[] ncScores,
+                                                   double[] probability)
+    {
+        x = PreparedInstance.prepare(_model, x);
+        ((IClassProbabilityClassifier)_model).predict(x, probability);
+        for (int i = 0; i < y.length; i++) {
+            ncScores[i] = computeNCScore(x, y[i], probability);
+        }
+    }
+
+    /**
+     * Computes the non-conformity scores for the rows first to last - 1 of
+     * x with the targets in the corresponding elements of y and stores them
+     * in the corresponding elements of ncScores. If the classifier supports
+     * batch prediction all rows are predicted by a single call to it.
+     *
+     * @param x         the instances.
+     * @param y         the target/class/label of each instance.
+     * @param ncScores  a <tt>double[]</tt> array to store the non-conformity score of each instance in.
+     * @param first     the first row.
+     * @param last      the row after the last row.
+     */
+    public final void calculateNonConformityScores(DoubleMatrix2D x,
+                                                   double[] y,
+                                                   double[] ncScores,
+                                                   int first, int last)
+    {
+        double[] probabilities = predictProbabilities(x, first, last);
+        double[] probability = new double[_n_classes];
+        for (int i = first; i < last; i++) {
+            System.arraycopy(probabilities, (i - first) * _n_classes,
+                             probability, 0, _n_classes);
+            ncScores[i] = computeNCScore(x.viewRow(i), y[i], probability);
+        }
+    }
+
+    /**
+     * Computes the non-conformity scores for the rows first to last - 1 of
+     * x for each of the supplied targets. The scores of row i are stored
+     * starting at <tt>(i - first) * targets.length</tt> in ncScores.
+     * If the classifier supports batch prediction all rows are predicted
+     * by a single call to it.
+     *
+     * @param x         the instances.
+     * @param first     the first row.
+     * @param last      the row after the last row.
+     * @param targets   the targets/classes/labels.
+     * @param ncScores  a <tt>double[]</tt> array of at least <tt>(last - first) * targets.length</tt> elements to store the non-conformity scores in.
+     */
+    public final void calculateTargetNonConformityScores(DoubleMatrix2D x,
+                                                         int first, int last,
+                                                         double[] targets,
+                                                         double[] ncScores)
+    {
+        double[] probabilities = predictProbabilities(x, first, last);
+        double[] probability = new double[_n_classes];
+        for (int i = first; i < last; i++) {
+            System.arraycopy(probabilities, (i - first) * _n_classes,
+                             probability, 0, _n_classes);
+            DoubleMatrix1D instance = x.viewRow(i);
+            int offset = (i - first) * targets.length;
+            for (int t = 0; t < targets.length; t++) {
+                ncScores[offset + t] =
+                    computeNCScore(instance, targets[t], probability);
+            }
+        }
+    }
+
+    /**
+     * Predicts the class probabilities of the rows first to last - 1 of x.
+     * The probabilities of row i start at <tt>(i - first) * _n_classes</tt>.
+     */
+    private double[] predictProbabilities(DoubleMatrix2D x,
+                                          int first, int last)
+    {
+        double[] probabilities = new double[(last - first) * _n_classes];
+        if (_model instanceof IBatchClassProbabilityClassifier) {
+            ((IBatchClassProbabilityClassifier)_model).
+                predict(x, first, last, new double[last - first],
+                        probabilities);
+        } else {
+            double[] probability = new double[_n_classes];
+            for (int i = first; i < last; i++) {
+                ((IClassProbabilityClassifier)_model).predict(x.viewRow(i),
+                                                              probability);
+                System.arraycopy(probability, 0,
+                                 probabilities, (i - first) * _n_classes,
+                                 _n_classes);
+            }
+        }
+        return probabilities;
+    }
+
     /**
      * Step in the calculateNonConformityScore template method for computing
      * the non-conformity score of an instance based on its assumed label and
@@ -88,6 +231,8 @@ public abstract class ClassProbabilityNonconformityFunctionBase
     class CalcNCAction extends CalcNCActionBase
     {
         double[] _probability;
+        double[] _probabilities;
+        int      _first;
 
         public CalcNCAction(DoubleMatrix2D x,
                             double[] y,
@@ -101,12 +246,18 @@ public abstract class ClassProbabilityNonconformityFunctionBase
         protected final void initialize(int first, int last)
         {
             _probability = new double[_n_classes];
+            if (_model instanceof IBatchClassProbabilityClassifier) {
+                // Predict the whole sub-interval with a single call to the model.
+                _probabilities = predictProbabilities(_x, first, last);
+                _first = first;
+            }
         }
 
         @Override
         protected final void finalize(int first, int last)
         {
             _probability = null;
+            _probabilities = null;
         }
 
         @Override
@@ -115,8 +266,13 @@ public abstract class ClassProbabilityNonconformityFunctionBase
             // Overriden with inlined computation to avoid reallocating the
             // _probability array for each instance.
             DoubleMatrix1D instance = _x.viewRow(i);
-            ((IClassProbabilityClassifier)_model).predict(instance,
-                                                          _probability);
+            if (_probabilities != null) {
+                System.arraycopy(_probabilities, (i - _first) * _n_classes,
+                                 _probability, 0, _n_classes);
+            } else {
+                ((IClassProbabilityClassifier)_model).predict(instance,
+                                                              _probability);
+            }
             _nc[i] = computeNCScore(instance, _y[i], _probability);
         }
     }
@@ -35,7 +35,8 @@ public final class ClassificationNonconformityFunctionFactory
         {
             "hinge loss nonconformity function",
             "SVM distance nonconformity function",
-            "attribute average nonconformity function"
+            "attribute average nonconformity function",
+            "margin nonconformity function"
         };
 
     private ClassificationNonconformityFunctionFactory()
@@ -74,12 +75,33 @@ public final class ClassificationNonconformityFunctionFactory
             }
         case 2:
             return new AverageClassificationNonconformityFunction(classes);
+        case 3:
+            if (!(classifier instanceof IClassProbabilityClassifier)) {
+                classifier = new se.hb.jcp.ml.BogusClassProbabilityClassifier
+                                     (classifier, classes);
+            }
+            return new MarginNonconformityFunction
+                           (classes,
+                            (IClassProbabilityClassifier)classifier);
         default:
             throw new UnsupportedOperationException
                 ("Unknown nonconformity function type.");
         }
     }
 
+    /**
+     * Returns whether the nonconformity function type is computed from the
+     * class probabilities of the classifier, as needed for out-of-bag
+     * calibration.
+     *
+     * @param type  the nonconformity function type.
+     * @return <tt>true</tt> if the function is based on class probabilities.
+     */
+    public boolean isClassProbabilityBased(int type)
+    {
+        return type == 0 || type == 3;
+    }
+
     public static ClassificationNonconformityFunctionFactory getInstance()
     {
         return _theInstance;
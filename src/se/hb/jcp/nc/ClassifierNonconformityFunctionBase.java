@@ -16,13 +16,13 @@
 //
 package se.hb.jcp.nc;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import se.hb.jcp.ml.IClassifier;
+import se.hb.jcp.util.ExecutionPolicy;
 import se.hb.jcp.util.ParallelizedAction;
 
 /**
@@ -34,23 +34,28 @@ public abstract class ClassifierNonconformityFunctionBase
     implements IClassificationNonconformityFunction,
                java.io.Serializable
 {
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = -1267776596195104684L;
+
     static final boolean DEBUG = false;
-    static final boolean PARALLEL = true;
 
     IClassifier _model;
     int _n_classes;
     double[] _classes;
-    Map<Double, Integer> _class_index = new TreeMap<Double, Integer>();
+    // The class labels in ascending order and their index in _classes
+    // for lookups by binary search.
+    double[] _sorted_classes;
+    int[]    _sorted_class_index;
+    // Runtime configuration. Not saved.
+    transient ExecutionPolicy _executionPolicy;
 
     public ClassifierNonconformityFunctionBase(double[] classes,
                                                IClassifier classifier)
     {
         _n_classes = classes.length;
         _classes = classes;
-
-        for (int i = 0; i < _n_classes; i++) {
-            _class_index.put(_classes[i], i);
-        }
+        indexClasses();
 
         _model = classifier;
     }
@@ -86,7 +91,15 @@ public abstract class ClassifierNonconformityFunctionBase
         trainingX.viewRow(n).assign(xtest);
         trainingY[n] = ytest;
 
-        return fitNew(trainingX, trainingY);
+        try {
+            return fitNew(trainingX, trainingY);
+        } finally {
+            // The trained model holds on to the rows it needs, so native
+            // storage can be released right away.
+            if (trainingX instanceof AutoCloseable) {
+                release((AutoCloseable)trainingX);
+            }
+        }
     }
 
     @Override
@@ -103,8 +116,9 @@ public abstract class ClassifierNonconformityFunctionBase
             System.err.println("fastCalc_nc()");
         }
 
-        if (!PARALLEL) {
+        if (!getExecutionPolicy().isParallel()) {
             for (int i = 0; i < nc.length; i++) {
+                getExecutionPolicy().checkCancelled();
                 DoubleMatrix1D instance = x.viewRow(i);
                 nc[i] = calculateNonConformityScore(instance, y[i]);
 
@@ -115,7 +129,7 @@ public abstract class ClassifierNonconformityFunctionBase
             }
         } else {
             CalcNCActionBase all = createNewCalcNCAction(x, y, nc, 0, y.length);
-            all.start();
+            all.start(getExecutionPolicy());
         }
         return nc;
     }
@@ -141,6 +155,64 @@ public abstract class ClassifierNonconformityFunctionBase
         return _model;
     }
 
+    /**
+     * Returns the execution policy used for the parallelized methods of
+     * this non-conformity function.
+     *
+     * @return the execution policy.
+     */
+    public ExecutionPolicy getExecutionPolicy()
+    {
+        return ExecutionPolicy.orDefault(_executionPolicy);
+    }
+
+    /**
+     * Sets the execution policy used for the parallelized methods of this
+     * non-conformity function.
+     *
+     * @param policy  the execution policy or <tt>null</tt> for the default execution policy.
+     */
+    public void setExecutionPolicy(ExecutionPolicy policy)
+    {
+        _executionPolicy = policy;
+    }
+
+    /**
+     * Returns the class index of the label y without boxing it.
+     *
+     * @param y    the class label.
+     * @return the class index of y or -1 if y is not a known label.
+     */
+    final int classIndexOf(double y)
+    {
+        int i = Arrays.binarySearch(_sorted_classes, y);
+        return i >= 0 ? _sorted_class_index[i] : -1;
+    }
+
+    /**
+     * Sets up the sorted class labels for lookups by binary search.
+     */
+    private void indexClasses()
+    {
+        _sorted_classes = se.hb.jcp.cp.Util.sortedDistinct(_classes);
+        _sorted_class_index = new int[_sorted_classes.length];
+        for (int i = 0; i < _n_classes; i++) {
+            // The last occurrence of a label wins, as for a map.
+            _sorted_class_index
+                [Arrays.binarySearch(_sorted_classes, _classes[i])] = i;
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream ois)
+        throws ClassNotFoundException, java.io.IOException
+    {
+        ois.defaultReadObject();
+        if (_sorted_classes == null) {
+            // Saved before the sorted class labels were added.
+            indexClasses();
+        }
+    }
+
     @Override
     public final boolean isTrained()
     {
@@ -156,7 +228,11 @@ public abstract class ClassifierNonconformityFunctionBase
     @Override
     public final Double[] getLabels()
     {
-        return _class_index.keySet().toArray(new Double[0]);
+        Double[] labels = new Double[_sorted_classes.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = _sorted_classes[i];
+        }
+        return labels;
     }
 
     @Override
@@ -165,6 +241,20 @@ public abstract class ClassifierNonconformityFunctionBase
         return _model.nativeStorageTemplate();
     }
 
+    /**
+     * Releases the native storage of a temporary matrix.
+     *
+     * @param x    the matrix.
+     */
+    private static void release(AutoCloseable x)
+    {
+        try {
+            x.close();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     CalcNCActionBase createNewCalcNCAction(DoubleMatrix2D x,
                                            double[] y,
                                            double[] nc,
@@ -56,6 +56,6 @@ public class HingeLossNonconformityFunction
     double computeNCScore(DoubleMatrix1D x, double y,
                           double[] probability)
     {
-        return 1.0 - probability[_class_index.get(y)];
+        return 1.0 - probability[classIndexOf(y)];
     }
 }
@@ -0,0 +1,65 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.ml.IClassProbabilityClassifier;
+
+/**
+ * A margin nonconformity function based on the predicted class
+ * probabilities given by a classifier. The score of the label y is
+ * <tt>max_{y' != y} p(y') - p(y)</tt>, i.e. how much more probable the
+ * most probable other label is.
+ *
+ * @author agent(at)local
+ */
+public class MarginNonconformityFunction
+    extends ClassProbabilityNonconformityFunctionBase
+    implements java.io.Serializable
+{
+    public MarginNonconformityFunction
+               (double[] classes,
+                IClassProbabilityClassifier classifier)
+    {
+        super(classes, classifier);
+    }
+
+    @Override
+    public IClassificationNonconformityFunction fitNew(DoubleMatrix2D x,
+                                                       double[] y)
+    {
+        return new MarginNonconformityFunction
+                       (_classes,
+                        (IClassProbabilityClassifier)_model.fitNew(x, y));
+    }
+
+    @Override
+    double computeNCScore(DoubleMatrix1D x, double y,
+                          double[] probability)
+    {
+        int label = classIndexOf(y);
+        double other = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < _n_classes; c++) {
+            if (c != label && probability[c] > other) {
+                other = probability[c];
+            }
+        }
+        return other - probability[label];
+    }
+}
@@ -16,10 +16,13 @@
 //
 package se.hb.jcp.nc;
 
+import java.util.Arrays;
+
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import se.hb.jcp.ml.ISVMClassifier;
+import se.hb.jcp.ml.SVMDecisionValues;
 
 /**
  * This class implements a nonconformity function based on the signed
@@ -27,12 +30,30 @@ import se.hb.jcp.ml.ISVMClassifier;
  * See e.g. [Toccaceli, Nouretdinov, Gammerman, "Conformal Predictors for
  * Compound Activity Prediction", https://arxiv.org/pdf/1603.04506.pdf, 2016].
  *
+ * For more than two classes the score of a label is the negated average
+ * of the one-vs-one decision values of the SVM between the label and each
+ * other class, signed so that they are positive on the side of the label.
+ *
  * @author anders.gidenstam(at)hb.se
  */
 public class SVMDistanceNonconformityFunction
     extends ClassifierNonconformityFunctionBase
     implements java.io.Serializable
 {
+    // Fixed to the value computed for the original version so that saved
+    // models remain readable.
+    private static final long serialVersionUID = -5860262272686129851L;
+
+    // Per-thread buffer for the decision values of an instance.
+    private static final ThreadLocal<double[][]> _decisionValueBuffer =
+        new ThreadLocal<double[][]>() {
+            @Override
+            protected double[][] initialValue()
+            {
+                return new double[][] { new double[0] };
+            }
+        };
+
     public SVMDistanceNonconformityFunction(double[] classes)
     {
         this(classes, new se.hb.jcp.bindings.jlibsvm.SVMClassifier());
@@ -43,11 +64,6 @@ public class SVMDistanceNonconformityFunction
                 ISVMClassifier classifier)
     {
         super(classes, classifier);
-        if (classes.length > 2) {
-            throw new UnsupportedOperationException
-                          ("The SVMDistanceNonconformityFunction does not " +
-                           "support multiclass problems.");
-        }
     }
 
     @Override
@@ -63,6 +79,93 @@ public class SVMDistanceNonconformityFunction
     @Override
     public double calculateNonConformityScore(DoubleMatrix1D x, double y)
     {
-        return -y * ((ISVMClassifier)_model).distanceFromSeparatingPlane(x);
+        if (_n_classes <= 2) {
+            return -y *
+                ((ISVMClassifier)_model).distanceFromSeparatingPlane(x);
+        }
+        double[] decisionValues = decisionValueBuffer();
+        ((ISVMClassifier)_model).decisionValues(x, decisionValues);
+        return computeNCScore(y, decisionValues);
+    }
+
+    /**
+     * Computes the non-conformity scores for the instance x for each of the
+     * supplied targets. For more than two classes they are computed from a
+     * single evaluation of the decision values of the SVM.
+     *
+     * @param x         the instance.
+     * @param y         the targets/classes/labels.
+     * @param ncScores  a <tt>double[]</tt> array to store the non-conformity score for each target in.
+     */
+    public void calculateNonConformityScores(DoubleMatrix1D x,
+                                             double[] y,
+                                             double[] ncScores)
+    {
+        calculateNonConformityScores(x, y, ncScores, 0);
+    }
+
+    /**
+     * Computes the non-conformity scores for the instance x for each of the
+     * supplied targets and stores them starting at offset in ncScores.
+     * See {@link #calculateNonConformityScores(DoubleMatrix1D, double[], double[])}.
+     *
+     * @param x         the instance.
+     * @param y         the targets/classes/labels.
+     * @param ncScores  a <tt>double[]</tt> array to store the non-conformity score for each target in.
+     * @param offset    the position in ncScores of the score of the first target.
+     */
+    public void calculateNonConformityScores(DoubleMatrix1D x,
+                                             double[] y,
+                                             double[] ncScores,
+                                             int      offset)
+    {
+        if (_n_classes <= 2) {
+            for (int i = 0; i < y.length; i++) {
+                ncScores[offset + i] = calculateNonConformityScore(x, y[i]);
+            }
+            return;
+        }
+        double[] decisionValues = decisionValueBuffer();
+        ((ISVMClassifier)_model).decisionValues(x, decisionValues);
+        for (int i = 0; i < y.length; i++) {
+            ncScores[offset + i] = computeNCScore(y[i], decisionValues);
+        }
+    }
+
+    /**
+     * Returns the decision value buffer of the current thread sized for
+     * the classes of this non-conformity function.
+     */
+    private double[] decisionValueBuffer()
+    {
+        double[][] buffer = _decisionValueBuffer.get();
+        int count = SVMDecisionValues.count(_sorted_classes.length);
+        if (buffer[0].length != count) {
+            buffer[0] = new double[count];
+        }
+        return buffer[0];
+    }
+
+    /**
+     * Computes the non-conformity score for the label y from the
+     * one-vs-one decision values in ascending label order.
+     */
+    private double computeNCScore(double y, double[] decisionValues)
+    {
+        int k = _sorted_classes.length;
+        int s = Arrays.binarySearch(_sorted_classes, y);
+        if (s < 0) {
+            throw new IllegalArgumentException
+                          ("Unknown class label " + y + ".");
+        }
+        double sum = 0.0;
+        for (int t = 0; t < k; t++) {
+            if (t < s) {
+                sum -= decisionValues[SVMDecisionValues.indexOf(t, s, k)];
+            } else if (t > s) {
+                sum += decisionValues[SVMDecisionValues.indexOf(s, t, k)];
+            }
+        }
+        return -sum / (k - 1);
     }
 }
@@ -0,0 +1,242 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// The public interface is based on cern.colt.matrix.DoubleMatrix1D.
+package se.hb.jcp.util;
+
+import java.util.Arrays;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Class for sparse 1-d matrices (aka <i>vectors</i>) holding
+ * <tt>double</tt> elements in compressed sparse form backed by primitive
+ * arrays. Each instance is a row of a {@link CSRDoubleMatrix2D}, which for
+ * a stand-alone vector is a matrix with a single row.
+ *
+ * @author agent(at)local
+ */
+// TODO: Make sure to adhere to colt's conventions.
+
+public class CSRDoubleMatrix1D extends DoubleMatrix1D
+{
+    private final CSRDoubleMatrix2D _matrix;
+    private final int               _row;
+
+    /**
+     * Constructs a matrix with a given number of columns.
+     * All entries are initially <tt>0</tt>.
+     * @param columns the number of columns the matrix shall have.
+     * @throws IllegalArgumentException if
+               <tt>columns&lt;0 || columns &gt; Integer.MAX_VALUE</tt>.
+    */
+    public CSRDoubleMatrix1D(int columns)
+    {
+        setUp(columns);
+        _matrix = new CSRDoubleMatrix2D(1, columns);
+        _row = 0;
+    }
+
+    CSRDoubleMatrix1D(CSRDoubleMatrix2D matrix, int row)
+    {
+        setUp(matrix.columns());
+        isNoView = false;
+        _matrix = matrix;
+        _row = row;
+    }
+
+    /**
+     * Replaces all cell values of the receiver with the values of
+     * another matrix.  Both matrices must have the same size.
+     * If both matrices share the same cells (as is the case if they
+     * are views derived from the same matrix) and intersect in an
+     * ambiguous way, then replaces <i>as if</i> using an intermediate
+     * auxiliary deep copy of <tt>other</tt>.
+     *
+     * @param     other   the source matrix to copy from (may be identical to the receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws      IllegalArgumentException if <tt>size() != other.size()</tt>.
+     */
+    public DoubleMatrix1D assign(DoubleMatrix1D other)
+    {
+        if (other == this) {
+            return this;
+        }
+        checkSize(other);
+        if (other instanceof CSRDoubleMatrix1D) {
+            CSRDoubleMatrix1D o = (CSRDoubleMatrix1D)other;
+            int first = o.getStart();
+            int last  = o.getEnd();
+            if (o._matrix != _matrix) {
+                _matrix.replaceRow(_row,
+                                   o._matrix.getColumnIndices(),
+                                   o._matrix.getValues(),
+                                   first, last - first);
+            } else {
+                _matrix.replaceRow(_row,
+                                   Arrays.copyOfRange
+                                       (_matrix.getColumnIndices(),
+                                        first, last),
+                                   Arrays.copyOfRange
+                                       (_matrix.getValues(), first, last),
+                                   0, last - first);
+            }
+        } else {
+            IntArrayList indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            other.getNonZeros(indexList, valueList);
+            _matrix.replaceRow(_row, indexList.elements(), valueList.elements(),
+                               0, indexList.size());
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of cells having non-zero values.
+     *
+     * @return the number of non-zero cells.
+     */
+    public int cardinality()
+    {
+        return getEnd() - getStart();
+    }
+
+    /**
+     * Fills the coordinates and values of cells having non-zero values into
+     * the specified lists. The coordinates are in increasing order.
+     *
+     * @param indexList  the list to be filled with indexes, can have any size.
+     * @param valueList  the list to be filled with values, can have any size.
+     */
+    public void getNonZeros(IntArrayList indexList, DoubleArrayList valueList)
+    {
+        int first = getStart();
+        int size  = getEnd() - first;
+        indexList.setSize(size);
+        valueList.setSize(size);
+        System.arraycopy(_matrix.getColumnIndices(), first,
+                         indexList.elements(), 0, size);
+        System.arraycopy(_matrix.getValues(), first,
+                         valueList.elements(), 0, size);
+    }
+
+    /**
+     * Construct and returns a new empty matrix <i>of the same dynamic
+     * type</i> as the receiver, having the specified size.
+     *
+     * @param size  the number of cell the matrix shall have.
+     * @return  a new empty matrix of the same dynamic type.
+     */
+    public DoubleMatrix1D like(int size)
+    {
+        return new CSRDoubleMatrix1D(size);
+    }
+
+    /**
+     * Construct and returns a new 2-d matrix <i>of the corresponding
+     * dynamic type</i>, entirelly independent of the receiver.
+     *
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @return  a new matrix of the corresponding dynamic type.
+     */
+    public DoubleMatrix2D like2D(int rows, int columns)
+    {
+        return new CSRDoubleMatrix2D(rows, columns);
+    }
+
+    /**
+     * Returns the matrix cell value at coordinate <tt>column</tt>.
+     *
+     * <p>Provided with invalid parameters this method may return invalid
+     * objects without throwing any exception.
+     * <b>You should only use this method when you are absolutely sure that
+     * the coordinate is within bounds.</b>
+     * Precondition (unchecked): <tt>0 &lt;= column &lt; size()</tt>.
+     *
+     * @param column  the index of the column-coordinate.
+     * @return the value at the specified coordinate.
+     */
+    public double getQuick(int column)
+    {
+        return _matrix.getQuick(_row, column);
+    }
+
+    /**
+     * Sets the matrix cell at coordinate <tt>column</tt> to the specified
+     * value.
+     *
+     * <p>Provided with invalid parameters this method may access illegal
+     * indexes without throwing any exception.
+     * <b>You should only use this method when you are absolutely sure that
+     * the coordinate is within bounds.</b>
+     * Precondition (unchecked): <tt>0 &lt;= column &lt; size()</tt>.
+     *
+     * @param column  the index of the column-coordinate.
+     * @param value   the value to be filled into the specified cell.
+     */
+    public void setQuick(int column, double value)
+    {
+        _matrix.setQuick(_row, column, value);
+    }
+
+    /**
+     * Returns the position of the first element of this vector in the
+     * column index and value arrays of {@link #getMatrix()}.
+     *
+     * @return the position of the first element.
+     */
+    public int getStart()
+    {
+        return _matrix.getRowStart(_row);
+    }
+
+    /**
+     * Returns the position after the last element of this vector in the
+     * column index and value arrays of {@link #getMatrix()}.
+     *
+     * @return the position after the last element.
+     */
+    public int getEnd()
+    {
+        return _matrix.getRowEnd(_row);
+    }
+
+    /**
+     * Returns the matrix holding the elements of this vector.
+     *
+     * @return the matrix holding the elements.
+     */
+    public CSRDoubleMatrix2D getMatrix()
+    {
+        return _matrix;
+    }
+
+    /**
+     * Construct and returns a new selection view.
+     *
+     * @param offsets the offsets of the visible elements.
+     * @return a new view.
+     */
+    protected DoubleMatrix1D viewSelectionLike(int[] offsets)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+}
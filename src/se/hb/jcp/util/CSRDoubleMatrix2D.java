@@ -0,0 +1,464 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// The public interface is based on cern.colt.matrix.DoubleMatrix2D.
+package se.hb.jcp.util;
+
+import java.util.Arrays;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Class for sparse 2-d matrices holding <tt>double</tt> elements in
+ * compressed sparse row (CSR) form backed by primitive arrays.
+ *
+ * Row r holds the column indices <tt>getColumnIndices()[k]</tt> and values
+ * <tt>getValues()[k]</tt> for <tt>getRowStart(r) &lt;= k &lt;
+ * getRowEnd(r)</tt>. The column indices of each row are strictly increasing
+ * and only non-zero values are stored.
+ *
+ * The matrix is the common storage format of the library: the sparse
+ * binding matrices copy from it row by row directly from the arrays.
+ * Filling the rows in increasing order, e.g. with
+ * {@link #setRow(int, int[], double[])} or <tt>viewRow(r).assign(...)</tt>,
+ * only appends to the arrays. Changing an earlier row moves the elements
+ * of all later rows.
+ *
+ * @author agent(at)local
+ */
+// TODO: Make sure to adhere to colt's conventions.
+
+public class CSRDoubleMatrix2D extends DoubleMatrix2D
+{
+    private int[]    _rowPointers;
+    private int[]    _columnIndices;
+    private double[] _values;
+    private int      _nonZeros;
+    // The rows from _filledRows and up are empty and start at _nonZeros.
+    // Only _rowPointers[0] to _rowPointers[_filledRows] are valid.
+    private int      _filledRows;
+
+    /**
+     * Constructs a matrix with a given number of rows and columns.
+     * All entries are initially <tt>0</tt>.
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @throws IllegalArgumentException if
+               <tt>rows&lt;0 || columns&lt;0 || (double)columns*rows &gt;
+               Integer.MAX_VALUE</tt>.
+    */
+    public CSRDoubleMatrix2D(int rows, int columns)
+    {
+        setUp(rows, columns);
+        _rowPointers   = new int[rows + 1];
+        _columnIndices = new int[0];
+        _values        = new double[0];
+        _nonZeros      = 0;
+        _filledRows    = 0;
+    }
+
+    /**
+     * Constructs a matrix over existing CSR arrays without copying them,
+     * e.g. the arrays of a {@link se.hb.jcp.io.CSRBuilder}. The arrays are
+     * owned by the matrix afterwards and must not be modified by the caller.
+     *
+     * @param rows           the number of rows the matrix shall have.
+     * @param columns        the number of columns the matrix shall have.
+     * @param rowPointers    the row pointers, at least <tt>rows + 1</tt> elements.
+     * @param columnIndices  the 0-based column indices, strictly increasing within each row.
+     * @param values         the non-zero values.
+     */
+    public CSRDoubleMatrix2D(int      rows,
+                             int      columns,
+                             int[]    rowPointers,
+                             int[]    columnIndices,
+                             double[] values)
+    {
+        setUp(rows, columns);
+        if (rowPointers.length < rows + 1 ||
+            rowPointers[rows] > Math.min(columnIndices.length,
+                                         values.length)) {
+            throw new IllegalArgumentException("Malformed CSR arrays.");
+        }
+        _rowPointers   = rowPointers;
+        _columnIndices = columnIndices;
+        _values        = values;
+        _nonZeros      = rowPointers[rows];
+        _filledRows    = rows;
+    }
+
+    /**
+     * Construct and returns a new empty matrix <i>of the same dynamic type</i>
+     * as the receiver, having the specified number of rows and columns.
+     *
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @return  a new empty matrix of the same dynamic type.
+     */
+    public DoubleMatrix2D like(int rows, int columns)
+    {
+        return new CSRDoubleMatrix2D(rows, columns);
+    }
+
+    /**
+     * Construct and returns a new 1-d matrix <i>of the corresponding dynamic
+     * type</i>, entirelly independent of the receiver.
+     *
+     * @param  size the number of cells the matrix shall have.
+     * @return  a new matrix of the corresponding dynamic type.
+     */
+    public DoubleMatrix1D like1D(int size)
+    {
+        return new CSRDoubleMatrix1D(size);
+    }
+
+    /**
+     * Construct and returns a new 1-d matrix <i>of the corresponding dynamic
+     * type</i>, sharing the same cells.
+     *
+     * @param size the number of cells the matrix shall have.
+     * @param zero the index of the first element.
+     * @param stride the number of indexes between any two elements, i.e.
+     *        <tt>index(i+1)-index(i)</tt>.
+     * @return  a new matrix of the corresponding dynamic type.
+     */
+    protected DoubleMatrix1D like1D(int size, int zero, int stride)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    /**
+     * Replaces all cell values of the receiver with the values of another
+     * matrix. Both matrices must have the same number of rows and columns.
+     * The rows are copied one at a time, directly from the arrays if the
+     * other matrix also is a <tt>CSRDoubleMatrix2D</tt>.
+     *
+     * @param other the source matrix to copy from (may be identical to the receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException if <tt>columns() != other.columns() ||
+     *         rows() != other.rows()</tt>
+     */
+    public DoubleMatrix2D assign(DoubleMatrix2D other)
+    {
+        if (other == this) {
+            return this;
+        }
+        checkShape(other);
+        if (other instanceof CSRDoubleMatrix2D) {
+            CSRDoubleMatrix2D o = (CSRDoubleMatrix2D)other;
+            _rowPointers   = Arrays.copyOf(o._rowPointers, rows + 1);
+            _columnIndices = Arrays.copyOf(o._columnIndices, o._nonZeros);
+            _values        = Arrays.copyOf(o._values, o._nonZeros);
+            _nonZeros      = o._nonZeros;
+            _filledRows    = o._filledRows;
+        } else {
+            IntArrayList indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            clear();
+            for (int r = 0; r < rows; r++) {
+                other.viewRow(r).getNonZeros(indexList, valueList);
+                replaceRow(r, indexList.elements(), valueList.elements(),
+                           0, indexList.size());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of cells having non-zero values.
+     *
+     * @return the number of non-zero cells.
+     */
+    public int cardinality()
+    {
+        return _nonZeros;
+    }
+
+    /**
+     * Fills the coordinates and values of cells having non-zero values into
+     * the specified lists in row-major order.
+     *
+     * @param rowList     the list to be filled with row indexes, can have any size.
+     * @param columnList  the list to be filled with column indexes, can have any size.
+     * @param valueList   the list to be filled with values, can have any size.
+     */
+    public void getNonZeros(IntArrayList    rowList,
+                            IntArrayList    columnList,
+                            DoubleArrayList valueList)
+    {
+        rowList.clear();
+        columnList.clear();
+        valueList.clear();
+        for (int r = 0; r < rows; r++) {
+            int last = getRowEnd(r);
+            for (int k = getRowStart(r); k < last; k++) {
+                rowList.add(r);
+                columnList.add(_columnIndices[k]);
+                valueList.add(_values[k]);
+            }
+        }
+    }
+
+    /**
+     * Returns the matrix cell value at coordinate <tt>[row,column]</tt>.
+     *
+     * <p>Provided with invalid parameters this method may return invalid
+     * objects without throwing any exception.
+     * <b>You should only use this method when you are absolutely sure that
+     * the coordinate is within bounds.</b>
+     * Precondition (unchecked): <tt>0 &lt;= column &lt; columns() &amp;&amp;
+     * 0 &lt;= row &lt; rows()</tt>.
+     *
+     * @param row     the index of the row-coordinate.
+     * @param column  the index of the column-coordinate.
+     * @return the value at the specified coordinate.
+     */
+    public double getQuick(int row, int column)
+    {
+        int k = find(getRowStart(row), getRowEnd(row), column);
+        return k >= 0 ? _values[k] : 0.0;
+    }
+
+    /**
+     * Sets the matrix cell at coordinate <tt>[row,column]</tt> to the
+     * specified value.
+     *
+     * <p>Provided with invalid parameters this method may access illegal
+     * indexes without throwing any exception.
+     * <b>You should only use this method when you are absolutely sure that
+     * the coordinate is within bounds.</b>
+     * Precondition (unchecked): <tt>0 &lt;= column &lt; columns() &amp;&amp;
+     *                               0 &lt;= row &lt; rows()</tt>.
+     *
+     * @param row     the index of the row-coordinate.
+     * @param column  the index of the column-coordinate.
+     * @param value   the value to be filled into the specified cell.
+     */
+    public void setQuick(int row, int column, double value)
+    {
+        int k = find(getRowStart(row), getRowEnd(row), column);
+        if (k >= 0) {
+            if (value != 0.0) {
+                _values[k] = value;
+            } else {
+                move(row, k, -1);
+            }
+        } else if (value != 0.0) {
+            k = -(k + 1);
+            move(row, k, 1);
+            _columnIndices[k] = column;
+            _values[k] = value;
+        }
+    }
+
+    /**
+       Constructs and returns a new <i>slice view</i> representing the
+       columns of the given row.
+       The returned view is backed by this matrix, so changes in the
+       returned view are reflected in this matrix, and vice-versa.
+
+       @param row the row to fix.
+       @return a new slice view.
+       @throws IndexOutOfBoundsException if <tt>row &lt; 0 ||
+               row &gt;= rows()</tt>.
+       @see #viewColumn(int)
+    */
+    public DoubleMatrix1D viewRow(int row)
+    {
+        checkRow(row);
+        return new CSRDoubleMatrix1D(this, row);
+    }
+
+    /**
+     * Replaces one row of the matrix.
+     * The indices and values are copied.
+     *
+     * @param row      the row to replace.
+     * @param indices  the strictly increasing indices to be filled in the new row.
+     * @param values   the non-zero values to be filled into the new row.
+     */
+    public void setRow(int      row,
+                       int[]    indices,
+                       double[] values)
+    {
+        checkRow(row);
+        replaceRow(row, indices, values, 0, indices.length);
+    }
+
+    /**
+     * Returns the position of the first element of the row in the column
+     * index and value arrays.
+     *
+     * @param row  the row.
+     * @return the position of the first element of the row.
+     */
+    public int getRowStart(int row)
+    {
+        return row <= _filledRows ? _rowPointers[row] : _nonZeros;
+    }
+
+    /**
+     * Returns the position after the last element of the row in the column
+     * index and value arrays.
+     *
+     * @param row  the row.
+     * @return the position after the last element of the row.
+     */
+    public int getRowEnd(int row)
+    {
+        return getRowStart(row + 1);
+    }
+
+    /**
+     * Returns the column index array. The array is shared with the matrix
+     * and only valid until the matrix is modified.
+     *
+     * @return the column index array.
+     */
+    public int[] getColumnIndices()
+    {
+        return _columnIndices;
+    }
+
+    /**
+     * Returns the value array. The array is shared with the matrix and only
+     * valid until the matrix is modified.
+     *
+     * @return the value array.
+     */
+    public double[] getValues()
+    {
+        return _values;
+    }
+
+    /**
+     * Releases unused capacity of the internal arrays.
+     */
+    public void trimToSize()
+    {
+        if (_columnIndices.length > _nonZeros) {
+            _columnIndices = Arrays.copyOf(_columnIndices, _nonZeros);
+            _values        = Arrays.copyOf(_values, _nonZeros);
+        }
+        if (_rowPointers.length > rows + 1) {
+            _rowPointers = Arrays.copyOf(_rowPointers, rows + 1);
+        }
+    }
+
+    /**
+     * Construct and returns a new selection view.
+     *
+     * @param rowOffsets the offsets of the visible elements.
+     * @param columnOffsets the offsets of the visible elements.
+     * @return a new view.
+     */
+    protected DoubleMatrix2D viewSelectionLike(int[] rowOffsets,
+                                               int[] columnOffsets)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    /**
+     * Replaces the elements of a row with length elements of the arrays
+     * starting at offset.
+     */
+    void replaceRow(int      row,
+                    int[]    indices,
+                    double[] values,
+                    int      offset,
+                    int      length)
+    {
+        int first = getRowStart(row);
+        int last  = getRowEnd(row);
+        int delta = length - (last - first);
+        if (delta > 0) {
+            move(row, last, delta);
+        } else if (delta < 0) {
+            move(row, last + delta, delta);
+        }
+        System.arraycopy(indices, offset, _columnIndices, first, length);
+        System.arraycopy(values, offset, _values, first, length);
+    }
+
+    /**
+     * Opens a gap of delta elements at the position (delta &gt; 0) or
+     * removes the -delta elements from the position (delta &lt; 0) in the
+     * row and updates the row pointers of the later rows.
+     */
+    private void move(int row, int position, int delta)
+    {
+        if (row >= _filledRows) {
+            // Make the row the last filled row. It starts at _nonZeros.
+            for (int r = _filledRows + 1; r <= row + 1; r++) {
+                _rowPointers[r] = _nonZeros;
+            }
+            _filledRows = row + 1;
+        }
+        if (_nonZeros + delta > _values.length) {
+            int capacity = grow(_values.length, _nonZeros + delta);
+            _columnIndices = Arrays.copyOf(_columnIndices, capacity);
+            _values        = Arrays.copyOf(_values, capacity);
+        }
+        int source = delta > 0 ? position : position - delta;
+        System.arraycopy(_columnIndices, source,
+                         _columnIndices, source + delta, _nonZeros - source);
+        System.arraycopy(_values, source,
+                         _values, source + delta, _nonZeros - source);
+        _nonZeros += delta;
+        for (int r = row + 1; r <= _filledRows; r++) {
+            _rowPointers[r] += delta;
+        }
+    }
+
+    /**
+     * Returns the position of the column among the positions [first, last)
+     * or <tt>-(insertion point) - 1</tt> if the column has no stored element.
+     */
+    int find(int first, int last, int column)
+    {
+        return Arrays.binarySearch(_columnIndices, first, last, column);
+    }
+
+    private void clear()
+    {
+        _nonZeros = 0;
+        _filledRows = 0;
+    }
+
+    private static int grow(int capacity, int minCapacity)
+    {
+        long newCapacity = capacity + (capacity >> 1) + 16;
+        if (newCapacity > Integer.MAX_VALUE - 8) {
+            newCapacity = Integer.MAX_VALUE - 8;
+        }
+        if (newCapacity < minCapacity) {
+            newCapacity = minCapacity;
+        }
+        return (int)newCapacity;
+    }
+
+    private void writeObject(java.io.ObjectOutputStream oos)
+        throws java.io.IOException
+    {
+        trimToSize();
+        oos.defaultWriteObject();
+    }
+}
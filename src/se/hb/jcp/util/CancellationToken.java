@@ -0,0 +1,103 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token for cooperative cancellation of long-running work with an
+ * optional deadline. The work is cancelled either explicitly by
+ * {@link #cancel()} or when the deadline has passed.
+ *
+ * Work that observes a cancelled token stops at the next check and throws a
+ * <tt>CancellationException</tt>.
+ *
+ * @author agent(at)local
+ */
+public class CancellationToken
+{
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private volatile boolean _cancelled = false;
+    private final long       _deadline;
+
+    /**
+     * Creates a cancellation token without deadline.
+     */
+    public CancellationToken()
+    {
+        _deadline = NO_DEADLINE;
+    }
+
+    /**
+     * Creates a cancellation token with a deadline after the specified
+     * timeout.
+     *
+     * @param timeout  the time until the deadline.
+     * @param unit     the time unit of timeout.
+     */
+    public CancellationToken(long timeout, TimeUnit unit)
+    {
+        // Compared by difference to be safe against System.nanoTime() overflow.
+        _deadline = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    /**
+     * Cancels the work associated with this token.
+     */
+    public void cancel()
+    {
+        _cancelled = true;
+    }
+
+    /**
+     * Returns whether the work associated with this token has been
+     * cancelled or its deadline has passed.
+     *
+     * @return <tt>true</tt> if the work should stop.
+     */
+    public boolean isCancelled()
+    {
+        return _cancelled || isDeadlineExceeded();
+    }
+
+    /**
+     * Returns whether the deadline of this token has passed.
+     *
+     * @return <tt>true</tt> if the deadline has passed.
+     */
+    public boolean isDeadlineExceeded()
+    {
+        return _deadline != NO_DEADLINE &&
+               System.nanoTime() - _deadline >= 0;
+    }
+
+    /**
+     * Throws a <tt>CancellationException</tt> if the work associated with
+     * this token has been cancelled or its deadline has passed.
+     */
+    public void throwIfCancelled()
+    {
+        if (_cancelled) {
+            throw new CancellationException("The work has been cancelled.");
+        }
+        if (isDeadlineExceeded()) {
+            throw new CancellationException("The deadline has passed.");
+        }
+    }
+}
@@ -0,0 +1,343 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  agent
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Controls how <tt>ParallelizedAction</tt>s are executed: in which
+ * <tt>ForkJoinPool</tt>, with what grain size, whether nested parallel
+ * actions are parallelized and whether the work has been cancelled, see
+ * {@link CancellationToken}.
+ *
+ * An execution policy can be given to conformal classifiers and
+ * non-conformity functions. Those without an explicit policy use the
+ * default policy, see {@link #getDefault()}, which has a dedicated pool
+ * sized by the system property <tt>se.hb.jcp.parallelism</tt> (default: the
+ * number of available processors). The common <tt>ForkJoinPool</tt> is
+ * never used.
+ *
+ * @author agent(at)local
+ */
+public class ExecutionPolicy
+{
+    private static final long DEFAULT_TARGET_TASK_NANOS = 500000L;
+    private static volatile ExecutionPolicy defaultPolicy;
+
+    private final ForkJoinPool _pool;
+    private final boolean      _ownsPool;
+    private int                _grainSize = 0;
+    private long               _targetTaskNanos = DEFAULT_TARGET_TASK_NANOS;
+    private int                _maxDepth;
+    private boolean            _allowNesting = false;
+    private volatile CancellationToken _cancellationToken =
+        new CancellationToken();
+
+    /**
+     * Creates an execution policy with a dedicated <tt>ForkJoinPool</tt> of
+     * the specified parallelism. A parallelism of 1 or less gives
+     * sequential execution in the calling thread.
+     *
+     * @param parallelism  the number of worker threads.
+     */
+    public ExecutionPolicy(int parallelism)
+    {
+        this(parallelism > 1 ? new ForkJoinPool(parallelism) : null, true);
+    }
+
+    /**
+     * Creates an execution policy that executes work in the supplied
+     * <tt>ForkJoinPool</tt>. A <tt>null</tt> pool gives sequential execution
+     * in the calling thread.
+     *
+     * @param pool  the <tt>ForkJoinPool</tt> to use or <tt>null</tt>.
+     */
+    public ExecutionPolicy(ForkJoinPool pool)
+    {
+        this(pool, false);
+    }
+
+    private ExecutionPolicy(ForkJoinPool pool, boolean ownsPool)
+    {
+        _pool = pool;
+        _ownsPool = ownsPool;
+        // Allow at least 16 leaf tasks per worker for load balancing.
+        int parallelism = pool != null ? pool.getParallelism() : 1;
+        _maxDepth = 4 + (32 - Integer.numberOfLeadingZeros(parallelism));
+    }
+
+    /**
+     * Creates an execution policy with the same pool, settings and
+     * cancellation token as another policy. The settings of the new policy
+     * can then be changed without affecting the other policy.
+     *
+     * @param other  the execution policy to copy.
+     */
+    public ExecutionPolicy(ExecutionPolicy other)
+    {
+        this(other._pool, false);
+        _grainSize = other._grainSize;
+        _targetTaskNanos = other._targetTaskNanos;
+        _maxDepth = other._maxDepth;
+        _allowNesting = other._allowNesting;
+        _cancellationToken = other._cancellationToken;
+    }
+
+    /**
+     * Returns a new execution policy with the same pool and settings as
+     * this one but with the supplied cancellation token. This is the
+     * intended way to make a single job cancellable or give it a deadline
+     * without affecting other work sharing the pool.
+     *
+     * @param token  the cancellation token for the new policy.
+     * @return a new execution policy.
+     */
+    public ExecutionPolicy withCancellationToken(CancellationToken token)
+    {
+        ExecutionPolicy policy = new ExecutionPolicy(this);
+        policy.setCancellationToken(token);
+        return policy;
+    }
+
+    /**
+     * Returns the default execution policy.
+     *
+     * @return the default execution policy.
+     */
+    public static ExecutionPolicy getDefault()
+    {
+        ExecutionPolicy policy = defaultPolicy;
+        if (policy == null) {
+            synchronized (ExecutionPolicy.class) {
+                policy = defaultPolicy;
+                if (policy == null) {
+                    int parallelism =
+                        Integer.getInteger("se.hb.jcp.parallelism",
+                                           Runtime.getRuntime().
+                                               availableProcessors());
+                    policy = new ExecutionPolicy(parallelism);
+                    defaultPolicy = policy;
+                }
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Sets the default execution policy.
+     *
+     * @param policy  the new default execution policy.
+     */
+    public static void setDefault(ExecutionPolicy policy)
+    {
+        if (policy == null) {
+            throw new IllegalArgumentException
+                          ("The default execution policy cannot be null.");
+        }
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Returns the policy if it is non-<tt>null</tt> and otherwise the default
+     * execution policy.
+     *
+     * @param policy  an execution policy or <tt>null</tt>.
+     * @return the policy to use.
+     */
+    public static ExecutionPolicy orDefault(ExecutionPolicy policy)
+    {
+        return policy != null ? policy : getDefault();
+    }
+
+    /**
+     * Returns whether work is executed in parallel under this policy.
+     *
+     * @return <tt>true</tt> if work may be executed in parallel.
+     */
+    public boolean isParallel()
+    {
+        return _pool != null;
+    }
+
+    /**
+     * Returns the <tt>ForkJoinPool</tt> used by this policy.
+     *
+     * @return the <tt>ForkJoinPool</tt> or <tt>null</tt> if the execution is sequential.
+     */
+    public ForkJoinPool getPool()
+    {
+        return _pool;
+    }
+
+    /**
+     * Returns the number of indices each leaf task should process.
+     *
+     * @return the grain size or 0 if the grain size is chosen adaptively.
+     */
+    public int getGrainSize()
+    {
+        return _grainSize;
+    }
+
+    /**
+     * Sets the number of indices each leaf task should process.
+     * With a grain size of 0 the grain size is chosen adaptively from the
+     * measured cost of the first indices of each parallel action and the
+     * target task duration.
+     *
+     * @param grainSize  the grain size or 0 for adaptive grain size.
+     */
+    public void setGrainSize(int grainSize)
+    {
+        if (grainSize < 0) {
+            throw new IllegalArgumentException("Negative grain size.");
+        }
+        _grainSize = grainSize;
+    }
+
+    /**
+     * Returns the target duration of a leaf task for adaptive grain size.
+     *
+     * @return the target duration in nanoseconds.
+     */
+    public long getTargetTaskNanos()
+    {
+        return _targetTaskNanos;
+    }
+
+    /**
+     * Sets the target duration of a leaf task for adaptive grain size.
+     *
+     * @param targetTaskNanos  the target duration in nanoseconds.
+     */
+    public void setTargetTaskNanos(long targetTaskNanos)
+    {
+        if (targetTaskNanos <= 0) {
+            throw new IllegalArgumentException
+                          ("The target task duration must be positive.");
+        }
+        _targetTaskNanos = targetTaskNanos;
+    }
+
+    /**
+     * Returns the maximum depth of task subdivision.
+     *
+     * @return the maximum depth of task subdivision.
+     */
+    public int getMaxDepth()
+    {
+        return _maxDepth;
+    }
+
+    /**
+     * Sets the maximum depth of task subdivision.
+     *
+     * @param maxDepth  the maximum depth of task subdivision.
+     */
+    public void setMaxDepth(int maxDepth)
+    {
+        _maxDepth = maxDepth;
+    }
+
+    /**
+     * Returns whether parallel actions started from within a parallel
+     * action are parallelized too. If not they are executed sequentially
+     * within the calling task.
+     *
+     * @return <tt>true</tt> if nested parallel actions are parallelized.
+     */
+    public boolean isNestingAllowed()
+    {
+        return _allowNesting;
+    }
+
+    /**
+     * Sets whether parallel actions started from within a parallel action
+     * are parallelized too.
+     *
+     * @param allowNesting  <tt>true</tt> if nested parallel actions should be parallelized.
+     */
+    public void setNestingAllowed(boolean allowNesting)
+    {
+        _allowNesting = allowNesting;
+    }
+
+    /**
+     * Returns the cancellation token of this policy.
+     *
+     * @return the cancellation token.
+     */
+    public CancellationToken getCancellationToken()
+    {
+        return _cancellationToken;
+    }
+
+    /**
+     * Sets the cancellation token of this policy.
+     *
+     * @param token  the cancellation token.
+     */
+    public void setCancellationToken(CancellationToken token)
+    {
+        if (token == null) {
+            throw new IllegalArgumentException
+                          ("The cancellation token cannot be null.");
+        }
+        _cancellationToken = token;
+    }
+
+    /**
+     * Requests cancellation of all work executed under this policy.
+     * Running parallel actions stop at the next index and throw a
+     * <tt>CancellationException</tt>.
+     */
+    public void cancel()
+    {
+        _cancellationToken.cancel();
+    }
+
+    /**
+     * Returns whether the work executed under this policy has been cancelled
+     * or its deadline has passed.
+     *
+     * @return <tt>true</tt> if the work has been cancelled.
+     */
+    public boolean isCancelled()
+    {
+        return _cancellationToken.isCancelled();
+    }
+
+    /**
+     * Throws a <tt>CancellationException</tt> if the work executed under
+     * this policy has been cancelled or its deadline has passed.
+     */
+    public void checkCancelled()
+    {
+        _cancellationToken.throwIfCancelled();
+    }
+
+    /**
+     * Shuts down the <tt>ForkJoinPool</tt> of this policy if it was created
+     * by the policy.
+     */
+    public void shutdown()
+    {
+        if (_ownsPool && _pool != null) {
+            _pool.shutdown();
+        }
+    }
+}
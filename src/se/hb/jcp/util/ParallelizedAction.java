@@ -16,24 +16,28 @@
 //
 package se.hb.jcp.util;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 
 /**
  * Base class for parallel actions over contiguous int intervals.
+ * How the action is executed is controlled by an {@link ExecutionPolicy}.
  *
  * @author anders.gidenstam(at)hb.se
  */
 public abstract class ParallelizedAction
     extends RecursiveAction
 {
-    private static final int MIN_WORK = 1;
-    private static final int MAX_DEPTH = 6;
-    private static final ForkJoinPool taskPool = new ForkJoinPool();
+    // The number of indices to time for the adaptive grain size.
+    private static final int SAMPLE_SIZE = 4;
 
     private int _first;
     private int _last;
     private int _depth;
+    private int _grainSize = 1;
+    private ExecutionPolicy _policy;
 
     /**
      * Constructs a set of actions for the interval [first, last).
@@ -49,11 +53,60 @@ public abstract class ParallelizedAction
     }
 
     /**
-     * Starts this set of actions.
+     * Starts this set of actions under the default execution policy.
      */
     public void start()
     {
-        taskPool.invoke(this);
+        start(ExecutionPolicy.getDefault());
+    }
+
+    /**
+     * Starts this set of actions under the supplied execution policy.
+     * The actions are executed sequentially in the calling thread if the
+     * policy is sequential or if this is a nested parallel action and the
+     * policy does not allow nesting.
+     *
+     * @param policy  the execution policy to use.
+     */
+    public void start(ExecutionPolicy policy)
+    {
+        _policy = policy;
+        ForkJoinPool pool = policy.getPool();
+        boolean nested = ForkJoinTask.inForkJoinPool();
+        if (pool == null || (nested && !policy.isNestingAllowed())) {
+            computeSequentially(_first, _last);
+            return;
+        }
+        _grainSize = policy.getGrainSize();
+        if (_grainSize == 0) {
+            // Time the first few indices to choose a grain size that gives
+            // leaf tasks of about the target duration.
+            int sample = Math.min(SAMPLE_SIZE, _last - _first);
+            long start = System.nanoTime();
+            computeSequentially(_first, _first + sample);
+            long perItem = Math.max(1, (System.nanoTime() - start) /
+                                       Math.max(1, sample));
+            _grainSize =
+                (int)Math.max(1,
+                              Math.min(Integer.MAX_VALUE,
+                                       policy.getTargetTaskNanos() / perItem));
+            _first += sample;
+        }
+        if (_last - _first <= _grainSize) {
+            computeSequentially(_first, _last);
+            return;
+        }
+        try {
+            if (nested && ForkJoinTask.getPool() == pool) {
+                invoke();
+            } else {
+                pool.invoke(this);
+            }
+        } catch (CancellationException e) {
+            // The ForkJoinPool replaces the cause of cancellation.
+            policy.checkCancelled();
+            throw e;
+        }
     }
 
     /**
@@ -102,22 +155,44 @@ public abstract class ParallelizedAction
     private ParallelizedAction createSubtask(int first, int last, int depth)
     {
         ParallelizedAction a = createSubtask(first, last);
-        _depth = depth;
+        a._depth = depth;
+        a._grainSize = _grainSize;
+        a._policy = _policy;
         return a;
     }
 
+    /**
+     * Executes the actions for the sub-interval sequentially in the calling
+     * thread.
+     *
+     * @param first  the first index in the sub-interval
+     * @param last   the index after the last index in the sub-interval
+     */
+    private void computeSequentially(int first, int last)
+    {
+        if (first >= last) {
+            return;
+        }
+        initialize(first, last);
+        try {
+            for (int i = first; i < last; i++) {
+                _policy.checkCancelled();
+                compute(i);
+            }
+        } finally {
+            finalize(first, last);
+        }
+    }
+
     /**
      * Inherited from RecursiveAction. Do not overrride.
      */
     @Override
     protected final void compute()
     {
-        if ((_depth >= MAX_DEPTH) || (_last - _first <= MIN_WORK)) {
-            initialize(_first, _last);
-            for (int i = _first; i < _last; i++) {
-                compute(i);
-            }
-            finalize(_first, _last);
+        if ((_depth >= _policy.getMaxDepth()) ||
+            (_last - _first <= _grainSize)) {
+            computeSequentially(_first, _last);
         } else {
             int split = (_last - _first)/2;
             invokeAll(createSubtask(_first, _first + split, _depth + 1),